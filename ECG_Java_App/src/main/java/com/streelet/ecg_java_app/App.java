@@ -9,6 +9,7 @@ import javafx.stage.Stage;
 
 import com.streelet.ecg_java_app.StartController.OnStartMonitoringListener; // Import the listener interface
 import com.streelet.ecg_java_app.StartController.PatientData; // Import the PatientData class
+import com.streelet.ecg_java_app.log.Log;
 
 import java.io.IOException;
 import java.net.URL; // Import URL
@@ -16,6 +17,8 @@ import java.net.URL; // Import URL
 // Implement the listener interface to receive signals from StartController
 public class App extends Application implements OnStartMonitoringListener {
 
+    private static final long LOG_FLUSH_TIMEOUT_MS = 1000;
+
     private Stage primaryStage; // Reference to the primary Stage
     // We don't strictly need Scene fields here, as we can get/set scenes on the stage
 
@@ -195,6 +198,8 @@ public class App extends Application implements OnStartMonitoringListener {
         } else {
              System.out.println("App: No hay controladores activos para limpiar.");
         }
+        // El hilo del log es daemon: se vacía antes de que la JVM termine
+        Log.flush(LOG_FLUSH_TIMEOUT_MS);
         super.stop(); // Call the superclass stop method
     }
 
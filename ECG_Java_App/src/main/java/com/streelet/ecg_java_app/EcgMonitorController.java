@@ -3,15 +3,33 @@ package com.streelet.ecg_java_app;
 import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable; // Importar Initializable
-import javafx.scene.chart.LineChart;
-import javafx.scene.chart.XYChart;
-import javafx.scene.chart.NumberAxis;
 import javafx.scene.control.Label;
+import com.streelet.ecg_java_app.sound.AlarmToneSequencer;
 import com.streelet.ecg_java_app.sound.Beep;
+import com.streelet.ecg_java_app.sound.BeatAudioEngine;
+import com.streelet.ecg_java_app.alarm.AlarmEngine;
+import com.streelet.ecg_java_app.alarm.AlarmEvent;
+import com.streelet.ecg_java_app.alarm.AlarmType;
 import com.streelet.ecg_java_app.serial.SerialDataListener;
 import com.streelet.ecg_java_app.serial.SerialDataManager;
+import com.streelet.ecg_java_app.source.SignalSource;
+import com.streelet.ecg_java_app.model.BeatDetector;
 import com.streelet.ecg_java_app.model.EcgDataModel;
-import com.streelet.ecg_java_app.model.EcgPeakListener;
+import com.streelet.ecg_java_app.model.HrvAnalyzer;
+import com.streelet.ecg_java_app.model.HrvSnapshot;
+import com.streelet.ecg_java_app.model.ThresholdBeatDetector;
+import com.streelet.ecg_java_app.analysis.AnalysisWorker;
+import com.streelet.ecg_java_app.analysis.MonitorSnapshot;
+import com.streelet.ecg_java_app.filter.FilterChain;
+import com.streelet.ecg_java_app.quality.SignalQualityMonitor;
+import com.streelet.ecg_java_app.interchange.SessionExporter;
+import com.streelet.ecg_java_app.log.Log;
+import com.streelet.ecg_java_app.log.Logger;
+import com.streelet.ecg_java_app.net.EcgStreamServer;
+import com.streelet.ecg_java_app.recording.SessionReader;
+import com.streelet.ecg_java_app.recording.SessionRecorder;
+import com.streelet.ecg_java_app.view.EcgWaveformView;
+import javafx.animation.AnimationTimer;
 import javafx.animation.FadeTransition;
 import javafx.scene.shape.Circle;
 import javafx.animation.PauseTransition;
@@ -22,22 +40,35 @@ import javafx.util.Duration;
 import com.streelet.ecg_java_app.StartController.PatientData; 
 
 
+import java.io.IOException;
 import java.net.URL; 
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
 import java.time.LocalTime; 
 import java.time.format.DateTimeFormatter; 
+import java.util.EnumSet;
 import java.util.ResourceBundle; 
 
 
-// El Controlador implementa SerialDataListener y EcgPeakListener
+// El Controlador implementa SerialDataListener; los resultados del análisis le llegan como MonitorSnapshot
 // Implementa Initializable porque tiene un metodo initialize() que es llamado por FXMLLoader
-public class EcgMonitorController implements Initializable, SerialDataListener, EcgPeakListener { 
+public class EcgMonitorController implements Initializable, SerialDataListener { 
+
+    private static final Logger LOG = Log.get(EcgMonitorController.class);
 
     @FXML
-    private LineChart<Number, Number> ecgChart;
+    private EcgWaveformView ecgWaveform;
 
     @FXML
     private Label labelHeartRate;
 
+    @FXML
+    private Label labelHrv;
+
+    @FXML
+    private Label labelAlarm;
+
     @FXML
     private Circle beatCircle;
 
@@ -76,21 +107,76 @@ public class EcgMonitorController implements Initializable, SerialDataListener,
        
 
 
-    private SerialDataManager serialDataManager; 
+    // Fuente de la señal: el puerto serial por defecto, o cualquier otra (archivo, generador) vía setSignalSource()
+    private SignalSource signalSource; 
 
 
-    private XYChart.Series<Number, Number> ecgSeries;
-
-
-    private long time = 0; 
-    private final int WINDOW_SIZE = 900; 
+    // Segundos visibles en la gráfica; las muestras se calculan con la frecuencia de la fuente
+    private static final double WINDOW_SECONDS = 4.5;
 
 
     private EcgDataModel ecgDataModel; 
 
+    // HRV sobre el historial de RR del modelo; en pantalla se muestra la ventana de 5 minutos
+    private HrvAnalyzer hrvAnalyzer;
+    private static final double DISPLAYED_HRV_WINDOW_SECONDS = 300;
+
+    // Alarmas de ritmo: se evalúan en su propio hilo; aquí solo se muestran las activas
+    private volatile AlarmEngine alarmEngine;
+    private final EnumSet<AlarmType> activeAlarms = EnumSet.noneOf(AlarmType.class);
+
+    // Pitido de latido en su propio hilo de audio; si no hay línea de audio se usa Beep desde la UI
+    private final BeatAudioEngine beatAudio = new BeatAudioEngine(new BeatAudioEngine.Config(), DEFAULT_SAMPLE_RATE_HZ);
+
+    // Frecuencia del dispositivo serial (no la informa) y umbral del detector por defecto
+    private static final int DEFAULT_SAMPLE_RATE_HZ = 200;
+    private static final int BEAT_THRESHOLD = 945;
+
+    // Filtros: uno para la gráfica y otro para la detección, cada uno con su estado y etapas activas
+    private static final double MAINS_HZ = 60;
+    private static final float DISPLAY_RECENTER_VALUE = 600;
+    private FilterChain displayFilters;
+    private FilterChain detectionFilters;
+
+
+    // Calidad de la señal calculada de las muestras crudas (conversor de 10 bits del dispositivo serial)
+    private static final int ADC_MIN = 0;
+    private static final int ADC_MAX = 1023;
+    private SignalQualityMonitor signalQuality;
+
+    // El overlay se oculta tras medio segundo seguido de señal aceptable y sin avisos de la fuente
+    private static final long OVERLAY_HIDE_DELAY_NANOS = 500_000_000L;
+    private long lastStatusNanos = 0;
+    private boolean overlayShown = false;
+
+
+    // Grabación de la sesión (muestras, latidos y estado) en ~/ecg-sessions
+    private static final Path SESSIONS_DIRECTORY = Paths.get(System.getProperty("user.home"), "ecg-sessions");
+    // Exportar a EDF+ y WFDB al cerrar solo si se pide con -Decg.export=true (se hace en segundo plano)
+    private static final String EXPORT_PROPERTY = "ecg.export";
+    private static final long LOG_FLUSH_TIMEOUT_MS = 1000;
+    private SessionRecorder sessionRecorder;
+
+    // Publicación de la señal por TCP a otros monitores; solo si se indica -Decg.stream.port
+    private static final String STREAM_PORT_PROPERTY = "ecg.stream.port";
+    private static final String STREAM_BIND_PROPERTY = "ecg.stream.bind";
+    private EcgStreamServer streamServer;
+
+    // Hilo de análisis: recibe las muestras de la fuente y publica resultados para la UI
+    private volatile AnalysisWorker analysisWorker;
+    private final int[] displayValues = new int[1024];
+    private MonitorSnapshot shownSnapshot;
+
+    // Pulso de la UI: una pasada por frame de pantalla, sin importar la frecuencia de muestreo
+    private final AnimationTimer frameTimer = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            updateFromAnalysis();
+        }
+    };
 
-    private int consecutiveValidDataCount = 0; 
-    private final int minConsecutiveValidData = 10; 
+    // Último BPM mostrado, para no reescribir la etiqueta (y forzar layout) si no cambió
+    private int displayedBpm = -1;
 
 
     /**
@@ -101,7 +187,7 @@ public class EcgMonitorController implements Initializable, SerialDataListener,
     @FXML
     // Implementa Initializable si no estaba implementado en la firma de la clase
     public void initialize(URL url, ResourceBundle resourceBundle) { 
-        System.out.println("EcgMonitorController: Inicialización de UI completada."); 
+        LOG.info("Inicialización de UI completada.").log(); 
 
   
 
@@ -109,6 +195,11 @@ public class EcgMonitorController implements Initializable, SerialDataListener,
             beatCircle.setOpacity(0.0);
         }
 
+        // Tocar la etiqueta de alarmas pausa su sonido (2 minutos) o lo reanuda
+        if (labelAlarm != null) {
+            labelAlarm.setOnMouseClicked(event -> toggleAlarmAudioPause());
+        }
+
         //Inicializacion de Overlay
          if (electrodesDisconnectedOverlay != null) {
             electrodesDisconnectedOverlay.setOpacity(0.0);
@@ -117,54 +208,42 @@ public class EcgMonitorController implements Initializable, SerialDataListener,
         }
 
 
-        // --- Configuración de la Gráfica (Mantener todo esto) ---
-        ecgSeries = new XYChart.Series<>();
-        ecgSeries.setName("Onda PQRST");
-        ecgChart.setLegendVisible(false);
-        ecgChart.getData().add(ecgSeries);
-        ecgChart.setCreateSymbols(false);
-        ecgChart.setAnimated(false);
-
-        //Configuracion de Eje Y
-        NumberAxis yAxis = (NumberAxis) ecgChart.getYAxis();
-        yAxis.setAutoRanging(false);
-        yAxis.setUpperBound(1200);
-        yAxis.setLowerBound(300);
-
-        //Configuración del Eje X para Desplazamiento
-        NumberAxis xAxis = (NumberAxis) ecgChart.getXAxis();
-        xAxis.setAutoRanging(false);
-        xAxis.setLowerBound(0);
-        xAxis.setUpperBound(WINDOW_SIZE);
-        double desiredTickUnit = 100;
-        xAxis.setTickUnit(desiredTickUnit);
-        xAxis.setTickLabelsVisible(false);
+        // --- Configuración de la Gráfica ---
+        // Ventana de WINDOW_SECONDS en barrido; rango vertical fijo del ADC (300..1200)
+        ecgWaveform.setWindowSize(windowSamples(DEFAULT_SAMPLE_RATE_HZ));
+        ecgWaveform.setValueRange(300, 1200);
+        ecgWaveform.setGridSpacing(100, 100);
         // --- Fin Configuración de la Gráfica ---
 
 
 
-        ecgDataModel = new EcgDataModel(945); // Ya existe, mantener
-        ecgDataModel.addPeakListener(this); // Ya existe, mantener
+        attachModel(new EcgDataModel(BEAT_THRESHOLD, DEFAULT_SAMPLE_RATE_HZ));
+        configureFilters(DEFAULT_SAMPLE_RATE_HZ);
+        configureSignalQuality(DEFAULT_SAMPLE_RATE_HZ);
 
+        // La UI se actualiza en cada pulso de JavaFX con lo que publique el hilo de análisis
+        frameTimer.start();
 
-        // Inicializar el sistema de sonido (Mantener esto)
-        try {
-            Beep.init();
-            System.out.println("EcgMonitorController: Sistema Beep (AudioCue) inicializado.");
-        } catch (Exception e) {
-            System.err.println("EcgMonitorController: Error al inicializar sistema Beep (AudioCue): " + e.getMessage());
-            e.printStackTrace();
+
+        // Inicializar el sistema de sonido: el motor de audio propio y, si no hay línea, Beep (AudioCue)
+        if (!beatAudio.start()) {
+            try {
+                Beep.init();
+                LOG.info("Sistema Beep (AudioCue) inicializado.").log();
+            } catch (Exception e) {
+                LOG.error("Error al inicializar sistema Beep (AudioCue)").cause(e).log();
+            }
         }
 
 
-        System.out.println("EcgMonitorController: Inicialización completa.");
+        LOG.info("Inicialización completa.").log();
     }
 
 
     // Este metodo es llamado por App.java despues de initialize()
     // Asegurate de importar com.streelet.ecg_java_app.StartController.PatientData;
     public void setPatientDataAndPort(PatientData patientData, String portName) {
-        System.out.println("EcgMonitorController: Datos de paciente y puerto recibidos.");
+        LOG.info("Datos de paciente y puerto recibidos.").log();
         this.patientData = patientData;
         this.serialPortName = portName;
 
@@ -176,7 +255,7 @@ public class EcgMonitorController implements Initializable, SerialDataListener,
              patientSummaryTextArea.setEditable(false); // Hacerlo no editable
              patientSummaryTextArea.setFocusTraversable(false); // No se puede seleccionar con tab
         } else {
-             System.err.println("EcgMonitorController: ERROR: patientSummaryTextArea es null o patientData es null al intentar mostrar resumen.");
+             LOG.error("patientSummaryTextArea es null o patientData es null al intentar mostrar resumen.").log();
         }
 
 
@@ -185,126 +264,343 @@ public class EcgMonitorController implements Initializable, SerialDataListener,
 
 
 
+    /**
+     * Permite usar una fuente de señal distinta del puerto serial (reproducción de archivo,
+     * generador sintético, etc.). Debe llamarse antes de startMonitoring(); en ese caso
+     * el nombre de puerto no es necesario.
+     * @param source La fuente a usar, o null para volver al puerto serial.
+     */
+    public void setSignalSource(SignalSource source) {
+        this.signalSource = source;
+    }
+
+
+    /**
+     * Cambia el detector de latidos (por defecto, umbral fijo en 945). Debe llamarse antes
+     * de startMonitoring(), por ejemplo con un PanTompkinsDetector a la frecuencia de la fuente;
+     * después, el modelo pertenece al hilo de análisis.
+     * @param detector El detector a usar.
+     */
+    public void setBeatDetector(BeatDetector detector) {
+        attachModel(new EcgDataModel(detector));
+    }
+
+    /**
+     * Conecta un modelo nuevo (y su analizador de HRV), desconectando el anterior si lo había.
+     */
+    private void attachModel(EcgDataModel model) {
+        if (ecgDataModel != null) {
+            ecgDataModel.removePeakListener(hrvAnalyzer);
+            ecgDataModel.removePeakListener(alarmEngine);
+            ecgDataModel.removePeakListener(beatAudio);
+            hrvAnalyzer.shutdown();
+            alarmEngine.stop();
+        }
+        ecgDataModel = model;
+        // El analizador va primero: así el snapshot de HRV ya incluye el latido que se notifica después
+        hrvAnalyzer = new HrvAnalyzer(model.getRrIntervals());
+        model.addPeakListener(hrvAnalyzer);
+        // El motor de alarmas solo copia el latido a su cola; la evaluación es en su hilo
+        alarmEngine = new AlarmEngine(model.getSampleRateHz());
+        alarmEngine.addAlarmListener(event -> Platform.runLater(() -> onAlarm(event)));
+        // Los tonos de alarma se mezclan en el hilo de audio, sin pasar por la UI
+        beatAudio.getAlarmTones().reset();
+        alarmEngine.addAlarmListener(beatAudio.getAlarmTones());
+        model.addPeakListener(alarmEngine);
+        // El pitido sale del hilo de análisis directamente al de audio, sin esperar a la UI
+        beatAudio.setSampleRateHz(model.getSampleRateHz());
+        model.addPeakListener(beatAudio);
+        model.setBeatObserver((value, index) -> signalQuality.onBeat());
+    }
+
+
+    /**
+     * Crea las cadenas de filtros para la frecuencia de la fuente.
+     * Por defecto: notch de red y pasa-bajos en ambos caminos; el pasa-altos de línea base
+     * queda apagado porque el detector por umbral trabaja con valores absolutos del ADC
+     * (se puede activar con getDisplayFilters().setEnabled(FilterChain.BASELINE, true)).
+     */
+    private void configureFilters(int sampleRateHz) {
+        displayFilters = FilterChain.standardEcg(sampleRateHz, MAINS_HZ);
+        displayFilters.setEnabled(FilterChain.MAINS, true);
+        displayFilters.setEnabled(FilterChain.LOW_PASS, true);
+        displayFilters.setRecenterValue(DISPLAY_RECENTER_VALUE);
+
+        detectionFilters = FilterChain.standardEcg(sampleRateHz, MAINS_HZ);
+        detectionFilters.setEnabled(FilterChain.MAINS, true);
+        detectionFilters.setEnabled(FilterChain.LOW_PASS, true);
+        detectionFilters.setRecenterValue(DISPLAY_RECENTER_VALUE);
+        LOG.info("Filtros @ {} Hz: gráfica {}, detección {}").arg(sampleRateHz).arg(displayFilters.toString())
+                .arg(detectionFilters.toString()).log();
+    }
+
+    /**
+     * Muestras que caben en la ventana de la gráfica a la frecuencia indicada.
+     */
+    private static int windowSamples(int sampleRateHz) {
+        return Math.max(2, (int) Math.round(WINDOW_SECONDS * sampleRateHz));
+    }
+
+    /**
+     * Crea el índice de calidad de señal para la frecuencia de la fuente.
+     */
+    private void configureSignalQuality(int sampleRateHz) {
+        signalQuality = new SignalQualityMonitor(sampleRateHz, ADC_MIN, ADC_MAX);
+        // El modelo se entera vía AnalysisWorker; el motor de alarmas, directamente
+        signalQuality.addListener((condition, score, acceptable) -> alarmEngine.onSignalQuality(acceptable));
+        ecgDataModel.setSignalAcceptable(true);
+        alarmEngine.onSignalQuality(true);
+    }
+
+    public SignalQualityMonitor getSignalQuality() {
+        return signalQuality;
+    }
+
+    public FilterChain getDisplayFilters() {
+        return displayFilters;
+    }
+
+    public FilterChain getDetectionFilters() {
+        return detectionFilters;
+    }
+
+
     // Este metodo es llamado por App.java DESPUES de setPatientDataAndPort()
     public void startMonitoring() {
-         System.out.println("EcgMonitorController: Iniciando monitorización serial...");
-
-         // Verificar que tenemos el nombre del puerto antes de intentar iniciar
-         if (this.serialPortName == null || this.serialPortName.isEmpty()) {
-             System.err.println("EcgMonitorController: ERROR: No se puede iniciar la monitorización serial. Nombre de puerto no configurado.");
-             // Mostrar un mensaje de error al usuario en la UI (usando el overlay)
-             showStatusOverlay("ERROR DE INICIO"); // Usa el metodo showStatusOverlay
-             return; // Salir del metodo si no hay puerto
+         LOG.info("Iniciando monitorización...").log();
+
+         if (signalSource == null) {
+             // Verificar que tenemos el nombre del puerto antes de intentar iniciar
+             if (this.serialPortName == null || this.serialPortName.isEmpty()) {
+                 LOG.error("No se puede iniciar la monitorización serial. Nombre de puerto no configurado.").log();
+                 // Mostrar un mensaje de error al usuario en la UI (usando el overlay)
+                 showStatusOverlay("ERROR DE INICIO"); // Usa el metodo showStatusOverlay
+                 return; // Salir del metodo si no hay puerto
+             }
+
+             int baudRate = 9600; 
+             signalSource = new SerialDataManager(this.serialPortName, baudRate);
+         }
+
+         // Si la fuente informa otra frecuencia, el detector por defecto se ajusta a ella
+         int sourceRate = signalSource.getSampleRateHz();
+         if (sourceRate > 0 && sourceRate != ecgDataModel.getSampleRateHz()
+                 && ecgDataModel.getBeatDetector() instanceof ThresholdBeatDetector) {
+             setBeatDetector(new ThresholdBeatDetector(BEAT_THRESHOLD, sourceRate));
+         }
+         if (sourceRate > 0 && sourceRate != DEFAULT_SAMPLE_RATE_HZ) {
+             configureFilters(sourceRate);
+             configureSignalQuality(sourceRate);
+         }
+         if (sourceRate > 0) {
+             ecgWaveform.setWindowSize(windowSamples(sourceRate));
          }
 
-         serialDataManager = new SerialDataManager();
-         serialDataManager.addListener(this); 
+         // Desde aquí el modelo, los filtros y el índice de calidad pertenecen al hilo de análisis
+         analysisWorker = new AnalysisWorker(ecgDataModel, displayFilters, detectionFilters, signalQuality);
+         analysisWorker.setDisplayedHrvWindowSeconds(DISPLAYED_HRV_WINDOW_SECONDS);
+         hrvAnalyzer.addHrvListener(analysisWorker);
 
-         int baudRate = 9600; 
+         startRecording(ecgDataModel.getSampleRateHz());
+         startStreaming(ecgDataModel.getSampleRateHz());
+         signalSource.addListener(this); 
 
          try {
-             // Llama al metodo startReading con el puerto y baudRate
-             boolean serialStarted = serialDataManager.startReading(this.serialPortName, baudRate);
+             boolean sourceStarted = signalSource.start();
 
-             if (serialStarted) {
-                 System.out.println("EcgMonitorController: Monitorización serial iniciada en puerto: " + this.serialPortName + "@" + baudRate);
+             if (sourceStarted) {
+                 LOG.info("Monitorización iniciada: {}").arg(signalSource.getDescription()).log();
                  // Reiniciar el estado del modelo al iniciar una nueva conexión (mantener esta logica de tu initialize/handleConnect)
                  if (ecgDataModel != null) {
                      ecgDataModel.resetState();
                  }
+                 analysisWorker.start();
+                 alarmEngine.start();
                  // Puedes añadir alguna indicacion visual de que la monitorizacion esta activa
              } else {
-                 System.err.println("EcgMonitorController: ERROR: No se pudo iniciar la monitorización serial en puerto: " + this.serialPortName + "@" + baudRate);
+                 LOG.error("No se pudo iniciar la monitorización: {}").arg(signalSource.getDescription()).log();
                  // Mostrar un mensaje de error al usuario en la UI (usando el overlay)
                  showStatusOverlay("ERROR DE CONEXIÓN"); // Usa el metodo showStatusOverlay
              }
-         } catch (Exception e) { // Capturar excepciones generales al iniciar serial
-             System.err.println("EcgMonitorController: Excepción al iniciar lectura serial en puerto " + this.serialPortName + ": " + e.getMessage());
-             e.printStackTrace();
+         } catch (Exception e) { // Capturar excepciones generales al iniciar la fuente
+             LOG.error("Excepción al iniciar la fuente {}").arg(signalSource.getDescription()).cause(e).log();
              showStatusOverlay("ERROR DE CONEXIÓN"); // Usa el metodo showStatusOverlay
          }
     }
     // --- Fin Metodo para iniciar monitorizacion serial ---
 
 
+    /**
+     * Empieza a grabar la sesión. Si no se puede crear el archivo, se monitoriza sin grabar.
+     */
+    private void startRecording(int sampleRateHz) {
+        String sessionName = "sesion-" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+        SessionRecorder recorder = new SessionRecorder(new SessionRecorder.Config(SESSIONS_DIRECTORY, sessionName, sampleRateHz));
+        try {
+            recorder.start();
+        } catch (IOException e) {
+            LOG.error("No se pudo iniciar la grabación en {}: {}").arg(SESSIONS_DIRECTORY).arg(e.getMessage()).log();
+            return;
+        }
+        sessionRecorder = recorder;
+        // Las muestras y el estado llegan en el hilo de la fuente; los latidos, en el de análisis
+        signalSource.addListener(recorder);
+        ecgDataModel.addPeakListener(recorder);
+    }
+
+    /**
+     * Publica la señal por TCP si se pidió con -Decg.stream.port (y opcionalmente
+     * -Decg.stream.bind). Si no se puede abrir el puerto, se monitoriza sin publicar.
+     */
+    private void startStreaming(int sampleRateHz) {
+        String port = System.getProperty(STREAM_PORT_PROPERTY);
+        if (port == null) {
+            return;
+        }
+        EcgStreamServer server;
+        try {
+            EcgStreamServer.Config config = new EcgStreamServer.Config(sampleRateHz).port(Integer.parseInt(port.trim()));
+            String bind = System.getProperty(STREAM_BIND_PROPERTY);
+            if (bind != null) {
+                config.bindAddress(bind);
+            }
+            server = new EcgStreamServer(config);
+            server.start();
+        } catch (IOException | IllegalArgumentException e) {
+            LOG.error("No se pudo publicar la señal en el puerto {}: {}").arg(port).arg(e.getMessage()).log();
+            return;
+        }
+        streamServer = server;
+        server.setHeartRateSource(() -> analysisWorker.getSnapshot().getBpm());
+        // Como la grabación: muestras y estado desde la fuente, latidos desde el análisis
+        signalSource.addListener(server);
+        ecgDataModel.addPeakListener(server);
+    }
+
+    /**
+     * Exporta la sesión grabada a EDF+ y WFDB junto a sus segmentos, con los datos del paciente.
+     * Una sesión larga tarda segundos: se exporta en un hilo propio (no daemon, así la JVM espera
+     * a que termine) para no bloquear el cierre de la ventana.
+     */
+    private void exportSessionInBackground(SessionRecorder.Config recording, PatientData patient) {
+        Thread thread = new Thread(() -> {
+            try {
+                SessionExporter.exportAll(new SessionReader(recording.getDirectory(), recording.getSessionName()),
+                        recording.getSessionName(), patient, recording.getDirectory());
+            } catch (IOException e) {
+                LOG.error("No se pudo exportar la sesión {}: {}").arg(recording.getSessionName()).arg(e.getMessage()).log();
+            }
+            // App.stop() ya vació el log; lo de la exportación se escribe antes de que la JVM termine
+            Log.flush(LOG_FLUSH_TIMEOUT_MS);
+        }, "ecg-session-export");
+        thread.start();
+    }
+
+
    
 
 
     /**
      * Método de la interfaz SerialDataListener llamado cuando se recibe un nuevo punto de dato.
-     * (Mantener este método como está, pero asegurar que la lógica de conteo y ocultar overlay funcione)
+     * Solo deja la muestra en el buffer de ingesta; el procesamiento se hace en el hilo de análisis
+     * (ver AnalysisWorker).
      * @param value El valor entero recibido del puerto serial (el punto de dato del ECG).
      */
     @Override
     public void onDataReceived(int value) {
 
-
         // Este metodo se ejecuta en un HILO SECUNDARIO (el hilo de lectura serial).
-        // Para actualizar la UI o interactuar con el Modelo (si su lógica no es thread-safe)
-
-        Platform.runLater(() -> {
-
-
-           consecutiveValidDataCount++; 
-
-
-            if (consecutiveValidDataCount >= minConsecutiveValidData && 
-                electrodesDisconnectedOverlay != null && //  Asegurarse que el campo FXML no sea null
-                electrodesDisconnectedOverlay.isVisible()) { 
-
-                 System.out.println("EcgMonitorController: Recibidos " + minConsecutiveValidData + " datos validos consecutivos. Ocultando overlay.");
-                 hideStatusOverlay(); // <-- Asegurate de que la llamada a hideStatusOverlay() este AQUI
-            }
-            // --- Fin Verificar y Ocultar overlay ---
+        // No se bloquea nunca: si la UI va atrasada y el buffer se llena, la muestra se descarta y se cuenta.
+        // Las fuentes que entregan muestra a muestra no informan secuencia (-1).
+        analysisWorker.offer(value);
+        alarmEngine.onSamplesReceived();
+    }
 
+    /**
+     * Método de la interfaz SerialDataListener que recibe todas las muestras de una lectura del puerto.
+     * Se copian al buffer de ingesta de una sola vez (carril long = número de secuencia).
+     */
+    @Override
+    public void onSamples(int[] buf, int offset, int length, long firstSequence, long firstTimestampNanos) {
 
+        // Hilo de lectura serial: mismo criterio que onDataReceived, pero un solo acceso al buffer por lote
+        analysisWorker.offer(buf, offset, length, firstSequence);
+        alarmEngine.onSamplesReceived();
+    }
 
-            ecgSeries.getData().add(new XYChart.Data<>(time, value));
+    /**
+     * Se llama una vez por frame (AnimationTimer, hilo de JavaFX): añade a la gráfica las muestras
+     * filtradas que dejó el hilo de análisis, hace un solo redibujo y aplica el último snapshot
+     * (BPM, latidos, HRV y calidad de señal). Nada de esto retrasa la detección.
+     */
+    private void updateFromAnalysis() {
+        AnalysisWorker worker = analysisWorker;
+        if (worker == null) {
+            return;
+        }
+        int count;
+        while ((count = worker.drainDisplay(displayValues, 0, displayValues.length)) > 0) {
+            ecgWaveform.append(displayValues, 0, count);
+        }
 
-            if (ecgDataModel != null) {
-                ecgDataModel.processNewValue(value, time);
-            }
+        // Se dibuja solo el tramo nuevo, una vez por frame
+        ecgWaveform.flush();
 
-            time++;
+        MonitorSnapshot snapshot = worker.getSnapshot();
+        if (snapshot != shownSnapshot) {
+            showSnapshot(snapshot, shownSnapshot);
+            shownSnapshot = snapshot;
+        }
 
-            NumberAxis xAxis = (NumberAxis) ecgChart.getXAxis();
-            double newLowerBound = time - WINDOW_SIZE;
-            double newUpperBound = time;
-            if (newLowerBound < 0) {
-                newLowerBound = 0;
-                newUpperBound = WINDOW_SIZE;
-            }
-            xAxis.setLowerBound(newLowerBound);
-            xAxis.setUpperBound(newUpperBound);
+        // Ocultar el overlay cuando la señal lleva un rato aceptable y la fuente no avisa de desconexión
+        long now = System.nanoTime();
+        if (overlayShown && snapshot.isSignalAcceptable()
+                && now - Math.max(snapshot.getAcceptableSinceNanos(), lastStatusNanos) >= OVERLAY_HIDE_DELAY_NANOS) {
+            LOG.info("Señal aceptable durante {} ms. Ocultando overlay.").arg(OVERLAY_HIDE_DELAY_NANOS / 1_000_000).log();
+            hideStatusOverlay();
+        }
+    }
 
-            double currentLowerBound = xAxis.getLowerBound();
-            while (ecgSeries.getData().size() > 0 && ecgSeries.getData().get(0).getXValue().doubleValue() < currentLowerBound) {
-                 ecgSeries.getData().remove(0);
-            }
+    /**
+     * Aplica a la UI un snapshot nuevo del análisis (hilo de JavaFX).
+     */
+    private void showSnapshot(MonitorSnapshot snapshot, MonitorSnapshot previous) {
+        // Para el Heart Rate (solo si cambió)
+        int currentBpm = snapshot.getBpm();
+        if(labelHeartRate != null && currentBpm != displayedBpm){
+             displayedBpm = currentBpm;
+             if(currentBpm > 0){
+                 labelHeartRate.setText(currentBpm+"");
+             }
+             else  {
+                 labelHeartRate.setText("00");
+             }
+         }
 
+        // Varios latidos en el mismo frame se muestran (y suenan) una sola vez
+        long previousBeats = previous == null ? 0 : previous.getBeatCount();
+        if (snapshot.getBeatCount() != previousBeats) {
+            showBeat(snapshot.getLastPeakValue(), snapshot.getLastPeakSample());
+        }
 
-            // Para el Heart Rate 
-            int currentBpm = ecgDataModel.getCurrentBpm();
-            if(labelHeartRate != null){
-                 if(currentBpm > 0){
-                     labelHeartRate.setText(currentBpm+"");
-                 }
-                 else  {
-                     labelHeartRate.setText("00");
-                 }
-             }
+        HrvSnapshot hrv = snapshot.getHrv();
+        if (hrv != null && (previous == null || hrv != previous.getHrv())) {
+            showHrv(hrv);
+        }
 
-        });
+        // Electrodo suelto deducido de la señal (plana o saturada), aunque el firmware no lo avise
+        if (!snapshot.isSignalAcceptable() && snapshot.getSignalCondition().isLeadOff()
+                && (previous == null || previous.getSignalCondition() != snapshot.getSignalCondition())) {
+            showStatusOverlay(snapshot.getSignalCondition().getDescription());
+        }
     }
 
     /**
-     * Implementación del método de la interfaz EcgPeakListener.
-     * (Mantener este método como está)
+     * Indica un latido en la UI: destello del círculo y pitido.
      * @param peakValue El valor del dato en el momento en que se detectó el pico.
      * @param time El contador de tiempo (o índice de muestra) en que ocurrió el pico.
      */
-    @Override
-    public void onPeakDetected(int peakValue, long time) {
+    private void showBeat(int peakValue, long time) {
         // Este método se ejecuta en el HILO DE JavaFX
 
         if (beatCircle != null) {
@@ -323,9 +619,82 @@ public class EcgMonitorController implements Initializable, SerialDataListener,
     }
 
         // Acción a realizar cuando el Modelo detecta un pico 
-        System.out.println("DEBUG ECG: Pico detectado por el Modelo en time=" + time + ", value=" + peakValue + ". Llamando a Beep.play().");
-        Beep.play();
+        if (Log.DEBUG_ENABLED) {
+            LOG.debug("Pico detectado por el Modelo en time={}, value={}.").arg(time).arg(peakValue).log();
+        }
+        // Con el motor de audio el pitido ya sonó desde el hilo de análisis
+        if (!beatAudio.isRunning()) {
+            Beep.play();
+        }
+
+    }
+
+
+    /**
+     * Muestra el resultado de HRV de la ventana de 5 minutos (hilo de JavaFX).
+     */
+    private void showHrv(HrvSnapshot snapshot) {
+        if (labelHrv == null) {
+            return;
+        }
+        double ratio = snapshot.getLfHfRatio();
+        labelHrv.setText(String.format("HRV 5 min   SDNN %.0f ms   RMSSD %.0f ms   pNN50 %.0f%%   LF/HF %s",
+                snapshot.getSdnnMillis(), snapshot.getRmssdMillis(), snapshot.getPnn50Percent(),
+                Double.isNaN(ratio) ? "--" : String.format("%.2f", ratio)));
+    }
+
+
+    /**
+     * Pausa el sonido de las alarmas activas (o lo reanuda si ya estaba en pausa).
+     */
+    private void toggleAlarmAudioPause() {
+        AlarmToneSequencer tones = beatAudio.getAlarmTones();
+        if (tones.isAudioPaused()) {
+            tones.resumeAudio();
+            LOG.info("Sonido de alarmas reanudado.").log();
+        } else if (!activeAlarms.isEmpty()) {
+            tones.pauseAudio(AlarmToneSequencer.DEFAULT_PAUSE_MILLIS);
+            LOG.info("Sonido de alarmas en pausa durante {} s.").arg(AlarmToneSequencer.DEFAULT_PAUSE_MILLIS / 1000).log();
+        }
+    }
 
+    /**
+     * Muestra las alarmas activas (hilo de JavaFX). La de mayor prioridad va primero y fija el color.
+     */
+    private void onAlarm(AlarmEvent event) {
+        LOG.info("Alarma: {}").arg(event).log();
+        if (event.isActive()) {
+            activeAlarms.add(event.getType());
+        } else {
+            activeAlarms.remove(event.getType());
+        }
+        if (labelAlarm == null) {
+            return;
+        }
+        // El orden del enum va de mayor a menor prioridad
+        StringBuilder text = new StringBuilder();
+        for (AlarmType type : activeAlarms) {
+            if (text.length() > 0) {
+                text.append("  ");
+            }
+            text.append(type.getLabel());
+        }
+        labelAlarm.setText(text.toString());
+        if (activeAlarms.isEmpty()) {
+            labelAlarm.setStyle("");
+            return;
+        }
+        switch (activeAlarms.iterator().next().getPriority()) {
+            case HIGH:
+                labelAlarm.setStyle("-fx-text-fill: #e53935;");
+                break;
+            case MEDIUM:
+                labelAlarm.setStyle("-fx-text-fill: #f9a825;");
+                break;
+            default:
+                labelAlarm.setStyle("-fx-text-fill: #29b6f6;");
+                break;
+        }
     }
 
 
@@ -336,13 +705,21 @@ public class EcgMonitorController implements Initializable, SerialDataListener,
      */
     @Override
     public void onErrorOccurred(String message) {
+        // El motor de alarmas se entera en el hilo de la fuente, sin esperar al de JavaFX
+        if (message.startsWith("STATUS:")) {
+            if (message.contains("ELECTRODES_DISCONNECTED")) {
+                alarmEngine.onLeadOff();
+            } else if (message.equals("STATUS:ELECTRODES_CONNECTED")) {
+                alarmEngine.onLeadOn();
+            }
+        }
+
         Platform.runLater(() -> {
-            System.err.println("Error serial en UI (via Platform.runLater): " + message);
+            LOG.warn("Error serial en UI (via Platform.runLater): {}").arg(message).log();
 
-            // --- Reiniciar el contador de datos validos consecutivos en cualquier error o mensaje de estado ---
-           consecutiveValidDataCount = 0; // <-- Asegurate de tener esta linea aqui
-           System.out.println("EcgMonitorController: Contador de datos validos reiniciado.");
-            // --- Fin Reiniciar contador ---
+            // --- Cualquier error o mensaje de estado retrasa el ocultar el overlay ---
+           lastStatusNanos = System.nanoTime();
+            // --- Fin Reiniciar espera ---
 
 
    
@@ -353,16 +730,16 @@ public class EcgMonitorController implements Initializable, SerialDataListener,
                     showStatusOverlay("SE HAN DESCONECTADO LOS ELECTRODOS"); 
                 }
                 else if(statusType.equals("ELECTRODES_CONNECTED")){
-                    System.out.println("Se han vuelto a conectar los electrodos");
+                    LOG.info("Se han vuelto a conectar los electrodos").log();
 
                 }
                 else {
-                    System.out.println("Error desconocido");
+                    LOG.warn("Error desconocido").log();
 
                 }
             } else {
 
-                System.err.println("Error serial general: " + message);
+                LOG.warn("Error serial general: {}").arg(message).log();
 
             }
 
@@ -384,13 +761,14 @@ public class EcgMonitorController implements Initializable, SerialDataListener,
             if (overlayInstructionsPart1 != null) {
                overlayInstructionsPart1.setText(FULL_INSTRUCTIONS_TEXT); 
             } else {
-               System.err.println("EcgMonitorController: ADVERTENCIA: overlayInstructionsPart1 es null. No se puede setear el texto de instrucciones.");
+               LOG.warn("overlayInstructionsPart1 es null. No se puede setear el texto de instrucciones.").log();
             }
 
 
 
             electrodesDisconnectedOverlay.setVisible(true); // Hacer visible el nodo
             electrodesDisconnectedOverlay.setManaged(true); // Asegurar que ocupa espacio en el layout
+            overlayShown = true;
 
      
             FadeTransition fadeIn = new FadeTransition(Duration.millis(100), electrodesDisconnectedOverlay); // Duracion ajustada a 500ms como en discusion anterior
@@ -398,9 +776,9 @@ public class EcgMonitorController implements Initializable, SerialDataListener,
             fadeIn.setToValue(1.0);
             fadeIn.play();
 
-            System.out.println("EcgMonitorController: Mostrando overlay de estado con fade-in.");
+            LOG.debug("Mostrando overlay de estado con fade-in.").log();
         } else {
-             System.err.println("EcgMonitorController: ERROR: No se pudo mostrar el overlay porque el nodo 'electrodesDisconnectedOverlay' es null.");
+             LOG.error("No se pudo mostrar el overlay porque el nodo 'electrodesDisconnectedOverlay' es null.").log();
         }
     }
 
@@ -410,6 +788,7 @@ public class EcgMonitorController implements Initializable, SerialDataListener,
      */
     private void hideStatusOverlay() {
 
+         overlayShown = false;
          if (electrodesDisconnectedOverlay != null && electrodesDisconnectedOverlay.isVisible()) {
 
 
@@ -422,13 +801,13 @@ public class EcgMonitorController implements Initializable, SerialDataListener,
 
                  electrodesDisconnectedOverlay.setVisible(false);
                  electrodesDisconnectedOverlay.setManaged(false);
-                 System.out.println("EcgMonitorController: Overlay de estado ocultado y gestionado.");
+                 LOG.debug("Overlay de estado ocultado y gestionado.").log();
              });
 
              fadeOut.play(); // Iniciar la animacion
-             System.out.println("EcgMonitorController: Ocultando overlay de estado con fade-out.");
+             LOG.debug("Ocultando overlay de estado con fade-out.").log();
          } else {
-             System.out.println("EcgMonitorController: hideStatusOverlay() llamado pero el overlay ya estaba oculto o es null.");
+             LOG.debug("hideStatusOverlay() llamado pero el overlay ya estaba oculto o es null.").log();
          }
     }
 
@@ -437,16 +816,50 @@ public class EcgMonitorController implements Initializable, SerialDataListener,
      * Método de limpieza al cerrar la aplicación.
      */
     public void shutdown() {
-        System.out.println("EcgMonitorController: Llamando a shutdown()...");
-        if (serialDataManager != null) {
-            serialDataManager.disconnect();
-            System.out.println("EcgMonitorController: SerialDataManager desconectado.");
-        } else { // Añadido mensaje si serialDataManager es null
-             System.out.println("EcgMonitorController: SerialDataManager es null, no se necesita detener.");
+        LOG.info("Llamando a shutdown()...").log();
+        frameTimer.stop();
+        if (signalSource != null) {
+            signalSource.stop();
+        }
+        AnalysisWorker worker = analysisWorker;
+        if (worker != null) {
+            worker.stop();
+            LOG.info("Análisis: {} ns/muestra, lote más lento {} ms. Detector {}: {} ns/muestra; filtros {} ns/muestra.")
+                    .arg(worker.getNanosPerSample()).arg(worker.getMaxBatchNanos() / 1e6)
+                    .arg(ecgDataModel.getBeatDetector().getName()).arg(ecgDataModel.getBeatDetector().getNanosPerSample())
+                    .arg(displayFilters.getNanosPerSample() + detectionFilters.getNanosPerSample()).log();
+            LOG.info("Fuente de señal detenida. Buffer de ingesta: máximo {}/{} muestras, descartadas {}; muestras de gráfica descartadas {}.")
+                    .arg(worker.getIngestBuffer().getHighWaterMark()).arg(worker.getIngestBuffer().capacity())
+                    .arg(worker.getIngestBuffer().getOverflowCount()).arg(worker.getDisplayBuffer().getOverflowCount()).log();
+        } else { // Añadido mensaje si signalSource es null
+             LOG.info("No hay fuente de señal, no se necesita detener.").log();
+        }
+        if (sessionRecorder != null) {
+            sessionRecorder.stop();
+            if (Boolean.getBoolean(EXPORT_PROPERTY)) {
+                exportSessionInBackground(sessionRecorder.getConfig(), patientData);
+            }
+        }
+        if (streamServer != null) {
+            streamServer.stop();
+            LOG.info("Streaming: {} ns por trama, {} muestras descartadas, {} tramas saltadas.")
+                    .arg(streamServer.getNanosPerFrame()).arg(streamServer.getDroppedSamples())
+                    .arg(streamServer.getFramesSkipped()).log();
+        }
+        hrvAnalyzer.shutdown();
+        alarmEngine.stop();
+        LOG.info("Alarmas: {} activadas, latencia media {} ms, máxima {} ms; evaluación máxima {} µs.")
+                .arg(alarmEngine.getAlarmsRaised()).arg(alarmEngine.getMeanLatencyNanos() / 1e6)
+                .arg(alarmEngine.getMaxLatencyNanos() / 1e6).arg(alarmEngine.getMaxEvaluationNanos() / 1e3).log();
+        if (beatAudio.isRunning()) {
+            beatAudio.stop();
+            LOG.info("Pitido de latido: {} pitidos, latencia media {} ms, máxima {} ms; {} cortes de audio.")
+                    .arg(beatAudio.getBeatsPlayed()).arg(beatAudio.getMeanLatencyNanos() / 1e6)
+                    .arg(beatAudio.getMaxLatencyNanos() / 1e6).arg(beatAudio.getUnderruns()).log();
         }
         Beep.shutdown();
-        System.out.println("EcgMonitorController: Sistema Beep (AudioCue) apagado.");
+        LOG.info("Sistema Beep (AudioCue) apagado.").log();
 
-        System.out.println("EcgMonitorController: Shutdown completo.");
+        LOG.info("Shutdown completo.").log();
     }
 }
\ No newline at end of file
@@ -0,0 +1,493 @@
+package com.streelet.ecg_java_app.alarm;
+
+import com.streelet.ecg_java_app.buffer.SampleRingBuffer;
+import com.streelet.ecg_java_app.log.Log;
+import com.streelet.ecg_java_app.log.Logger;
+import com.streelet.ecg_java_app.model.EcgPeakListener;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Motor de alarmas de ritmo: asistolia, bradicardia/taquicardia con histéresis, ritmo
+ * irregular (probabilidad de fibrilación auricular) y pérdida de señal.
+ *
+ * La evaluación corre en un hilo propio de alta prioridad que se despierta cada
+ * {@link #EVALUATION_PERIOD_MS} ms y, además, en cuanto llega un latido. Así la latencia
+ * entre la condición y la alarma queda acotada por el periodo y no depende de la carga
+ * del hilo de JavaFX. La latencia de cada alarma se mide y se puede consultar.
+ *
+ * Entradas (no bloquean):
+ * <ul>
+ *   <li>{@link #onPeakDetected}: desde el hilo del modelo (un solo hilo productor); los latidos
+ *       pasan al motor por un {@link SampleRingBuffer} (valor = RR en ms, marca = llegada).</li>
+ *   <li>{@link #onSamplesReceived}, {@link #onLeadOff}, {@link #onLeadOn},
+ *       {@link #onSignalQuality}: desde cualquier hilo.</li>
+ * </ul>
+ *
+ * Mientras falta la señal (o su calidad no es aceptable) solo se mantiene la alarma de pérdida
+ * de señal: las de ritmo se despejan y los latidos se ignoran hasta que vuelve.
+ */
+public class AlarmEngine implements EcgPeakListener {
+
+    private static final Logger LOG = Log.get(AlarmEngine.class);
+
+    public static final long EVALUATION_PERIOD_MS = 20;
+
+    public static final double DEFAULT_BRADYCARDIA_BPM = 50;
+    public static final double DEFAULT_TACHYCARDIA_BPM = 120;
+    public static final double DEFAULT_ASYSTOLE_SECONDS = 4;
+
+    // Histéresis: una alarma de frecuencia se despeja solo al volver este margen dentro del límite
+    private static final double RATE_HYSTERESIS_BPM = 5;
+    // Latidos seguidos fuera del límite necesarios para activar brady/taquicardia
+    private static final int RATE_CONFIRM_BEATS = 3;
+    // La frecuencia se estima con la mediana de los últimos RR (resiste latidos aislados mal detectados)
+    private static final int RATE_MEDIAN_BEATS = 8;
+
+    // Irregularidad: ventana de RR y umbrales de la puntuación (0..1) con histéresis
+    private static final int IRREGULAR_WINDOW_BEATS = 32;
+    private static final int IRREGULAR_TRIM_BEATS = 4;
+    private static final int IRREGULAR_HISTOGRAM_BINS = 16;
+    private static final double IRREGULAR_NRMSSD_FULL_SCALE = 0.15;
+    private static final double IRREGULAR_RAISE_SCORE = 0.7;
+    private static final double IRREGULAR_CLEAR_SCORE = 0.5;
+
+    // Pérdida de señal: sin muestras durante este tiempo, o un aviso de electrodos reciente
+    private static final long SIGNAL_TIMEOUT_NANOS = 1_000_000_000L;
+    private static final long LEAD_OFF_HOLD_NANOS = 1_500_000_000L;
+
+    private static final long STOP_TIMEOUT_MS = 200;
+
+    private final int sampleRateHz;
+    private final List<AlarmListener> listeners = new CopyOnWriteArrayList<>();
+
+    // Configuración (puede cambiarse con el motor en marcha)
+    private volatile double bradycardiaBpm = DEFAULT_BRADYCARDIA_BPM;
+    private volatile double tachycardiaBpm = DEFAULT_TACHYCARDIA_BPM;
+    private volatile long asystoleNanos = (long) (DEFAULT_ASYSTOLE_SECONDS * 1e9);
+
+    // --- Lado productor (hilo del modelo) ---
+    private final SampleRingBuffer beatQueue = new SampleRingBuffer(256);
+    private long lastBeatSample = -1;
+
+    // --- Entradas desde cualquier hilo ---
+    private volatile long lastSamplesNanos;
+    private volatile long leadOffNanos = 0;
+    private volatile long poorSignalNanos = 0;
+
+    // --- Estado del hilo del motor ---
+    private volatile boolean running = false;
+    private Thread engineThread;
+
+    private final int[] drainedRr = new int[256];
+    private final long[] drainedStamps = new long[256];
+
+    private final double[] rateRing = new double[RATE_MEDIAN_BEATS];
+    private final double[] rateScratch = new double[RATE_MEDIAN_BEATS];
+    private int rateCount = 0, rateIndex = 0;
+    private int lowBeats = 0, highBeats = 0;
+
+    private final double[] irregularRing = new double[IRREGULAR_WINDOW_BEATS];
+    private final double[] irregularScratch = new double[IRREGULAR_WINDOW_BEATS];
+    private final int[] histogram = new int[IRREGULAR_HISTOGRAM_BINS];
+    private int irregularCount = 0, irregularIndex = 0;
+    private volatile double irregularScore = 0;
+    private volatile double currentBpm = 0;
+
+    private long lastBeatNanos;
+    private boolean skipNextRr = false;
+    private final boolean[] active = new boolean[AlarmType.values().length];
+    private volatile int activeMask = 0;
+
+    // Métricas
+    private volatile long alarmsRaised = 0;
+    private volatile long maxLatencyNanos = 0;
+    private long totalLatencyNanos = 0;
+    private volatile long evaluations = 0;
+    private volatile long maxEvaluationNanos = 0;
+
+    /**
+     * @param sampleRateHz Frecuencia de muestreo de los índices de latido que entrega el modelo.
+     */
+    public AlarmEngine(int sampleRateHz) {
+        if (sampleRateHz <= 0) {
+            throw new IllegalArgumentException("Frecuencia de muestreo inválida: " + sampleRateHz);
+        }
+        this.sampleRateHz = sampleRateHz;
+    }
+
+    public void addAlarmListener(AlarmListener listener) {
+        if (listener != null) {
+            listeners.add(listener);
+        }
+    }
+
+    public void removeAlarmListener(AlarmListener listener) {
+        listeners.remove(listener);
+    }
+
+    public void setHeartRateLimits(double bradycardiaBpm, double tachycardiaBpm) {
+        if (!(bradycardiaBpm > 0) || tachycardiaBpm <= bradycardiaBpm + 2 * RATE_HYSTERESIS_BPM) {
+            throw new IllegalArgumentException("Límites de frecuencia inválidos: " + bradycardiaBpm + " / " + tachycardiaBpm);
+        }
+        this.bradycardiaBpm = bradycardiaBpm;
+        this.tachycardiaBpm = tachycardiaBpm;
+    }
+
+    public void setAsystoleSeconds(double seconds) {
+        if (!(seconds > 0)) {
+            throw new IllegalArgumentException("Tiempo de asistolia inválido: " + seconds);
+        }
+        this.asystoleNanos = (long) (seconds * 1e9);
+    }
+
+    /**
+     * Arranca el hilo de evaluación. Los plazos (asistolia, falta de muestras) cuentan desde aquí.
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        long now = System.nanoTime();
+        lastSamplesNanos = now;
+        lastBeatNanos = now;
+        running = true;
+        engineThread = new Thread(this::runLoop, "ecg-alarm-engine");
+        engineThread.setDaemon(true);
+        engineThread.setPriority(Thread.MAX_PRIORITY);
+        engineThread.start();
+    }
+
+    public synchronized void stop() {
+        running = false;
+        Thread thread = engineThread;
+        engineThread = null;
+        if (thread == null) {
+            return;
+        }
+        LockSupport.unpark(thread);
+        try {
+            thread.join(STOP_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    // --- Entradas ---
+
+    /**
+     * Latido detectado por el modelo (hilo del modelo). Calcula el RR y despierta al motor.
+     */
+    @Override
+    public void onPeakDetected(int peakValue, long time) {
+        int rrMillis = 0;
+        if (lastBeatSample >= 0 && time > lastBeatSample) {
+            rrMillis = (int) Math.round((time - lastBeatSample) * 1000.0 / sampleRateHz);
+        }
+        lastBeatSample = time;
+        beatQueue.offer(rrMillis, System.nanoTime());
+        Thread thread = engineThread;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Hueco en las muestras (hilo del modelo): el próximo latido no da RR.
+     */
+    @Override
+    public void onSampleGap(long expectedIndex, long resumedIndex) {
+        lastBeatSample = -1;
+    }
+
+    /**
+     * Llegaron muestras de la fuente (cualquier hilo; una escritura volátil).
+     */
+    public void onSamplesReceived() {
+        lastSamplesNanos = System.nanoTime();
+    }
+
+    /**
+     * La fuente avisó que los electrodos están desconectados.
+     */
+    public void onLeadOff() {
+        leadOffNanos = System.nanoTime();
+    }
+
+    /**
+     * La fuente avisó que los electrodos se reconectaron.
+     */
+    public void onLeadOn() {
+        leadOffNanos = 0;
+    }
+
+    /**
+     * Resultado del índice de calidad de señal: con señal no aceptable se suspenden las alarmas de ritmo.
+     */
+    public void onSignalQuality(boolean acceptable) {
+        if (acceptable) {
+            poorSignalNanos = 0;
+        } else if (poorSignalNanos == 0) {
+            poorSignalNanos = System.nanoTime();
+        }
+    }
+
+    // --- Consultas (cualquier hilo) ---
+
+    public boolean isActive(AlarmType type) {
+        return (activeMask & (1 << type.ordinal())) != 0;
+    }
+
+    public double getCurrentBpm() {
+        return currentBpm;
+    }
+
+    public double getIrregularityScore() {
+        return irregularScore;
+    }
+
+    public long getAlarmsRaised() {
+        return alarmsRaised;
+    }
+
+    /** Peor latencia medida entre condición y alarma. */
+    public long getMaxLatencyNanos() {
+        return maxLatencyNanos;
+    }
+
+    public double getMeanLatencyNanos() {
+        long raised = alarmsRaised;
+        return raised == 0 ? 0 : (double) totalLatencyNanos / raised;
+    }
+
+    public long getEvaluations() {
+        return evaluations;
+    }
+
+    public long getMaxEvaluationNanos() {
+        return maxEvaluationNanos;
+    }
+
+    // --- Hilo del motor ---
+
+    private void runLoop() {
+        final long periodNanos = EVALUATION_PERIOD_MS * 1_000_000L;
+        while (running) {
+            long start = System.nanoTime();
+            try {
+                evaluate(start);
+            } catch (RuntimeException e) {
+                // Un oyente con errores no debe detener las alarmas
+                LOG.error("Error evaluando alarmas").cause(e).log();
+            }
+            long elapsed = System.nanoTime() - start;
+            evaluations++;
+            if (elapsed > maxEvaluationNanos) {
+                maxEvaluationNanos = elapsed;
+            }
+            LockSupport.parkNanos(this, Math.max(0, periodNanos - elapsed));
+        }
+    }
+
+    private void evaluate(long now) {
+        // 1) Señal: los avisos de electrodos y la falta de muestras mandan sobre las demás alarmas
+        long leadOff = leadOffNanos;
+        long lastSamples = lastSamplesNanos;
+        long poorSignal = poorSignalNanos;
+        boolean leadOffRecent = leadOff != 0 && now - leadOff < LEAD_OFF_HOLD_NANOS;
+        boolean samplesStale = now - lastSamples > SIGNAL_TIMEOUT_NANOS;
+        boolean signalLost = leadOffRecent || samplesStale || poorSignal != 0;
+        if (signalLost && !active[AlarmType.SIGNAL_LOSS.ordinal()]) {
+            long condition = leadOffRecent ? leadOff
+                    : samplesStale ? lastSamples + SIGNAL_TIMEOUT_NANOS : poorSignal;
+            setActive(AlarmType.SIGNAL_LOSS, true, 0, condition, now);
+            suppressRhythmAlarms(condition, now);
+        } else if (!signalLost && active[AlarmType.SIGNAL_LOSS.ordinal()]) {
+            setActive(AlarmType.SIGNAL_LOSS, false, 0, now, now);
+            // El plazo de asistolia vuelve a contar desde que hay señal
+            lastBeatNanos = now;
+        }
+
+        // 2) Latidos nuevos: frecuencia e irregularidad
+        int count;
+        while ((count = beatQueue.drain(drainedRr, drainedStamps, 0, drainedRr.length)) > 0) {
+            for (int i = 0; i < count; i++) {
+                if (signalLost) {
+                    // Latidos sobre señal no fiable: se ignoran y el RR que cruza el hueco tampoco vale
+                    skipNextRr = true;
+                } else {
+                    onBeat(drainedRr[i], drainedStamps[i]);
+                }
+            }
+        }
+
+        // 3) Asistolia: sin latidos durante el plazo, con señal presente
+        if (!signalLost) {
+            long deadline = lastBeatNanos + asystoleNanos;
+            if (now >= deadline && !active[AlarmType.ASYSTOLE.ordinal()]) {
+                setActive(AlarmType.ASYSTOLE, true, (now - lastBeatNanos) / 1e9, deadline, now);
+            }
+        }
+    }
+
+    private void onBeat(int rrMillis, long arrivalNanos) {
+        lastBeatNanos = Math.max(lastBeatNanos, arrivalNanos);
+        if (active[AlarmType.ASYSTOLE.ordinal()]) {
+            setActive(AlarmType.ASYSTOLE, false, 0, arrivalNanos, System.nanoTime());
+        }
+        if (rrMillis <= 0 || skipNextRr) {
+            skipNextRr = false;
+            return;
+        }
+
+        rateRing[rateIndex] = rrMillis;
+        rateIndex = (rateIndex + 1) % RATE_MEDIAN_BEATS;
+        rateCount = Math.min(rateCount + 1, RATE_MEDIAN_BEATS);
+        irregularRing[irregularIndex] = rrMillis;
+        irregularIndex = (irregularIndex + 1) % IRREGULAR_WINDOW_BEATS;
+        irregularCount = Math.min(irregularCount + 1, IRREGULAR_WINDOW_BEATS);
+
+        evaluateRate(arrivalNanos);
+        evaluateIrregularity(arrivalNanos);
+    }
+
+    private void evaluateRate(long conditionNanos) {
+        if (rateCount < RATE_CONFIRM_BEATS) {
+            return;
+        }
+        System.arraycopy(rateRing, 0, rateScratch, 0, rateCount);
+        Arrays.sort(rateScratch, 0, rateCount);
+        double medianRr = (rateCount & 1) == 1
+                ? rateScratch[rateCount / 2]
+                : (rateScratch[rateCount / 2 - 1] + rateScratch[rateCount / 2]) / 2;
+        double bpm = 60_000.0 / medianRr;
+        currentBpm = bpm;
+
+        double low = bradycardiaBpm;
+        double high = tachycardiaBpm;
+        lowBeats = bpm < low ? lowBeats + 1 : 0;
+        highBeats = bpm > high ? highBeats + 1 : 0;
+        long now = System.nanoTime();
+
+        if (!active[AlarmType.BRADYCARDIA.ordinal()]) {
+            if (lowBeats >= RATE_CONFIRM_BEATS) {
+                setActive(AlarmType.BRADYCARDIA, true, bpm, conditionNanos, now);
+            }
+        } else if (bpm > low + RATE_HYSTERESIS_BPM) {
+            setActive(AlarmType.BRADYCARDIA, false, bpm, conditionNanos, now);
+        }
+
+        if (!active[AlarmType.TACHYCARDIA.ordinal()]) {
+            if (highBeats >= RATE_CONFIRM_BEATS) {
+                setActive(AlarmType.TACHYCARDIA, true, bpm, conditionNanos, now);
+            }
+        } else if (bpm < high - RATE_HYSTERESIS_BPM) {
+            setActive(AlarmType.TACHYCARDIA, false, bpm, conditionNanos, now);
+        }
+    }
+
+    /**
+     * Puntuación de irregularidad (0..1) combinando el RMSSD normalizado por el RR medio y la
+     * entropía de Shannon del histograma de RR (sin los 4 RR más cortos ni los 4 más largos),
+     * dos indicadores clásicos de fibrilación auricular. Ambos deben ser altos a la vez.
+     */
+    private void evaluateIrregularity(long conditionNanos) {
+        if (irregularCount < IRREGULAR_WINDOW_BEATS) {
+            return;
+        }
+        // RMSSD normalizado, en orden cronológico a partir del más antiguo
+        double sum = 0, sumSquaredDiff = 0;
+        double previous = irregularRing[irregularIndex];
+        for (int k = 0; k < IRREGULAR_WINDOW_BEATS; k++) {
+            double rr = irregularRing[(irregularIndex + k) % IRREGULAR_WINDOW_BEATS];
+            sum += rr;
+            if (k > 0) {
+                double diff = rr - previous;
+                sumSquaredDiff += diff * diff;
+            }
+            previous = rr;
+        }
+        double meanRr = sum / IRREGULAR_WINDOW_BEATS;
+        double nrmssd = Math.sqrt(sumSquaredDiff / (IRREGULAR_WINDOW_BEATS - 1)) / meanRr;
+
+        // Entropía del histograma sin extremos
+        System.arraycopy(irregularRing, 0, irregularScratch, 0, IRREGULAR_WINDOW_BEATS);
+        Arrays.sort(irregularScratch);
+        int from = IRREGULAR_TRIM_BEATS;
+        int to = IRREGULAR_WINDOW_BEATS - IRREGULAR_TRIM_BEATS;
+        double min = irregularScratch[from];
+        double range = irregularScratch[to - 1] - min;
+        double entropy = 0;
+        if (range > 0) {
+            Arrays.fill(histogram, 0);
+            for (int k = from; k < to; k++) {
+                int bin = (int) ((irregularScratch[k] - min) / range * IRREGULAR_HISTOGRAM_BINS);
+                histogram[Math.min(bin, IRREGULAR_HISTOGRAM_BINS - 1)]++;
+            }
+            int n = to - from;
+            for (int value : histogram) {
+                if (value > 0) {
+                    double p = (double) value / n;
+                    entropy -= p * Math.log(p);
+                }
+            }
+            entropy /= Math.log(IRREGULAR_HISTOGRAM_BINS);
+        }
+
+        double rmssdScore = Math.min(1, nrmssd / IRREGULAR_NRMSSD_FULL_SCALE);
+        double score = Math.sqrt(rmssdScore * entropy);
+        irregularScore = score;
+
+        long now = System.nanoTime();
+        boolean isActive = active[AlarmType.IRREGULAR_RHYTHM.ordinal()];
+        if (!isActive && score >= IRREGULAR_RAISE_SCORE) {
+            setActive(AlarmType.IRREGULAR_RHYTHM, true, score, conditionNanos, now);
+        } else if (isActive && score < IRREGULAR_CLEAR_SCORE) {
+            setActive(AlarmType.IRREGULAR_RHYTHM, false, score, conditionNanos, now);
+        }
+    }
+
+    /**
+     * Despeja las alarmas de ritmo y olvida los RR (se vuelven a acumular con señal buena).
+     */
+    private void suppressRhythmAlarms(long conditionNanos, long now) {
+        for (AlarmType type : AlarmType.values()) {
+            if (type != AlarmType.SIGNAL_LOSS && active[type.ordinal()]) {
+                setActive(type, false, 0, conditionNanos, now);
+            }
+        }
+        rateCount = 0;
+        rateIndex = 0;
+        irregularCount = 0;
+        irregularIndex = 0;
+        lowBeats = 0;
+        highBeats = 0;
+        skipNextRr = true;
+    }
+
+    private void setActive(AlarmType type, boolean isActive, double value, long conditionNanos, long now) {
+        active[type.ordinal()] = isActive;
+        int bit = 1 << type.ordinal();
+        activeMask = isActive ? (activeMask | bit) : (activeMask & ~bit);
+
+        AlarmEvent event = new AlarmEvent(type, isActive, value, conditionNanos, now);
+        if (isActive) {
+            long latency = Math.max(0, event.getLatencyNanos());
+            totalLatencyNanos += latency;
+            alarmsRaised++;
+            if (latency > maxLatencyNanos) {
+                maxLatencyNanos = latency;
+            }
+        }
+        for (AlarmListener listener : listeners) {
+            listener.onAlarm(event);
+        }
+    }
+}
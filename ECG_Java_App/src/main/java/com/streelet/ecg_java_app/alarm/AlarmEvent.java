@@ -0,0 +1,63 @@
+package com.streelet.ecg_java_app.alarm;
+
+/**
+ * Cambio de estado de una alarma: se activa ({@link #isActive()} true) o se despeja.
+ */
+public final class AlarmEvent {
+
+    private final AlarmType type;
+    private final boolean active;
+    private final double value;
+    private final long conditionNanos;
+    private final long raisedNanos;
+
+    /**
+     * @param value Valor que disparó el cambio (lpm, puntuación de irregularidad, segundos sin latido).
+     * @param conditionNanos Instante (System.nanoTime) en que se cumplió la condición.
+     * @param raisedNanos Instante en que el motor emitió el evento.
+     */
+    public AlarmEvent(AlarmType type, boolean active, double value, long conditionNanos, long raisedNanos) {
+        this.type = type;
+        this.active = active;
+        this.value = value;
+        this.conditionNanos = conditionNanos;
+        this.raisedNanos = raisedNanos;
+    }
+
+    public AlarmType getType() {
+        return type;
+    }
+
+    public AlarmPriority getPriority() {
+        return type.getPriority();
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    public double getValue() {
+        return value;
+    }
+
+    public long getConditionNanos() {
+        return conditionNanos;
+    }
+
+    public long getRaisedNanos() {
+        return raisedNanos;
+    }
+
+    /**
+     * @return Latencia entre que se cumplió la condición y la emisión del evento.
+     */
+    public long getLatencyNanos() {
+        return raisedNanos - conditionNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s %s (%s, valor %.1f, latencia %.1f ms)", type.getLabel(),
+                active ? "ACTIVA" : "despejada", type.getPriority(), value, getLatencyNanos() / 1e6);
+    }
+}
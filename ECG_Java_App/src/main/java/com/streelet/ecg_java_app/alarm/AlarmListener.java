@@ -0,0 +1,10 @@
+package com.streelet.ecg_java_app.alarm;
+
+/**
+ * Oyente de alarmas. Se llama desde el hilo del motor de alarmas: las implementaciones
+ * de UI deben pasar al hilo de JavaFX (Platform.runLater) y no bloquear.
+ */
+public interface AlarmListener {
+
+    void onAlarm(AlarmEvent event);
+}
@@ -0,0 +1,11 @@
+package com.streelet.ecg_java_app.alarm;
+
+/**
+ * Prioridad de una alarma (según la convención de monitores de paciente: alta = roja,
+ * media = amarilla, baja = cian).
+ */
+public enum AlarmPriority {
+    HIGH,
+    MEDIUM,
+    LOW
+}
@@ -0,0 +1,30 @@
+package com.streelet.ecg_java_app.alarm;
+
+/**
+ * Tipos de alarma que evalúa {@link AlarmEngine}, con su prioridad por defecto.
+ */
+public enum AlarmType {
+
+    ASYSTOLE("ASISTOLIA", AlarmPriority.HIGH),
+    BRADYCARDIA("BRADICARDIA", AlarmPriority.MEDIUM),
+    TACHYCARDIA("TAQUICARDIA", AlarmPriority.MEDIUM),
+    IRREGULAR_RHYTHM("RITMO IRREGULAR", AlarmPriority.MEDIUM),
+    SIGNAL_LOSS("SIN SEÑAL", AlarmPriority.LOW);
+
+    private final String label;
+    private final AlarmPriority priority;
+
+    AlarmType(String label, AlarmPriority priority) {
+        this.label = label;
+        this.priority = priority;
+    }
+
+    /** Texto corto para mostrar en pantalla. */
+    public String getLabel() {
+        return label;
+    }
+
+    public AlarmPriority getPriority() {
+        return priority;
+    }
+}
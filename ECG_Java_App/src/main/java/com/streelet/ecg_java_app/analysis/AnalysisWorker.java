@@ -0,0 +1,377 @@
+package com.streelet.ecg_java_app.analysis;
+
+import com.streelet.ecg_java_app.buffer.SampleRingBuffer;
+import com.streelet.ecg_java_app.filter.FilterChain;
+import com.streelet.ecg_java_app.log.Log;
+import com.streelet.ecg_java_app.log.Logger;
+import com.streelet.ecg_java_app.model.EcgDataModel;
+import com.streelet.ecg_java_app.model.EcgPeakListener;
+import com.streelet.ecg_java_app.model.HrvListener;
+import com.streelet.ecg_java_app.model.HrvSnapshot;
+import com.streelet.ecg_java_app.quality.SignalCondition;
+import com.streelet.ecg_java_app.quality.SignalQualityListener;
+import com.streelet.ecg_java_app.quality.SignalQualityMonitor;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hilo de análisis: vacía el buffer de ingesta que llenan las fuentes y, por lotes, mide la
+ * calidad de la señal, aplica los filtros, detecta latidos (modelo, HRV y alarmas) y deja las
+ * muestras filtradas para la gráfica en otro buffer.
+ *
+ * Así la detección no depende del layout, del dibujo ni de las pausas del hilo de JavaFX.
+ * La UI solo lee:
+ * <ul>
+ *   <li>{@link #drainDisplay}: muestras para la gráfica (buffer SPSC, sin bloqueos),</li>
+ *   <li>{@link #getSnapshot}: el último {@link MonitorSnapshot} publicado (referencia atómica).</li>
+ * </ul>
+ *
+ * El modelo, los filtros y el índice de calidad pasan a ser propiedad de este hilo: después de
+ * {@link #start()} no deben usarse desde otro (salvo lo que ya es seguro, como activar etapas
+ * de los filtros). Los oyentes del modelo se llaman en este hilo.
+ */
+public class AnalysisWorker implements EcgPeakListener, HrvListener, SignalQualityListener {
+
+    private static final Logger LOG = Log.get(AnalysisWorker.class);
+
+    private static final int INGEST_BUFFER_CAPACITY = 8192;
+    private static final int DISPLAY_BUFFER_CAPACITY = 8192;
+    private static final int BATCH_SIZE = 1024;
+    // Sin muestras, el hilo duerme como máximo esto (las fuentes lo despiertan al entregar)
+    private static final long IDLE_PARK_NANOS = 2_000_000L;
+    private static final long STOP_TIMEOUT_MS = 500;
+
+    private final EcgDataModel model;
+    private final FilterChain displayFilters;
+    private final FilterChain detectionFilters;
+    private final SignalQualityMonitor signalQuality;
+
+    // Fuente (productor) -> análisis, y análisis -> UI (consumidor)
+    private final SampleRingBuffer ingestBuffer = new SampleRingBuffer(INGEST_BUFFER_CAPACITY);
+    private final SampleRingBuffer displayBuffer = new SampleRingBuffer(DISPLAY_BUFFER_CAPACITY);
+    private final AtomicReference<MonitorSnapshot> snapshot = new AtomicReference<>(MonitorSnapshot.EMPTY);
+
+    private volatile boolean running = false;
+    private volatile Thread analysisThread;
+    private volatile double displayedHrvWindowSeconds = 300;
+    private volatile boolean displayEnabled = true;
+
+    // --- Estado del hilo de análisis ---
+    private final int[] drainValues = new int[BATCH_SIZE];
+    private final long[] drainSequences = new long[BATCH_SIZE];
+    private final float[] filterWork = new float[BATCH_SIZE];
+    private final int[] displayValues = new int[BATCH_SIZE];
+    private final int[] detectionValues = new int[BATCH_SIZE];
+    // Índice de la próxima muestra esperada, en la secuencia de la fuente
+    private long sampleIndex = 0;
+    private long samplesAnalyzed = 0;
+    private long beatCount = 0;
+    private int lastPeakValue = 0;
+    private long lastPeakSample = -1;
+    private SignalCondition signalCondition = SignalCondition.GOOD;
+    private double signalScore = 1;
+    private boolean signalAcceptable = true;
+    private long acceptableSinceNanos;
+    private HrvSnapshot hrv;
+    private int publishedBpm = 0;
+    private boolean changed = false;
+
+    // Métricas
+    private volatile long batches = 0;
+    private volatile long samplesProcessed = 0;
+    private volatile long busyNanos = 0;
+    private volatile long maxBatchNanos = 0;
+    private volatile long sequenceGaps = 0;
+    private volatile long samplesMissing = 0;
+
+    /**
+     * @param model Modelo con el detector de latidos.
+     * @param displayFilters Filtros para la gráfica.
+     * @param detectionFilters Filtros para la detección.
+     * @param signalQuality Índice de calidad (recibe las muestras crudas).
+     */
+    public AnalysisWorker(EcgDataModel model, FilterChain displayFilters, FilterChain detectionFilters,
+                          SignalQualityMonitor signalQuality) {
+        if (model == null || displayFilters == null || detectionFilters == null || signalQuality == null) {
+            throw new IllegalArgumentException("El modelo, los filtros y el índice de calidad no pueden ser null");
+        }
+        this.model = model;
+        this.displayFilters = displayFilters;
+        this.detectionFilters = detectionFilters;
+        this.signalQuality = signalQuality;
+        model.addPeakListener(this);
+        signalQuality.addListener(this);
+    }
+
+    /**
+     * Ventana de HRV (en segundos) que se incluye en los snapshots (por defecto 5 minutos).
+     */
+    public void setDisplayedHrvWindowSeconds(double seconds) {
+        this.displayedHrvWindowSeconds = seconds;
+    }
+
+    /**
+     * Activa o quita el camino de la gráfica (filtros y buffer de la UI). Sin interfaz, apagarlo
+     * ahorra el filtrado y evita que el buffer de la gráfica se llene y cuente descartes.
+     */
+    public void setDisplayEnabled(boolean enabled) {
+        this.displayEnabled = enabled;
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        acceptableSinceNanos = System.nanoTime();
+        running = true;
+        Thread thread = new Thread(this::runLoop, "ecg-analysis");
+        thread.setDaemon(true);
+        // Por encima de la UI: la detección no debe esperar al dibujo
+        thread.setPriority(Thread.NORM_PRIORITY + 2);
+        analysisThread = thread;
+        thread.start();
+    }
+
+    public synchronized void stop() {
+        running = false;
+        Thread thread = analysisThread;
+        analysisThread = null;
+        if (thread == null) {
+            return;
+        }
+        LockSupport.unpark(thread);
+        try {
+            thread.join(STOP_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    // --- Lado de la fuente (un solo hilo productor) ---
+
+    /**
+     * Entrega una muestra. Nunca bloquea: si el análisis va atrasado y el buffer está lleno,
+     * la muestra se descarta y se cuenta.
+     */
+    public boolean offer(int value) {
+        // Las fuentes que entregan muestra a muestra no informan secuencia (-1)
+        boolean accepted = ingestBuffer.offer(value, -1L);
+        wakeUp();
+        return accepted;
+    }
+
+    /**
+     * Entrega un lote de muestras (carril long = número de secuencia).
+     *
+     * @return Número de muestras aceptadas.
+     */
+    public int offer(int[] samples, int offset, int length, long firstSequence) {
+        int accepted = ingestBuffer.offer(samples, offset, length, firstSequence, 1);
+        wakeUp();
+        return accepted;
+    }
+
+    // --- Lado de la UI (un solo hilo consumidor) ---
+
+    /**
+     * Copia en {@code dst} las muestras filtradas para la gráfica que llegaron desde la última llamada.
+     *
+     * @return Número de muestras copiadas (0 si no hay).
+     */
+    public int drainDisplay(int[] dst, int offset, int maxLength) {
+        return displayBuffer.drain(dst, null, offset, maxLength);
+    }
+
+    /**
+     * @return El último estado publicado (nunca null).
+     */
+    public MonitorSnapshot getSnapshot() {
+        return snapshot.get();
+    }
+
+    public SampleRingBuffer getIngestBuffer() {
+        return ingestBuffer;
+    }
+
+    public SampleRingBuffer getDisplayBuffer() {
+        return displayBuffer;
+    }
+
+    /**
+     * @return Tiempo medio de análisis por muestra (calidad, filtros, detección y oyentes).
+     */
+    public double getNanosPerSample() {
+        long samples = samplesProcessed;
+        return samples == 0 ? 0 : (double) busyNanos / samples;
+    }
+
+    public long getMaxBatchNanos() {
+        return maxBatchNanos;
+    }
+
+    public long getBatches() {
+        return batches;
+    }
+
+    /** Huecos en la secuencia de muestras (pérdidas en la fuente o en el buffer de ingesta). */
+    public long getSequenceGaps() {
+        return sequenceGaps;
+    }
+
+    /** Muestras que faltaron en esos huecos. */
+    public long getSamplesMissing() {
+        return samplesMissing;
+    }
+
+    // --- Hilo de análisis ---
+
+    private void wakeUp() {
+        Thread thread = analysisThread;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    private void runLoop() {
+        while (running) {
+            int count = ingestBuffer.drain(drainValues, drainSequences, 0, BATCH_SIZE);
+            if (count == 0) {
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                continue;
+            }
+            long start = System.nanoTime();
+            try {
+                analyze(count);
+            } catch (RuntimeException e) {
+                // Un oyente con errores no debe detener el análisis
+                LOG.error("Error analizando muestras").cause(e).log();
+            }
+            long elapsed = System.nanoTime() - start;
+            batches++;
+            samplesProcessed += count;
+            busyNanos += elapsed;
+            if (elapsed > maxBatchNanos) {
+                maxBatchNanos = elapsed;
+            }
+        }
+    }
+
+    private void analyze(int count) {
+        // La calidad se mide sobre las muestras crudas, antes de que los filtros oculten saturación o ruido;
+        // si cambia, el modelo se entera antes de recibir el lote
+        signalQuality.process(drainValues, 0, count);
+
+        // Los índices de muestra siguen la secuencia de la fuente, así los latidos que reciben la
+        // grabación y el streaming están en el mismo dominio que sus muestras. Las fuentes que
+        // entregan muestra a muestra no informan secuencia (-1): se numeran en orden de llegada.
+        for (int i = 0; i < count; i++) {
+            if (drainSequences[i] < 0) {
+                drainSequences[i] = i == 0 ? sampleIndex : drainSequences[i - 1] + 1;
+            }
+        }
+        // Se analiza por tramos consecutivos; un hueco corta el tramo
+        int start = 0;
+        while (start < count) {
+            long first = drainSequences[start];
+            if (first != sampleIndex && samplesAnalyzed > 0) {
+                onSequenceGap(sampleIndex, first);
+            }
+            int end = start + 1;
+            while (end < count && drainSequences[end] == drainSequences[end - 1] + 1) {
+                end++;
+            }
+            analyzeRun(start, end - start, first);
+            start = end;
+        }
+
+        publishIfChanged();
+    }
+
+    private void analyzeRun(int offset, int length, long firstIndex) {
+        detectionFilters.process(drainValues, offset, length, filterWork, detectionValues);
+        if (displayEnabled) {
+            displayFilters.process(drainValues, offset, length, filterWork, displayValues);
+            // Si la UI va atrasada, las muestras de la gráfica se descartan (la detección no)
+            displayBuffer.offer(displayValues, 0, length, firstIndex, 1);
+        }
+
+        model.processSamples(detectionValues, 0, length, firstIndex);
+        sampleIndex = firstIndex + length;
+        samplesAnalyzed += length;
+    }
+
+    /**
+     * Faltan muestras (o la fuente reinició su secuencia): los filtros de detección y el detector
+     * empiezan de nuevo y el RR no se mide a través del hueco.
+     */
+    private void onSequenceGap(long expectedIndex, long resumedIndex) {
+        sequenceGaps++;
+        if (resumedIndex > expectedIndex) {
+            samplesMissing += resumedIndex - expectedIndex;
+        }
+        if (Log.DEBUG_ENABLED) {
+            LOG.debug("Hueco en la secuencia: se esperaba {}, llegó {}").arg(expectedIndex).arg(resumedIndex).log();
+        }
+        detectionFilters.reset();
+        model.onSampleGap(expectedIndex, resumedIndex);
+    }
+
+    private void publishIfChanged() {
+        int bpm = model.getCurrentBpm();
+        if (!changed && bpm == publishedBpm) {
+            return;
+        }
+        changed = false;
+        publishedBpm = bpm;
+        snapshot.set(new MonitorSnapshot(samplesAnalyzed, bpm, beatCount, lastPeakValue, lastPeakSample,
+                signalCondition, signalScore, signalAcceptable, acceptableSinceNanos, hrv, System.nanoTime()));
+    }
+
+    /**
+     * Latido aceptado por el modelo (hilo de análisis).
+     */
+    @Override
+    public void onPeakDetected(int peakValue, long time) {
+        beatCount++;
+        lastPeakValue = peakValue;
+        lastPeakSample = time;
+        changed = true;
+    }
+
+    /**
+     * Resultado de HRV (hilo de análisis): solo se guarda la ventana que muestra la UI.
+     */
+    @Override
+    public void onHrvUpdated(HrvSnapshot snapshot) {
+        if (snapshot.getWindowSeconds() == displayedHrvWindowSeconds) {
+            hrv = snapshot;
+            changed = true;
+        }
+    }
+
+    /**
+     * Cambio de calidad de señal (hilo de análisis): con mala señal el modelo deja de aceptar latidos.
+     */
+    @Override
+    public void onSignalQualityChanged(SignalCondition condition, double score, boolean acceptable) {
+        if (acceptable != signalAcceptable) {
+            LOG.info("Calidad de señal {} ({}){}").arg(condition).arg(score)
+                    .arg(acceptable ? ", detección reanudada" : ", detección suspendida").log();
+        } else {
+            LOG.debug("Calidad de señal {} ({})").arg(condition).arg(score).log();
+        }
+        model.setSignalAcceptable(acceptable);
+        if (acceptable && !signalAcceptable) {
+            acceptableSinceNanos = System.nanoTime();
+        }
+        signalCondition = condition;
+        signalScore = score;
+        signalAcceptable = acceptable;
+        changed = true;
+    }
+}
@@ -0,0 +1,100 @@
+package com.streelet.ecg_java_app.analysis;
+
+import com.streelet.ecg_java_app.model.HrvSnapshot;
+import com.streelet.ecg_java_app.quality.SignalCondition;
+
+/**
+ * Estado del análisis en un instante, inmutable. {@link AnalysisWorker} publica uno nuevo
+ * cuando algo cambia y la UI lee el último sin bloqueos; para saber si hubo latidos nuevos
+ * basta comparar {@link #getBeatCount()} con el del snapshot anterior.
+ */
+public final class MonitorSnapshot {
+
+    static final MonitorSnapshot EMPTY = new MonitorSnapshot(0, 0, 0, 0, -1,
+            SignalCondition.GOOD, 1, true, 0, null, 0);
+
+    private final long samplesAnalyzed;
+    private final int bpm;
+    private final long beatCount;
+    private final int lastPeakValue;
+    private final long lastPeakSample;
+    private final SignalCondition signalCondition;
+    private final double signalScore;
+    private final boolean signalAcceptable;
+    private final long acceptableSinceNanos;
+    private final HrvSnapshot hrv;
+    private final long publishedNanos;
+
+    MonitorSnapshot(long samplesAnalyzed, int bpm, long beatCount, int lastPeakValue, long lastPeakSample,
+                    SignalCondition signalCondition, double signalScore, boolean signalAcceptable,
+                    long acceptableSinceNanos, HrvSnapshot hrv, long publishedNanos) {
+        this.samplesAnalyzed = samplesAnalyzed;
+        this.bpm = bpm;
+        this.beatCount = beatCount;
+        this.lastPeakValue = lastPeakValue;
+        this.lastPeakSample = lastPeakSample;
+        this.signalCondition = signalCondition;
+        this.signalScore = signalScore;
+        this.signalAcceptable = signalAcceptable;
+        this.acceptableSinceNanos = acceptableSinceNanos;
+        this.hrv = hrv;
+        this.publishedNanos = publishedNanos;
+    }
+
+    /** Muestras procesadas por el análisis hasta este snapshot. */
+    public long getSamplesAnalyzed() {
+        return samplesAnalyzed;
+    }
+
+    /** BPM actual (0 sin latidos o con señal no aceptable). */
+    public int getBpm() {
+        return bpm;
+    }
+
+    /** Latidos aceptados desde que arrancó el análisis. */
+    public long getBeatCount() {
+        return beatCount;
+    }
+
+    public int getLastPeakValue() {
+        return lastPeakValue;
+    }
+
+    /** Índice de muestra del último latido, o -1 si aún no hubo. */
+    public long getLastPeakSample() {
+        return lastPeakSample;
+    }
+
+    public SignalCondition getSignalCondition() {
+        return signalCondition;
+    }
+
+    public double getSignalScore() {
+        return signalScore;
+    }
+
+    public boolean isSignalAcceptable() {
+        return signalAcceptable;
+    }
+
+    /** Instante (System.nanoTime) desde el que la señal es aceptable sin interrupción. */
+    public long getAcceptableSinceNanos() {
+        return acceptableSinceNanos;
+    }
+
+    /** Último resultado de HRV de la ventana mostrada, o null si aún no hay. */
+    public HrvSnapshot getHrv() {
+        return hrv;
+    }
+
+    /** Instante (System.nanoTime) en que se publicó. */
+    public long getPublishedNanos() {
+        return publishedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "MonitorSnapshot[muestras=" + samplesAnalyzed + ", bpm=" + bpm + ", latidos=" + beatCount
+                + ", señal=" + signalCondition + String.format(" %.2f", signalScore) + "]";
+    }
+}
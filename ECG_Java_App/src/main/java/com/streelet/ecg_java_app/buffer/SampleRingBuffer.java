@@ -0,0 +1,228 @@
+package com.streelet.ecg_java_app.buffer;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/*
+ * Relleno contra "false sharing": los índices del productor y del consumidor se
+ * separan en líneas de caché distintas mediante la jerarquía de clases (la JVM
+ * coloca los campos de la superclase antes que los de la subclase).
+ */
+abstract class SampleRingBufferPad0 {
+    long p00, p01, p02, p03, p04, p05, p06, p07;
+}
+
+abstract class SampleRingBufferTail extends SampleRingBufferPad0 {
+    // Siguiente posición a escribir (solo la modifica el productor)
+    volatile long tail;
+    // Copia local del índice del consumidor, para no leer el volatile en cada escritura
+    long headCache;
+}
+
+abstract class SampleRingBufferPad1 extends SampleRingBufferTail {
+    long p10, p11, p12, p13, p14, p15, p16, p17;
+}
+
+abstract class SampleRingBufferHead extends SampleRingBufferPad1 {
+    // Siguiente posición a leer (solo la modifica el consumidor)
+    volatile long head;
+    // Copia local del índice del productor
+    long tailCache;
+}
+
+abstract class SampleRingBufferPad2 extends SampleRingBufferHead {
+    long p20, p21, p22, p23, p24, p25, p26, p27;
+}
+
+/**
+ * Buffer circular sin bloqueos para un único productor y un único consumidor (SPSC).
+ *
+ * Cada elemento tiene dos carriles primitivos: un valor {@code int} (la muestra) y un
+ * {@code long} (marca de tiempo en nanosegundos o número de secuencia, según el uso).
+ * Todo se reserva en el constructor; escribir y leer no crea objetos.
+ *
+ * El productor NUNCA se bloquea: si el buffer está lleno, los elementos nuevos se
+ * descartan y se cuentan en {@link #getOverflowCount()}. También se registra la
+ * ocupación máxima observada ({@link #getHighWaterMark()}) para dimensionar la capacidad.
+ *
+ * Reglas de uso: los métodos offer* solo pueden llamarse desde un mismo hilo (el
+ * productor) y los métodos drain/poll solo desde otro hilo fijo (el consumidor).
+ * Los contadores y {@link #size()} pueden consultarse desde cualquier hilo.
+ */
+public final class SampleRingBuffer extends SampleRingBufferPad2 {
+
+    private static final VarHandle TAIL;
+    private static final VarHandle HEAD;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            TAIL = lookup.findVarHandle(SampleRingBufferTail.class, "tail", long.class);
+            HEAD = lookup.findVarHandle(SampleRingBufferHead.class, "head", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final int capacity;
+    private final int mask;
+    private final int[] values;
+    private final long[] stamps;
+
+    // Contadores escritos solo por el productor
+    private volatile long overflowCount = 0;
+    private volatile int highWaterMark = 0;
+
+    /**
+     * @param requestedCapacity Capacidad mínima; se redondea a la siguiente potencia de dos.
+     */
+    public SampleRingBuffer(int requestedCapacity) {
+        if (requestedCapacity < 2 || requestedCapacity > (1 << 30)) {
+            throw new IllegalArgumentException("Capacidad fuera de rango: " + requestedCapacity);
+        }
+        this.capacity = Integer.highestOneBit(requestedCapacity - 1) << 1;
+        this.mask = capacity - 1;
+        this.values = new int[capacity];
+        this.stamps = new long[capacity];
+    }
+
+    // --- Lado del productor ---
+
+    /**
+     * Inserta un elemento. Solo desde el hilo productor.
+     *
+     * @param value El valor (muestra).
+     * @param stamp La marca asociada (tiempo o secuencia).
+     * @return true si se insertó, false si el buffer estaba lleno (se cuenta como desbordamiento).
+     */
+    public boolean offer(int value, long stamp) {
+        final long t = tail;
+        if (t - headCache >= capacity) {
+            headCache = (long) HEAD.getAcquire(this);
+            if (t - headCache >= capacity) {
+                overflowCount = overflowCount + 1;
+                return false;
+            }
+        }
+        final int index = (int) t & mask;
+        values[index] = value;
+        stamps[index] = stamp;
+        TAIL.setRelease(this, t + 1);
+        updateHighWaterMark(t + 1 - headCache);
+        return true;
+    }
+
+    /**
+     * Inserta un bloque de elementos. Solo desde el hilo productor.
+     * La marca del elemento i es {@code firstStamp + i * stampStep}.
+     * Si no hay espacio para todo el bloque se insertan los que quepan y el resto se
+     * cuenta como desbordamiento.
+     *
+     * @return Número de elementos insertados.
+     */
+    public int offer(int[] src, int offset, int length, long firstStamp, long stampStep) {
+        final long t = tail;
+        long free = capacity - (t - headCache);
+        if (free < length) {
+            headCache = (long) HEAD.getAcquire(this);
+            free = capacity - (t - headCache);
+        }
+        final int accepted = (int) Math.min(free, length);
+        for (int i = 0; i < accepted; i++) {
+            final int index = (int) (t + i) & mask;
+            values[index] = src[offset + i];
+            stamps[index] = firstStamp + i * stampStep;
+        }
+        if (accepted > 0) {
+            TAIL.setRelease(this, t + accepted);
+            updateHighWaterMark(t + accepted - headCache);
+        }
+        if (accepted < length) {
+            overflowCount = overflowCount + (length - accepted);
+        }
+        return accepted;
+    }
+
+    private void updateHighWaterMark(long occupancy) {
+        if (occupancy > highWaterMark) {
+            highWaterMark = (int) occupancy;
+        }
+    }
+
+    // --- Lado del consumidor ---
+
+    /**
+     * Extrae hasta {@code maxLength} elementos, en orden de llegada. Solo desde el hilo consumidor.
+     *
+     * @param valuesDst Destino de los valores.
+     * @param stampsDst Destino de las marcas; puede ser null si no se necesitan.
+     * @param offset Posición inicial en los arrays destino.
+     * @param maxLength Máximo de elementos a extraer.
+     * @return Número de elementos extraídos (0 si el buffer estaba vacío).
+     */
+    public int drain(int[] valuesDst, long[] stampsDst, int offset, int maxLength) {
+        final long h = head;
+        long available = tailCache - h;
+        if (available < maxLength) {
+            tailCache = (long) TAIL.getAcquire(this);
+            available = tailCache - h;
+        }
+        final int count = (int) Math.min(available, maxLength);
+        if (count <= 0) {
+            return 0;
+        }
+
+        // Copia en a lo sumo dos tramos contiguos
+        final int start = (int) h & mask;
+        final int first = Math.min(count, capacity - start);
+        System.arraycopy(values, start, valuesDst, offset, first);
+        System.arraycopy(values, 0, valuesDst, offset + first, count - first);
+        if (stampsDst != null) {
+            System.arraycopy(stamps, start, stampsDst, offset, first);
+            System.arraycopy(stamps, 0, stampsDst, offset + first, count - first);
+        }
+
+        HEAD.setRelease(this, h + count);
+        return count;
+    }
+
+    /**
+     * Descarta todo el contenido pendiente. Solo desde el hilo consumidor.
+     */
+    public void clear() {
+        HEAD.setRelease(this, (long) TAIL.getAcquire(this));
+    }
+
+    // --- Consultas (cualquier hilo) ---
+
+    /**
+     * Número aproximado de elementos pendientes de leer.
+     */
+    public int size() {
+        final long h = (long) HEAD.getAcquire(this);
+        final long t = (long) TAIL.getAcquire(this);
+        return (int) Math.max(0, Math.min(capacity, t - h));
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Número total de elementos descartados porque el buffer estaba lleno.
+     */
+    public long getOverflowCount() {
+        return overflowCount;
+    }
+
+    /**
+     * Ocupación máxima observada por el productor desde la creación.
+     */
+    public int getHighWaterMark() {
+        return highWaterMark;
+    }
+}
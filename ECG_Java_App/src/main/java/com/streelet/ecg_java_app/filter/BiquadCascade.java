@@ -0,0 +1,94 @@
+package com.streelet.ecg_java_app.filter;
+
+import java.util.Arrays;
+
+/**
+ * Cascada de secciones biquad (IIR de segundo orden) en forma directa II transpuesta.
+ *
+ * Coeficientes y estado viven en arrays primitivos planos. El lote se recorre sección por
+ * sección: cada pasada es un bucle sin ramas con el estado en variables locales, que el JIT
+ * compila a código muy compacto. (Un IIR depende de la muestra anterior, así que no se puede
+ * vectorizar dentro de un canal; el coste por muestra es de ~5 multiplicaciones por sección.)
+ */
+public class BiquadCascade implements FilterStage {
+
+    private static final int COEFFS_PER_SECTION = 5;
+
+    // Por sección: b0, b1, b2, a1, a2 (normalizados con a0 = 1)
+    private final double[] coefficients;
+    // Por sección: z1, z2
+    private final double[] state;
+    private final int sectionCount;
+
+    /**
+     * @param coefficients Coeficientes {b0, b1, b2, a1, a2} de cada sección, uno tras otro.
+     */
+    public BiquadCascade(double... coefficients) {
+        if (coefficients.length == 0 || coefficients.length % COEFFS_PER_SECTION != 0) {
+            throw new IllegalArgumentException("Se esperaban 5 coeficientes por sección, recibidos " + coefficients.length);
+        }
+        this.coefficients = coefficients.clone();
+        this.sectionCount = coefficients.length / COEFFS_PER_SECTION;
+        this.state = new double[2 * sectionCount];
+    }
+
+    /**
+     * @return Una cascada nueva con las secciones de ambas (el estado empieza en cero).
+     */
+    public BiquadCascade then(BiquadCascade next) {
+        double[] joined = new double[coefficients.length + next.coefficients.length];
+        System.arraycopy(coefficients, 0, joined, 0, coefficients.length);
+        System.arraycopy(next.coefficients, 0, joined, coefficients.length, next.coefficients.length);
+        return new BiquadCascade(joined);
+    }
+
+    @Override
+    public void process(float[] samples, int offset, int length) {
+        final int end = offset + length;
+        for (int section = 0; section < sectionCount; section++) {
+            int c = section * COEFFS_PER_SECTION;
+            final double b0 = coefficients[c];
+            final double b1 = coefficients[c + 1];
+            final double b2 = coefficients[c + 2];
+            final double a1 = coefficients[c + 3];
+            final double a2 = coefficients[c + 4];
+            double z1 = state[2 * section];
+            double z2 = state[2 * section + 1];
+            for (int i = offset; i < end; i++) {
+                double x = samples[i];
+                double y = b0 * x + z1;
+                z1 = b1 * x - a1 * y + z2;
+                z2 = b2 * x - a2 * y;
+                samples[i] = (float) y;
+            }
+            state[2 * section] = z1;
+            state[2 * section + 1] = z2;
+        }
+    }
+
+    @Override
+    public double primeWith(double input) {
+        double x = input;
+        for (int section = 0; section < sectionCount; section++) {
+            int c = section * COEFFS_PER_SECTION;
+            double b0 = coefficients[c], b1 = coefficients[c + 1], b2 = coefficients[c + 2];
+            double a1 = coefficients[c + 3], a2 = coefficients[c + 4];
+            // Ganancia en continua de la sección y estado estacionario correspondiente
+            double y = x * (b0 + b1 + b2) / (1 + a1 + a2);
+            double z2 = b2 * x - a2 * y;
+            state[2 * section] = b1 * x - a1 * y + z2;
+            state[2 * section + 1] = z2;
+            x = y;
+        }
+        return x;
+    }
+
+    @Override
+    public void reset() {
+        Arrays.fill(state, 0);
+    }
+
+    public int getSectionCount() {
+        return sectionCount;
+    }
+}
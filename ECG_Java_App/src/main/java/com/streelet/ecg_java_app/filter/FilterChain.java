@@ -0,0 +1,197 @@
+package com.streelet.ecg_java_app.filter;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Secuencia de etapas de filtrado con nombre, cada una activable por separado.
+ *
+ * Se usa una cadena por camino de la señal (una para la gráfica y otra para la detección),
+ * porque cada camino necesita su propio estado y su propia selección de etapas.
+ * process() lo llama un solo hilo; setEnabled() puede llamarse desde cualquier hilo
+ * (la máscara de etapas activas es volátil y se lee una vez por lote).
+ */
+public class FilterChain {
+
+    // Nombres de las etapas de standardEcg()
+    public static final String BASELINE = "baseline";
+    public static final String MAINS = "mains";
+    public static final String LOW_PASS = "lowpass";
+
+    private static final int MAX_STAGES = 16;
+
+    private final String[] names = new String[MAX_STAGES];
+    private final FilterStage[] stages = new FilterStage[MAX_STAGES];
+    private int stageCount = 0;
+    private int baselineIndex = -1;
+
+    private volatile int enabledMask = 0;
+    // Etapas que deben cebarse con la primera muestra del próximo lote (recién activadas)
+    private final AtomicInteger primeRequests = new AtomicInteger(0);
+
+    // Con el pasa-altos activo la señal queda centrada en 0; se le suma este valor para
+    // mantenerla en el rango del ADC que esperan la gráfica y el detector por umbral
+    private volatile float recenterValue = 0;
+
+    private long samplesProcessed = 0;
+    private long processingNanos = 0;
+
+    /**
+     * Cadena típica para ECG: pasa-altos 0.5 Hz (línea base), notch de red y pasa-bajos 40 Hz.
+     * Las etapas cuya frecuencia no es realizable a esta frecuencia de muestreo se omiten.
+     * Todas empiezan desactivadas.
+     *
+     * @param mainsHz Frecuencia de la red eléctrica (50 o 60 Hz).
+     */
+    public static FilterChain standardEcg(int sampleRateHz, double mainsHz) {
+        FilterChain chain = new FilterChain();
+        chain.addStage(BASELINE, FilterDesigns.highPass(sampleRateHz, 0.5, 2), false);
+        if (FilterDesigns.isRealizable(sampleRateHz, mainsHz)) {
+            chain.addStage(MAINS, FilterDesigns.notch(sampleRateHz, mainsHz, 30), false);
+        }
+        if (FilterDesigns.isRealizable(sampleRateHz, 40)) {
+            chain.addStage(LOW_PASS, FilterDesigns.lowPass(sampleRateHz, 40, 2), false);
+        }
+        return chain;
+    }
+
+    /**
+     * Añade una etapa al final de la cadena. Las etapas se añaden al construir la cadena,
+     * antes de empezar a procesar.
+     */
+    public synchronized void addStage(String name, FilterStage stage, boolean enabled) {
+        if (stageCount == MAX_STAGES) {
+            throw new IllegalStateException("Máximo " + MAX_STAGES + " etapas por cadena");
+        }
+        if (indexOf(name) >= 0) {
+            throw new IllegalArgumentException("Ya existe una etapa llamada " + name);
+        }
+        names[stageCount] = name;
+        stages[stageCount] = stage;
+        if (BASELINE.equals(name)) {
+            baselineIndex = stageCount;
+        }
+        stageCount++;
+        setEnabled(name, enabled);
+    }
+
+    /**
+     * Activa o desactiva una etapa. Al activarla se ceba con la señal actual para no
+     * producir un salto en la gráfica.
+     * @return false si no existe una etapa con ese nombre.
+     */
+    public synchronized boolean setEnabled(String name, boolean enabled) {
+        int index = indexOf(name);
+        if (index < 0) {
+            return false;
+        }
+        int bit = 1 << index;
+        if (enabled && (enabledMask & bit) == 0) {
+            primeRequests.getAndUpdate(mask -> mask | bit);
+        }
+        enabledMask = enabled ? (enabledMask | bit) : (enabledMask & ~bit);
+        return true;
+    }
+
+    public boolean isEnabled(String name) {
+        int index = indexOf(name);
+        return index >= 0 && (enabledMask & (1 << index)) != 0;
+    }
+
+    public boolean hasStage(String name) {
+        return indexOf(name) >= 0;
+    }
+
+    /**
+     * @param value Valor que se suma a la salida mientras la etapa {@link #BASELINE} está activa.
+     */
+    public void setRecenterValue(float value) {
+        this.recenterValue = value;
+    }
+
+    /**
+     * Filtra un lote en el mismo array.
+     */
+    public void process(float[] samples, int offset, int length) {
+        if (length <= 0) {
+            return;
+        }
+        long startNanos = System.nanoTime();
+        int mask = enabledMask;
+        int prime = primeRequests.getAndSet(0) & mask;
+        for (int i = 0; i < stageCount; i++) {
+            int bit = 1 << i;
+            if ((mask & bit) == 0) {
+                continue;
+            }
+            if ((prime & bit) != 0) {
+                // samples[offset] ya es la entrada de esta etapa (las anteriores procesaron todo el lote)
+                stages[i].primeWith(samples[offset]);
+            }
+            stages[i].process(samples, offset, length);
+        }
+        if (baselineIndex >= 0 && (mask & (1 << baselineIndex)) != 0) {
+            float recenter = recenterValue;
+            for (int i = offset, end = offset + length; i < end; i++) {
+                samples[i] += recenter;
+            }
+        }
+        samplesProcessed += length;
+        processingNanos += System.nanoTime() - startNanos;
+    }
+
+    /**
+     * Convierte muestras enteras a float, las filtra y deja el resultado redondeado en {@code output}.
+     *
+     * @param input Muestras crudas (no se modifican).
+     * @param work Array de trabajo con al menos {@code length} posiciones.
+     * @param output Destino, desde la posición 0.
+     */
+    public void process(int[] input, int offset, int length, float[] work, int[] output) {
+        for (int i = 0; i < length; i++) {
+            work[i] = input[offset + i];
+        }
+        process(work, 0, length);
+        for (int i = 0; i < length; i++) {
+            output[i] = Math.round(work[i]);
+        }
+    }
+
+    /**
+     * Reinicia el estado de todas las etapas; las activas se cebarán con el próximo lote.
+     * Debe llamarse desde el hilo que procesa.
+     */
+    public void reset() {
+        for (int i = 0; i < stageCount; i++) {
+            stages[i].reset();
+        }
+        primeRequests.getAndUpdate(mask -> mask | enabledMask);
+    }
+
+    /**
+     * @return Coste medio medido por muestra en nanosegundos (todas las etapas activas).
+     */
+    public double getNanosPerSample() {
+        return samplesProcessed == 0 ? 0 : (double) processingNanos / samplesProcessed;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder("FilterChain[");
+        for (int i = 0; i < stageCount; i++) {
+            if (i > 0) {
+                text.append(", ");
+            }
+            text.append(names[i]).append((enabledMask & (1 << i)) != 0 ? "=on" : "=off");
+        }
+        return text.append(']').toString();
+    }
+
+    private int indexOf(String name) {
+        for (int i = 0; i < stageCount; i++) {
+            if (names[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
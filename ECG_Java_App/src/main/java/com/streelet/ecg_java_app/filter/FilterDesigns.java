@@ -0,0 +1,84 @@
+package com.streelet.ecg_java_app.filter;
+
+/**
+ * Diseños predefinidos de filtros biquad (fórmulas del "Audio EQ Cookbook" de R. Bristow-Johnson).
+ * Los órdenes mayores que 2 se construyen como cascada Butterworth de secciones de segundo orden.
+ */
+public final class FilterDesigns {
+
+    private FilterDesigns() {
+    }
+
+    /**
+     * Pasa-altos Butterworth, para quitar la deriva de línea base (ej. 0.5 Hz).
+     * @param order Orden par (2, 4, 6...).
+     */
+    public static BiquadCascade highPass(int sampleRateHz, double cutoffHz, int order) {
+        return butterworth(true, sampleRateHz, cutoffHz, order);
+    }
+
+    /**
+     * Pasa-bajos Butterworth, para quitar ruido muscular y de alta frecuencia (ej. 40 Hz).
+     * @param order Orden par (2, 4, 6...).
+     */
+    public static BiquadCascade lowPass(int sampleRateHz, double cutoffHz, int order) {
+        return butterworth(false, sampleRateHz, cutoffHz, order);
+    }
+
+    /**
+     * Notch (rechaza banda estrecha) para la interferencia de la red eléctrica (50/60 Hz).
+     * @param q Selectividad: ancho de banda ≈ frecuencia / q (ej. 30 → 2 Hz a 60 Hz).
+     */
+    public static BiquadCascade notch(int sampleRateHz, double centerHz, double q) {
+        checkFrequency(sampleRateHz, centerHz);
+        double w0 = 2 * Math.PI * centerHz / sampleRateHz;
+        double cos = Math.cos(w0);
+        double alpha = Math.sin(w0) / (2 * q);
+        double a0 = 1 + alpha;
+        return new BiquadCascade(1 / a0, -2 * cos / a0, 1 / a0, -2 * cos / a0, (1 - alpha) / a0);
+    }
+
+    /**
+     * @return true si la frecuencia está por debajo de Nyquist (el diseño es posible).
+     */
+    public static boolean isRealizable(int sampleRateHz, double frequencyHz) {
+        return frequencyHz > 0 && frequencyHz < sampleRateHz / 2.0;
+    }
+
+    private static BiquadCascade butterworth(boolean highPass, int sampleRateHz, double cutoffHz, int order) {
+        checkFrequency(sampleRateHz, cutoffHz);
+        if (order < 2 || order % 2 != 0) {
+            throw new IllegalArgumentException("El orden debe ser par y al menos 2: " + order);
+        }
+        int sections = order / 2;
+        double[] coefficients = new double[5 * sections];
+        for (int k = 0; k < sections; k++) {
+            // Q de cada sección según los polos de Butterworth
+            double q = 1.0 / (2 * Math.cos(Math.PI * (2 * k + 1) / (2.0 * order)));
+            secondOrder(highPass, sampleRateHz, cutoffHz, q, coefficients, 5 * k);
+        }
+        return new BiquadCascade(coefficients);
+    }
+
+    private static void secondOrder(boolean highPass, int sampleRateHz, double cutoffHz, double q,
+                                    double[] out, int offset) {
+        double w0 = 2 * Math.PI * cutoffHz / sampleRateHz;
+        double cos = Math.cos(w0);
+        double alpha = Math.sin(w0) / (2 * q);
+        double a0 = 1 + alpha;
+        double b0 = highPass ? (1 + cos) / 2 : (1 - cos) / 2;
+        double b1 = highPass ? -(1 + cos) : (1 - cos);
+        out[offset] = b0 / a0;
+        out[offset + 1] = b1 / a0;
+        out[offset + 2] = b0 / a0;
+        out[offset + 3] = -2 * cos / a0;
+        out[offset + 4] = (1 - alpha) / a0;
+    }
+
+    private static void checkFrequency(int sampleRateHz, double frequencyHz) {
+        if (!isRealizable(sampleRateHz, frequencyHz)) {
+            throw new IllegalArgumentException("Frecuencia " + frequencyHz + " Hz no realizable a "
+                    + sampleRateHz + " Hz de muestreo");
+        }
+    }
+}
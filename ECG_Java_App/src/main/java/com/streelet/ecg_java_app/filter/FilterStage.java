@@ -0,0 +1,28 @@
+package com.streelet.ecg_java_app.filter;
+
+/**
+ * Etapa de filtrado de flujo continuo que procesa lotes de muestras en el mismo array.
+ *
+ * Las implementaciones guardan su estado entre llamadas en campos primitivos y no
+ * reservan memoria en process(). No son seguras para hilos: una instancia por flujo.
+ */
+public interface FilterStage {
+
+    /**
+     * Filtra {@code length} muestras a partir de {@code offset}, sobrescribiéndolas.
+     */
+    void process(float[] samples, int offset, int length);
+
+    /**
+     * Vuelve al estado inicial (como si no hubiera llegado ninguna muestra).
+     */
+    void reset();
+
+    /**
+     * Pone el estado como si la entrada hubiera sido constante e igual a {@code input} desde
+     * siempre, para que la primera muestra no produzca un transitorio (ej. rampa desde 0).
+     *
+     * @return La salida estacionaria correspondiente a esa entrada constante.
+     */
+    double primeWith(double input);
+}
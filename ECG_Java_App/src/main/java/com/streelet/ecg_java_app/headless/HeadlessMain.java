@@ -0,0 +1,207 @@
+package com.streelet.ecg_java_app.headless;
+
+import com.streelet.ecg_java_app.StartController.PatientData;
+import com.streelet.ecg_java_app.log.Log;
+import com.streelet.ecg_java_app.serial.SerialDataManager;
+import com.streelet.ecg_java_app.serial.SerialProtocol;
+import com.streelet.ecg_java_app.source.FileReplaySource;
+import com.streelet.ecg_java_app.source.SignalSource;
+import com.streelet.ecg_java_app.source.SyntheticEcgSource;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * Punto de entrada sin interfaz: adquisición, análisis, alarmas y grabación configurados desde
+ * un archivo de propiedades, sin cargar JavaFX. Pensado para servidores o equipos embebidos sin
+ * pantalla, con varios procesos por máquina; la UI puede seguir la señal por el streaming.
+ *
+ * Uso: {@code HeadlessMain <archivo.properties>}. Termina con Ctrl+C (se cierra la grabación),
+ * al acabar la fuente o tras {@code durationSeconds}. El nivel del log se elige con -Decg.log;
+ * para un proceso pequeño bastan, por ejemplo, {@code -Xmx48m -XX:+UseSerialGC}.
+ *
+ * Propiedades (entre paréntesis, el valor por defecto):
+ * <ul>
+ *   <li>{@code source}: serial, file o synthetic (serial).</li>
+ *   <li>{@code serial.port} (obligatorio con serial), {@code serial.baud} (9600),
+ *       {@code serial.protocol}: ASCII_LINES o BINARY_FRAMES (ASCII_LINES).</li>
+ *   <li>{@code file.path} (obligatorio con file), {@code file.speed} (1), {@code file.loop} (false).</li>
+ *   <li>{@code synthetic.bpm} (72), {@code synthetic.seed}.</li>
+ *   <li>{@code sampleRateHz}: frecuencia de la captura o del dispositivo serial (200).</li>
+ *   <li>{@code detector}: threshold o pan-tompkins (threshold); {@code detector.threshold} (945).</li>
+ *   <li>{@code mainsHz} (60); {@code adc.min} (0), {@code adc.max} (1023).</li>
+ *   <li>{@code alarm.bradycardiaBpm} (50), {@code alarm.tachycardiaBpm} (120).</li>
+ *   <li>{@code recording.enabled} (true), {@code recording.directory} (~/ecg-sessions),
+ *       {@code recording.session} (sesion-fecha-pid), {@code recording.export} (false).</li>
+ *   <li>{@code patient.name}, {@code patient.gender}, {@code patient.birthDate} (aaaa-mm-dd),
+ *       para la exportación.</li>
+ *   <li>{@code stream.port} (sin streaming), {@code stream.bind} (127.0.0.1).</li>
+ *   <li>{@code metrics.intervalSeconds} (10), {@code durationSeconds} (0, sin límite).</li>
+ * </ul>
+ */
+public final class HeadlessMain {
+
+    private static final long LOG_FLUSH_TIMEOUT_MS = 1000;
+
+    private HeadlessMain() {
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 1) {
+            System.err.println("Uso: HeadlessMain <archivo.properties>");
+            System.exit(2);
+        }
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(Paths.get(args[0]), StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+
+        HeadlessMonitor monitor;
+        long durationMillis;
+        try {
+            monitor = new HeadlessMonitor(monitorConfig(properties), signalSource(properties));
+            durationMillis = Math.round(doubleValue(properties, "durationSeconds", 0) * 1000);
+        } catch (IllegalArgumentException | DateTimeException e) {
+            System.err.println("Configuración inválida en " + args[0] + ": " + e.getMessage());
+            System.exit(2);
+            return;
+        }
+
+        if (!monitor.start()) {
+            Log.flush(LOG_FLUSH_TIMEOUT_MS);
+            System.exit(1);
+        }
+        // Ctrl+C o kill: la grabación se cierra bien antes de que la JVM termine
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            monitor.stop();
+            Log.flush(LOG_FLUSH_TIMEOUT_MS);
+        }, "ecg-headless-shutdown"));
+
+        monitor.awaitStop(durationMillis);
+        monitor.stop();
+        Log.flush(LOG_FLUSH_TIMEOUT_MS);
+    }
+
+    /**
+     * Crea la configuración del monitor a partir de las propiedades.
+     *
+     * @throws IllegalArgumentException Si algún valor no es válido.
+     * @throws DateTimeException Si la fecha de nacimiento no es válida.
+     */
+    static HeadlessMonitor.Config monitorConfig(Properties properties) {
+        HeadlessMonitor.Config config = new HeadlessMonitor.Config()
+                .sampleRateHz(intValue(properties, "sampleRateHz", 200))
+                .detector(detector(properties.getProperty("detector", "threshold")))
+                .beatThreshold(intValue(properties, "detector.threshold", 945))
+                .mainsHz(doubleValue(properties, "mainsHz", 60))
+                .adcRange(intValue(properties, "adc.min", 0), intValue(properties, "adc.max", 1023))
+                .heartRateLimits(doubleValue(properties, "alarm.bradycardiaBpm", 50),
+                        doubleValue(properties, "alarm.tachycardiaBpm", 120))
+                .metricsIntervalMillis(Math.round(doubleValue(properties, "metrics.intervalSeconds", 10) * 1000));
+
+        if (booleanValue(properties, "recording.enabled", true)) {
+            Path directory = Paths.get(properties.getProperty("recording.directory",
+                    Paths.get(System.getProperty("user.home"), "ecg-sessions").toString()));
+            // Con varios procesos por máquina, el pid evita que dos sesiones tengan el mismo nombre
+            String session = properties.getProperty("recording.session",
+                    "sesion-" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"))
+                            + "-" + ProcessHandle.current().pid());
+            config.recording(directory, session).exportOnStop(booleanValue(properties, "recording.export", false));
+        }
+        String patientName = properties.getProperty("patient.name");
+        if (patientName != null) {
+            String birthDate = properties.getProperty("patient.birthDate");
+            config.patient(new PatientData(patientName, properties.getProperty("patient.gender"),
+                    birthDate == null ? null : LocalDate.parse(birthDate.trim()), null));
+        }
+        if (properties.getProperty("stream.port") != null) {
+            config.stream(properties.getProperty("stream.bind", "127.0.0.1"), intValue(properties, "stream.port", 0));
+        }
+        return config;
+    }
+
+    /**
+     * Crea la fuente de señal indicada en {@code source}.
+     *
+     * @throws IllegalArgumentException Si falta un valor obligatorio o alguno no es válido.
+     */
+    static SignalSource signalSource(Properties properties) {
+        int sampleRateHz = intValue(properties, "sampleRateHz", 200);
+        String kind = properties.getProperty("source", "serial").trim().toLowerCase(Locale.ROOT);
+        switch (kind) {
+            case "serial": {
+                SerialDataManager serial = new SerialDataManager(required(properties, "serial.port"),
+                        intValue(properties, "serial.baud", 9600));
+                serial.setProtocol(SerialProtocol.valueOf(
+                        properties.getProperty("serial.protocol", SerialProtocol.ASCII_LINES.name()).trim()));
+                return serial;
+            }
+            case "file":
+                return new FileReplaySource(Paths.get(required(properties, "file.path")), sampleRateHz,
+                        doubleValue(properties, "file.speed", 1), booleanValue(properties, "file.loop", false));
+            case "synthetic": {
+                SyntheticEcgSource.Config config = new SyntheticEcgSource.Config()
+                        .sampleRateHz(sampleRateHz)
+                        .heartRateBpm(doubleValue(properties, "synthetic.bpm", 72));
+                if (properties.getProperty("synthetic.seed") != null) {
+                    config.seed(Long.parseLong(properties.getProperty("synthetic.seed").trim()));
+                }
+                return new SyntheticEcgSource(config);
+            }
+            default:
+                throw new IllegalArgumentException("source desconocida: " + kind);
+        }
+    }
+
+    private static HeadlessMonitor.Detector detector(String name) {
+        switch (name.trim().toLowerCase(Locale.ROOT)) {
+            case "threshold":
+                return HeadlessMonitor.Detector.THRESHOLD;
+            case "pan-tompkins":
+                return HeadlessMonitor.Detector.PAN_TOMPKINS;
+            default:
+                throw new IllegalArgumentException("detector desconocido: " + name);
+        }
+    }
+
+    private static String required(Properties properties, String key) {
+        String value = properties.getProperty(key);
+        if (value == null || value.trim().isEmpty()) {
+            throw new IllegalArgumentException("falta " + key);
+        }
+        return value.trim();
+    }
+
+    private static int intValue(Properties properties, String key, int fallback) {
+        String value = properties.getProperty(key);
+        try {
+            return value == null ? fallback : Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(key + " no es un entero: " + value);
+        }
+    }
+
+    private static double doubleValue(Properties properties, String key, double fallback) {
+        String value = properties.getProperty(key);
+        try {
+            return value == null ? fallback : Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(key + " no es un número: " + value);
+        }
+    }
+
+    private static boolean booleanValue(Properties properties, String key, boolean fallback) {
+        String value = properties.getProperty(key);
+        return value == null ? fallback : Boolean.parseBoolean(value.trim());
+    }
+}
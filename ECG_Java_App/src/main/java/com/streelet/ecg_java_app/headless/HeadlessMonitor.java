@@ -0,0 +1,397 @@
+package com.streelet.ecg_java_app.headless;
+
+import com.streelet.ecg_java_app.StartController.PatientData;
+import com.streelet.ecg_java_app.alarm.AlarmEngine;
+import com.streelet.ecg_java_app.alarm.AlarmEvent;
+import com.streelet.ecg_java_app.analysis.AnalysisWorker;
+import com.streelet.ecg_java_app.analysis.MonitorSnapshot;
+import com.streelet.ecg_java_app.filter.FilterChain;
+import com.streelet.ecg_java_app.interchange.SessionExporter;
+import com.streelet.ecg_java_app.log.Log;
+import com.streelet.ecg_java_app.log.Logger;
+import com.streelet.ecg_java_app.model.BeatDetector;
+import com.streelet.ecg_java_app.model.EcgDataModel;
+import com.streelet.ecg_java_app.model.HrvAnalyzer;
+import com.streelet.ecg_java_app.model.PanTompkinsDetector;
+import com.streelet.ecg_java_app.model.ThresholdBeatDetector;
+import com.streelet.ecg_java_app.net.EcgStreamServer;
+import com.streelet.ecg_java_app.quality.SignalQualityMonitor;
+import com.streelet.ecg_java_app.recording.SessionReader;
+import com.streelet.ecg_java_app.recording.SessionRecorder;
+import com.streelet.ecg_java_app.serial.SerialDataListener;
+import com.streelet.ecg_java_app.source.SignalSource;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Monitor sin interfaz: conecta una fuente de señal con el análisis (filtros, calidad, detección,
+ * HRV), las alarmas, la grabación y, opcionalmente, el servidor de streaming, igual que
+ * {@code EcgMonitorController} pero sin cargar ninguna clase de JavaFX.
+ *
+ * Las alarmas y un resumen periódico (frecuencia, latidos, calidad, descartes) salen por el log;
+ * la señal en vivo, por {@link EcgStreamServer} si se configura un puerto, de modo que la UI
+ * queda como un visor opcional. El camino de la gráfica del análisis se apaga.
+ *
+ * Se usa desde {@link HeadlessMain}; {@link #start()}, {@link #awaitStop} y {@link #stop()}.
+ */
+public class HeadlessMonitor implements SerialDataListener {
+
+    private static final Logger LOG = Log.get(HeadlessMonitor.class);
+
+    // Como en la UI: el detector por umbral trabaja con la señal filtrada recentrada en este valor
+    private static final float RECENTER_VALUE = 600;
+    // Al detener, se deja analizar lo que ya entregó la fuente como mucho este tiempo
+    private static final long DRAIN_TIMEOUT_MS = 500;
+
+    /**
+     * Detector de latidos del monitor.
+     */
+    public enum Detector {
+        /** Umbral fijo sobre la señal filtrada (el de la UI por defecto). */
+        THRESHOLD,
+        /** Pan-Tompkins adaptativo. */
+        PAN_TOMPKINS
+    }
+
+    /**
+     * Parámetros del monitor. Los setters devuelven la propia instancia para encadenarlos.
+     */
+    public static class Config {
+        private int sampleRateHz = 200;
+        private Detector detector = Detector.THRESHOLD;
+        private int beatThreshold = 945;
+        private double mainsHz = 60;
+        private int adcMin = 0;
+        private int adcMax = 1023;
+        private double bradycardiaBpm = AlarmEngine.DEFAULT_BRADYCARDIA_BPM;
+        private double tachycardiaBpm = AlarmEngine.DEFAULT_TACHYCARDIA_BPM;
+        private Path recordingDirectory;
+        private String sessionName;
+        private boolean exportOnStop = false;
+        private PatientData patient;
+        private String streamBindAddress = "127.0.0.1";
+        private int streamPort = -1;
+        private long metricsIntervalMillis = 10_000;
+
+        /**
+         * Frecuencia a usar si la fuente no la informa (el dispositivo serial; por defecto 200 Hz).
+         */
+        public Config sampleRateHz(int value) {
+            sampleRateHz = value;
+            return this;
+        }
+
+        public Config detector(Detector value) {
+            detector = value;
+            return this;
+        }
+
+        /** Umbral del detector {@link Detector#THRESHOLD} (por defecto 945). */
+        public Config beatThreshold(int value) {
+            beatThreshold = value;
+            return this;
+        }
+
+        /** Frecuencia de la red eléctrica para el notch (por defecto 60 Hz). */
+        public Config mainsHz(double value) {
+            mainsHz = value;
+            return this;
+        }
+
+        /** Rango del conversor, para el índice de calidad (por defecto 0..1023). */
+        public Config adcRange(int min, int max) {
+            adcMin = min;
+            adcMax = max;
+            return this;
+        }
+
+        public Config heartRateLimits(double bradycardia, double tachycardia) {
+            bradycardiaBpm = bradycardia;
+            tachycardiaBpm = tachycardia;
+            return this;
+        }
+
+        /**
+         * Graba la sesión en {@code directory} con el nombre dado (null, sin grabación).
+         */
+        public Config recording(Path directory, String name) {
+            recordingDirectory = directory;
+            sessionName = name;
+            return this;
+        }
+
+        /** Exporta la sesión a EDF+ y WFDB al detenerse. */
+        public Config exportOnStop(boolean value) {
+            exportOnStop = value;
+            return this;
+        }
+
+        /** Datos del paciente para la exportación (puede ser null). */
+        public Config patient(PatientData value) {
+            patient = value;
+            return this;
+        }
+
+        /**
+         * Publica la señal por TCP en {@code bindAddress:port} (puerto negativo, sin streaming).
+         */
+        public Config stream(String bindAddress, int port) {
+            streamBindAddress = bindAddress;
+            streamPort = port;
+            return this;
+        }
+
+        /** Cada cuánto se registra el resumen (0, nunca; por defecto 10 s). */
+        public Config metricsIntervalMillis(long value) {
+            metricsIntervalMillis = value;
+            return this;
+        }
+    }
+
+    private final Config config;
+    private final SignalSource source;
+    private final int sampleRateHz;
+
+    private final EcgDataModel model;
+    private final HrvAnalyzer hrvAnalyzer;
+    private final AlarmEngine alarmEngine;
+    private final FilterChain displayFilters;
+    private final FilterChain detectionFilters;
+    private final SignalQualityMonitor signalQuality;
+    private final AnalysisWorker analysisWorker;
+    private SessionRecorder recorder;
+    private EcgStreamServer streamServer;
+
+    private final Object stopLock = new Object();
+    private volatile boolean stopped = false;
+    private long startedNanos;
+
+    /**
+     * Arma la cadena completa; nada arranca hasta {@link #start()}.
+     */
+    public HeadlessMonitor(Config config, SignalSource source) {
+        if (config == null || source == null) {
+            throw new IllegalArgumentException("La configuración y la fuente no pueden ser null");
+        }
+        this.config = config;
+        this.source = source;
+        this.sampleRateHz = source.getSampleRateHz() > 0 ? source.getSampleRateHz() : config.sampleRateHz;
+
+        BeatDetector detector = config.detector == Detector.PAN_TOMPKINS
+                ? new PanTompkinsDetector(sampleRateHz)
+                : new ThresholdBeatDetector(config.beatThreshold, sampleRateHz);
+        model = new EcgDataModel(detector);
+        // Mismo orden que en la UI: el snapshot de HRV ya incluye el latido que se notifica después
+        hrvAnalyzer = new HrvAnalyzer(model.getRrIntervals());
+        model.addPeakListener(hrvAnalyzer);
+        alarmEngine = new AlarmEngine(sampleRateHz);
+        alarmEngine.setHeartRateLimits(config.bradycardiaBpm, config.tachycardiaBpm);
+        alarmEngine.addAlarmListener(this::onAlarm);
+        model.addPeakListener(alarmEngine);
+
+        // El camino de la gráfica se crea porque el análisis lo pide, pero queda apagado
+        displayFilters = FilterChain.standardEcg(sampleRateHz, config.mainsHz);
+        detectionFilters = FilterChain.standardEcg(sampleRateHz, config.mainsHz);
+        detectionFilters.setEnabled(FilterChain.MAINS, true);
+        detectionFilters.setEnabled(FilterChain.LOW_PASS, true);
+        detectionFilters.setRecenterValue(RECENTER_VALUE);
+
+        signalQuality = new SignalQualityMonitor(sampleRateHz, config.adcMin, config.adcMax);
+        signalQuality.addListener((condition, score, acceptable) -> alarmEngine.onSignalQuality(acceptable));
+        model.setBeatObserver((value, index) -> signalQuality.onBeat());
+        model.setSignalAcceptable(true);
+        alarmEngine.onSignalQuality(true);
+
+        analysisWorker = new AnalysisWorker(model, displayFilters, detectionFilters, signalQuality);
+        analysisWorker.setDisplayEnabled(false);
+        hrvAnalyzer.addHrvListener(analysisWorker);
+    }
+
+    /**
+     * Arranca la grabación, el streaming, el análisis y la fuente.
+     *
+     * @return false si la fuente no pudo iniciarse (la grabación y el streaming ya abiertos se cierran).
+     */
+    public boolean start() {
+        LOG.info("Monitor sin interfaz @ {} Hz: {}").arg(sampleRateHz).arg(source.getDescription()).log();
+        startRecording();
+        startStreaming();
+        source.addListener(this);
+
+        model.resetState();
+        startedNanos = System.nanoTime();
+        analysisWorker.start();
+        alarmEngine.start();
+        if (!source.start()) {
+            LOG.error("No se pudo iniciar la fuente: {}").arg(source.getDescription()).log();
+            stop();
+            return false;
+        }
+        return true;
+    }
+
+    private void startRecording() {
+        if (config.recordingDirectory == null) {
+            return;
+        }
+        SessionRecorder sessionRecorder = new SessionRecorder(
+                new SessionRecorder.Config(config.recordingDirectory, config.sessionName, sampleRateHz));
+        try {
+            sessionRecorder.start();
+        } catch (IOException e) {
+            LOG.error("No se pudo iniciar la grabación en {}: {}").arg(config.recordingDirectory).arg(e.getMessage()).log();
+            return;
+        }
+        recorder = sessionRecorder;
+        source.addListener(sessionRecorder);
+        model.addPeakListener(sessionRecorder);
+    }
+
+    private void startStreaming() {
+        if (config.streamPort < 0) {
+            return;
+        }
+        EcgStreamServer server = new EcgStreamServer(new EcgStreamServer.Config(sampleRateHz)
+                .bindAddress(config.streamBindAddress).port(config.streamPort));
+        try {
+            server.start();
+        } catch (IOException e) {
+            LOG.error("No se pudo publicar la señal en el puerto {}: {}").arg(config.streamPort).arg(e.getMessage()).log();
+            return;
+        }
+        streamServer = server;
+        server.setHeartRateSource(() -> analysisWorker.getSnapshot().getBpm());
+        source.addListener(server);
+        model.addPeakListener(server);
+    }
+
+    /**
+     * Espera hasta {@link #stop()}, hasta que la fuente termine (p. ej. un archivo sin bucle) o
+     * hasta {@code maxMillis} (0, sin límite), registrando el resumen periódico mientras tanto.
+     */
+    public void awaitStop(long maxMillis) throws InterruptedException {
+        long deadline = maxMillis > 0 ? System.nanoTime() + maxMillis * 1_000_000L : Long.MAX_VALUE;
+        long interval = config.metricsIntervalMillis > 0 ? config.metricsIntervalMillis : Long.MAX_VALUE;
+        // Se revisa a menudo si la fuente sigue en marcha, aunque el resumen sea cada varios segundos
+        final long checkMillis = 200;
+        long nextReport = System.nanoTime() + interval * 1_000_000L;
+        synchronized (stopLock) {
+            while (!stopped && source.isRunning() && System.nanoTime() - deadline < 0) {
+                stopLock.wait(checkMillis);
+                if (System.nanoTime() - nextReport >= 0) {
+                    logMetrics();
+                    nextReport += interval * 1_000_000L;
+                }
+            }
+        }
+    }
+
+    /**
+     * Detiene todo, cierra la grabación (y la exporta si se pidió). Se puede llamar varias veces
+     * y desde cualquier hilo (p. ej. el hook de cierre de la JVM).
+     */
+    public void stop() {
+        synchronized (stopLock) {
+            if (stopped) {
+                return;
+            }
+            stopped = true;
+            stopLock.notifyAll();
+        }
+        source.stop();
+        long drainDeadline = System.nanoTime() + DRAIN_TIMEOUT_MS * 1_000_000L;
+        while (!analysisWorker.getIngestBuffer().isEmpty() && System.nanoTime() - drainDeadline < 0) {
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        analysisWorker.stop();
+        alarmEngine.stop();
+        hrvAnalyzer.shutdown();
+        if (streamServer != null) {
+            streamServer.stop();
+        }
+        if (recorder != null) {
+            recorder.stop();
+            if (config.exportOnStop) {
+                exportSession(recorder.getConfig());
+            }
+        }
+        logMetrics();
+        LOG.info("Análisis: {} ns/muestra, lote más lento {} ms; alarmas: {} activadas, latencia máxima {} ms.")
+                .arg(analysisWorker.getNanosPerSample()).arg(analysisWorker.getMaxBatchNanos() / 1e6)
+                .arg(alarmEngine.getAlarmsRaised()).arg(alarmEngine.getMaxLatencyNanos() / 1e6).log();
+    }
+
+    private void exportSession(SessionRecorder.Config recording) {
+        try {
+            SessionExporter.exportAll(new SessionReader(recording.getDirectory(), recording.getSessionName()),
+                    recording.getSessionName(), config.patient, recording.getDirectory());
+        } catch (IOException e) {
+            LOG.error("No se pudo exportar la sesión {}: {}").arg(recording.getSessionName()).arg(e.getMessage()).log();
+        }
+    }
+
+    /**
+     * Registra el resumen: frecuencia, latidos, calidad y descartes.
+     */
+    public void logMetrics() {
+        MonitorSnapshot snapshot = analysisWorker.getSnapshot();
+        LOG.info("{} s: {} lpm, {} latidos, señal {}; {} muestras, descartadas {}.")
+                .arg((System.nanoTime() - startedNanos) / 1_000_000_000L).arg(snapshot.getBpm())
+                .arg(snapshot.getBeatCount()).arg(snapshot.getSignalCondition())
+                .arg(snapshot.getSamplesAnalyzed()).arg(analysisWorker.getIngestBuffer().getOverflowCount()).log();
+    }
+
+    public MonitorSnapshot getSnapshot() {
+        return analysisWorker.getSnapshot();
+    }
+
+    public int getSampleRateHz() {
+        return sampleRateHz;
+    }
+
+    public AlarmEngine getAlarmEngine() {
+        return alarmEngine;
+    }
+
+    // --- Fuente (hilo de la fuente) ---
+
+    @Override
+    public void onDataReceived(int value) {
+        analysisWorker.offer(value);
+        alarmEngine.onSamplesReceived();
+    }
+
+    @Override
+    public void onSamples(int[] buf, int offset, int length, long firstSequence, long firstTimestampNanos) {
+        analysisWorker.offer(buf, offset, length, firstSequence);
+        alarmEngine.onSamplesReceived();
+    }
+
+    @Override
+    public void onErrorOccurred(String message) {
+        if (message.startsWith("STATUS:")) {
+            if (message.contains("ELECTRODES_DISCONNECTED")) {
+                alarmEngine.onLeadOff();
+            } else if (message.equals("STATUS:ELECTRODES_CONNECTED")) {
+                alarmEngine.onLeadOn();
+            }
+        }
+        LOG.warn("Fuente: {}").arg(message).log();
+    }
+
+    // --- Alarmas (hilo del motor de alarmas) ---
+
+    private void onAlarm(AlarmEvent event) {
+        if (event.isActive()) {
+            LOG.warn("Alarma: {}").arg(event).log();
+        } else {
+            LOG.info("Alarma: {}").arg(event).log();
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.streelet.ecg_java_app.interchange;
+
+/**
+ * Relación entre las cuentas del ADC y la tensión en los electrodos, necesaria para que los
+ * formatos clínicos (EDF+, WFDB) guarden la señal en unidades físicas.
+ *
+ * Inmutable.
+ */
+public final class AdcCalibration {
+
+    /**
+     * ADC de 10 bits a 3,3 V detrás de un frontal con ganancia 1100 (AD8232 y similares):
+     * 0..1023 cuentas, 0 V en la mitad del rango, unos 2,93 µV por cuenta.
+     */
+    public static final AdcCalibration TEN_BIT_FRONT_END = new AdcCalibration(0, 1023, 512, 3_300_000.0 / 1024 / 1100);
+
+    private final int digitalMin;
+    private final int digitalMax;
+    private final int baseline;
+    private final double microvoltsPerCount;
+
+    /**
+     * @param digitalMin Valor mínimo que entrega el ADC.
+     * @param digitalMax Valor máximo que entrega el ADC.
+     * @param baseline Valor del ADC que corresponde a 0 V.
+     * @param microvoltsPerCount µV por cuenta del ADC (referidos a la entrada).
+     */
+    public AdcCalibration(int digitalMin, int digitalMax, int baseline, double microvoltsPerCount) {
+        if (digitalMin >= digitalMax) {
+            throw new IllegalArgumentException("Rango digital inválido: " + digitalMin + ".." + digitalMax);
+        }
+        if (!(microvoltsPerCount > 0)) {
+            throw new IllegalArgumentException("µV por cuenta debe ser positivo: " + microvoltsPerCount);
+        }
+        this.digitalMin = digitalMin;
+        this.digitalMax = digitalMax;
+        this.baseline = baseline;
+        this.microvoltsPerCount = microvoltsPerCount;
+    }
+
+    public int getDigitalMin() {
+        return digitalMin;
+    }
+
+    public int getDigitalMax() {
+        return digitalMax;
+    }
+
+    public int getBaseline() {
+        return baseline;
+    }
+
+    public double getMicrovoltsPerCount() {
+        return microvoltsPerCount;
+    }
+
+    /** Bits necesarios para representar el rango digital. */
+    public int getResolutionBits() {
+        return 32 - Integer.numberOfLeadingZeros(digitalMax - digitalMin);
+    }
+
+    public double toMicrovolts(int counts) {
+        return (counts - baseline) * microvoltsPerCount;
+    }
+
+    @Override
+    public String toString() {
+        return "AdcCalibration[" + digitalMin + ".." + digitalMax + ", 0 V=" + baseline
+                + String.format(", %.3f µV/cuenta]", microvoltsPerCount);
+    }
+}
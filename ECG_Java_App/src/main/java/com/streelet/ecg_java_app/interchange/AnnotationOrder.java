@@ -0,0 +1,103 @@
+package com.streelet.ecg_java_app.interchange;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Reordena por muestra las anotaciones antes de escribirlas. Los latidos llegan con el retraso
+ * del análisis (unos cientos de ms con Pan-Tompkins) y los mensajes de estado se sitúan por su
+ * instante, así que entre ambos llegan algo desordenados; los formatos exigen (WFDB) o esperan
+ * (EDF+) orden de tiempo.
+ *
+ * Cada anotación espera hasta que el registro tiene {@link #REORDER_SECONDS} s de muestras por
+ * detrás de ella; solo las que llegan con más retraso que eso quedan fuera de orden y se cuentan
+ * en {@link #getLateAnnotations()}.
+ */
+final class AnnotationOrder {
+
+    /** Retraso máximo de una anotación respecto de las muestras que se tolera sin desordenarla. */
+    static final int REORDER_SECONDS = 2;
+
+    /**
+     * Recibe las anotaciones ya ordenadas.
+     */
+    interface Sink {
+
+        /**
+         * @param message Texto del mensaje de estado, o null si es un latido.
+         */
+        void emit(long sampleIndex, String message) throws IOException;
+    }
+
+    private final long lagSamples;
+    private long[] indices = new long[64];
+    private String[] messages = new String[64];
+    private int size = 0;
+    private long lastEmitted = Long.MIN_VALUE;
+    private long lateAnnotations = 0;
+
+    AnnotationOrder(int sampleRateHz) {
+        this.lagSamples = (long) sampleRateHz * REORDER_SECONDS;
+    }
+
+    /**
+     * Guarda una anotación en su sitio; con la misma muestra se respeta el orden de llegada.
+     */
+    void add(long sampleIndex, String message) {
+        if (sampleIndex < lastEmitted) {
+            lateAnnotations++;
+        }
+        if (size == indices.length) {
+            indices = Arrays.copyOf(indices, size * 2);
+            messages = Arrays.copyOf(messages, size * 2);
+        }
+        int at = size;
+        while (at > 0 && indices[at - 1] > sampleIndex) {
+            at--;
+        }
+        System.arraycopy(indices, at, indices, at + 1, size - at);
+        System.arraycopy(messages, at, messages, at + 1, size - at);
+        indices[at] = sampleIndex;
+        messages[at] = message;
+        size++;
+    }
+
+    /**
+     * Entrega las anotaciones que ya tienen detrás el retraso tolerado de muestras.
+     *
+     * @param samplesWritten Muestras escritas hasta ahora en el registro.
+     */
+    void release(long samplesWritten, Sink sink) throws IOException {
+        int count = 0;
+        while (count < size && indices[count] + lagSamples <= samplesWritten) {
+            count++;
+        }
+        emit(count, sink);
+    }
+
+    /**
+     * Entrega todas las anotaciones pendientes (al cerrar el registro).
+     */
+    void releaseAll(Sink sink) throws IOException {
+        emit(size, sink);
+    }
+
+    /** Anotaciones que llegaron después de otras posteriores ya entregadas. */
+    long getLateAnnotations() {
+        return lateAnnotations;
+    }
+
+    private void emit(int count, Sink sink) throws IOException {
+        if (count == 0) {
+            return;
+        }
+        for (int i = 0; i < count; i++) {
+            lastEmitted = Math.max(lastEmitted, indices[i]);
+            sink.emit(indices[i], messages[i]);
+        }
+        System.arraycopy(indices, count, indices, 0, size - count);
+        System.arraycopy(messages, count, messages, 0, size - count);
+        Arrays.fill(messages, size - count, size, null);
+        size -= count;
+    }
+}
@@ -0,0 +1,16 @@
+package com.streelet.ecg_java_app.interchange;
+
+/**
+ * Recibe las anotaciones de un registro ({@link EdfReader}, {@link WfdbReader}) en orden de archivo.
+ */
+public interface AnnotationVisitor {
+
+    /** Texto con el que se anotan los latidos detectados (mnemónico MIT de latido normal). */
+    String BEAT = "N";
+
+    /**
+     * @param onsetSeconds Instante desde el inicio del registro.
+     * @param text Texto de la anotación ({@link #BEAT} para latidos, o el mensaje de estado).
+     */
+    void onAnnotation(double onsetSeconds, String text);
+}
@@ -0,0 +1,45 @@
+package com.streelet.ecg_java_app.interchange;
+
+import com.streelet.ecg_java_app.buffer.SampleRingBuffer;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Escritor en streaming de un registro de una derivación en un formato de intercambio.
+ *
+ * No es seguro entre hilos: todas las llamadas deben hacerse desde el mismo hilo (el que
+ * vacía el buffer de muestras, o el que recorre una sesión grabada).
+ */
+public interface EcgRecordWriter extends Closeable {
+
+    /**
+     * Añade muestras (cuentas del ADC) al final del registro.
+     */
+    void writeSamples(int[] values, int offset, int length) throws IOException;
+
+    /**
+     * Vacía el buffer (como su consumidor) y codifica las muestras directamente en el registro.
+     *
+     * @return Número de muestras escritas.
+     */
+    long drainFrom(SampleRingBuffer buffer) throws IOException;
+
+    /**
+     * Anota un latido en la muestra indicada (índice desde el inicio del registro).
+     */
+    void addBeat(long sampleIndex) throws IOException;
+
+    /**
+     * Anota un mensaje de estado del dispositivo (ej. "STATUS:ELECTRODES_DISCONNECTED").
+     */
+    void addStatus(long sampleIndex, String message) throws IOException;
+
+    long getSamplesWritten();
+
+    /**
+     * Completa el registro (cabeceras con el número de muestras, anotaciones pendientes) y cierra.
+     */
+    @Override
+    void close() throws IOException;
+}
@@ -0,0 +1,371 @@
+package com.streelet.ecg_java_app.interchange;
+
+import com.streelet.ecg_java_app.serial.SerialDataListener;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Lee un archivo EDF o EDF+ mapeándolo en memoria: las muestras se decodifican directamente
+ * del mapeo, sin copiar el archivo al heap, así que un registro de cientos de MB se puede
+ * recorrer o reproducir hacia el procesamiento a la velocidad del disco.
+ *
+ * Los registros EDF+D (discontinuos) se leen como si fueran continuos.
+ */
+public class EdfReader {
+
+    static final String ANNOTATIONS_LABEL = "EDF Annotations";
+
+    private static final DateTimeFormatter START = DateTimeFormatter.ofPattern("dd.MM.yy HH.mm.ss");
+
+    private final Path file;
+    private final MappedByteBuffer data;
+
+    private final String patientIdentification;
+    private final String recordingIdentification;
+    private final String startDate;
+    private final String startTime;
+    private final int headerBytes;
+    private final String reserved;
+    private final long recordCount;
+    private final double recordDurationSeconds;
+
+    private final String[] labels;
+    private final String[] physicalDimensions;
+    private final double[] physicalMin;
+    private final double[] physicalMax;
+    private final int[] digitalMin;
+    private final int[] digitalMax;
+    private final int[] samplesPerRecord;
+    // Desplazamiento en bytes de cada señal dentro de un registro de datos
+    private final int[] signalOffsets;
+    private final int recordBytes;
+    private final int annotationSignal;
+
+    /**
+     * @throws IOException Si el archivo no se puede leer, no es EDF o supera 2 GiB.
+     */
+    public EdfReader(Path file) throws IOException {
+        this.file = file;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Archivo EDF demasiado grande para mapearlo entero: " + file);
+            }
+            if (size < 256) {
+                throw new IOException("Archivo EDF demasiado corto: " + file);
+            }
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            data.order(ByteOrder.LITTLE_ENDIAN);
+        }
+        if (!text(0, 8).equals("0")) {
+            throw new IOException("No es un archivo EDF: " + file);
+        }
+        patientIdentification = text(8, 80);
+        recordingIdentification = text(88, 80);
+        startDate = text(168, 8);
+        startTime = text(176, 8);
+        headerBytes = integer(184, 8);
+        reserved = text(192, 44);
+        long declaredRecords = integer(236, 8);
+        recordDurationSeconds = decimal(244, 8);
+        int signals = integer(252, 4);
+        if (signals <= 0 || headerBytes != 256 * (signals + 1) || data.capacity() < headerBytes) {
+            throw new IOException("Cabecera EDF inconsistente: " + file);
+        }
+
+        labels = new String[signals];
+        physicalDimensions = new String[signals];
+        physicalMin = new double[signals];
+        physicalMax = new double[signals];
+        digitalMin = new int[signals];
+        digitalMax = new int[signals];
+        samplesPerRecord = new int[signals];
+        signalOffsets = new int[signals];
+        int at = 256;
+        for (int s = 0; s < signals; s++) {
+            labels[s] = text(at + s * 16, 16);
+        }
+        at += signals * (16 + 80);
+        for (int s = 0; s < signals; s++) {
+            physicalDimensions[s] = text(at + s * 8, 8);
+            physicalMin[s] = decimal(at + (signals + s) * 8, 8);
+            physicalMax[s] = decimal(at + (2 * signals + s) * 8, 8);
+            digitalMin[s] = integer(at + (3 * signals + s) * 8, 8);
+            digitalMax[s] = integer(at + (4 * signals + s) * 8, 8);
+        }
+        at += signals * (5 * 8 + 80);
+        int bytes = 0;
+        int annotations = -1;
+        for (int s = 0; s < signals; s++) {
+            samplesPerRecord[s] = integer(at + s * 8, 8);
+            signalOffsets[s] = bytes;
+            bytes += samplesPerRecord[s] * 2;
+            if (annotations < 0 && labels[s].equals(ANNOTATIONS_LABEL)) {
+                annotations = s;
+            }
+        }
+        recordBytes = bytes;
+        annotationSignal = annotations;
+
+        // Un escritor interrumpido deja -1: se cuentan los registros completos del archivo
+        long available = recordBytes == 0 ? 0 : (data.capacity() - headerBytes) / recordBytes;
+        recordCount = declaredRecords < 0 ? available : Math.min(declaredRecords, available);
+    }
+
+    // --- Cabecera ---
+
+    public Path getFile() {
+        return file;
+    }
+
+    public boolean isEdfPlus() {
+        return reserved.startsWith("EDF+");
+    }
+
+    public String getPatientIdentification() {
+        return patientIdentification;
+    }
+
+    public String getRecordingIdentification() {
+        return recordingIdentification;
+    }
+
+    /**
+     * @return Fecha y hora de inicio, o null si la cabecera no la tiene en el formato estándar.
+     */
+    public LocalDateTime getStartDateTime() {
+        try {
+            LocalDateTime start = LocalDateTime.parse(startDate + " " + startTime, START);
+            // EDF: los años 85-99 son 1985-1999
+            return start.getYear() >= 2085 ? start.minusYears(100) : start;
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    public double getRecordDurationSeconds() {
+        return recordDurationSeconds;
+    }
+
+    public int getSignalCount() {
+        return labels.length;
+    }
+
+    public String getSignalLabel(int signal) {
+        return labels[signal];
+    }
+
+    /**
+     * @return Índice de la primera señal con esa etiqueta, o -1.
+     */
+    public int findSignal(String label) {
+        for (int s = 0; s < labels.length; s++) {
+            if (labels[s].equals(label)) {
+                return s;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return La primera señal que no es de anotaciones, o -1.
+     */
+    public int findFirstDataSignal() {
+        for (int s = 0; s < labels.length; s++) {
+            if (s != annotationSignal && !labels[s].equals(ANNOTATIONS_LABEL)) {
+                return s;
+            }
+        }
+        return -1;
+    }
+
+    public int getSamplesPerRecord(int signal) {
+        return samplesPerRecord[signal];
+    }
+
+    public double getSampleRateHz(int signal) {
+        return samplesPerRecord[signal] / recordDurationSeconds;
+    }
+
+    public long getSampleCount(int signal) {
+        return recordCount * samplesPerRecord[signal];
+    }
+
+    public String getPhysicalDimension(int signal) {
+        return physicalDimensions[signal];
+    }
+
+    public int getDigitalMin(int signal) {
+        return digitalMin[signal];
+    }
+
+    public int getDigitalMax(int signal) {
+        return digitalMax[signal];
+    }
+
+    /**
+     * Convierte un valor digital de la señal a unidades físicas ({@link #getPhysicalDimension}).
+     */
+    public double toPhysical(int signal, int digital) {
+        double scale = (physicalMax[signal] - physicalMin[signal]) / (digitalMax[signal] - digitalMin[signal]);
+        return physicalMin[signal] + (digital - digitalMin[signal]) * scale;
+    }
+
+    // --- Muestras ---
+
+    /**
+     * Copia valores digitales de una señal, decodificándolos directamente del mapeo.
+     *
+     * @param fromSample Primera muestra (desde el inicio del registro).
+     * @return Muestras copiadas (menos que {@code length} al llegar al final).
+     */
+    public int readSamples(int signal, long fromSample, int[] dst, int offset, int length) {
+        final int perRecord = samplesPerRecord[signal];
+        long available = getSampleCount(signal) - fromSample;
+        int count = (int) Math.max(0, Math.min(length, available));
+        long recordIndex = fromSample / perRecord;
+        int inRecord = (int) (fromSample % perRecord);
+        int done = 0;
+        while (done < count) {
+            int run = Math.min(count - done, perRecord - inRecord);
+            int position = (int) (headerBytes + recordIndex * recordBytes) + signalOffsets[signal] + inRecord * 2;
+            for (int i = 0; i < run; i++, position += 2) {
+                dst[offset + done + i] = data.getShort(position);
+            }
+            done += run;
+            recordIndex++;
+            inRecord = 0;
+        }
+        return count;
+    }
+
+    /**
+     * Entrega toda la señal a un oyente en lotes, sin pausas (a la velocidad del disco), como
+     * si llegara de una fuente: el carril de secuencia es el índice de muestra.
+     *
+     * @return Muestras entregadas.
+     */
+    public long replay(SerialDataListener listener, int signal, int batchSize) {
+        int[] batch = new int[batchSize];
+        long total = getSampleCount(signal);
+        long position = 0;
+        while (position < total) {
+            int count = readSamples(signal, position, batch, 0, batchSize);
+            listener.onSamples(batch, 0, count, position, System.nanoTime());
+            position += count;
+        }
+        return position;
+    }
+
+    // --- Anotaciones ---
+
+    /**
+     * Recorre los TAL de la señal de anotaciones EDF+ (sin los TAL de tiempo de cada registro).
+     * No hace nada si el archivo no tiene anotaciones.
+     */
+    public void readAnnotations(AnnotationVisitor visitor) {
+        if (annotationSignal < 0) {
+            return;
+        }
+        final int length = samplesPerRecord[annotationSignal] * 2;
+        for (long r = 0; r < recordCount; r++) {
+            int start = (int) (headerBytes + r * recordBytes) + signalOffsets[annotationSignal];
+            readTals(start, start + length, visitor);
+        }
+    }
+
+    /**
+     * TAL: "+onset[\025duración]\024texto\024...\024\0". Los registros terminan con ceros.
+     */
+    private void readTals(int position, int end, AnnotationVisitor visitor) {
+        while (position < end) {
+            byte first = data.get(position);
+            if (first != '+' && first != '-') {
+                return;
+            }
+            int onsetEnd = position;
+            while (onsetEnd < end && data.get(onsetEnd) != 20 && data.get(onsetEnd) != 21) {
+                onsetEnd++;
+            }
+            if (onsetEnd >= end) {
+                return;
+            }
+            double onset;
+            try {
+                onset = Double.parseDouble(ascii(position, onsetEnd));
+            } catch (NumberFormatException e) {
+                return;
+            }
+            int at = onsetEnd;
+            while (at < end && data.get(at) != 20) {
+                at++;
+            }
+            at++;
+            // Textos separados por \024 hasta el \0 final
+            while (at < end && data.get(at) != 0) {
+                int textEnd = at;
+                while (textEnd < end && data.get(textEnd) != 20) {
+                    textEnd++;
+                }
+                if (textEnd > at) {
+                    visitor.onAnnotation(onset, utf8(at, textEnd));
+                }
+                at = textEnd + 1;
+            }
+            position = at + 1;
+        }
+    }
+
+    // --- Campos ---
+
+    private String text(int offset, int width) {
+        return ascii(offset, offset + width).trim();
+    }
+
+    private int integer(int offset, int width) throws IOException {
+        String value = text(offset, width);
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IOException("Campo numérico inválido en la cabecera EDF (" + value + "): " + file);
+        }
+    }
+
+    private double decimal(int offset, int width) throws IOException {
+        String value = text(offset, width);
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new IOException("Campo numérico inválido en la cabecera EDF (" + value + "): " + file);
+        }
+    }
+
+    private String ascii(int from, int to) {
+        byte[] bytes = new byte[to - from];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = data.get(from + i);
+        }
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+
+    private String utf8(int from, int to) {
+        byte[] bytes = new byte[to - from];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = data.get(from + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,387 @@
+package com.streelet.ecg_java_app.interchange;
+
+import com.streelet.ecg_java_app.buffer.SampleRingBuffer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+
+/**
+ * Escribe un registro EDF+ continuo (EDF+C) en streaming: una señal de ECG en cuentas del ADC
+ * (la cabecera lleva la conversión a µV) y una señal "EDF Annotations" con los latidos y los
+ * mensajes de estado.
+ *
+ * Cada registro de datos dura 1 s. Las muestras se codifican directamente en el registro en
+ * curso y este se escribe al completarse; el número de registros de la cabecera se completa al
+ * cerrar (si el proceso cae antes queda en -1, y {@link EdfReader} lo deduce del tamaño).
+ *
+ * Las anotaciones se reordenan por muestra ({@link AnnotationOrder}) y se guardan como TAL en
+ * el registro que se esté escribiendo cuando este las ha dejado atrás; si no caben en el espacio
+ * reservado, pasan al siguiente (su instante sigue siendo el correcto). Si al cerrar quedan
+ * anotaciones que no caben en el último registro, se añaden registros con la línea base para
+ * llevarlas.
+ */
+public class EdfWriter implements EcgRecordWriter {
+
+    static final int RECORD_SECONDS = 1;
+    // Espacio para anotaciones en cada registro (bytes; la señal de anotaciones usa 2 por "muestra")
+    static final int ANNOTATION_BYTES = 128;
+    // El TAL de tiempo de cada registro ("+NNNNNNN\024\024\0") como mucho ocupa esto
+    private static final int TIMEKEEPING_TAL_MAX_BYTES = 16;
+    // Lo que un TAL de anotación ocupa además del texto: "+", instante, fracción y separadores
+    private static final int TAL_OVERHEAD_BYTES = 32;
+    private static final int MAX_PENDING_ANNOTATION_BYTES = 64 * 1024;
+
+    private static final DateTimeFormatter HEADER_DATE = DateTimeFormatter.ofPattern("dd.MM.yy");
+    private static final DateTimeFormatter HEADER_TIME = DateTimeFormatter.ofPattern("HH.mm.ss");
+    private static final DateTimeFormatter EDF_PLUS_DATE = DateTimeFormatter.ofPattern("dd-MMM-yyyy", Locale.ENGLISH);
+
+    private final RecordingInfo info;
+    private final FileChannel channel;
+    private final int samplesPerRecord;
+    private final int digitalMin;
+    private final int digitalMax;
+    private final ByteBuffer record;
+    private final int[] drainValues;
+
+    private int samplesInRecord = 0;
+    private long recordsWritten = 0;
+    private long samplesWritten = 0;
+
+    // TAL pendientes de escribir, ya codificados
+    private final byte[] pendingAnnotations = new byte[MAX_PENDING_ANNOTATION_BYTES];
+    private int pendingLength = 0;
+    private final AnnotationOrder annotationOrder;
+    private final AnnotationOrder.Sink annotationSink = this::appendAnnotation;
+    private long droppedAnnotations = 0;
+    private long annotationRecords = 0;
+    private boolean closed = false;
+
+    /**
+     * Crea (o reemplaza) el archivo y escribe la cabecera.
+     */
+    public EdfWriter(Path file, RecordingInfo info) throws IOException {
+        AdcCalibration calibration = info.getCalibration();
+        if (calibration.getDigitalMin() < Short.MIN_VALUE || calibration.getDigitalMax() > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("El rango del ADC no cabe en 16 bits: " + calibration);
+        }
+        this.info = info;
+        this.samplesPerRecord = info.getSampleRateHz() * RECORD_SECONDS;
+        this.digitalMin = calibration.getDigitalMin();
+        this.digitalMax = calibration.getDigitalMax();
+        this.record = ByteBuffer.allocate(samplesPerRecord * 2 + ANNOTATION_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        this.drainValues = new int[samplesPerRecord];
+        this.annotationOrder = new AnnotationOrder(info.getSampleRateHz());
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE);
+        try {
+            writeFully(ByteBuffer.wrap(buildHeader(-1)));
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public void writeSamples(int[] values, int offset, int length) throws IOException {
+        while (length > 0) {
+            int count = Math.min(length, samplesPerRecord - samplesInRecord);
+            encode(values, offset, count);
+            offset += count;
+            length -= count;
+        }
+        annotationOrder.release(samplesWritten, annotationSink);
+    }
+
+    @Override
+    public long drainFrom(SampleRingBuffer buffer) throws IOException {
+        long total = 0;
+        int count;
+        while ((count = buffer.drain(drainValues, null, 0, samplesPerRecord - samplesInRecord)) > 0) {
+            encode(drainValues, 0, count);
+            total += count;
+        }
+        annotationOrder.release(samplesWritten, annotationSink);
+        return total;
+    }
+
+    @Override
+    public void addBeat(long sampleIndex) throws IOException {
+        annotationOrder.add(sampleIndex, null);
+        annotationOrder.release(samplesWritten, annotationSink);
+    }
+
+    @Override
+    public void addStatus(long sampleIndex, String message) throws IOException {
+        annotationOrder.add(sampleIndex, message);
+        annotationOrder.release(samplesWritten, annotationSink);
+    }
+
+    @Override
+    public long getSamplesWritten() {
+        return samplesWritten;
+    }
+
+    public long getRecordsWritten() {
+        return recordsWritten;
+    }
+
+    /** Anotaciones que no llegaron a escribirse (cola llena). */
+    public long getDroppedAnnotations() {
+        return droppedAnnotations;
+    }
+
+    /** Anotaciones que llegaron demasiado tarde para ordenarlas (se escriben igual, con su instante). */
+    public long getLateAnnotations() {
+        return annotationOrder.getLateAnnotations();
+    }
+
+    /** Registros añadidos al cerrar solo para llevar anotaciones pendientes. */
+    public long getAnnotationRecords() {
+        return annotationRecords;
+    }
+
+    /**
+     * Completa el último registro con la línea base, escribe el número de registros y cierra.
+     * Las anotaciones que no caben en el último registro van en registros de línea base añadidos.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            annotationOrder.releaseAll(annotationSink);
+            if (samplesInRecord > 0) {
+                fillRecordWithBaseline();
+                writeRecord();
+            }
+            // Cada registro lleva al menos un TAL, así que el bucle termina
+            while (pendingLength > 0) {
+                fillRecordWithBaseline();
+                writeRecord();
+                annotationRecords++;
+            }
+            channel.write(ByteBuffer.wrap(buildHeader(recordsWritten)), 0);
+            channel.force(false);
+        } finally {
+            channel.close();
+        }
+    }
+
+    // --- Registros de datos ---
+
+    private void fillRecordWithBaseline() {
+        int fill = Math.max(digitalMin, Math.min(digitalMax, info.getCalibration().getBaseline()));
+        for (int i = samplesInRecord; i < samplesPerRecord; i++) {
+            record.putShort(i * 2, (short) fill);
+        }
+        samplesInRecord = samplesPerRecord;
+    }
+
+    private void encode(int[] values, int offset, int count) throws IOException {
+        int position = samplesInRecord * 2;
+        for (int i = 0; i < count; i++, position += 2) {
+            int value = values[offset + i];
+            record.putShort(position, (short) (value < digitalMin ? digitalMin : value > digitalMax ? digitalMax : value));
+        }
+        samplesInRecord += count;
+        samplesWritten += count;
+        if (samplesInRecord == samplesPerRecord) {
+            writeRecord();
+        }
+    }
+
+    private void writeRecord() throws IOException {
+        int annotations = samplesPerRecord * 2;
+        for (int i = annotations; i < record.capacity(); i++) {
+            record.put(i, (byte) 0);
+        }
+        // TAL de tiempo del registro: "+<inicio>\024\024\0"
+        int at = annotations;
+        record.put(at++, (byte) '+');
+        at = putDigits(record, at, recordsWritten * RECORD_SECONDS);
+        record.put(at++, (byte) 20);
+        record.put(at++, (byte) 20);
+        record.put(at++, (byte) 0);
+
+        // TAL pendientes completos que quepan
+        int space = record.capacity() - at;
+        int take = 0;
+        for (int i = 0; i < pendingLength && i < space; i++) {
+            if (pendingAnnotations[i] == 0) {
+                take = i + 1;
+            }
+        }
+        for (int i = 0; i < take; i++) {
+            record.put(at + i, pendingAnnotations[i]);
+        }
+        if (take > 0) {
+            System.arraycopy(pendingAnnotations, take, pendingAnnotations, 0, pendingLength - take);
+            pendingLength -= take;
+        }
+
+        record.clear();
+        writeFully(record);
+        record.clear();
+        recordsWritten++;
+        samplesInRecord = 0;
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    // --- Anotaciones ---
+
+    /**
+     * Codifica el TAL "+<segundos>\024<texto>\024\0" al final de la cola de pendientes; el texto
+     * es el mensaje de estado o, si es null, el de latido.
+     */
+    private void appendAnnotation(long sampleIndex, String message) {
+        String text = message == null ? AnnotationVisitor.BEAT : PatientFields.ascii(message);
+        byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+        int textLength = Math.min(bytes.length, ANNOTATION_BYTES - TIMEKEEPING_TAL_MAX_BYTES - TAL_OVERHEAD_BYTES);
+        if (pendingLength + textLength + TAL_OVERHEAD_BYTES > pendingAnnotations.length) {
+            droppedAnnotations++;
+            return;
+        }
+        // Instante en décimas de milisegundo, exacto para cualquier frecuencia habitual
+        long tenths = Math.round(Math.max(0, sampleIndex) * 10_000.0 / info.getSampleRateHz());
+        int at = pendingLength;
+        pendingAnnotations[at++] = '+';
+        at = putDigits(pendingAnnotations, at, tenths / 10_000);
+        int fraction = (int) (tenths % 10_000);
+        if (fraction != 0) {
+            pendingAnnotations[at++] = '.';
+            int digits = 4;
+            while (fraction % 10 == 0) {
+                fraction /= 10;
+                digits--;
+            }
+            for (int i = digits - 1; i >= 0; i--) {
+                pendingAnnotations[at + i] = (byte) ('0' + fraction % 10);
+                fraction /= 10;
+            }
+            at += digits;
+        }
+        pendingAnnotations[at++] = 20;
+        System.arraycopy(bytes, 0, pendingAnnotations, at, textLength);
+        at += textLength;
+        pendingAnnotations[at++] = 20;
+        pendingAnnotations[at++] = 0;
+        pendingLength = at;
+    }
+
+    private static int putDigits(byte[] dst, int at, long value) {
+        int digits = 1;
+        for (long rest = value / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        for (int i = digits - 1; i >= 0; i--) {
+            dst[at + i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        return at + digits;
+    }
+
+    private static int putDigits(ByteBuffer dst, int at, long value) {
+        String digits = Long.toString(value);
+        for (int i = 0; i < digits.length(); i++) {
+            dst.put(at + i, (byte) digits.charAt(i));
+        }
+        return at + digits.length();
+    }
+
+    // --- Cabecera ---
+
+    private byte[] buildHeader(long recordCount) {
+        final int signals = 2;
+        final int headerBytes = 256 * (signals + 1);
+        AdcCalibration calibration = info.getCalibration();
+        LocalDate startDate = info.getStartTime().toLocalDate();
+
+        StringBuilder header = new StringBuilder(headerBytes);
+        field(header, "0", 8);
+        field(header, patientIdentification(), 80);
+        field(header, "Startdate " + edfPlusDate(startDate) + " X X " + subfield(info.getEquipment()), 80);
+        field(header, info.getStartTime().format(HEADER_DATE), 8);
+        field(header, info.getStartTime().format(HEADER_TIME), 8);
+        field(header, Integer.toString(headerBytes), 8);
+        field(header, "EDF+C", 44);
+        field(header, Long.toString(recordCount), 8);
+        field(header, Integer.toString(RECORD_SECONDS), 8);
+        field(header, Integer.toString(signals), 4);
+
+        field(header, PatientFields.ascii(info.getSignalLabel()), 16);
+        field(header, EdfReader.ANNOTATIONS_LABEL, 16);
+        field(header, "AgAgCl electrode", 80);
+        field(header, "", 80);
+        field(header, "uV", 8);
+        field(header, "", 8);
+        field(header, number(calibration.toMicrovolts(digitalMin)), 8);
+        field(header, "-1", 8);
+        field(header, number(calibration.toMicrovolts(digitalMax)), 8);
+        field(header, "1", 8);
+        field(header, Integer.toString(digitalMin), 8);
+        field(header, Integer.toString(Short.MIN_VALUE), 8);
+        field(header, Integer.toString(digitalMax), 8);
+        field(header, Integer.toString(Short.MAX_VALUE), 8);
+        field(header, "", 80);
+        field(header, "", 80);
+        field(header, Integer.toString(samplesPerRecord), 8);
+        field(header, Integer.toString(ANNOTATION_BYTES / 2), 8);
+        field(header, "", 32);
+        field(header, "", 32);
+        return header.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /** Identificación EDF+ del paciente: "código sexo nacimiento nombre" ("X" = desconocido). */
+    private String patientIdentification() {
+        LocalDate birth = PatientFields.birthDate(info.getPatient());
+        return "X " + PatientFields.sexCode(info.getPatient()) + " "
+                + (birth != null ? edfPlusDate(birth) : "X") + " "
+                + subfield(PatientFields.name(info.getPatient()));
+    }
+
+    private static String edfPlusDate(LocalDate date) {
+        return date.format(EDF_PLUS_DATE).toUpperCase(Locale.ROOT);
+    }
+
+    /** Los subcampos EDF+ van separados por espacios: dentro de uno se usa '_'. */
+    private static String subfield(String text) {
+        String ascii = PatientFields.ascii(text);
+        return ascii.isEmpty() ? "X" : ascii.replace(' ', '_');
+    }
+
+    private static void field(StringBuilder header, String value, int width) {
+        if (value.length() > width) {
+            value = value.substring(0, width);
+        }
+        header.append(value);
+        for (int i = value.length(); i < width; i++) {
+            header.append(' ');
+        }
+    }
+
+    /** Número con tantos decimales como quepan en 8 caracteres. */
+    private static String number(double value) {
+        for (int decimals = 3; decimals > 0; decimals--) {
+            String text = String.format(Locale.ROOT, "%." + decimals + "f", value);
+            if (text.length() <= 8) {
+                return text;
+            }
+        }
+        return Long.toString(Math.round(value));
+    }
+}
@@ -0,0 +1,63 @@
+package com.streelet.ecg_java_app.interchange;
+
+import com.streelet.ecg_java_app.StartController.PatientData;
+
+import java.text.Normalizer;
+import java.time.LocalDate;
+import java.time.Period;
+
+/**
+ * Conversión de {@link PatientData} a los campos de texto de los formatos clínicos, que solo
+ * admiten ASCII imprimible.
+ */
+final class PatientFields {
+
+    private PatientFields() {
+    }
+
+    /**
+     * Quita tildes y reemplaza lo que no sea ASCII imprimible ("Peña" -> "Pena").
+     */
+    static String ascii(String text) {
+        if (text == null) {
+            return "";
+        }
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        StringBuilder out = new StringBuilder(decomposed.length());
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK) {
+                continue;
+            }
+            out.append(c >= 32 && c < 127 ? c : '_');
+        }
+        return out.toString().trim();
+    }
+
+    /** "M", "F" o "X" (desconocido), según el género elegido en la pantalla de inicio. */
+    static String sexCode(PatientData patient) {
+        String gender = patient != null ? patient.getGender() : null;
+        if (gender == null || gender.isEmpty()) {
+            return "X";
+        }
+        char first = Character.toUpperCase(gender.charAt(0));
+        return first == 'M' ? "M" : first == 'F' ? "F" : "X";
+    }
+
+    static String name(PatientData patient) {
+        return patient != null ? ascii(patient.getName()) : "";
+    }
+
+    static LocalDate birthDate(PatientData patient) {
+        return patient != null ? patient.getBirthDate() : null;
+    }
+
+    /** Edad en años al inicio del registro, o -1 si no se conoce la fecha de nacimiento. */
+    static int age(PatientData patient, LocalDate onDate) {
+        LocalDate birth = birthDate(patient);
+        if (birth == null || birth.isAfter(onDate)) {
+            return -1;
+        }
+        return Period.between(birth, onDate).getYears();
+    }
+}
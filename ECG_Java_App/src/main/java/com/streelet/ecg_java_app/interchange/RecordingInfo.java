@@ -0,0 +1,80 @@
+package com.streelet.ecg_java_app.interchange;
+
+import com.streelet.ecg_java_app.StartController.PatientData;
+
+import java.time.LocalDateTime;
+
+/**
+ * Datos comunes que los escritores de {@link EdfWriter} y {@link WfdbWriter} ponen en la
+ * cabecera: frecuencia, calibración, paciente, inicio y equipo.
+ */
+public class RecordingInfo {
+
+    private final int sampleRateHz;
+    private AdcCalibration calibration = AdcCalibration.TEN_BIT_FRONT_END;
+    private PatientData patient;
+    private LocalDateTime startTime = LocalDateTime.now();
+    private String equipment = "ECG_Java_App";
+    private String signalLabel = "ECG";
+
+    public RecordingInfo(int sampleRateHz) {
+        if (sampleRateHz <= 0) {
+            throw new IllegalArgumentException("Frecuencia de muestreo inválida: " + sampleRateHz);
+        }
+        this.sampleRateHz = sampleRateHz;
+    }
+
+    /** Calibración del ADC (por defecto {@link AdcCalibration#TEN_BIT_FRONT_END}). */
+    public RecordingInfo calibration(AdcCalibration value) {
+        calibration = value;
+        return this;
+    }
+
+    /** Paciente (puede ser null: los campos quedan como desconocidos). */
+    public RecordingInfo patient(PatientData value) {
+        patient = value;
+        return this;
+    }
+
+    /** Fecha y hora de la primera muestra (por defecto, ahora). */
+    public RecordingInfo startTime(LocalDateTime value) {
+        startTime = value;
+        return this;
+    }
+
+    /** Equipo de registro (por defecto "ECG_Java_App"). */
+    public RecordingInfo equipment(String value) {
+        equipment = value;
+        return this;
+    }
+
+    /** Nombre de la derivación (por defecto "ECG"). */
+    public RecordingInfo signalLabel(String value) {
+        signalLabel = value;
+        return this;
+    }
+
+    public int getSampleRateHz() {
+        return sampleRateHz;
+    }
+
+    public AdcCalibration getCalibration() {
+        return calibration;
+    }
+
+    public PatientData getPatient() {
+        return patient;
+    }
+
+    public LocalDateTime getStartTime() {
+        return startTime;
+    }
+
+    public String getEquipment() {
+        return equipment;
+    }
+
+    public String getSignalLabel() {
+        return signalLabel;
+    }
+}
@@ -0,0 +1,165 @@
+package com.streelet.ecg_java_app.interchange;
+
+import com.streelet.ecg_java_app.StartController.PatientData;
+import com.streelet.ecg_java_app.log.Log;
+import com.streelet.ecg_java_app.log.Logger;
+import com.streelet.ecg_java_app.recording.SessionReader;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+
+/**
+ * Exporta una sesión grabada por {@link com.streelet.ecg_java_app.recording.SessionRecorder}
+ * a un formato de intercambio, en una sola pasada por los segmentos mapeados.
+ *
+ * Los huecos en la secuencia de muestras (pérdidas en la fuente) se rellenan repitiendo la
+ * última muestra, para que el tiempo del registro exportado siga siendo el real. Los latidos
+ * llevan el índice de la secuencia de la fuente, como las muestras: se sitúan con el mismo
+ * desplazamiento que las muestras del tramo en curso.
+ *
+ * Uso desde la línea de comandos:
+ * {@code SessionExporter <directorio> <sesión> [directorio de salida]} escribe EDF+ y WFDB.
+ */
+public final class SessionExporter {
+
+    private static final Logger LOG = Log.get(SessionExporter.class);
+
+    // Huecos mayores no se rellenan (la fuente se reinició o la secuencia no es continua)
+    private static final int MAX_GAP_SECONDS = 60;
+    private static final long LOG_FLUSH_TIMEOUT_MS = 1000;
+
+    private SessionExporter() {
+    }
+
+    /**
+     * Datos de cabecera de una sesión: su frecuencia y su hora de inicio.
+     */
+    public static RecordingInfo recordingInfo(SessionReader session, PatientData patient) {
+        LocalDateTime start = LocalDateTime.ofInstant(Instant.ofEpochMilli(session.getSessionEpochMillis()),
+                ZoneId.systemDefault());
+        return new RecordingInfo(session.getSampleRateHz()).patient(patient).startTime(start);
+    }
+
+    /**
+     * Escribe toda la sesión en {@code writer} (que no se cierra).
+     *
+     * @return Muestras escritas, incluido el relleno de huecos.
+     */
+    public static long export(SessionReader session, EcgRecordWriter writer) throws IOException {
+        final int sampleRateHz = session.getSampleRateHz();
+        final long maxGap = (long) MAX_GAP_SECONDS * sampleRateHz;
+        final int[] gapFill = new int[1024];
+
+        SessionReader.RecordVisitor visitor = new SessionReader.RecordVisitor() {
+            private long nextSequence = -1;
+            private long written = 0;
+            // Posición en el registro exportado menos secuencia, para el tramo en curso
+            private long sequenceOffset = 0;
+            private int lastValue;
+            private long lastTimestampNanos;
+            private long lastTimestampIndex;
+
+            @Override
+            public void onSamples(long firstSequence, long firstTimestampNanos, int[] values, int count) {
+                try {
+                    long gap = nextSequence < 0 ? 0 : firstSequence - nextSequence;
+                    if (gap > 0 && gap <= maxGap) {
+                        Arrays.fill(gapFill, lastValue);
+                        for (long remaining = gap; remaining > 0; ) {
+                            int n = (int) Math.min(remaining, gapFill.length);
+                            writer.writeSamples(gapFill, 0, n);
+                            remaining -= n;
+                        }
+                        written += gap;
+                    }
+                    sequenceOffset = written - firstSequence;
+                    lastTimestampNanos = firstTimestampNanos;
+                    lastTimestampIndex = written;
+                    writer.writeSamples(values, 0, count);
+                    written += count;
+                    nextSequence = firstSequence + count;
+                    lastValue = values[count - 1];
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            @Override
+            public void onPeak(long sampleIndex, long timestampNanos, int value) {
+                try {
+                    long index = sampleIndex + sequenceOffset;
+                    if (index >= 0) {
+                        writer.addBeat(index);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            @Override
+            public void onStatus(long timestampNanos, String message) {
+                // Los mensajes solo tienen instante: se sitúan respecto del último lote de muestras
+                long index = nextSequence < 0 ? 0
+                        : lastTimestampIndex + (timestampNanos - lastTimestampNanos) * sampleRateHz / 1_000_000_000L;
+                try {
+                    writer.addStatus(Math.max(0, index), message);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+        try {
+            session.read(visitor);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return writer.getSamplesWritten();
+    }
+
+    /**
+     * Exporta la sesión a {@code <sesión>.edf} y al registro WFDB {@code <sesión>} (con '_' en
+     * lugar de los caracteres que WFDB no admite) en {@code outputDirectory}.
+     */
+    public static void exportAll(SessionReader session, String sessionName, PatientData patient,
+                                 Path outputDirectory) throws IOException {
+        RecordingInfo info = recordingInfo(session, patient);
+        long start = System.nanoTime();
+        EdfWriter edf = new EdfWriter(outputDirectory.resolve(sessionName + ".edf"), info);
+        try (edf) {
+            export(session, edf);
+        }
+        if (edf.getLateAnnotations() > 0 || edf.getDroppedAnnotations() > 0) {
+            LOG.warn("{}.edf: {} anotaciones fuera de orden, {} descartadas").arg(sessionName)
+                    .arg(edf.getLateAnnotations()).arg(edf.getDroppedAnnotations()).log();
+        }
+        String recordName = sessionName.replaceAll("[^A-Za-z0-9_]", "_");
+        long samples;
+        WfdbWriter wfdb = new WfdbWriter(outputDirectory, recordName, info);
+        try (wfdb) {
+            samples = export(session, wfdb);
+        }
+        if (wfdb.getLateAnnotations() > 0) {
+            LOG.warn("{}: {} anotaciones llegaron fuera de orden y se pusieron junto a la anterior")
+                    .arg(recordName).arg(wfdb.getLateAnnotations()).log();
+        }
+        LOG.info("{} exportada a EDF+ y WFDB ({} muestras) en {} ms").arg(sessionName).arg(samples)
+                .arg((System.nanoTime() - start) / 1_000_000).log();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Uso: SessionExporter <directorio> <sesión> [directorio de salida]");
+            System.exit(2);
+        }
+        Path directory = Paths.get(args[0]);
+        Path output = args.length > 2 ? Paths.get(args[2]) : directory;
+        exportAll(new SessionReader(directory, args[1]), args[1], null, output);
+        Log.flush(LOG_FLUSH_TIMEOUT_MS);
+    }
+}
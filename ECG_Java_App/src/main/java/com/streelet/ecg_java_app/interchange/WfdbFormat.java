@@ -0,0 +1,62 @@
+package com.streelet.ecg_java_app.interchange;
+
+/**
+ * Constantes de los archivos WFDB de PhysioNet que usan {@link WfdbWriter} y {@link WfdbReader}:
+ * señal en formato 212 (dos muestras de 12 bits en 3 bytes) o 16, y anotaciones en formato MIT
+ * (palabras de 16 bits little endian: 6 bits de código y 10 de intervalo en muestras).
+ */
+final class WfdbFormat {
+
+    static final int FORMAT_212 = 212;
+    static final int FORMAT_16 = 16;
+
+    // Valor reservado para "muestra inválida" en formato 212
+    static final int INVALID_212 = -2048;
+    static final int MIN_212 = -2047;
+    static final int MAX_212 = 2047;
+
+    // Códigos de anotación
+    static final int NORMAL = 1;
+    static final int NOTE = 22;
+    // Pseudoanotaciones
+    static final int SKIP = 59;
+    static final int NUM = 60;
+    static final int SUB = 61;
+    static final int CHN = 62;
+    static final int AUX = 63;
+
+    static final int MAX_INTERVAL = 0x3FF;
+    static final int MAX_AUX_BYTES = 255;
+
+    // Mnemónicos de los códigos 0..41 (como los imprime rdann)
+    private static final String[] MNEMONICS = {
+        "", "N", "L", "R", "a", "V", "F", "J", "A", "S", "E", "j", "/", "Q", "~", "",
+        "|", "", "s", "T", "*", "D", "\"", "=", "p", "B", "^", "t", "+", "u", "?", "!",
+        "[", "]", "e", "n", "@", "x", "f", "(", ")", "r"
+    };
+
+    private WfdbFormat() {
+    }
+
+    /** Nombres de registro WFDB: letras, dígitos y '_'. */
+    static boolean isValidRecordName(String name) {
+        if (name == null || name.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (!(c == '_' || (c >= '0' && c <= '9') || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z'))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static String mnemonic(int code) {
+        return code < MNEMONICS.length && !MNEMONICS[code].isEmpty() ? MNEMONICS[code] : "[" + code + "]";
+    }
+
+    static int signExtend12(int value) {
+        return (value << 20) >> 20;
+    }
+}
@@ -0,0 +1,358 @@
+package com.streelet.ecg_java_app.interchange;
+
+import com.streelet.ecg_java_app.serial.SerialDataListener;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Lee un registro WFDB de PhysioNet ({@code .hea} y su archivo de señal en formato 212 o 16)
+ * mapeando la señal en memoria: las muestras se decodifican directamente del mapeo.
+ *
+ * Se admiten registros de un solo segmento con todas las señales en el mismo archivo y una
+ * muestra por señal y trama (el caso de MIT-BIH y de lo que escribe {@link WfdbWriter}).
+ */
+public class WfdbReader {
+
+    /** Comentario de la cabecera con el desplazamiento restado a las cuentas del ADC. */
+    static final String ADC_OFFSET_COMMENT = "#AdcOffset: ";
+
+    private final Path directory;
+    private final String recordName;
+    private final int signalCount;
+    private final double sampleRateHz;
+    private final long sampleCount;
+    private final String baseTime;
+    private final int format;
+    private final MappedByteBuffer data;
+
+    private final String[] descriptions;
+    private final double[] gains;
+    private final int[] baselines;
+    private final String[] units;
+    private final int[] initialValues;
+    private final List<String> comments = new ArrayList<>();
+    private int adcOffset = 0;
+
+    /**
+     * @throws IOException Si la cabecera no se puede leer o describe algo no soportado.
+     */
+    public WfdbReader(Path directory, String recordName) throws IOException {
+        this.directory = directory;
+        this.recordName = recordName;
+        Path headerFile = directory.resolve(recordName + ".hea");
+        List<String> lines = new ArrayList<>();
+        for (String line : Files.readAllLines(headerFile, StandardCharsets.ISO_8859_1)) {
+            String trimmed = line.trim();
+            if (trimmed.startsWith("#")) {
+                comments.add(trimmed.substring(1).trim());
+                if (trimmed.startsWith(ADC_OFFSET_COMMENT.trim())) {
+                    adcOffset = parseInt(trimmed.substring(ADC_OFFSET_COMMENT.trim().length()).trim(), headerFile);
+                }
+            } else if (!trimmed.isEmpty()) {
+                lines.add(trimmed);
+            }
+        }
+        if (lines.isEmpty()) {
+            throw new IOException("Cabecera WFDB vacía: " + headerFile);
+        }
+
+        // Línea del registro: nombre[/segmentos] señales [frecuencia[/contador][(base)] [muestras [hora [fecha]]]]
+        String[] record = lines.get(0).split("\\s+");
+        if (record[0].contains("/")) {
+            throw new IOException("Registros multisegmento no soportados: " + headerFile);
+        }
+        signalCount = record.length > 1 ? parseInt(record[1], headerFile) : 0;
+        if (signalCount <= 0 || lines.size() < 1 + signalCount) {
+            throw new IOException("Registro WFDB sin señales: " + headerFile);
+        }
+        sampleRateHz = record.length > 2 ? parseDouble(record[2].split("[/(]")[0], headerFile) : 250;
+        long declaredSamples = record.length > 3 ? parseLong(record[3], headerFile) : 0;
+        baseTime = record.length > 4 ? String.join(" ", Arrays.copyOfRange(record, 4, record.length)) : "";
+
+        // Líneas de señal: archivo formato ganancia[(base)][/unidades] bits cero inicial suma bloque descripción
+        descriptions = new String[signalCount];
+        gains = new double[signalCount];
+        baselines = new int[signalCount];
+        units = new String[signalCount];
+        initialValues = new int[signalCount];
+        String fileName = null;
+        int signalFormat = 0;
+        for (int s = 0; s < signalCount; s++) {
+            String[] fields = lines.get(1 + s).split("\\s+", 9);
+            if (fileName == null) {
+                fileName = fields[0];
+                signalFormat = parseInt(fields[1], headerFile);
+            } else if (!fileName.equals(fields[0]) || !fields[1].equals(Integer.toString(signalFormat))) {
+                throw new IOException("Todas las señales deben estar en el mismo archivo y formato: " + headerFile);
+            }
+            int adcZero = fields.length > 4 ? parseInt(fields[4], headerFile) : 0;
+            gains[s] = 200;
+            baselines[s] = adcZero;
+            units[s] = "mV";
+            if (fields.length > 2) {
+                parseGain(fields[2], s, headerFile);
+            }
+            initialValues[s] = fields.length > 5 ? parseInt(fields[5], headerFile) : 0;
+            descriptions[s] = fields.length > 8 ? fields[8] : "";
+        }
+        if (signalFormat != WfdbFormat.FORMAT_212 && signalFormat != WfdbFormat.FORMAT_16) {
+            throw new IOException("Formato de señal no soportado (" + signalFormat + "): " + headerFile);
+        }
+        format = signalFormat;
+
+        Path dataFile = directory.resolve(fileName);
+        try (FileChannel channel = FileChannel.open(dataFile, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Archivo de señal demasiado grande para mapearlo entero: " + dataFile);
+            }
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            data.order(ByteOrder.LITTLE_ENDIAN);
+        }
+        long storedValues = format == WfdbFormat.FORMAT_212 ? data.capacity() / 3 * 2 : data.capacity() / 2;
+        long available = storedValues / signalCount;
+        sampleCount = declaredSamples > 0 ? Math.min(declaredSamples, available) : available;
+    }
+
+    /** "ganancia[(base)][/unidades]" */
+    private void parseGain(String field, int signal, Path headerFile) throws IOException {
+        String gain = field;
+        int slash = gain.indexOf('/');
+        if (slash >= 0) {
+            units[signal] = gain.substring(slash + 1);
+            gain = gain.substring(0, slash);
+        }
+        int paren = gain.indexOf('(');
+        if (paren >= 0) {
+            baselines[signal] = parseInt(gain.substring(paren + 1, gain.indexOf(')', paren)), headerFile);
+            gain = gain.substring(0, paren);
+        }
+        double value = parseDouble(gain, headerFile);
+        // Ganancia 0 significa "sin calibrar": se usa la de por defecto
+        gains[signal] = value == 0 ? 200 : value;
+    }
+
+    private static int parseInt(String text, Path headerFile) throws IOException {
+        try {
+            return Integer.parseInt(text);
+        } catch (NumberFormatException e) {
+            throw new IOException("Campo numérico inválido (" + text + ") en " + headerFile);
+        }
+    }
+
+    private static long parseLong(String text, Path headerFile) throws IOException {
+        try {
+            return Long.parseLong(text);
+        } catch (NumberFormatException e) {
+            throw new IOException("Campo numérico inválido (" + text + ") en " + headerFile);
+        }
+    }
+
+    private static double parseDouble(String text, Path headerFile) throws IOException {
+        try {
+            return Double.parseDouble(text);
+        } catch (NumberFormatException e) {
+            throw new IOException("Campo numérico inválido (" + text + ") en " + headerFile);
+        }
+    }
+
+    // --- Cabecera ---
+
+    public String getRecordName() {
+        return recordName;
+    }
+
+    public int getSignalCount() {
+        return signalCount;
+    }
+
+    public double getSampleRateHz() {
+        return sampleRateHz;
+    }
+
+    /** Muestras por señal. */
+    public long getSampleCount() {
+        return sampleCount;
+    }
+
+    /** Hora y fecha de inicio tal como están en la cabecera ("HH:MM:SS DD/MM/YYYY"), o "". */
+    public String getBaseTime() {
+        return baseTime;
+    }
+
+    public int getFormat() {
+        return format;
+    }
+
+    public String getSignalDescription(int signal) {
+        return descriptions[signal];
+    }
+
+    /** Unidades digitales por unidad física ({@link #getUnits}). */
+    public double getGain(int signal) {
+        return gains[signal];
+    }
+
+    public int getBaseline(int signal) {
+        return baselines[signal];
+    }
+
+    public String getUnits(int signal) {
+        return units[signal];
+    }
+
+    public int getInitialValue(int signal) {
+        return initialValues[signal];
+    }
+
+    /** Líneas de comentario de la cabecera (sin '#'): edad, sexo, paciente... */
+    public List<String> getComments() {
+        return Collections.unmodifiableList(comments);
+    }
+
+    /**
+     * Desplazamiento que {@link WfdbWriter} restó a las cuentas del ADC (0 en otros registros).
+     */
+    public int getAdcOffset() {
+        return adcOffset;
+    }
+
+    public double toPhysical(int signal, int digital) {
+        return (digital - baselines[signal]) / gains[signal];
+    }
+
+    // --- Muestras ---
+
+    /**
+     * Copia valores digitales de una señal, decodificándolos directamente del mapeo.
+     *
+     * @return Muestras copiadas (menos que {@code length} al llegar al final).
+     */
+    public int readSamples(int signal, long fromSample, int[] dst, int offset, int length) {
+        int count = (int) Math.max(0, Math.min(length, sampleCount - fromSample));
+        long index = fromSample * signalCount + signal;
+        if (format == WfdbFormat.FORMAT_212) {
+            for (int i = 0; i < count; i++, index += signalCount) {
+                // Cada par de valores ocupa 3 bytes; el segundo lleva sus 4 bits altos en el byte del medio
+                int position = (int) (index >> 1) * 3;
+                int middle = data.get(position + 1) & 0xFF;
+                int value = (index & 1) == 0
+                        ? ((middle & 0x0F) << 8) | (data.get(position) & 0xFF)
+                        : ((middle & 0xF0) << 4) | (data.get(position + 2) & 0xFF);
+                dst[offset + i] = WfdbFormat.signExtend12(value);
+            }
+        } else {
+            for (int i = 0; i < count; i++, index += signalCount) {
+                dst[offset + i] = data.getShort((int) (index << 1));
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Entrega una señal a un oyente en lotes, sin pausas, sumando {@link #getAdcOffset()} para
+     * devolver las cuentas originales del ADC. El carril de secuencia es el índice de muestra.
+     *
+     * @return Muestras entregadas.
+     */
+    public long replay(SerialDataListener listener, int signal, int batchSize) {
+        int[] batch = new int[batchSize];
+        long position = 0;
+        while (position < sampleCount) {
+            int count = readSamples(signal, position, batch, 0, batchSize);
+            for (int i = 0; i < count; i++) {
+                batch[i] += adcOffset;
+            }
+            listener.onSamples(batch, 0, count, position, System.nanoTime());
+            position += count;
+        }
+        return position;
+    }
+
+    // --- Anotaciones ---
+
+    /**
+     * Recorre un archivo de anotaciones MIT ({@code <registro>.<anotador>}), también mapeado.
+     * Las notas con texto se entregan con su texto; el resto, con su mnemónico ("N", "V", ...).
+     *
+     * @throws IOException Si el archivo no existe o no se puede leer.
+     */
+    public void readAnnotations(String annotator, AnnotationVisitor visitor) throws IOException {
+        Path file = directory.resolve(recordName + "." + annotator);
+        MappedByteBuffer annotations;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Archivo de anotaciones demasiado grande: " + file);
+            }
+            annotations = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            annotations.order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        final int limit = annotations.capacity();
+        int position = 0;
+        long time = 0;
+        // La anotación se entrega cuando llega la siguiente, por si la sigue un AUX con su texto
+        int pendingCode = -1;
+        long pendingTime = 0;
+        String pendingAux = null;
+        while (position + 2 <= limit) {
+            int word = annotations.getShort(position) & 0xFFFF;
+            position += 2;
+            if (word == 0) {
+                break;
+            }
+            int code = word >>> 10;
+            int value = word & WfdbFormat.MAX_INTERVAL;
+            if (code == WfdbFormat.SKIP) {
+                if (position + 4 > limit) {
+                    break;
+                }
+                int high = annotations.getShort(position) & 0xFFFF;
+                int low = annotations.getShort(position + 2) & 0xFFFF;
+                time += (high << 16) | low;
+                position += 4;
+            } else if (code == WfdbFormat.AUX) {
+                byte[] text = new byte[Math.min(value, limit - position)];
+                for (int i = 0; i < text.length; i++) {
+                    text[i] = annotations.get(position + i);
+                }
+                position += (value + 1) & ~1;
+                pendingAux = new String(text, StandardCharsets.ISO_8859_1).trim();
+            } else if (code == WfdbFormat.NUM || code == WfdbFormat.SUB || code == WfdbFormat.CHN) {
+                // Campos que este lector no usa
+                continue;
+            } else {
+                emit(visitor, pendingCode, pendingTime, pendingAux);
+                time += value;
+                pendingCode = code;
+                pendingTime = time;
+                pendingAux = null;
+            }
+        }
+        emit(visitor, pendingCode, pendingTime, pendingAux);
+    }
+
+    private void emit(AnnotationVisitor visitor, int code, long time, String aux) {
+        if (code < 0) {
+            return;
+        }
+        String text;
+        if (aux == null || aux.isEmpty()) {
+            text = WfdbFormat.mnemonic(code);
+        } else {
+            text = code == WfdbFormat.NOTE ? aux : WfdbFormat.mnemonic(code) + aux;
+        }
+        visitor.onAnnotation(time / sampleRateHz, text);
+    }
+}
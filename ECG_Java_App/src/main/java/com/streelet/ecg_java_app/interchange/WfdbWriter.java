@@ -0,0 +1,303 @@
+package com.streelet.ecg_java_app.interchange;
+
+import com.streelet.ecg_java_app.StartController.PatientData;
+import com.streelet.ecg_java_app.buffer.SampleRingBuffer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+
+/**
+ * Escribe un registro WFDB de PhysioNet en streaming: {@code <nombre>.dat} con la señal en
+ * formato 212, {@code <nombre>.qrs} con los latidos (y los mensajes de estado como notas) y, al
+ * cerrar, {@code <nombre>.hea} con el número de muestras, la suma de control y el paciente en
+ * comentarios.
+ *
+ * Las anotaciones deben ir en orden de muestra: se reordenan con {@link AnnotationOrder} y se
+ * escriben cuando el registro las ha dejado atrás; al cerrar se escriben las que queden.
+ *
+ * El formato 212 guarda 12 bits con signo: a las cuentas del ADC se les resta la mitad de su
+ * rango ({@link #getAdcOffset()}), que queda anotada en la cabecera para poder reconstruirlas.
+ */
+public class WfdbWriter implements EcgRecordWriter {
+
+    /** Anotador con el que se guardan los latidos detectados. */
+    public static final String ANNOTATOR = "qrs";
+
+    private static final int DAT_BUFFER_BYTES = 3 * 8192;
+    private static final int ANNOTATION_BUFFER_BYTES = 8192;
+    private static final int DRAIN_BATCH = 2048;
+
+    private static final DateTimeFormatter BASE_TIME = DateTimeFormatter.ofPattern("HH:mm:ss dd/MM/yyyy");
+
+    private final Path directory;
+    private final String recordName;
+    private final RecordingInfo info;
+    private final int digitalMin;
+    private final int digitalMax;
+    private final int adcOffset;
+
+    private final FileChannel datChannel;
+    private final FileChannel annotationChannel;
+    private final ByteBuffer datBuffer = ByteBuffer.allocate(DAT_BUFFER_BYTES);
+    private final ByteBuffer annotationBuffer = ByteBuffer.allocate(ANNOTATION_BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    private final int[] drainValues = new int[DRAIN_BATCH];
+
+    private long samplesWritten = 0;
+    private int firstValue = 0;
+    private int checksum = 0;
+    // En 212 las muestras van de dos en dos: la primera de cada par espera aquí
+    private boolean halfPair = false;
+    private int pendingSample;
+
+    private final AnnotationOrder annotationOrder;
+    private final AnnotationOrder.Sink annotationSink = this::putAnnotation;
+    private long lastAnnotationSample = 0;
+    private long annotationsWritten = 0;
+    private boolean closed = false;
+
+    /**
+     * Crea (o reemplaza) los archivos de señal y anotaciones.
+     *
+     * @param recordName Nombre del registro (letras, dígitos y '_').
+     */
+    public WfdbWriter(Path directory, String recordName, RecordingInfo info) throws IOException {
+        if (!WfdbFormat.isValidRecordName(recordName)) {
+            throw new IllegalArgumentException("Nombre de registro WFDB inválido: " + recordName);
+        }
+        AdcCalibration calibration = info.getCalibration();
+        this.adcOffset = Math.floorDiv(calibration.getDigitalMin() + calibration.getDigitalMax() + 1, 2);
+        if (calibration.getDigitalMin() - adcOffset < WfdbFormat.MIN_212
+                || calibration.getDigitalMax() - adcOffset > WfdbFormat.MAX_212) {
+            throw new IllegalArgumentException("El rango del ADC no cabe en 12 bits (formato 212): " + calibration);
+        }
+        this.directory = directory;
+        this.recordName = recordName;
+        this.info = info;
+        this.digitalMin = calibration.getDigitalMin();
+        this.digitalMax = calibration.getDigitalMax();
+        this.annotationOrder = new AnnotationOrder(info.getSampleRateHz());
+        this.datChannel = FileChannel.open(directory.resolve(recordName + ".dat"), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        try {
+            this.annotationChannel = FileChannel.open(directory.resolve(recordName + "." + ANNOTATOR),
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            datChannel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public void writeSamples(int[] values, int offset, int length) throws IOException {
+        final int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            int value = values[i];
+            int stored = (value < digitalMin ? digitalMin : value > digitalMax ? digitalMax : value) - adcOffset;
+            if (samplesWritten == 0) {
+                firstValue = stored;
+            }
+            checksum += stored;
+            samplesWritten++;
+            if (!halfPair) {
+                pendingSample = stored;
+                halfPair = true;
+            } else {
+                putPair(pendingSample, stored);
+                halfPair = false;
+            }
+        }
+        annotationOrder.release(samplesWritten, annotationSink);
+    }
+
+    @Override
+    public long drainFrom(SampleRingBuffer buffer) throws IOException {
+        long total = 0;
+        int count;
+        while ((count = buffer.drain(drainValues, null, 0, DRAIN_BATCH)) > 0) {
+            writeSamples(drainValues, 0, count);
+            total += count;
+        }
+        return total;
+    }
+
+    @Override
+    public void addBeat(long sampleIndex) throws IOException {
+        annotationOrder.add(sampleIndex, null);
+        annotationOrder.release(samplesWritten, annotationSink);
+    }
+
+    @Override
+    public void addStatus(long sampleIndex, String message) throws IOException {
+        annotationOrder.add(sampleIndex, message);
+        annotationOrder.release(samplesWritten, annotationSink);
+    }
+
+    @Override
+    public long getSamplesWritten() {
+        return samplesWritten;
+    }
+
+    public long getAnnotationsWritten() {
+        return annotationsWritten;
+    }
+
+    /** Anotaciones que llegaron demasiado tarde para ordenarlas y se pusieron junto a la anterior. */
+    public long getLateAnnotations() {
+        return annotationOrder.getLateAnnotations();
+    }
+
+    /** Valor restado a las cuentas del ADC para guardarlas en 12 bits con signo. */
+    public int getAdcOffset() {
+        return adcOffset;
+    }
+
+    /**
+     * Vacía los buffers, cierra la señal y las anotaciones y escribe la cabecera.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (halfPair) {
+                // Muestra impar: el par se completa con 0 (la cabecera indica cuántas son válidas)
+                putPair(pendingSample, 0);
+                halfPair = false;
+            }
+            flush(datChannel, datBuffer);
+            annotationOrder.releaseAll(annotationSink);
+            // Fin de las anotaciones: palabra 0
+            ensureAnnotationSpace(2);
+            annotationBuffer.putShort((short) 0);
+            flush(annotationChannel, annotationBuffer);
+            Files.write(directory.resolve(recordName + ".hea"), buildHeader().getBytes(StandardCharsets.US_ASCII));
+        } finally {
+            try {
+                datChannel.close();
+            } finally {
+                annotationChannel.close();
+            }
+        }
+    }
+
+    // --- Señal ---
+
+    private void putPair(int first, int second) throws IOException {
+        if (datBuffer.remaining() < 3) {
+            flush(datChannel, datBuffer);
+        }
+        datBuffer.put((byte) first);
+        datBuffer.put((byte) (((second >> 4) & 0xF0) | ((first >> 8) & 0x0F)));
+        datBuffer.put((byte) second);
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    // --- Anotaciones ---
+
+    /**
+     * Escribe una anotación ya ordenada: un latido, o una nota si lleva mensaje.
+     */
+    private void putAnnotation(long sampleIndex, String message) throws IOException {
+        if (message == null) {
+            putAnnotation(sampleIndex, WfdbFormat.NORMAL, null);
+        } else {
+            putAnnotation(sampleIndex, WfdbFormat.NOTE, PatientFields.ascii(message).getBytes(StandardCharsets.US_ASCII));
+        }
+    }
+
+    /**
+     * Palabra de anotación; si el intervalo no cabe en 10 bits va precedida de un SKIP, y el
+     * texto, si lo hay, va detrás en una pseudoanotación AUX.
+     */
+    private void putAnnotation(long sampleIndex, int code, byte[] aux) throws IOException {
+        // Solo una anotación más tardía que el reordenamiento llega fuera de orden: va junto a la anterior
+        long time = Math.max(sampleIndex, lastAnnotationSample);
+        long interval = time - lastAnnotationSample;
+        int auxLength = aux == null ? 0 : Math.min(aux.length, WfdbFormat.MAX_AUX_BYTES);
+        ensureAnnotationSpace(8 + 2 + auxLength + 1);
+        if (interval > WfdbFormat.MAX_INTERVAL) {
+            // SKIP: el intervalo va en 32 bits "PDP-11" (16 bits altos primero)
+            annotationBuffer.putShort((short) (WfdbFormat.SKIP << 10));
+            annotationBuffer.putShort((short) (interval >>> 16));
+            annotationBuffer.putShort((short) interval);
+            interval = 0;
+        }
+        annotationBuffer.putShort((short) ((code << 10) | (int) interval));
+        if (auxLength > 0) {
+            annotationBuffer.putShort((short) ((WfdbFormat.AUX << 10) | auxLength));
+            annotationBuffer.put(aux, 0, auxLength);
+            if ((auxLength & 1) != 0) {
+                annotationBuffer.put((byte) 0);
+            }
+        }
+        lastAnnotationSample = time;
+        annotationsWritten++;
+    }
+
+    private void ensureAnnotationSpace(int bytes) throws IOException {
+        if (annotationBuffer.remaining() < bytes) {
+            flush(annotationChannel, annotationBuffer);
+        }
+    }
+
+    // --- Cabecera ---
+
+    private String buildHeader() {
+        AdcCalibration calibration = info.getCalibration();
+        PatientData patient = info.getPatient();
+        LocalDate startDate = info.getStartTime().toLocalDate();
+        // Ganancia en unidades digitales por mV; línea base en valores ya desplazados
+        double gain = 1000.0 / calibration.getMicrovoltsPerCount();
+        int baseline = calibration.getBaseline() - adcOffset;
+
+        StringBuilder header = new StringBuilder();
+        header.append(recordName).append(" 1 ").append(info.getSampleRateHz()).append(' ').append(samplesWritten)
+                .append(' ').append(info.getStartTime().format(BASE_TIME)).append('\n');
+        header.append(recordName).append(".dat ").append(WfdbFormat.FORMAT_212).append(' ')
+                .append(String.format(Locale.ROOT, "%.4f", gain)).append('(').append(baseline).append(")/mV ")
+                .append(calibration.getResolutionBits()).append(' ').append(baseline).append(' ')
+                .append(firstValue).append(' ').append((short) checksum).append(" 0 ")
+                .append(PatientFields.ascii(info.getSignalLabel())).append('\n');
+
+        int age = PatientFields.age(patient, startDate);
+        header.append("#Age: ").append(age >= 0 ? Integer.toString(age) : "?").append('\n');
+        header.append("#Sex: ").append(PatientFields.sexCode(patient)).append('\n');
+        String name = PatientFields.name(patient);
+        if (!name.isEmpty()) {
+            header.append("#Name: ").append(name).append('\n');
+        }
+        LocalDate birth = PatientFields.birthDate(patient);
+        if (birth != null) {
+            header.append("#BirthDate: ").append(birth).append('\n');
+        }
+        if (patient != null && patient.getMedicalHistory() != null) {
+            for (String line : patient.getMedicalHistory().split("\\R")) {
+                String text = PatientFields.ascii(line);
+                if (!text.isEmpty()) {
+                    header.append("#History: ").append(text).append('\n');
+                }
+            }
+        }
+        header.append("#Equipment: ").append(PatientFields.ascii(info.getEquipment())).append('\n');
+        header.append(WfdbReader.ADC_OFFSET_COMMENT).append(adcOffset).append('\n');
+        return header.toString();
+    }
+}
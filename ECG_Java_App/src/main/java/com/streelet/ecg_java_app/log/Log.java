@@ -0,0 +1,85 @@
+package com.streelet.ecg_java_app.log;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Log asíncrono de la aplicación. Los mensajes se encolan sin formatear en una cola acotada
+ * sin bloqueos y un hilo de fondo ("ecg-log-writer") los formatea y escribe en la consola
+ * (WARN y ERROR en System.err, el resto en System.out). Así el hilo que registra (lectura serial,
+ * análisis, audio) no espera nunca a la consola.
+ *
+ * El nivel se fija al arrancar con la propiedad {@code -Decg.log=DEBUG|INFO|WARN|ERROR|OFF}
+ * (por defecto INFO). Las banderas {@code *_ENABLED} son constantes: el JIT elimina los bloques
+ * {@code if (Log.DEBUG_ENABLED)} cuando el nivel está desactivado, así que el log de depuración
+ * no cuesta nada en producción.
+ *
+ * Un mismo mensaje (misma plantilla) que se repite en ráfaga se escribe como mucho
+ * {@code ecg.log.repeats} veces por segundo (5 por defecto); el resto se resume en una línea.
+ */
+public final class Log {
+
+    public static final LogLevel LEVEL = LogLevel.parse(System.getProperty("ecg.log"), LogLevel.INFO);
+
+    public static final boolean DEBUG_ENABLED = LEVEL.compareTo(LogLevel.DEBUG) <= 0;
+    public static final boolean INFO_ENABLED = LEVEL.compareTo(LogLevel.INFO) <= 0;
+    public static final boolean WARN_ENABLED = LEVEL.compareTo(LogLevel.WARN) <= 0;
+    public static final boolean ERROR_ENABLED = LEVEL.compareTo(LogLevel.ERROR) <= 0;
+
+    private static final int QUEUE_CAPACITY = Integer.getInteger("ecg.log.queue", 4096);
+    private static final int MAX_REPEATS_PER_SECOND = Integer.getInteger("ecg.log.repeats", 5);
+
+    private static final ConcurrentMap<String, Logger> LOGGERS = new ConcurrentHashMap<>();
+    private static final ThreadLocal<LogEvent> EVENTS = ThreadLocal.withInitial(LogEvent::create);
+    private static final LogQueue QUEUE = new LogQueue(QUEUE_CAPACITY);
+    private static final LogWriter WRITER = new LogWriter(QUEUE, MAX_REPEATS_PER_SECOND);
+
+    static {
+        if (LEVEL != LogLevel.OFF) {
+            WRITER.start();
+        }
+    }
+
+    private Log() {
+    }
+
+    /**
+     * @return El logger con el nombre simple de la clase.
+     */
+    public static Logger get(Class<?> owner) {
+        return get(owner.getSimpleName());
+    }
+
+    public static Logger get(String name) {
+        return LOGGERS.computeIfAbsent(name, Logger::new);
+    }
+
+    /**
+     * Espera a que se escriba todo lo encolado hasta ahora (con los resúmenes de repeticiones
+     * pendientes). Para llamar al cerrar la aplicación: el hilo escritor es daemon.
+     *
+     * @param timeoutMillis Espera máxima.
+     * @return true si se escribió todo a tiempo.
+     */
+    public static boolean flush(long timeoutMillis) {
+        if (LEVEL == LogLevel.OFF) {
+            return true;
+        }
+        return WRITER.flush(QUEUE.producedPosition(), timeoutMillis);
+    }
+
+    /**
+     * @return Mensajes descartados porque la cola estaba llena.
+     */
+    public static long getDroppedMessages() {
+        return QUEUE.getDropped();
+    }
+
+    static LogEvent begin(Logger logger, LogLevel level, String template) {
+        return EVENTS.get().begin(logger, level, template);
+    }
+
+    static void enqueue(LogRecord record) {
+        QUEUE.offer(record);
+    }
+}
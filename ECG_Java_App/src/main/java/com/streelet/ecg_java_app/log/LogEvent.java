@@ -0,0 +1,81 @@
+package com.streelet.ecg_java_app.log;
+
+/**
+ * Mensaje en construcción: se obtiene de un {@link Logger}, se le añaden los argumentos de la
+ * plantilla en orden y se encola con {@link #log()}.
+ *
+ * <pre>
+ * LOG.debug("Pico en la muestra {} (valor {})").arg(sample).arg(value).log();
+ * </pre>
+ *
+ * Cada hilo reutiliza siempre el mismo objeto, así que no hay asignaciones por mensaje; por eso
+ * el evento no debe guardarse ni pasarse a otro hilo. Si el nivel está desactivado se devuelve
+ * un evento vacío que no hace nada. Los objetos se convierten a texto más tarde, en el hilo
+ * escritor: deben ser inmutables (textos, enums, números).
+ */
+public final class LogEvent {
+
+    static final LogEvent DISABLED = new LogEvent(null);
+
+    private final LogRecord record;
+
+    private LogEvent(LogRecord record) {
+        this.record = record;
+    }
+
+    static LogEvent create() {
+        return new LogEvent(new LogRecord());
+    }
+
+    LogEvent begin(Logger logger, LogLevel level, String template) {
+        record.begin(logger.getName(), level, template);
+        return this;
+    }
+
+    public LogEvent arg(long value) {
+        if (record != null) {
+            record.addLong(value);
+        }
+        return this;
+    }
+
+    /** Se escribe con tres decimales como máximo. */
+    public LogEvent arg(double value) {
+        if (record != null) {
+            record.addDouble(value);
+        }
+        return this;
+    }
+
+    public LogEvent arg(boolean value) {
+        if (record != null) {
+            record.addBoolean(value);
+        }
+        return this;
+    }
+
+    public LogEvent arg(Object value) {
+        if (record != null) {
+            record.addObject(value);
+        }
+        return this;
+    }
+
+    /** Excepción asociada: se escribe con su traza completa. */
+    public LogEvent cause(Throwable thrown) {
+        if (record != null) {
+            record.thrown = thrown;
+        }
+        return this;
+    }
+
+    /**
+     * Encola el mensaje. Nunca bloquea: con la cola llena se descarta y se cuenta.
+     */
+    public void log() {
+        if (record != null) {
+            Log.enqueue(record);
+            record.clearReferences();
+        }
+    }
+}
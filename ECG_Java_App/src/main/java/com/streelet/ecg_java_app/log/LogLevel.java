@@ -0,0 +1,27 @@
+package com.streelet.ecg_java_app.log;
+
+/**
+ * Niveles de log, de menor a mayor gravedad.
+ */
+public enum LogLevel {
+    DEBUG,
+    INFO,
+    WARN,
+    ERROR,
+    /** Solo para configurar: no se registra nada. */
+    OFF;
+
+    /**
+     * @return El nivel con ese nombre (sin distinguir mayúsculas), o {@code fallback} si no existe.
+     */
+    public static LogLevel parse(String name, LogLevel fallback) {
+        if (name != null) {
+            for (LogLevel level : values()) {
+                if (level.name().equalsIgnoreCase(name.trim())) {
+                    return level;
+                }
+            }
+        }
+        return fallback;
+    }
+}
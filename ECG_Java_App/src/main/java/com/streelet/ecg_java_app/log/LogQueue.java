@@ -0,0 +1,109 @@
+package com.streelet.ecg_java_app.log;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Cola acotada sin bloqueos de varios productores y un consumidor, con los registros
+ * preasignados. Cada casilla lleva un número de secuencia que dice si está libre para la
+ * vuelta actual del productor o publicada para el consumidor; los productores se reparten las
+ * posiciones con un CAS sobre la cola.
+ *
+ * Un productor nunca espera: si la cola está llena el mensaje se descarta y se cuenta.
+ */
+final class LogQueue {
+
+    private final int capacity;
+    private final int mask;
+    private final LogRecord[] slots;
+    private final AtomicLongArray sequences;
+
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    // Solo lo escribe el consumidor; volatile para que flush() pueda esperar
+    private volatile long head = 0;
+
+    LogQueue(int requestedCapacity) {
+        if (requestedCapacity < 16 || requestedCapacity > (1 << 20)) {
+            throw new IllegalArgumentException("Capacidad fuera de rango: " + requestedCapacity);
+        }
+        this.capacity = Integer.highestOneBit(requestedCapacity - 1) << 1;
+        this.mask = capacity - 1;
+        this.slots = new LogRecord[capacity];
+        this.sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new LogRecord();
+            sequences.set(i, i);
+        }
+    }
+
+    // --- Productores ---
+
+    /**
+     * Copia {@code source} en la cola.
+     *
+     * @return false si la cola estaba llena (el mensaje se descarta y se cuenta).
+     */
+    boolean offer(LogRecord source) {
+        long position = tail.get();
+        while (true) {
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    slots[index].copyFrom(source);
+                    sequences.lazySet(index, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                dropped.incrementAndGet();
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    // --- Consumidor ---
+
+    /**
+     * @return El siguiente registro publicado, o null si no hay. Se libera con {@link #release()}.
+     */
+    LogRecord peek() {
+        long h = head;
+        int index = (int) h & mask;
+        return sequences.get(index) == h + 1 ? slots[index] : null;
+    }
+
+    /**
+     * Libera el registro devuelto por {@link #peek()}.
+     */
+    void release() {
+        long h = head;
+        int index = (int) h & mask;
+        slots[index].clearReferences();
+        sequences.lazySet(index, h + capacity);
+        head = h + 1;
+    }
+
+    // --- Consultas ---
+
+    /** Posiciones reservadas por los productores hasta ahora. */
+    long producedPosition() {
+        return tail.get();
+    }
+
+    /** Registros ya liberados por el consumidor. */
+    long consumedPosition() {
+        return head;
+    }
+
+    long getDropped() {
+        return dropped.get();
+    }
+
+    int capacity() {
+        return capacity;
+    }
+}
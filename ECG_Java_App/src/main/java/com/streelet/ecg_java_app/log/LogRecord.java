@@ -0,0 +1,91 @@
+package com.streelet.ecg_java_app.log;
+
+/**
+ * Un mensaje de log sin formatear: plantilla, argumentos y contexto. Los argumentos numéricos
+ * se guardan sin convertir (sin boxing ni texto) y el formateo lo hace el hilo escritor.
+ */
+final class LogRecord {
+
+    static final int MAX_ARGS = 6;
+
+    static final byte LONG = 0;
+    static final byte DOUBLE = 1;
+    static final byte BOOLEAN = 2;
+    static final byte OBJECT = 3;
+
+    LogLevel level;
+    String logger;
+    String template;
+    String thread;
+    long epochMillis;
+    int argCount;
+    final byte[] kinds = new byte[MAX_ARGS];
+    final long[] longs = new long[MAX_ARGS];
+    final Object[] objects = new Object[MAX_ARGS];
+    Throwable thrown;
+
+    void begin(String logger, LogLevel level, String template) {
+        this.logger = logger;
+        this.level = level;
+        this.template = template;
+        this.thread = Thread.currentThread().getName();
+        this.epochMillis = System.currentTimeMillis();
+        this.argCount = 0;
+        this.thrown = null;
+    }
+
+    void addLong(long value) {
+        if (argCount < MAX_ARGS) {
+            kinds[argCount] = LONG;
+            longs[argCount++] = value;
+        }
+    }
+
+    void addDouble(double value) {
+        if (argCount < MAX_ARGS) {
+            kinds[argCount] = DOUBLE;
+            longs[argCount++] = Double.doubleToRawLongBits(value);
+        }
+    }
+
+    void addBoolean(boolean value) {
+        if (argCount < MAX_ARGS) {
+            kinds[argCount] = BOOLEAN;
+            longs[argCount++] = value ? 1 : 0;
+        }
+    }
+
+    void addObject(Object value) {
+        if (argCount < MAX_ARGS) {
+            kinds[argCount] = OBJECT;
+            objects[argCount++] = value;
+        }
+    }
+
+    void copyFrom(LogRecord source) {
+        level = source.level;
+        logger = source.logger;
+        template = source.template;
+        thread = source.thread;
+        epochMillis = source.epochMillis;
+        argCount = source.argCount;
+        thrown = source.thrown;
+        for (int i = 0; i < argCount; i++) {
+            kinds[i] = source.kinds[i];
+            longs[i] = source.longs[i];
+            objects[i] = source.objects[i];
+        }
+    }
+
+    /**
+     * Suelta las referencias para no retener objetos mientras el registro espera reutilizarse.
+     */
+    void clearReferences() {
+        for (int i = 0; i < argCount; i++) {
+            objects[i] = null;
+        }
+        thrown = null;
+        template = null;
+        thread = null;
+    }
+}
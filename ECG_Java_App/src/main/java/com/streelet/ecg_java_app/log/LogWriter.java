@@ -0,0 +1,279 @@
+package com.streelet.ecg_java_app.log;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.time.Instant;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hilo que vacía la {@link LogQueue}: formatea cada registro, suprime las ráfagas de un mismo
+ * mensaje y escribe en la consola por lotes. Todo el estado es de este hilo salvo la posición
+ * escrita, que lee {@link #flush}.
+ */
+final class LogWriter implements Runnable {
+
+    private static final int BATCH_SIZE = 256;
+    // Sin mensajes, el hilo duerme esto entre comprobaciones (los productores no lo despiertan)
+    private static final long IDLE_PARK_NANOS = 10_000_000L;
+    private static final long REPEAT_WINDOW_MS = 1000;
+    private static final String THREAD_NAME = "ecg-log-writer";
+
+    /**
+     * Repeticiones de una plantilla en la ventana actual.
+     */
+    private static final class Repeats {
+        final LogLevel level;
+        final String logger;
+        long windowStartMillis;
+        int count;
+        long suppressed;
+
+        Repeats(LogLevel level, String logger) {
+            this.level = level;
+            this.logger = logger;
+        }
+    }
+
+    private final LogQueue queue;
+    private final int maxRepeatsPerWindow;
+    private final ZoneId zone = ZoneId.systemDefault();
+    // Las plantillas son literales: la identidad basta y evita comparar el texto
+    private final Map<String, Repeats> repeats = new IdentityHashMap<>();
+    private final StringBuilder outText = new StringBuilder(8192);
+    private final StringBuilder errText = new StringBuilder(1024);
+    private final StringBuilder line = new StringBuilder(256);
+    private long reportedDropped = 0;
+    private long lastSweepMillis = 0;
+
+    private volatile Thread thread;
+    private volatile boolean flushRequested = false;
+    private volatile long writtenPosition = 0;
+
+    LogWriter(LogQueue queue, int maxRepeatsPerWindow) {
+        this.queue = queue;
+        this.maxRepeatsPerWindow = Math.max(1, maxRepeatsPerWindow);
+    }
+
+    void start() {
+        Thread writer = new Thread(this, THREAD_NAME);
+        writer.setDaemon(true);
+        writer.setPriority(Thread.NORM_PRIORITY - 1);
+        thread = writer;
+        writer.start();
+    }
+
+    /**
+     * Espera (desde otro hilo) a que se haya escrito hasta {@code position}.
+     */
+    boolean flush(long position, long timeoutMillis) {
+        Thread writer = thread;
+        if (writer == null || Thread.currentThread() == writer) {
+            return false;
+        }
+        long deadline = System.nanoTime() + timeoutMillis * 1_000_000L;
+        flushRequested = true;
+        LockSupport.unpark(writer);
+        while (writtenPosition < position || flushRequested) {
+            if (System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+            LockSupport.parkNanos(1_000_000L);
+        }
+        return true;
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            int count = 0;
+            LogRecord record;
+            while (count < BATCH_SIZE && (record = queue.peek()) != null) {
+                try {
+                    write(record);
+                } catch (RuntimeException e) {
+                    // Un toString() con errores no debe detener el log
+                    appendFailure(record, e);
+                }
+                queue.release();
+                count++;
+            }
+            long now = System.currentTimeMillis();
+            // Un flush espera a vaciar la cola y luego escribe todos los resúmenes pendientes
+            boolean flushing = flushRequested && count == 0;
+            if (flushing || now - lastSweepMillis >= REPEAT_WINDOW_MS) {
+                reportDropped(now);
+                sweepRepeats(now, flushing);
+                lastSweepMillis = now;
+            }
+            emit();
+            writtenPosition = queue.consumedPosition();
+            if (count == 0) {
+                if (flushing) {
+                    flushRequested = false;
+                }
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            }
+        }
+    }
+
+    private void write(LogRecord record) {
+        if (isSuppressed(record)) {
+            return;
+        }
+        line.setLength(0);
+        appendPrefix(record.epochMillis, record.level, record.thread, record.logger);
+        appendMessage(record);
+        if (record.thrown != null) {
+            line.append(System.lineSeparator()).append(stackTrace(record.thrown));
+        }
+        line.append(System.lineSeparator());
+        target(record.level).append(line);
+    }
+
+    private boolean isSuppressed(LogRecord record) {
+        Repeats entry = repeats.get(record.template);
+        if (entry == null) {
+            entry = new Repeats(record.level, record.logger);
+            entry.windowStartMillis = record.epochMillis;
+            repeats.put(record.template, entry);
+        } else if (record.epochMillis - entry.windowStartMillis >= REPEAT_WINDOW_MS) {
+            reportRepeats(record.template, entry, record.epochMillis);
+            entry.windowStartMillis = record.epochMillis;
+            entry.count = 0;
+        }
+        entry.count++;
+        if (entry.count > maxRepeatsPerWindow) {
+            entry.suppressed++;
+            return true;
+        }
+        return false;
+    }
+
+    private void sweepRepeats(long now, boolean all) {
+        for (Map.Entry<String, Repeats> e : repeats.entrySet()) {
+            Repeats entry = e.getValue();
+            if (entry.suppressed > 0 && (all || now - entry.windowStartMillis >= REPEAT_WINDOW_MS)) {
+                reportRepeats(e.getKey(), entry, now);
+            }
+        }
+    }
+
+    private void reportRepeats(String template, Repeats entry, long now) {
+        if (entry.suppressed == 0) {
+            return;
+        }
+        line.setLength(0);
+        appendPrefix(now, entry.level, THREAD_NAME, entry.logger);
+        line.append("Mensaje repetido ").append(entry.suppressed).append(" veces más (omitido): ")
+                .append(template).append(System.lineSeparator());
+        target(entry.level).append(line);
+        entry.suppressed = 0;
+    }
+
+    private void reportDropped(long now) {
+        long dropped = queue.getDropped();
+        if (dropped > reportedDropped) {
+            line.setLength(0);
+            appendPrefix(now, LogLevel.WARN, THREAD_NAME, "Log");
+            line.append(dropped - reportedDropped).append(" mensajes descartados con la cola llena (")
+                    .append(queue.capacity()).append(" mensajes)").append(System.lineSeparator());
+            errText.append(line);
+            reportedDropped = dropped;
+        }
+    }
+
+    private void appendFailure(LogRecord record, RuntimeException e) {
+        line.setLength(0);
+        appendPrefix(record.epochMillis, LogLevel.ERROR, THREAD_NAME, "Log");
+        line.append("No se pudo formatear \"").append(record.template).append("\": ").append(e)
+                .append(System.lineSeparator());
+        errText.append(line);
+    }
+
+    private void emit() {
+        if (outText.length() > 0) {
+            System.out.print(outText);
+            System.out.flush();
+            outText.setLength(0);
+        }
+        if (errText.length() > 0) {
+            System.err.print(errText);
+            System.err.flush();
+            errText.setLength(0);
+        }
+    }
+
+    private StringBuilder target(LogLevel level) {
+        return level.compareTo(LogLevel.WARN) >= 0 ? errText : outText;
+    }
+
+    // --- Formato: "HH:mm:ss.SSS NIVEL [hilo] Logger: mensaje" ---
+
+    private void appendPrefix(long epochMillis, LogLevel level, String threadName, String logger) {
+        LocalTime time = Instant.ofEpochMilli(epochMillis).atZone(zone).toLocalTime();
+        appendPadded(time.getHour(), 2).append(':');
+        appendPadded(time.getMinute(), 2).append(':');
+        appendPadded(time.getSecond(), 2).append('.');
+        appendPadded(time.getNano() / 1_000_000, 3).append(' ');
+        line.append(level.name());
+        for (int i = level.name().length(); i < 5; i++) {
+            line.append(' ');
+        }
+        line.append(" [").append(threadName).append("] ").append(logger).append(": ");
+    }
+
+    private StringBuilder appendPadded(int value, int digits) {
+        for (int limit = 10, i = 1; i < digits; i++, limit *= 10) {
+            if (value < limit) {
+                line.append('0');
+            }
+        }
+        return line.append(value);
+    }
+
+    private void appendMessage(LogRecord record) {
+        String template = record.template;
+        int arg = 0;
+        int start = 0;
+        int at;
+        while (arg < record.argCount && (at = template.indexOf("{}", start)) >= 0) {
+            line.append(template, start, at);
+            appendArg(record, arg++);
+            start = at + 2;
+        }
+        line.append(template, start, template.length());
+    }
+
+    private void appendArg(LogRecord record, int i) {
+        switch (record.kinds[i]) {
+            case LogRecord.LONG:
+                line.append(record.longs[i]);
+                break;
+            case LogRecord.DOUBLE: {
+                double value = Double.longBitsToDouble(record.longs[i]);
+                line.append(Math.abs(value) < 1e12 ? Math.round(value * 1000) / 1000.0 : value);
+                break;
+            }
+            case LogRecord.BOOLEAN:
+                line.append(record.longs[i] != 0);
+                break;
+            default:
+                line.append(record.objects[i]);
+                break;
+        }
+    }
+
+    private static String stackTrace(Throwable thrown) {
+        StringWriter text = new StringWriter();
+        try (PrintWriter writer = new PrintWriter(text)) {
+            thrown.printStackTrace(writer);
+        }
+        String trace = text.toString();
+        return trace.endsWith(System.lineSeparator())
+                ? trace.substring(0, trace.length() - System.lineSeparator().length()) : trace;
+    }
+}
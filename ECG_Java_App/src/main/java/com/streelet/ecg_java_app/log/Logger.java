@@ -0,0 +1,40 @@
+package com.streelet.ecg_java_app.log;
+
+/**
+ * Punto de log de una clase; se obtiene con {@link Log#get(Class)} y se guarda en un campo
+ * estático. Cada método devuelve un {@link LogEvent} que hay que terminar con
+ * {@link LogEvent#log()}. En las rutas calientes conviene envolver la llamada en
+ * {@code if (Log.DEBUG_ENABLED)} para no evaluar siquiera los argumentos.
+ */
+public final class Logger {
+
+    private final String name;
+
+    Logger(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isEnabled(LogLevel level) {
+        return level != LogLevel.OFF && level.compareTo(Log.LEVEL) >= 0;
+    }
+
+    public LogEvent debug(String template) {
+        return Log.DEBUG_ENABLED ? Log.begin(this, LogLevel.DEBUG, template) : LogEvent.DISABLED;
+    }
+
+    public LogEvent info(String template) {
+        return Log.INFO_ENABLED ? Log.begin(this, LogLevel.INFO, template) : LogEvent.DISABLED;
+    }
+
+    public LogEvent warn(String template) {
+        return Log.WARN_ENABLED ? Log.begin(this, LogLevel.WARN, template) : LogEvent.DISABLED;
+    }
+
+    public LogEvent error(String template) {
+        return Log.ERROR_ENABLED ? Log.begin(this, LogLevel.ERROR, template) : LogEvent.DISABLED;
+    }
+}
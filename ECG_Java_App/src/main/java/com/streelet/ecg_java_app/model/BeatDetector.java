@@ -0,0 +1,62 @@
+package com.streelet.ecg_java_app.model;
+
+/**
+ * Estrategia de detección de latidos (complejos QRS) sobre una señal de un canal.
+ *
+ * Las implementaciones son de flujo continuo: mantienen su estado entre llamadas y
+ * procesan lotes de muestras consecutivas sin reservar memoria por muestra.
+ * No son seguras para hilos; cada flujo debe usar su propia instancia desde un solo hilo.
+ */
+public interface BeatDetector {
+
+    /**
+     * Receptor de los latidos detectados.
+     */
+    interface BeatSink {
+
+        /**
+         * @param peakValue Valor crudo de la señal en el pico R.
+         * @param sampleIndex Índice de muestra (mismo origen que firstSampleIndex) del pico R.
+         */
+        void onBeat(int peakValue, long sampleIndex);
+    }
+
+    /**
+     * Procesa un lote de muestras consecutivas. Un detector puede confirmar un latido con
+     * cierto retraso, así que el índice reportado puede ser anterior al lote actual.
+     *
+     * @param samples Array con las muestras crudas.
+     * @param offset Posición de la primera muestra.
+     * @param length Número de muestras.
+     * @param firstSampleIndex Índice de la primera muestra del lote.
+     * @param sink Receptor de los latidos confirmados durante este lote.
+     * @return Número de latidos reportados en esta llamada.
+     */
+    int process(int[] samples, int offset, int length, long firstSampleIndex, BeatSink sink);
+
+    /**
+     * Olvida todo el estado (filtros, umbrales, último latido). Las métricas de coste no se reinician.
+     */
+    void reset();
+
+    /**
+     * @return Frecuencia de muestreo para la que está configurado el detector, en Hz.
+     */
+    int getSampleRateHz();
+
+    /**
+     * @return Nombre corto del algoritmo, para registros y métricas.
+     */
+    String getName();
+
+    /**
+     * @return Total de muestras procesadas desde la creación.
+     */
+    long getSamplesProcessed();
+
+    /**
+     * @return Coste medio medido por muestra en nanosegundos (tiempo dentro de process()),
+     *         o 0 si aún no se ha procesado nada.
+     */
+    double getNanosPerSample();
+}
@@ -0,0 +1,86 @@
+package com.streelet.ecg_java_app.model;
+
+import com.streelet.ecg_java_app.serial.SerialDataListener;
+import com.streelet.ecg_java_app.source.PlaybackPacer;
+import com.streelet.ecg_java_app.source.SyntheticEcgSource;
+
+/**
+ * Mide el coste por muestra de los detectores de latidos sobre una señal sintética
+ * y estima cuántos flujos en tiempo real caben en un núcleo.
+ *
+ * Uso: {@code java ... BeatDetectorBenchmark [frecuenciaHz] [segundosDeSeñal] [repeticiones]}
+ */
+public final class BeatDetectorBenchmark {
+
+    private BeatDetectorBenchmark() {
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int sampleRateHz = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        double seconds = args.length > 1 ? Double.parseDouble(args[1]) : 600;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        int[] signal = new int[(int) (seconds * sampleRateHz)];
+        SyntheticEcgSource source = new SyntheticEcgSource(new SyntheticEcgSource.Config()
+                .sampleRateHz(sampleRateHz)
+                .noiseMillivolts(0.05)
+                .baselineWanderMillivolts(0.3)
+                .speed(PlaybackPacer.AS_FAST_AS_POSSIBLE)
+                .durationSeconds(seconds));
+        int[] filled = new int[1];
+        source.addListener(new SerialDataListener() {
+            @Override
+            public void onDataReceived(int value) {
+                if (filled[0] < signal.length) {
+                    signal[filled[0]++] = value;
+                }
+            }
+
+            @Override
+            public void onErrorOccurred(String message) {
+            }
+
+            @Override
+            public void onSamples(int[] buf, int offset, int length, long firstSequence, long firstTimestampNanos) {
+                int count = Math.min(length, signal.length - filled[0]);
+                System.arraycopy(buf, offset, signal, filled[0], count);
+                filled[0] += count;
+            }
+        });
+        source.start();
+        while (source.isRunning()) {
+            Thread.sleep(10);
+        }
+        System.out.println("Señal: " + filled[0] + " muestras @ " + sampleRateHz + " Hz, "
+                + source.getBeatsGenerated() + " latidos generados.");
+
+        run(new ThresholdBeatDetector(945, sampleRateHz), signal, filled[0], rounds);
+        run(new PanTompkinsDetector(sampleRateHz), signal, filled[0], rounds);
+    }
+
+    private static void run(BeatDetector detector, int[] signal, int length, int rounds) {
+        final int batch = 256;
+        int[] beats = new int[1];
+        BeatDetector.BeatSink sink = (value, index) -> beats[0]++;
+        // La primera vuelta calienta el JIT y no se cuenta
+        long measuredSamples = 0;
+        long measuredNanos = 0;
+        for (int round = 0; round <= rounds; round++) {
+            detector.reset();
+            beats[0] = 0;
+            long start = System.nanoTime();
+            for (int offset = 0; offset < length; offset += batch) {
+                detector.process(signal, offset, Math.min(batch, length - offset), offset, sink);
+            }
+            long elapsed = System.nanoTime() - start;
+            if (round > 0) {
+                measuredSamples += length;
+                measuredNanos += elapsed;
+            }
+        }
+        double nanosPerSample = (double) measuredNanos / measuredSamples;
+        double streamsPerCore = 1e9 / (nanosPerSample * detector.getSampleRateHz());
+        System.out.println(String.format("%-16s %6d latidos  %7.1f ns/muestra  ~%,.0f flujos/núcleo @ %d Hz",
+                detector.getName(), beats[0], nanosPerSample, streamsPerCore, detector.getSampleRateHz()));
+    }
+}
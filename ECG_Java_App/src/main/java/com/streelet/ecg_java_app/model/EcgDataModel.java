@@ -6,8 +6,11 @@ package com.streelet.ecg_java_app.model;
  * @author erick
  */
 
+import com.streelet.ecg_java_app.log.Log;
+import com.streelet.ecg_java_app.log.Logger;
+
 import java.util.List;
-import java.util.ArrayList;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Representa el modelo de datos del ECG y contiene la lógica
@@ -16,27 +19,54 @@ import java.util.ArrayList;
  */
 public class EcgDataModel {
 
-    // Variables de estado para la detección de flanco
-    private boolean wasBelowThreshold = true;
-    private final int beepThreshold;
-    private final int numberOfBeatsToAverage = 5;
-    private List<Integer> bpmHistory = new ArrayList<>();
-    
+    private static final Logger LOG = Log.get(EcgDataModel.class);
+
+    // Estrategia de detección de latidos (umbral fijo o Pan-Tompkins)
+    private final BeatDetector beatDetector;
+    private final BeatDetector.BeatSink beatSink = this::onBeatDetected;
+    private final int[] singleSample = new int[1];
+
+    // Historial de intervalos RR (compartido con HRV y alarmas vía getRrIntervals())
+    private static final int RR_HISTORY_CAPACITY = 16384;
+    private final RrIntervalBuffer rrIntervals;
+    private HeartRateEstimator heartRateEstimator = HeartRateEstimator.MEAN;
+
     private long lastPeakTime = -1;
     private int currentBpm = 0;
-    private final int bpmCalculusSamplingRate = 200;
 
-    // Lista de oyentes que serán notificados cuando se detecte un pico
-    private List<EcgPeakListener> listeners = new ArrayList<>();
+    // Con mala calidad de señal los latidos se descartan (ver setSignalAcceptable)
+    private boolean signalAcceptable = true;
+    // Recibe todos los latidos del detector, incluso los descartados (para el índice de calidad)
+    private BeatDetector.BeatSink beatObserver;
+
+    // Lista de oyentes que serán notificados cuando se detecte un pico.
+    // Se recorre en el hilo de análisis y se puede modificar desde otros (ej. el de JavaFX).
+    private final List<EcgPeakListener> listeners = new CopyOnWriteArrayList<>();
 
     /**
-     * Constructor para el modelo de datos ECG.
+     * Constructor para el modelo de datos ECG con el detector por umbral fijo.
      *
      * @param beepThreshold El valor del umbral para la detección de picos.
+     * @param sampleRateHz Frecuencia de muestreo de la señal.
      */
-    public EcgDataModel(int beepThreshold) {
-        this.beepThreshold = beepThreshold;
-        System.out.println("EcgDataModel creado con umbral = " + this.beepThreshold);
+    public EcgDataModel(int beepThreshold, int sampleRateHz) {
+        this(new ThresholdBeatDetector(beepThreshold, sampleRateHz));
+    }
+
+    /**
+     * Constructor para el modelo de datos ECG con un detector de latidos cualquiera.
+     *
+     * @param beatDetector El detector a usar (ej. {@link PanTompkinsDetector}).
+     */
+    public EcgDataModel(BeatDetector beatDetector) {
+        if (beatDetector == null) {
+            throw new IllegalArgumentException("El detector de latidos no puede ser null");
+        }
+        this.beatDetector = beatDetector;
+        this.rrIntervals = new RrIntervalBuffer(RR_HISTORY_CAPACITY, beatDetector.getSampleRateHz());
+        this.rrIntervals.setWindowBeats(RrIntervalBuffer.DEFAULT_WINDOW_BEATS);
+        LOG.info("Creado con detector {} @ {} Hz").arg(beatDetector.getName())
+                .arg(beatDetector.getSampleRateHz()).log();
     }
 
     /**
@@ -48,7 +78,7 @@ public class EcgDataModel {
     public void addPeakListener(EcgPeakListener listener) {
         if (listener != null && !listeners.contains(listener)) {
             listeners.add(listener);
-            System.out.println(" Oyente añadido: " + listener.getClass().getSimpleName());
+            LOG.debug("Oyente añadido: {}").arg(listener.getClass().getSimpleName()).log();
         }
     }
 
@@ -60,88 +90,198 @@ public class EcgDataModel {
     public void removePeakListener(EcgPeakListener listener) {
         if (listener != null) {
             listeners.remove(listener);
-            System.out.println("DEBUG Model: Oyente eliminado: " + listener.getClass().getSimpleName());
+            LOG.debug("Oyente eliminado: {}").arg(listener.getClass().getSimpleName()).log();
         }
     }
 
     /**
-     * Procesa un nuevo valor de dato del ECG. Contiene la lógica de detección de pico.
-     * Si se detecta un pico, notifica a todos los oyentes registrados.
+     * Procesa un nuevo valor de dato del ECG. La detección de pico la hace el BeatDetector;
+     * si se detecta un pico, notifica a todos los oyentes registrados.
      *
-     * NOTA: Este método DEBERÍA ser llamado desde un hilo seguro para la lógica
-     * de detección de pico (como el hilo de JavaFX si los datos llegan vía Platform.runLater).
+     * NOTA: El modelo no es seguro para hilos: este método y processSamples() deben llamarse
+     * siempre desde el mismo hilo, el de análisis (ver AnalysisWorker), nunca desde el de JavaFX.
+     * Los oyentes se llaman en ese hilo; la UI recibe los resultados como MonitorSnapshot.
      *
      * @param currentValue El valor entero del dato del ECG.
      * @param currentTime El contador de tiempo (o índice de muestra) asociado a este valor.
      */
     public void processNewValue(int currentValue, long currentTime) {
-        // Lógica de detección de flanco de subida (movida desde EcgMonitorController)
-        boolean isRisingEdge = (currentValue >= beepThreshold) && wasBelowThreshold;
-
-        // Si se detecta un flanco de subida, notifica a todos los oyentes
-        if (isRisingEdge) {
-            System.out.println("DEBUG Model: Pico detectado en time=" + currentTime + ", value=" + currentValue + ". Notificando a oyentes.");
-            
-         
-         if(lastPeakTime !=-1){
-             long intervalSamples = currentTime- lastPeakTime;
-             
-             //Solo asegurar que es positivo
-             if(intervalSamples >0){
-                 double instantaneousBpm = bpmCalculusSamplingRate * 60 / intervalSamples;
-                 bpmHistory.add((int) Math.round(instantaneousBpm));
-                 System.out.println("BPM ACTUAL " + instantaneousBpm);
-                 System.out.println("BPM " + currentBpm);
-                 
-                 /*Mantener la lista en el numero de datos especificado por
-                 @numberOfBeatsToAverage
-                 */
-                 while (bpmHistory.size() > numberOfBeatsToAverage){
-                     bpmHistory.remove(0);
-                 }
-                 
-                 double sumBpm = 0;
-                 for(int bpm : bpmHistory){
-                 sumBpm += bpm;
-             }
-                currentBpm = (int) Math.round(sumBpm / bpmHistory.size()); 
-                 
-             } //Fin del If de Lectura de Pico R
-             else {
-                 System.out.println("El intervalo entre picos de onda R es 0 ");
-             }
-         }
-         else {
-                System.out.println("Se detecta el primer pico");
-                currentBpm = 0;
-         }
-
-         lastPeakTime = currentTime;
-
-// Notifica a todos los oyentes registrados llamando a su método onPeakDetected
-            for (EcgPeakListener listener : listeners) {
-                // Llama al método definido en la interfaz EcgPeakListener
-                listener.onPeakDetected(currentValue, currentTime);
+        singleSample[0] = currentValue;
+        beatDetector.process(singleSample, 0, 1, currentTime, beatSink);
+    }
+
+    /**
+     * Procesa un lote de muestras consecutivas de una sola vez (mismo hilo que processNewValue).
+     * Los latidos se notifican a los oyentes antes de que este método retorne.
+     *
+     * @param values Array con las muestras.
+     * @param offset Posición de la primera muestra.
+     * @param length Número de muestras.
+     * @param firstTime Contador de tiempo (índice de muestra) de la primera muestra.
+     */
+    public void processSamples(int[] values, int offset, int length, long firstTime) {
+        beatDetector.process(values, offset, length, firstTime, beatSink);
+    }
+
+    /**
+     * Llamado por el detector por cada latido: actualiza el BPM y notifica a los oyentes.
+     */
+    private void onBeatDetected(int currentValue, long currentTime) {
+        if (beatObserver != null) {
+            beatObserver.onBeat(currentValue, currentTime);
+        }
+        if (!signalAcceptable) {
+            return;
+        }
+        if (Log.DEBUG_ENABLED) {
+            LOG.debug("Pico detectado en time={}, value={}. Notificando a oyentes.").arg(currentTime).arg(currentValue).log();
+        }
+
+        if(lastPeakTime !=-1){
+            long intervalSamples = currentTime- lastPeakTime;
+
+            //Solo asegurar que es positivo
+            if(intervalSamples >0){
+                // El buffer convierte a ms con la frecuencia real del detector (sin división entera)
+                rrIntervals.add(intervalSamples, currentTime);
+                currentBpm = (int) Math.round(heartRateEstimator.estimateBpm(rrIntervals));
+                if (Log.DEBUG_ENABLED) {
+                    LOG.debug("BPM {} (RR {} ms)").arg(currentBpm)
+                            .arg(intervalSamples * 1000 / rrIntervals.getSampleRateHz()).log();
+                }
+
+            } //Fin del If de Lectura de Pico R
+            else {
+                LOG.warn("El intervalo entre picos de onda R es 0").log();
             }
         }
+        else {
+            LOG.debug("Se detecta el primer pico").log();
+            currentBpm = 0;
+        }
+
+        lastPeakTime = currentTime;
+
+        // Notifica a todos los oyentes registrados llamando a su método onPeakDetected
+        for (EcgPeakListener listener : listeners) {
+            // Llama al método definido en la interfaz EcgPeakListener
+            listener.onPeakDetected(currentValue, currentTime);
+        }
+    }
+
+    /**
+     * Hay un hueco en la secuencia de muestras (mismo hilo que processSamples): el detector
+     * empieza de nuevo, se olvidan los RR anteriores (el BPM queda en 0 hasta los latidos nuevos)
+     * y el primer RR se cuenta desde el primer latido tras el hueco, como al recuperar la señal.
+     * Se avisa a los oyentes.
+     *
+     * @param expectedIndex Índice de la primera muestra que faltó.
+     * @param resumedIndex Índice de la muestra con la que sigue la señal.
+     */
+    public void onSampleGap(long expectedIndex, long resumedIndex) {
+        beatDetector.reset();
+        lastPeakTime = -1;
+        currentBpm = 0;
+        rrIntervals.clear();
+        if (Log.DEBUG_ENABLED) {
+            LOG.debug("Hueco de muestras {}..{}").arg(expectedIndex).arg(resumedIndex).log();
+        }
+        for (EcgPeakListener listener : listeners) {
+            listener.onSampleGap(expectedIndex, resumedIndex);
+        }
+    }
 
-        // Actualiza el estado para la próxima lectura 
-        wasBelowThreshold = (currentValue < beepThreshold);
+    /**
+     * Indica si la señal es utilizable (ver SignalQualityMonitor). Mientras no lo sea, los latidos
+     * que detecte el detector se descartan y el BPM queda en 0; al recuperarse, el detector se
+     * reinicia, los RR anteriores se olvidan y el primer RR se cuenta desde el primer latido nuevo
+     * (no a través del hueco).
+     */
+    public void setSignalAcceptable(boolean acceptable) {
+        if (acceptable == signalAcceptable) {
+            return;
+        }
+        signalAcceptable = acceptable;
+        lastPeakTime = -1;
+        currentBpm = 0;
+        rrIntervals.clear();
+        if (acceptable) {
+            beatDetector.reset();
+        }
+        LOG.debug("Señal {}.").arg(acceptable ? "utilizable" : "no utilizable; detección suspendida").log();
+    }
 
-      
+    public boolean isSignalAcceptable() {
+        return signalAcceptable;
+    }
+
+    /**
+     * Observador de todos los latidos del detector, antes de descartar los de mala señal
+     * (mismo hilo que processSamples). Se usa para comprobar que la frecuencia de QRS es plausible.
+     */
+    public void setBeatObserver(BeatDetector.BeatSink observer) {
+        this.beatObserver = observer;
     }
 
     public void resetState() {
-        wasBelowThreshold = true;
+        beatDetector.reset();
         lastPeakTime = -1;
         currentBpm= 0;
-        bpmHistory.clear();
-        System.out.println("DEBUG Model: Estado restablecido.");
+        rrIntervals.clear();
+        LOG.debug("Estado restablecido.").log();
     }
 
 
+    /**
+     * @return El umbral del detector por umbral fijo, o -1 si se usa otro detector.
+     */
     public int getBeepThreshold() {
-        return beepThreshold;
+        if (beatDetector instanceof ThresholdBeatDetector) {
+            return ((ThresholdBeatDetector) beatDetector).getThreshold();
+        }
+        return -1;
+    }
+
+    public BeatDetector getBeatDetector() {
+        return beatDetector;
+    }
+
+    /**
+     * Cambia cómo se resume la ventana de RR en BPM (media, mediana o media recortada).
+     */
+    public void setHeartRateEstimator(HeartRateEstimator estimator) {
+        if (estimator != null) {
+            this.heartRateEstimator = estimator;
+        }
+    }
+
+    public HeartRateEstimator getHeartRateEstimator() {
+        return heartRateEstimator;
+    }
+
+    /**
+     * Ventana de promediado del BPM en número de latidos (por defecto 5).
+     */
+    public void setAveragingWindowBeats(int beats) {
+        rrIntervals.setWindowBeats(beats);
+    }
+
+    /**
+     * Ventana de promediado del BPM en segundos.
+     */
+    public void setAveragingWindowSeconds(double seconds) {
+        rrIntervals.setWindowSeconds(seconds);
+    }
+
+    /**
+     * @return Vista de solo lectura del historial de RR, para HRV, alarmas u otros análisis.
+     */
+    public RrIntervalView getRrIntervals() {
+        return rrIntervals;
+    }
+
+    public int getSampleRateHz() {
+        return beatDetector.getSampleRateHz();
     }
     
     public int getCurrentBpm(){
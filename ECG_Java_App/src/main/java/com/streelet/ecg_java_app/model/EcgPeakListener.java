@@ -23,4 +23,15 @@ public interface EcgPeakListener {
      * @param time El contador de tiempo (o índice de muestra) en que ocurrió el pico.
      */
     void onPeakDetected(int peakValue, long time);
+
+    /**
+     * Faltan muestras entre {@code expectedIndex} y {@code resumedIndex} (pérdidas en la fuente o
+     * en el buffer de ingesta). Un RR medido a través del hueco no es fiable: el próximo latido
+     * debe tratarse como el primero. Por defecto no hace nada.
+     *
+     * @param expectedIndex Índice de la primera muestra que faltó.
+     * @param resumedIndex Índice de la muestra con la que sigue la señal.
+     */
+    default void onSampleGap(long expectedIndex, long resumedIndex) {
+    }
 }
\ No newline at end of file
@@ -0,0 +1,41 @@
+package com.streelet.ecg_java_app.model;
+
+/**
+ * Forma de resumir los RR de la ventana de promediado en una frecuencia cardíaca.
+ */
+public enum HeartRateEstimator {
+
+    /** Media de los RR: responde rápido pero un latido perdido o extra la desvía. */
+    MEAN,
+
+    /** Mediana de los RR: ignora latidos aislados mal detectados. */
+    MEDIAN,
+
+    /** Media descartando el 20% más corto y el 20% más largo de la ventana. */
+    TRIMMED_MEAN;
+
+    private static final double TRIM_FRACTION = 0.2;
+
+    /**
+     * @return RR representativo de la ventana en milisegundos, o 0 si la ventana está vacía.
+     */
+    public double estimateRrMillis(RrIntervalBuffer buffer) {
+        switch (this) {
+            case MEDIAN:
+                return buffer.getWindowMedian();
+            case TRIMMED_MEAN:
+                return buffer.getWindowTrimmedMean(TRIM_FRACTION);
+            case MEAN:
+            default:
+                return buffer.getWindowMean();
+        }
+    }
+
+    /**
+     * @return Frecuencia cardíaca en latidos por minuto, o 0 si la ventana está vacía.
+     */
+    public double estimateBpm(RrIntervalBuffer buffer) {
+        double rrMillis = estimateRrMillis(buffer);
+        return rrMillis > 0 ? 60_000.0 / rrMillis : 0;
+    }
+}
@@ -0,0 +1,465 @@
+package com.streelet.ecg_java_app.model;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Variabilidad de la frecuencia cardíaca (HRV) en vivo sobre varias ventanas deslizantes
+ * (por defecto 1, 5 y 60 minutos), leyendo el historial de RR de {@link EcgDataModel}.
+ *
+ * Dominio del tiempo (SDNN, RMSSD, pNN50): se actualiza en O(1) amortizado por latido,
+ * añadiendo el intervalo nuevo y sacando los que salen de la ventana (Welford con
+ * eliminación para la varianza, sumas corridas para las diferencias sucesivas).
+ *
+ * Dominio de la frecuencia (LF, HF, LF/HF): cada {@code spectralIntervalSeconds} de señal
+ * se copian los RR de cada ventana a buffers preasignados y un hilo de fondo calcula un
+ * periodograma de Lomb-Scargle (no necesita remuestrear los RR). El resultado se incorpora
+ * a los snapshots de los latidos siguientes.
+ *
+ * Se registra como {@link EcgPeakListener} del modelo y debe recibir los latidos desde el
+ * mismo hilo que escribe el historial de RR.
+ */
+public class HrvAnalyzer implements EcgPeakListener {
+
+    public static final double[] DEFAULT_WINDOWS_SECONDS = {60, 300, 3600};
+    public static final double DEFAULT_SPECTRAL_INTERVAL_SECONDS = 10;
+
+    // Intervalos fuera de este rango se consideran artefactos y no entran en las métricas
+    private static final double MIN_VALID_RR_MS = 250;
+    private static final double MAX_VALID_RR_MS = 2500;
+
+    // Bandas y rejilla de frecuencias del análisis espectral
+    private static final double LF_LOW_HZ = 0.04;
+    private static final double LF_HIGH_HZ = 0.15;
+    private static final double HF_HIGH_HZ = 0.40;
+    private static final double FREQUENCY_STEP_HZ = 0.0025;
+    private static final int FREQUENCY_COUNT = (int) Math.round((HF_HIGH_HZ - LF_LOW_HZ) / FREQUENCY_STEP_HZ) + 1;
+    // Mínimo para que el espectro tenga sentido: dos ciclos de la frecuencia LF más baja
+    private static final double MIN_SPECTRAL_SPAN_SECONDS = 2 / LF_LOW_HZ;
+    private static final int MIN_SPECTRAL_INTERVALS = 32;
+    // Latidos por segundo máximos previstos al dimensionar los buffers (300 lpm)
+    private static final double MAX_BEATS_PER_SECOND = 5;
+
+    private final RrIntervalView rr;
+    private final double sampleRateHz;
+    private final int windowCount;
+    private final double[] windowSeconds;
+
+    // Estado de dominio del tiempo por ventana (arrays paralelos)
+    private final long[] windowStart;
+    private final int[] count;
+    private final double[] mean;
+    private final double[] m2;
+    private final int[] diffCount;
+    private final double[] diffSumSquares;
+    private final int[] nn50Count;
+    private final int[] evictionsSinceRebuild;
+
+    private long nextIndex = 0;
+
+    // Análisis espectral: buffers de copia por ventana, acumuladores por frecuencia y resultados
+    private final double spectralIntervalSeconds;
+    private long lastSpectralBeatSample = Long.MIN_VALUE;
+    private final double[][] spectralTimes;
+    private final double[][] spectralValues;
+    private final int[] spectralCounts;
+    private final double[] accYc = new double[FREQUENCY_COUNT];
+    private final double[] accYs = new double[FREQUENCY_COUNT];
+    private final double[] accCc = new double[FREQUENCY_COUNT];
+    private final double[] accSs = new double[FREQUENCY_COUNT];
+    private final double[] accCs = new double[FREQUENCY_COUNT];
+    // {lf, hf} por ventana; se reemplaza entero para que nunca se lea una mezcla
+    private final AtomicReferenceArray<double[]> spectralResults;
+    private final AtomicBoolean spectralBusy = new AtomicBoolean(false);
+    private final Runnable spectralTask = this::computeSpectra;
+    private final ExecutorService spectralExecutor;
+    private volatile long lastSpectralNanos = 0;
+
+    private final List<HrvListener> listeners = new CopyOnWriteArrayList<>();
+
+    public HrvAnalyzer(RrIntervalView rr) {
+        this(rr, DEFAULT_SPECTRAL_INTERVAL_SECONDS, DEFAULT_WINDOWS_SECONDS);
+    }
+
+    /**
+     * @param rr Historial de intervalos RR (normalmente {@link EcgDataModel#getRrIntervals()}).
+     * @param spectralIntervalSeconds Cada cuántos segundos de señal se recalcula el espectro.
+     * @param windowsSeconds Duración de cada ventana deslizante.
+     */
+    public HrvAnalyzer(RrIntervalView rr, double spectralIntervalSeconds, double... windowsSeconds) {
+        if (rr == null) {
+            throw new IllegalArgumentException("El historial de RR no puede ser null");
+        }
+        if (windowsSeconds.length == 0) {
+            throw new IllegalArgumentException("Se necesita al menos una ventana");
+        }
+        this.rr = rr;
+        this.sampleRateHz = rr.getSampleRateHz();
+        this.windowCount = windowsSeconds.length;
+        this.windowSeconds = windowsSeconds.clone();
+        this.windowStart = new long[windowCount];
+        this.count = new int[windowCount];
+        this.mean = new double[windowCount];
+        this.m2 = new double[windowCount];
+        this.diffCount = new int[windowCount];
+        this.diffSumSquares = new double[windowCount];
+        this.nn50Count = new int[windowCount];
+        this.evictionsSinceRebuild = new int[windowCount];
+
+        this.spectralIntervalSeconds = spectralIntervalSeconds;
+        this.spectralTimes = new double[windowCount][];
+        this.spectralValues = new double[windowCount][];
+        this.spectralCounts = new int[windowCount];
+        this.spectralResults = new AtomicReferenceArray<>(windowCount);
+        int historyCapacity = rr.capacity();
+        for (int w = 0; w < windowCount; w++) {
+            if (!(windowsSeconds[w] > 0)) {
+                throw new IllegalArgumentException("Ventana inválida: " + windowsSeconds[w] + " s");
+            }
+            int maxBeats = (int) Math.min(historyCapacity, Math.ceil(windowsSeconds[w] * MAX_BEATS_PER_SECOND));
+            spectralTimes[w] = new double[maxBeats];
+            spectralValues[w] = new double[maxBeats];
+        }
+        this.spectralExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "ecg-hrv-spectral");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    public void addHrvListener(HrvListener listener) {
+        if (listener != null && !listeners.contains(listener)) {
+            listeners.add(listener);
+        }
+    }
+
+    public void removeHrvListener(HrvListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Llamado por el modelo después de guardar el RR de cada latido.
+     */
+    @Override
+    public void onPeakDetected(int peakValue, long time) {
+        update();
+    }
+
+    /**
+     * Incorpora los intervalos nuevos del historial y publica un snapshot por ventana.
+     */
+    public void update() {
+        long total = rr.getTotalCount();
+        if (total < nextIndex) {
+            // El historial se vació (resetState del modelo): se empieza de cero
+            reset();
+        }
+        if (total == nextIndex) {
+            return;
+        }
+        long oldestAvailable = total - rr.size();
+        if (nextIndex < oldestAvailable) {
+            nextIndex = oldestAvailable;
+        }
+
+        for (long index = nextIndex; index < total; index++) {
+            long beatSample = rr.getBeatSample(index);
+            for (int w = 0; w < windowCount; w++) {
+                if (windowStart[w] < oldestAvailable) {
+                    // Lo más antiguo de la ventana ya se sobrescribió en el anillo: se recalcula
+                    rebuild(w, oldestAvailable, index);
+                }
+                addInterval(w, index);
+                long limit = (long) (windowSeconds[w] * sampleRateHz);
+                while (windowStart[w] < index && beatSample - rr.getBeatSample(windowStart[w]) >= limit) {
+                    evictOldest(w, index);
+                }
+                if (evictionsSinceRebuild[w] > Math.max(64, index + 1 - windowStart[w])) {
+                    // Una vez por vuelta completa de la ventana, para que no se acumule error de redondeo
+                    rebuild(w, windowStart[w], index + 1);
+                }
+            }
+        }
+        nextIndex = total;
+
+        long newestBeat = rr.getBeatSample(total - 1);
+        scheduleSpectralIfDue(newestBeat, total);
+        publish(newestBeat);
+    }
+
+    /**
+     * Olvida todas las ventanas (no detiene el hilo de fondo).
+     */
+    public void reset() {
+        for (int w = 0; w < windowCount; w++) {
+            clearWindow(w, 0);
+            spectralResults.set(w, null);
+        }
+        nextIndex = 0;
+        lastSpectralBeatSample = Long.MIN_VALUE;
+    }
+
+    /**
+     * Detiene el hilo de análisis espectral.
+     */
+    public void shutdown() {
+        spectralExecutor.shutdownNow();
+        try {
+            spectralExecutor.awaitTermination(200, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return Duración del último cálculo espectral (todas las ventanas) en nanosegundos.
+     */
+    public long getLastSpectralNanos() {
+        return lastSpectralNanos;
+    }
+
+    /**
+     * @return Snapshot actual de la ventana {@code windowIndex}, o null si aún no hay datos.
+     */
+    public HrvSnapshot getSnapshot(int windowIndex) {
+        if (nextIndex == 0) {
+            return null;
+        }
+        return buildSnapshot(windowIndex, rr.getBeatSample(nextIndex - 1));
+    }
+
+    public int getWindowCount() {
+        return windowCount;
+    }
+
+    // --- Dominio del tiempo ---
+
+    private static boolean isValid(double millis) {
+        return millis >= MIN_VALID_RR_MS && millis <= MAX_VALID_RR_MS;
+    }
+
+    private void addInterval(int w, long index) {
+        double x = rr.getRrMillis(index);
+        if (!isValid(x)) {
+            return;
+        }
+        int n = ++count[w];
+        double delta = x - mean[w];
+        mean[w] += delta / n;
+        m2[w] += delta * (x - mean[w]);
+
+        if (index - 1 >= windowStart[w]) {
+            double previous = rr.getRrMillis(index - 1);
+            if (isValid(previous)) {
+                double diff = x - previous;
+                diffCount[w]++;
+                diffSumSquares[w] += diff * diff;
+                if (Math.abs(diff) > 50) {
+                    nn50Count[w]++;
+                }
+            }
+        }
+    }
+
+    private void evictOldest(int w, long newestIndex) {
+        long index = windowStart[w];
+        double x = rr.getRrMillis(index);
+        if (isValid(x)) {
+            int n = --count[w];
+            if (n == 0) {
+                mean[w] = 0;
+                m2[w] = 0;
+            } else {
+                double oldMean = mean[w];
+                mean[w] = (oldMean * (n + 1) - x) / n;
+                m2[w] = Math.max(0, m2[w] - (x - oldMean) * (x - mean[w]));
+            }
+            // La diferencia con el siguiente (si está en la ventana) también sale
+            if (index + 1 <= newestIndex) {
+                double next = rr.getRrMillis(index + 1);
+                if (isValid(next)) {
+                    double diff = next - x;
+                    diffCount[w]--;
+                    diffSumSquares[w] = Math.max(0, diffSumSquares[w] - diff * diff);
+                    if (Math.abs(diff) > 50) {
+                        nn50Count[w]--;
+                    }
+                }
+            }
+        }
+        windowStart[w] = index + 1;
+        evictionsSinceRebuild[w]++;
+    }
+
+    private void clearWindow(int w, long start) {
+        windowStart[w] = start;
+        count[w] = 0;
+        mean[w] = 0;
+        m2[w] = 0;
+        diffCount[w] = 0;
+        diffSumSquares[w] = 0;
+        nn50Count[w] = 0;
+        evictionsSinceRebuild[w] = 0;
+    }
+
+    /**
+     * Recalcula la ventana {@code w} con los intervalos [from, to).
+     */
+    private void rebuild(int w, long from, long to) {
+        clearWindow(w, from);
+        for (long index = from; index < to; index++) {
+            addInterval(w, index);
+        }
+    }
+
+    private void publish(long beatSample) {
+        if (listeners.isEmpty()) {
+            return;
+        }
+        for (int w = 0; w < windowCount; w++) {
+            HrvSnapshot snapshot = buildSnapshot(w, beatSample);
+            for (HrvListener listener : listeners) {
+                listener.onHrvUpdated(snapshot);
+            }
+        }
+    }
+
+    private HrvSnapshot buildSnapshot(int w, long beatSample) {
+        int n = count[w];
+        double sdnn = n > 1 ? Math.sqrt(m2[w] / (n - 1)) : 0;
+        double rmssd = diffCount[w] > 0 ? Math.sqrt(diffSumSquares[w] / diffCount[w]) : 0;
+        double pnn50 = diffCount[w] > 0 ? 100.0 * nn50Count[w] / diffCount[w] : 0;
+        double[] spectral = spectralResults.get(w);
+        double lf = spectral != null ? spectral[0] : Double.NaN;
+        double hf = spectral != null ? spectral[1] : Double.NaN;
+        return new HrvSnapshot(windowSeconds[w], beatSample, n, mean[w], sdnn, rmssd, pnn50, lf, hf);
+    }
+
+    // --- Dominio de la frecuencia ---
+
+    /**
+     * En el hilo del modelo: si toca y el hilo de fondo está libre, copia los RR de cada
+     * ventana a sus buffers y encarga el cálculo.
+     */
+    private void scheduleSpectralIfDue(long newestBeat, long total) {
+        long interval = (long) (spectralIntervalSeconds * sampleRateHz);
+        if (lastSpectralBeatSample != Long.MIN_VALUE && newestBeat - lastSpectralBeatSample < interval) {
+            return;
+        }
+        if (!spectralBusy.compareAndSet(false, true)) {
+            return;
+        }
+        lastSpectralBeatSample = newestBeat;
+        for (int w = 0; w < windowCount; w++) {
+            double[] times = spectralTimes[w];
+            double[] values = spectralValues[w];
+            long from = Math.max(windowStart[w], total - times.length);
+            int n = 0;
+            for (long index = from; index < total; index++) {
+                double x = rr.getRrMillis(index);
+                if (isValid(x)) {
+                    times[n] = rr.getBeatSample(index) / sampleRateHz;
+                    values[n] = x;
+                    n++;
+                }
+            }
+            spectralCounts[w] = n;
+        }
+        try {
+            spectralExecutor.execute(spectralTask);
+        } catch (RejectedExecutionException e) {
+            spectralBusy.set(false);
+        }
+    }
+
+    /**
+     * En el hilo de fondo: Lomb-Scargle de cada ventana con los buffers ya copiados.
+     */
+    private void computeSpectra() {
+        long startNanos = System.nanoTime();
+        try {
+            for (int w = 0; w < windowCount; w++) {
+                int n = spectralCounts[w];
+                double[] times = spectralTimes[w];
+                if (n < MIN_SPECTRAL_INTERVALS || times[n - 1] - times[0] < MIN_SPECTRAL_SPAN_SECONDS) {
+                    spectralResults.set(w, null);
+                    continue;
+                }
+                spectralResults.set(w, lombScarglePowers(times, spectralValues[w], n));
+            }
+        } finally {
+            lastSpectralNanos = System.nanoTime() - startNanos;
+            spectralBusy.set(false);
+        }
+    }
+
+    /**
+     * Periodograma de Lomb-Scargle en una rejilla uniforme de frecuencias, integrado en las
+     * bandas LF y HF. Para cada latido se recorre la rejilla girando el fasor (sin llamar a
+     * sin/cos por frecuencia); la potencia sale del ajuste por mínimos cuadrados de
+     * a·cos + b·sin, equivalente a la fórmula clásica con el desfase tau.
+     *
+     * @return {lf, hf} en ms².
+     */
+    private double[] lombScarglePowers(double[] times, double[] values, int n) {
+        double average = 0;
+        for (int i = 0; i < n; i++) {
+            average += values[i];
+        }
+        average /= n;
+
+        Arrays.fill(accYc, 0);
+        Arrays.fill(accYs, 0);
+        Arrays.fill(accCc, 0);
+        Arrays.fill(accSs, 0);
+        Arrays.fill(accCs, 0);
+
+        double t0 = times[0];
+        for (int i = 0; i < n; i++) {
+            double t = times[i] - t0;
+            double y = values[i] - average;
+            double phase = 2 * Math.PI * LF_LOW_HZ * t;
+            double step = 2 * Math.PI * FREQUENCY_STEP_HZ * t;
+            double cos = Math.cos(phase), sin = Math.sin(phase);
+            double cosStep = Math.cos(step), sinStep = Math.sin(step);
+            for (int k = 0; k < FREQUENCY_COUNT; k++) {
+                accYc[k] += y * cos;
+                accYs[k] += y * sin;
+                accCc[k] += cos * cos;
+                accSs[k] += sin * sin;
+                accCs[k] += cos * sin;
+                double nextCos = cos * cosStep - sin * sinStep;
+                sin = sin * cosStep + cos * sinStep;
+                cos = nextCos;
+            }
+        }
+
+        // Potencia por frecuencia = varianza explicada por la sinusoide; se pasa a densidad con la duración
+        double span = times[n - 1] - t0;
+        double lf = 0, hf = 0;
+        for (int k = 0; k < FREQUENCY_COUNT; k++) {
+            double determinant = accCc[k] * accSs[k] - accCs[k] * accCs[k];
+            if (determinant <= 0) {
+                continue;
+            }
+            double explained = (accSs[k] * accYc[k] * accYc[k] + accCc[k] * accYs[k] * accYs[k]
+                    - 2 * accCs[k] * accYc[k] * accYs[k]) / determinant;
+            double power = explained / n * span * FREQUENCY_STEP_HZ;
+            double frequency = LF_LOW_HZ + k * FREQUENCY_STEP_HZ;
+            if (frequency < LF_HIGH_HZ) {
+                lf += power;
+            } else {
+                hf += power;
+            }
+        }
+        return new double[] {lf, hf};
+    }
+}
@@ -0,0 +1,10 @@
+package com.streelet.ecg_java_app.model;
+
+/**
+ * Oyente de resultados de HRV. Se llama desde el hilo que procesa los latidos,
+ * una vez por latido y por ventana.
+ */
+public interface HrvListener {
+
+    void onHrvUpdated(HrvSnapshot snapshot);
+}
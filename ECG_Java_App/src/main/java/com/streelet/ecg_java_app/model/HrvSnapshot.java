@@ -0,0 +1,88 @@
+package com.streelet.ecg_java_app.model;
+
+/**
+ * Resultado inmutable de la variabilidad de la frecuencia cardíaca (HRV) en una ventana.
+ * Los valores de dominio de frecuencia son NaN hasta que el hilo de fondo los calcula
+ * por primera vez (o si la ventana tiene muy pocos latidos).
+ */
+public final class HrvSnapshot {
+
+    private final double windowSeconds;
+    private final long beatSample;
+    private final int intervalCount;
+    private final double meanRrMillis;
+    private final double sdnnMillis;
+    private final double rmssdMillis;
+    private final double pnn50Percent;
+    private final double lfPower;
+    private final double hfPower;
+
+    public HrvSnapshot(double windowSeconds, long beatSample, int intervalCount, double meanRrMillis,
+                       double sdnnMillis, double rmssdMillis, double pnn50Percent,
+                       double lfPower, double hfPower) {
+        this.windowSeconds = windowSeconds;
+        this.beatSample = beatSample;
+        this.intervalCount = intervalCount;
+        this.meanRrMillis = meanRrMillis;
+        this.sdnnMillis = sdnnMillis;
+        this.rmssdMillis = rmssdMillis;
+        this.pnn50Percent = pnn50Percent;
+        this.lfPower = lfPower;
+        this.hfPower = hfPower;
+    }
+
+    /** Duración de la ventana en segundos (60, 300, 3600...). */
+    public double getWindowSeconds() {
+        return windowSeconds;
+    }
+
+    /** Índice de muestra del latido con el que se actualizó. */
+    public long getBeatSample() {
+        return beatSample;
+    }
+
+    /** Intervalos RR válidos dentro de la ventana. */
+    public int getIntervalCount() {
+        return intervalCount;
+    }
+
+    public double getMeanRrMillis() {
+        return meanRrMillis;
+    }
+
+    /** Desviación típica de los intervalos NN. */
+    public double getSdnnMillis() {
+        return sdnnMillis;
+    }
+
+    /** Raíz cuadrática media de las diferencias sucesivas. */
+    public double getRmssdMillis() {
+        return rmssdMillis;
+    }
+
+    /** Porcentaje de diferencias sucesivas mayores de 50 ms. */
+    public double getPnn50Percent() {
+        return pnn50Percent;
+    }
+
+    /** Potencia en la banda LF (0.04-0.15 Hz), ms². */
+    public double getLfPower() {
+        return lfPower;
+    }
+
+    /** Potencia en la banda HF (0.15-0.4 Hz), ms². */
+    public double getHfPower() {
+        return hfPower;
+    }
+
+    /** Cociente LF/HF, o NaN si aún no hay análisis espectral. */
+    public double getLfHfRatio() {
+        return hfPower > 0 ? lfPower / hfPower : Double.NaN;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("HRV %.0fs: n=%d RR=%.0fms SDNN=%.1fms RMSSD=%.1fms pNN50=%.1f%% LF/HF=%.2f",
+                windowSeconds, intervalCount, meanRrMillis, sdnnMillis, rmssdMillis, pnn50Percent, getLfHfRatio());
+    }
+}
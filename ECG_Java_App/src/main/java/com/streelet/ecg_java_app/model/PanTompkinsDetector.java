@@ -0,0 +1,418 @@
+package com.streelet.ecg_java_app.model;
+
+import java.util.Arrays;
+
+/**
+ * Detector de QRS de flujo continuo basado en Pan y Tompkins (1985):
+ * pasa-banda 5-15 Hz, derivada de 5 puntos, cuadrado, integración en ventana móvil
+ * de 150 ms y umbrales adaptativos dobles (señal integrada y señal filtrada),
+ * con periodo refractario, rechazo de ondas T y búsqueda hacia atrás ("searchback")
+ * cuando pasa demasiado tiempo sin latido.
+ *
+ * Todo el estado se reserva en el constructor: process() no crea objetos. El pico R se
+ * confirma cuando la señal integrada vuelve a bajar, así que los latidos se reportan con
+ * un retraso de ~100-250 ms respecto al índice del pico R que se informa.
+ *
+ * El valor e índice reportados son los del máximo crudo dentro de la ventana del QRS
+ * (se asume R positiva, igual que el detector por umbral).
+ */
+public class PanTompkinsDetector implements BeatDetector {
+
+    // Parámetros del algoritmo (en segundos salvo indicación)
+    private static final double BANDPASS_LOW_HZ = 5.0;
+    private static final double BANDPASS_HIGH_HZ = 15.0;
+    private static final double INTEGRATION_WINDOW_S = 0.150;
+    private static final double REFRACTORY_S = 0.200;
+    private static final double T_WAVE_WINDOW_S = 0.360;
+    private static final double LEARNING_S = 2.0;
+    private static final double QRS_SEARCH_MARGIN_S = 0.060;
+
+    // Límites de RR respecto al promedio de RR "regulares" (fracciones del artículo original)
+    private static final double RR_LOW_LIMIT = 0.92;
+    private static final double RR_HIGH_LIMIT = 1.16;
+    private static final double RR_MISSED_LIMIT = 1.66;
+    private static final int RR_AVERAGE_BEATS = 8;
+
+    private final int sampleRateHz;
+    private final int integrationWindow;
+    private final int refractorySamples;
+    private final int tWaveSamples;
+    private final int learningSamples;
+    private final int qrsLookback;
+
+    // Pasa-banda como pasa-altos + pasa-bajos (biquads RBJ, forma directa I)
+    private final double hpB0, hpB1, hpB2, hpA1, hpA2;
+    private final double lpB0, lpB1, lpB2, lpA1, lpA2;
+    private double hpX1, hpX2, hpY1, hpY2;
+    private double lpX1, lpX2, lpY1, lpY2;
+
+    // Derivada de 5 puntos: historial de la señal filtrada
+    private double bp1, bp2, bp3, bp4;
+    private final double derivativeScale;
+
+    // Integración en ventana móvil: suma corrida sobre un anillo de valores al cuadrado
+    private final double[] squaredRing;
+    private int squaredIndex = 0;
+    private double squaredSum = 0;
+
+    // Historial reciente de la señal cruda y filtrada, indexado por índice de muestra global
+    private final int historyMask;
+    private final int[] rawHistory;
+    private final double[] filteredHistory;
+
+    // Índice global de la próxima muestra a procesar (contado desde reset())
+    private long sampleIndex = 0;
+    private long indexOrigin = 0;
+
+    // Búsqueda del máximo local de la señal integrada
+    private boolean seekingPeak = true;
+    private double mwiPeak = 0;
+    private long mwiPeakIndex = 0;
+    private double mwiValley = 0;
+
+    // Fase de aprendizaje
+    private double learningMax = 0;
+    private double learningSum = 0;
+    private double learningFilteredMax = 0;
+    private double learningFilteredSum = 0;
+    private boolean learning = true;
+
+    // Niveles de señal/ruido y umbrales (I = integrada, F = filtrada)
+    private double spki, npki, spkf, npkf;
+    private boolean irregular = false;
+
+    // Último latido aceptado
+    private long lastBeatIndex = -1;
+    private double lastQrsSlope = 0;
+
+    // Candidato para searchback: el mayor pico por encima del segundo umbral desde el último latido
+    private boolean hasCandidate = false;
+    private double candidatePeak;
+    private double candidateFiltered;
+    private double candidateSlope;
+    private long candidateIndex;
+    private int candidateValue;
+
+    // Promedios de RR: los últimos 8 y los últimos 8 dentro de límites
+    private final long[] recentRr = new long[RR_AVERAGE_BEATS];
+    private final long[] selectedRr = new long[RR_AVERAGE_BEATS];
+    private int recentCount = 0, recentIndex = 0;
+    private int selectedCount = 0, selectedIndex = 0;
+    private long recentSum = 0, selectedSum = 0;
+
+    // Resultado del último localizador de R (evita devolver objetos)
+    private long foundIndex;
+    private int foundValue;
+    private double foundFiltered;
+    private double foundSlope;
+
+    // Métricas de coste
+    private long samplesProcessed = 0;
+    private long processingNanos = 0;
+
+    /**
+     * @param sampleRateHz Frecuencia de muestreo de la señal (al menos 100 Hz para que el pasa-banda tenga sentido).
+     */
+    public PanTompkinsDetector(int sampleRateHz) {
+        if (sampleRateHz < 100) {
+            throw new IllegalArgumentException("Pan-Tompkins necesita al menos 100 Hz: " + sampleRateHz);
+        }
+        this.sampleRateHz = sampleRateHz;
+        this.integrationWindow = Math.max(1, (int) Math.round(INTEGRATION_WINDOW_S * sampleRateHz));
+        this.refractorySamples = (int) Math.round(REFRACTORY_S * sampleRateHz);
+        this.tWaveSamples = (int) Math.round(T_WAVE_WINDOW_S * sampleRateHz);
+        this.learningSamples = (int) Math.round(LEARNING_S * sampleRateHz);
+        // El pico de la señal integrada llega al final del QRS: se busca R hacia atrás una ventana y un margen
+        this.qrsLookback = integrationWindow + (int) Math.round(QRS_SEARCH_MARGIN_S * sampleRateHz) + 4;
+
+        double[] hp = biquad(true, BANDPASS_LOW_HZ, sampleRateHz);
+        hpB0 = hp[0]; hpB1 = hp[1]; hpB2 = hp[2]; hpA1 = hp[3]; hpA2 = hp[4];
+        double[] lp = biquad(false, BANDPASS_HIGH_HZ, sampleRateHz);
+        lpB0 = lp[0]; lpB1 = lp[1]; lpB2 = lp[2]; lpA1 = lp[3]; lpA2 = lp[4];
+        this.derivativeScale = sampleRateHz / 8.0;
+
+        this.squaredRing = new double[integrationWindow];
+
+        // El pico se confirma como mucho una ventana después; el historial cubre eso más la búsqueda hacia atrás
+        int historySize = Integer.highestOneBit(qrsLookback + integrationWindow + 2) << 1;
+        this.historyMask = historySize - 1;
+        this.rawHistory = new int[historySize];
+        this.filteredHistory = new double[historySize];
+    }
+
+    @Override
+    public int process(int[] samples, int offset, int length, long firstSampleIndex, BeatSink sink) {
+        long startNanos = System.nanoTime();
+        if (sampleIndex == 0) {
+            indexOrigin = firstSampleIndex;
+        }
+        int beats = 0;
+        for (int i = 0; i < length; i++) {
+            beats += processSample(samples[offset + i], sink);
+        }
+        samplesProcessed += length;
+        processingNanos += System.nanoTime() - startNanos;
+        return beats;
+    }
+
+    private int processSample(int raw, BeatSink sink) {
+        long n = sampleIndex++;
+        int slot = (int) (n & historyMask);
+
+        // 1) Pasa-banda
+        double x = raw;
+        double hp = hpB0 * x + hpB1 * hpX1 + hpB2 * hpX2 - hpA1 * hpY1 - hpA2 * hpY2;
+        hpX2 = hpX1; hpX1 = x; hpY2 = hpY1; hpY1 = hp;
+        double bp = lpB0 * hp + lpB1 * lpX1 + lpB2 * lpX2 - lpA1 * lpY1 - lpA2 * lpY2;
+        lpX2 = lpX1; lpX1 = hp; lpY2 = lpY1; lpY1 = bp;
+
+        rawHistory[slot] = raw;
+        filteredHistory[slot] = bp;
+
+        // 2) Derivada y 3) cuadrado
+        double derivative = (2 * bp + bp1 - bp3 - 2 * bp4) * derivativeScale;
+        bp4 = bp3; bp3 = bp2; bp2 = bp1; bp1 = bp;
+        double squared = derivative * derivative;
+
+        // 4) Integración en ventana móvil
+        squaredSum += squared - squaredRing[squaredIndex];
+        squaredRing[squaredIndex] = squared;
+        if (++squaredIndex == integrationWindow) {
+            squaredIndex = 0;
+            // Se recalcula la suma una vez por vuelta para que el error de redondeo no se acumule
+            double exact = 0;
+            for (double value : squaredRing) {
+                exact += value;
+            }
+            squaredSum = exact;
+        }
+        double mwi = squaredSum / integrationWindow;
+
+        if (learning) {
+            learnSample(n, mwi, Math.abs(bp));
+            return 0;
+        }
+
+        int beats = 0;
+
+        // Searchback: si pasó demasiado tiempo sin latido, se acepta el mejor candidato
+        if (hasCandidate && lastBeatIndex >= 0 && selectedCount > 0
+                && n - lastBeatIndex > RR_MISSED_LIMIT * selectedSum / selectedCount) {
+            spki = 0.25 * candidatePeak + 0.75 * spki;
+            spkf = 0.25 * candidateFiltered + 0.75 * spkf;
+            acceptBeat(candidateIndex, candidateValue, candidateSlope, sink);
+            beats++;
+        }
+
+        // 5) Máximos locales de la señal integrada
+        if (seekingPeak) {
+            if (mwi > mwiPeak) {
+                mwiPeak = mwi;
+                mwiPeakIndex = n;
+            } else if (mwi < 0.5 * mwiPeak || n - mwiPeakIndex >= integrationWindow) {
+                beats += classifyPeak(mwiPeak, mwiPeakIndex, sink);
+                seekingPeak = false;
+                mwiValley = mwi;
+            }
+        } else if (mwi < mwiValley) {
+            mwiValley = mwi;
+        } else if (mwi > mwiValley) {
+            seekingPeak = true;
+            mwiPeak = mwi;
+            mwiPeakIndex = n;
+        }
+        return beats;
+    }
+
+    /**
+     * Primeros 2 s: solo se miden los niveles para inicializar los umbrales.
+     */
+    private void learnSample(long n, double mwi, double filteredAbs) {
+        learningMax = Math.max(learningMax, mwi);
+        learningSum += mwi;
+        learningFilteredMax = Math.max(learningFilteredMax, filteredAbs);
+        learningFilteredSum += filteredAbs;
+        if (n + 1 >= learningSamples) {
+            double count = n + 1;
+            spki = learningMax / 3.0;
+            npki = learningSum / count / 2.0;
+            spkf = learningFilteredMax / 3.0;
+            npkf = learningFilteredSum / count / 2.0;
+            learning = false;
+            seekingPeak = true;
+            mwiPeak = mwi;
+            mwiPeakIndex = n;
+        }
+    }
+
+    /**
+     * Decide si un máximo de la señal integrada es un QRS, ruido o un candidato para searchback.
+     */
+    private int classifyPeak(double peak, long peakIndex, BeatSink sink) {
+        locateR(peakIndex);
+        double filteredPeak = foundFiltered;
+
+        // Periodo refractario: ningún QRS fisiológico cae tan cerca del anterior
+        if (lastBeatIndex >= 0 && foundIndex - lastBeatIndex < refractorySamples) {
+            return 0;
+        }
+
+        double thresholdI1 = npki + 0.25 * (spki - npki);
+        double thresholdF1 = npkf + 0.25 * (spkf - npkf);
+        if (irregular) {
+            thresholdI1 *= 0.5;
+            thresholdF1 *= 0.5;
+        }
+
+        boolean isQrs = peak > thresholdI1 && filteredPeak > thresholdF1;
+
+        // Onda T: cerca del latido anterior y con pendiente mucho menor que la del QRS
+        if (isQrs && lastBeatIndex >= 0 && foundIndex - lastBeatIndex < tWaveSamples
+                && foundSlope < 0.5 * lastQrsSlope) {
+            isQrs = false;
+        }
+
+        if (isQrs) {
+            spki = 0.125 * peak + 0.875 * spki;
+            spkf = 0.125 * filteredPeak + 0.875 * spkf;
+            acceptBeat(foundIndex, foundValue, foundSlope, sink);
+            return 1;
+        }
+
+        npki = 0.125 * peak + 0.875 * npki;
+        npkf = 0.125 * filteredPeak + 0.875 * npkf;
+        if (peak > 0.5 * thresholdI1 && filteredPeak > 0.5 * thresholdF1
+                && (!hasCandidate || peak > candidatePeak)) {
+            hasCandidate = true;
+            candidatePeak = peak;
+            candidateFiltered = filteredPeak;
+            candidateSlope = foundSlope;
+            candidateIndex = foundIndex;
+            candidateValue = foundValue;
+        }
+        return 0;
+    }
+
+    /**
+     * Busca el pico R (máximo crudo) en la ventana del QRS que termina en peakIndex.
+     * Deja el resultado en los campos found*.
+     */
+    private void locateR(long peakIndex) {
+        long from = Math.max(0, peakIndex - qrsLookback);
+        int bestValue = Integer.MIN_VALUE;
+        long bestIndex = peakIndex;
+        double filteredMax = 0;
+        double slopeMax = 0;
+        double previous = filteredHistory[(int) (from & historyMask)];
+        for (long i = from; i <= peakIndex; i++) {
+            int slot = (int) (i & historyMask);
+            int raw = rawHistory[slot];
+            if (raw > bestValue) {
+                bestValue = raw;
+                bestIndex = i;
+            }
+            double filtered = filteredHistory[slot];
+            filteredMax = Math.max(filteredMax, Math.abs(filtered));
+            slopeMax = Math.max(slopeMax, Math.abs(filtered - previous));
+            previous = filtered;
+        }
+        foundIndex = bestIndex;
+        foundValue = bestValue;
+        foundFiltered = filteredMax;
+        foundSlope = slopeMax;
+    }
+
+    private void acceptBeat(long beatIndex, int value, double slope, BeatSink sink) {
+        if (lastBeatIndex >= 0) {
+            updateRr(beatIndex - lastBeatIndex);
+        }
+        lastBeatIndex = beatIndex;
+        lastQrsSlope = slope;
+        hasCandidate = false;
+        sink.onBeat(value, indexOrigin + beatIndex);
+    }
+
+    private void updateRr(long rr) {
+        recentSum += rr - (recentCount == RR_AVERAGE_BEATS ? recentRr[recentIndex] : 0);
+        recentRr[recentIndex] = rr;
+        recentIndex = (recentIndex + 1) % RR_AVERAGE_BEATS;
+        recentCount = Math.min(recentCount + 1, RR_AVERAGE_BEATS);
+
+        double selectedAverage = selectedCount > 0 ? (double) selectedSum / selectedCount : rr;
+        boolean withinLimits = rr >= RR_LOW_LIMIT * selectedAverage && rr <= RR_HIGH_LIMIT * selectedAverage;
+        if (withinLimits || selectedCount == 0) {
+            selectedSum += rr - (selectedCount == RR_AVERAGE_BEATS ? selectedRr[selectedIndex] : 0);
+            selectedRr[selectedIndex] = rr;
+            selectedIndex = (selectedIndex + 1) % RR_AVERAGE_BEATS;
+            selectedCount = Math.min(selectedCount + 1, RR_AVERAGE_BEATS);
+        }
+        // Ritmo irregular: se bajan los umbrales a la mitad hasta que vuelva a ser regular
+        irregular = !withinLimits;
+    }
+
+    @Override
+    public void reset() {
+        hpX1 = hpX2 = hpY1 = hpY2 = 0;
+        lpX1 = lpX2 = lpY1 = lpY2 = 0;
+        bp1 = bp2 = bp3 = bp4 = 0;
+        Arrays.fill(squaredRing, 0);
+        squaredIndex = 0;
+        squaredSum = 0;
+        sampleIndex = 0;
+        indexOrigin = 0;
+        seekingPeak = true;
+        mwiPeak = 0;
+        mwiPeakIndex = 0;
+        mwiValley = 0;
+        learningMax = learningSum = learningFilteredMax = learningFilteredSum = 0;
+        learning = true;
+        spki = npki = spkf = npkf = 0;
+        irregular = false;
+        lastBeatIndex = -1;
+        lastQrsSlope = 0;
+        hasCandidate = false;
+        recentCount = recentIndex = selectedCount = selectedIndex = 0;
+        recentSum = selectedSum = 0;
+    }
+
+    @Override
+    public int getSampleRateHz() {
+        return sampleRateHz;
+    }
+
+    @Override
+    public String getName() {
+        return "Pan-Tompkins";
+    }
+
+    @Override
+    public long getSamplesProcessed() {
+        return samplesProcessed;
+    }
+
+    @Override
+    public double getNanosPerSample() {
+        return samplesProcessed == 0 ? 0 : (double) processingNanos / samplesProcessed;
+    }
+
+    /**
+     * @return Promedio de los últimos 8 RR en muestras, o 0 si aún no hay dos latidos.
+     */
+    public double getAverageRrSamples() {
+        return recentCount == 0 ? 0 : (double) recentSum / recentCount;
+    }
+
+    /**
+     * Coeficientes normalizados (a0 = 1) de un biquad RBJ pasa-altos o pasa-bajos con Q = 1/sqrt(2).
+     * @return {b0, b1, b2, a1, a2}
+     */
+    private static double[] biquad(boolean highPass, double cutoffHz, int sampleRateHz) {
+        double w0 = 2 * Math.PI * cutoffHz / sampleRateHz;
+        double cos = Math.cos(w0);
+        double alpha = Math.sin(w0) / (2 * Math.sqrt(0.5));
+        double a0 = 1 + alpha;
+        double b1 = highPass ? -(1 + cos) : (1 - cos);
+        double b0 = highPass ? (1 + cos) / 2 : (1 - cos) / 2;
+        return new double[] {b0 / a0, b1 / a0, b0 / a0, -2 * cos / a0, (1 - alpha) / a0};
+    }
+}
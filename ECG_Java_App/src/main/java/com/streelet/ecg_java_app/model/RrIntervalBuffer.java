@@ -0,0 +1,271 @@
+package com.streelet.ecg_java_app.model;
+
+import java.util.Arrays;
+
+/**
+ * Historial de intervalos RR en arrays primitivos, con una ventana de promediado
+ * configurable (últimos N latidos o últimos T segundos) sobre la que se mantienen:
+ * <ul>
+ *   <li>suma corrida (media en O(1)),</li>
+ *   <li>copia ordenada de la ventana (mediana en O(1), media recortada en O(ventana)).</li>
+ * </ul>
+ *
+ * Añadir un intervalo no crea objetos: el historial es un anillo de capacidad fija y la
+ * copia ordenada se actualiza con búsqueda binaria y System.arraycopy. Los demás
+ * análisis (HRV, alarmas) leen el mismo historial vía {@link RrIntervalView}.
+ *
+ * No es seguro para hilos: se escribe y se lee desde el hilo de análisis.
+ */
+public class RrIntervalBuffer implements RrIntervalView {
+
+    public static final int DEFAULT_WINDOW_BEATS = 5;
+
+    private final int sampleRateHz;
+    private final int capacity;
+    private final int mask;
+    private final double[] rrMillis;
+    private final long[] beatSamples;
+    private long totalCount = 0;
+
+    // Ventana de promediado: en latidos (windowSeconds == 0) o en segundos
+    private int windowBeats = DEFAULT_WINDOW_BEATS;
+    private double windowSeconds = 0;
+
+    // Primer índice absoluto dentro de la ventana y su suma
+    private long windowStart = 0;
+    private double windowSum = 0;
+
+    // Valores de la ventana ordenados de menor a mayor
+    private final double[] sorted;
+    private int sortedCount = 0;
+
+    /**
+     * @param capacity Número máximo de intervalos guardados (se redondea a potencia de dos).
+     * @param sampleRateHz Frecuencia de muestreo de los índices de muestra.
+     */
+    public RrIntervalBuffer(int capacity, int sampleRateHz) {
+        if (capacity < 2) {
+            throw new IllegalArgumentException("Capacidad inválida: " + capacity);
+        }
+        if (sampleRateHz <= 0) {
+            throw new IllegalArgumentException("Frecuencia de muestreo inválida: " + sampleRateHz);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.capacity = size;
+        this.mask = size - 1;
+        this.sampleRateHz = sampleRateHz;
+        this.rrMillis = new double[size];
+        this.beatSamples = new long[size];
+        this.sorted = new double[size];
+    }
+
+    /**
+     * Promedia sobre los últimos {@code beats} intervalos.
+     */
+    public void setWindowBeats(int beats) {
+        if (beats < 1 || beats > capacity) {
+            throw new IllegalArgumentException("Ventana fuera de rango: " + beats + " latidos");
+        }
+        windowBeats = beats;
+        windowSeconds = 0;
+        rebuildWindow();
+    }
+
+    /**
+     * Promedia sobre los intervalos cuyos latidos cayeron en los últimos {@code seconds} segundos
+     * (medidos desde el último latido). Limitado a la capacidad del buffer.
+     */
+    public void setWindowSeconds(double seconds) {
+        if (!(seconds > 0)) {
+            throw new IllegalArgumentException("Ventana fuera de rango: " + seconds + " s");
+        }
+        windowSeconds = seconds;
+        rebuildWindow();
+    }
+
+    /**
+     * Añade el intervalo que termina en el latido {@code beatSample}.
+     *
+     * @param intervalSamples Duración del intervalo en muestras (debe ser positiva).
+     * @param beatSample Índice de muestra del latido que cierra el intervalo.
+     */
+    public void add(long intervalSamples, long beatSample) {
+        if (intervalSamples <= 0) {
+            return;
+        }
+        double millis = intervalSamples * 1000.0 / sampleRateHz;
+
+        // Si el anillo está lleno, el más antiguo desaparece: primero debe salir de la ventana
+        long oldestKept = totalCount + 1 - capacity;
+        while (windowStart < oldestKept) {
+            evictOldest();
+        }
+
+        int slot = (int) (totalCount & mask);
+        rrMillis[slot] = millis;
+        beatSamples[slot] = beatSample;
+        totalCount++;
+
+        windowSum += millis;
+        insertSorted(millis);
+        trimWindow();
+    }
+
+    /**
+     * Vacía el historial (la configuración de la ventana se conserva).
+     */
+    public void clear() {
+        totalCount = 0;
+        windowStart = 0;
+        windowSum = 0;
+        sortedCount = 0;
+    }
+
+    /**
+     * @return Número de intervalos en la ventana de promediado.
+     */
+    public int getWindowCount() {
+        return (int) (totalCount - windowStart);
+    }
+
+    /**
+     * @return Media de los RR de la ventana en ms, o 0 si está vacía.
+     */
+    public double getWindowMean() {
+        int count = getWindowCount();
+        return count == 0 ? 0 : windowSum / count;
+    }
+
+    /**
+     * @return Mediana de los RR de la ventana en ms, o 0 si está vacía.
+     */
+    public double getWindowMedian() {
+        if (sortedCount == 0) {
+            return 0;
+        }
+        int middle = sortedCount >>> 1;
+        return (sortedCount & 1) == 1 ? sorted[middle] : (sorted[middle - 1] + sorted[middle]) / 2;
+    }
+
+    /**
+     * @param fraction Fracción (0..0.5) que se descarta en cada extremo.
+     * @return Media recortada de los RR de la ventana en ms, o 0 si está vacía.
+     */
+    public double getWindowTrimmedMean(double fraction) {
+        if (sortedCount == 0) {
+            return 0;
+        }
+        int trim = (int) (sortedCount * Math.max(0, Math.min(0.49, fraction)));
+        double sum = 0;
+        for (int i = trim; i < sortedCount - trim; i++) {
+            sum += sorted[i];
+        }
+        return sum / (sortedCount - 2 * trim);
+    }
+
+    // --- RrIntervalView ---
+
+    @Override
+    public int size() {
+        return (int) Math.min(totalCount, capacity);
+    }
+
+    @Override
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    @Override
+    public double getRrMillis(long absoluteIndex) {
+        checkIndex(absoluteIndex);
+        return rrMillis[(int) (absoluteIndex & mask)];
+    }
+
+    @Override
+    public long getBeatSample(long absoluteIndex) {
+        checkIndex(absoluteIndex);
+        return beatSamples[(int) (absoluteIndex & mask)];
+    }
+
+    @Override
+    public int getSampleRateHz() {
+        return sampleRateHz;
+    }
+
+    @Override
+    public int capacity() {
+        return capacity;
+    }
+
+    private void checkIndex(long absoluteIndex) {
+        if (absoluteIndex < totalCount - size() || absoluteIndex >= totalCount) {
+            throw new IndexOutOfBoundsException("Intervalo " + absoluteIndex + " fuera de ["
+                    + (totalCount - size()) + ", " + totalCount + ")");
+        }
+    }
+
+    /**
+     * Saca de la ventana los intervalos que ya no caben (por número o por tiempo).
+     */
+    private void trimWindow() {
+        if (windowSeconds > 0) {
+            long newestBeat = beatSamples[(int) ((totalCount - 1) & mask)];
+            long limit = (long) (windowSeconds * sampleRateHz);
+            while (windowStart < totalCount
+                    && newestBeat - beatSamples[(int) (windowStart & mask)] >= limit) {
+                evictOldest();
+            }
+        } else {
+            while (totalCount - windowStart > windowBeats) {
+                evictOldest();
+            }
+        }
+    }
+
+    private void evictOldest() {
+        double millis = rrMillis[(int) (windowStart & mask)];
+        windowSum -= millis;
+        removeSorted(millis);
+        windowStart++;
+        if (windowStart == totalCount) {
+            // Ventana vacía: se reinicia la suma para no arrastrar error de redondeo
+            windowSum = 0;
+        }
+    }
+
+    private void rebuildWindow() {
+        windowStart = totalCount - size();
+        windowSum = 0;
+        sortedCount = 0;
+        for (long i = windowStart; i < totalCount; i++) {
+            double millis = rrMillis[(int) (i & mask)];
+            windowSum += millis;
+            insertSorted(millis);
+        }
+        if (totalCount > 0) {
+            trimWindow();
+        }
+    }
+
+    private void insertSorted(double millis) {
+        int position = Arrays.binarySearch(sorted, 0, sortedCount, millis);
+        if (position < 0) {
+            position = -position - 1;
+        }
+        System.arraycopy(sorted, position, sorted, position + 1, sortedCount - position);
+        sorted[position] = millis;
+        sortedCount++;
+    }
+
+    private void removeSorted(double millis) {
+        int position = Arrays.binarySearch(sorted, 0, sortedCount, millis);
+        if (position < 0) {
+            return;
+        }
+        System.arraycopy(sorted, position + 1, sorted, position, sortedCount - position - 1);
+        sortedCount--;
+    }
+}
@@ -0,0 +1,44 @@
+package com.streelet.ecg_java_app.model;
+
+/**
+ * Vista de solo lectura de los intervalos RR guardados en un {@link RrIntervalBuffer}.
+ *
+ * Los intervalos se identifican por un índice absoluto que crece con cada latido:
+ * los válidos son {@code [getTotalCount() - size(), getTotalCount())}. Así un consumidor
+ * (HRV, alarmas) puede leer solo lo nuevo desde su última pasada sin copiar nada.
+ * Debe leerse desde el mismo hilo que escribe en el buffer.
+ */
+public interface RrIntervalView {
+
+    /**
+     * @return Número de intervalos disponibles (como mucho la capacidad del buffer).
+     */
+    int size();
+
+    /**
+     * @return Número máximo de intervalos que se conservan.
+     */
+    int capacity();
+
+    /**
+     * @return Número total de intervalos añadidos desde el último reset.
+     */
+    long getTotalCount();
+
+    /**
+     * @param absoluteIndex Índice absoluto dentro del rango válido.
+     * @return Duración del intervalo en milisegundos.
+     */
+    double getRrMillis(long absoluteIndex);
+
+    /**
+     * @param absoluteIndex Índice absoluto dentro del rango válido.
+     * @return Índice de muestra del latido que cierra el intervalo.
+     */
+    long getBeatSample(long absoluteIndex);
+
+    /**
+     * @return Frecuencia de muestreo de los índices de muestra, en Hz.
+     */
+    int getSampleRateHz();
+}
@@ -0,0 +1,75 @@
+package com.streelet.ecg_java_app.model;
+
+/**
+ * Detector original: un latido por cada flanco de subida que cruza un umbral fijo.
+ * Es barato, pero falla con deriva de línea base y cambios de amplitud;
+ * ver {@link PanTompkinsDetector} para la alternativa adaptativa.
+ */
+public class ThresholdBeatDetector implements BeatDetector {
+
+    private final int threshold;
+    private final int sampleRateHz;
+
+    private boolean wasBelowThreshold = true;
+
+    private long samplesProcessed = 0;
+    private long processingNanos = 0;
+
+    /**
+     * @param threshold Valor del ADC que debe cruzarse hacia arriba para contar un latido.
+     * @param sampleRateHz Frecuencia de muestreo de la señal.
+     */
+    public ThresholdBeatDetector(int threshold, int sampleRateHz) {
+        if (sampleRateHz <= 0) {
+            throw new IllegalArgumentException("Frecuencia de muestreo inválida: " + sampleRateHz);
+        }
+        this.threshold = threshold;
+        this.sampleRateHz = sampleRateHz;
+    }
+
+    @Override
+    public int process(int[] samples, int offset, int length, long firstSampleIndex, BeatSink sink) {
+        long startNanos = System.nanoTime();
+        int beats = 0;
+        for (int i = 0; i < length; i++) {
+            int value = samples[offset + i];
+            if (value >= threshold && wasBelowThreshold) {
+                sink.onBeat(value, firstSampleIndex + i);
+                beats++;
+            }
+            wasBelowThreshold = value < threshold;
+        }
+        samplesProcessed += length;
+        processingNanos += System.nanoTime() - startNanos;
+        return beats;
+    }
+
+    @Override
+    public void reset() {
+        wasBelowThreshold = true;
+    }
+
+    @Override
+    public int getSampleRateHz() {
+        return sampleRateHz;
+    }
+
+    @Override
+    public String getName() {
+        return "Umbral(" + threshold + ")";
+    }
+
+    @Override
+    public long getSamplesProcessed() {
+        return samplesProcessed;
+    }
+
+    @Override
+    public double getNanosPerSample() {
+        return samplesProcessed == 0 ? 0 : (double) processingNanos / samplesProcessed;
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+}
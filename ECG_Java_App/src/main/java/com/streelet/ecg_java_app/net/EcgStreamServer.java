@@ -0,0 +1,568 @@
+package com.streelet.ecg_java_app.net;
+
+import com.streelet.ecg_java_app.buffer.SampleRingBuffer;
+import com.streelet.ecg_java_app.log.Log;
+import com.streelet.ecg_java_app.log.Logger;
+import com.streelet.ecg_java_app.model.EcgPeakListener;
+import com.streelet.ecg_java_app.serial.SerialDataListener;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.function.IntSupplier;
+
+/**
+ * Servidor TCP que publica la señal en vivo (muestras, latidos, frecuencia cardiaca y avisos
+ * de la fuente) en el formato de {@link StreamFormat}, para que una central y otros monitores
+ * sigan al mismo paciente sin abrir el puerto serial.
+ *
+ * Las fuentes y el análisis solo copian a buffers sin bloqueos ({@link #onSamples},
+ * {@link #onPeakDetected}); un hilo propio ("ecg-stream-server") codifica cada lote una sola
+ * vez en una trama que comparten todos los clientes (se codifica una vez y se escribe muchas),
+ * y la envía con NIO sin bloquear. Así el coste de codificar no crece con los clientes.
+ *
+ * Cada cliente tiene una cola de envío acotada en bytes. Si un cliente no lee al ritmo de la
+ * señal y la llena, según {@link SlowClientPolicy} se le desconecta (por defecto) o se le
+ * saltan tramas (verá el salto en las secuencias). Los clientes no envían nada; lo que
+ * escriban se descarta.
+ */
+public class EcgStreamServer implements SerialDataListener, EcgPeakListener {
+
+    private static final Logger LOG = Log.get(EcgStreamServer.class);
+
+    public static final int DEFAULT_PORT = 7700;
+
+    private static final int SAMPLE_QUEUE_CAPACITY = 16384;
+    private static final int BEAT_QUEUE_CAPACITY = 256;
+    private static final int STATUS_QUEUE_CAPACITY = 64;
+    private static final int MAX_SAMPLES_PER_FRAME = 1024;
+    private static final int MAX_STATUS_BYTES = 1024;
+    // El hilo espera como mucho esto entre lotes: es el retraso máximo que añade el servidor
+    private static final long POLL_MILLIS = 10;
+    private static final long HEART_RATE_REFRESH_NANOS = 1_000_000_000L;
+    private static final long STOP_TIMEOUT_MS = 1000;
+
+    /**
+     * Qué hacer con un cliente que llena su cola de envío.
+     */
+    public enum SlowClientPolicy {
+        /** Se cierra la conexión (el cliente puede reconectar). */
+        DISCONNECT,
+        /** Se descartan las tramas nuevas para ese cliente hasta que vacíe la cola. */
+        DROP_FRAMES
+    }
+
+    /**
+     * Parámetros del servidor.
+     */
+    public static class Config {
+        private final int sampleRateHz;
+        private String bindAddress = "127.0.0.1";
+        private int port = DEFAULT_PORT;
+        private int maxClients = 32;
+        private int maxQueuedBytes = 1 << 20;
+        private SlowClientPolicy slowClientPolicy = SlowClientPolicy.DISCONNECT;
+
+        public Config(int sampleRateHz) {
+            this.sampleRateHz = sampleRateHz;
+        }
+
+        /**
+         * Dirección en la que escucha (por defecto solo la máquina local; "0.0.0.0" para la red).
+         */
+        public Config bindAddress(String value) {
+            bindAddress = value;
+            return this;
+        }
+
+        /** Puerto TCP (por defecto 7700; 0 elige uno libre). */
+        public Config port(int value) {
+            port = value;
+            return this;
+        }
+
+        /** Clientes simultáneos como máximo (por defecto 32). */
+        public Config maxClients(int value) {
+            maxClients = value;
+            return this;
+        }
+
+        /** Cola de envío de cada cliente (por defecto 1 MiB, decenas de segundos de señal). */
+        public Config maxQueuedBytes(int value) {
+            maxQueuedBytes = value;
+            return this;
+        }
+
+        public Config slowClientPolicy(SlowClientPolicy value) {
+            slowClientPolicy = value;
+            return this;
+        }
+
+        public int getSampleRateHz() {
+            return sampleRateHz;
+        }
+    }
+
+    /**
+     * Trama ya codificada, compartida por todos los clientes. Solo la toca el hilo del servidor:
+     * la posición del buffer se ajusta antes de cada escritura.
+     */
+    private static final class Frame {
+        final ByteBuffer buffer;
+        final int length;
+
+        Frame(byte[] bytes, int length) {
+            this.buffer = ByteBuffer.wrap(bytes, 0, length);
+            this.length = length;
+        }
+    }
+
+    /**
+     * Un cliente conectado (estado del hilo del servidor).
+     */
+    private static final class Client {
+        final SocketChannel channel;
+        final String address;
+        final ArrayDeque<Frame> queue = new ArrayDeque<>();
+        SelectionKey key;
+        int headOffset;
+        long queuedBytes;
+        long skippedFrames;
+
+        Client(SocketChannel channel, String address) {
+            this.channel = channel;
+            this.address = address;
+        }
+    }
+
+    private final Config config;
+
+    // Fuente / análisis -> servidor
+    private final SampleRingBuffer sampleQueue = new SampleRingBuffer(SAMPLE_QUEUE_CAPACITY);
+    private final SampleRingBuffer beatQueue = new SampleRingBuffer(BEAT_QUEUE_CAPACITY);
+    private final ArrayBlockingQueue<String> statusQueue = new ArrayBlockingQueue<>(STATUS_QUEUE_CAPACITY);
+    private final int[] singleSample = new int[1];
+    private long singleSampleSequence = 0;
+    private volatile IntSupplier heartRateSource;
+
+    private volatile boolean running = false;
+    private volatile Thread serverThread;
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private volatile int boundPort = -1;
+
+    // --- Estado del hilo del servidor ---
+    private final List<Client> clients = new ArrayList<>();
+    private final int[] drainedValues = new int[MAX_SAMPLES_PER_FRAME];
+    private final long[] drainedSequences = new long[MAX_SAMPLES_PER_FRAME];
+    private final byte[] scratch = new byte[StreamFormat.FRAME_HEADER_BYTES + StreamFormat.SAMPLES_FIXED_BYTES
+            + MAX_SAMPLES_PER_FRAME * StreamFormat.MAX_VARINT_BYTES];
+    private final ByteBuffer scratchBuffer = ByteBuffer.wrap(scratch).order(StreamFormat.BYTE_ORDER);
+    private final ByteBuffer discard = ByteBuffer.allocate(1024);
+    private int lastHeartRate = -1;
+    private long lastHeartRateNanos;
+
+    // Métricas
+    private volatile int clientCount = 0;
+    private volatile long framesEncoded = 0;
+    private volatile long bytesEncoded = 0;
+    private volatile long bytesSent = 0;
+    private volatile long clientsDropped = 0;
+    private volatile long framesSkipped = 0;
+    private volatile long encodeNanos = 0;
+
+    public EcgStreamServer(Config config) {
+        if (config.sampleRateHz <= 0 || config.maxClients <= 0 || config.maxQueuedBytes <= 0) {
+            throw new IllegalArgumentException("Parámetros del servidor inválidos");
+        }
+        this.config = config;
+    }
+
+    /**
+     * Origen de la frecuencia cardiaca que se publica (p. ej. el último snapshot del análisis).
+     * Se consulta desde el hilo del servidor; se envía al cambiar y al menos una vez por segundo.
+     */
+    public void setHeartRateSource(IntSupplier source) {
+        this.heartRateSource = source;
+    }
+
+    /**
+     * Abre el puerto y arranca el hilo del servidor.
+     *
+     * @throws IOException Si no se puede escuchar en la dirección y el puerto configurados.
+     */
+    public synchronized void start() throws IOException {
+        if (running) {
+            return;
+        }
+        selector = Selector.open();
+        try {
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.bind(new InetSocketAddress(config.bindAddress, config.port));
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            closeQuietly(serverChannel);
+            closeQuietly(selector);
+            throw e;
+        }
+        boundPort = ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+        lastHeartRateNanos = System.nanoTime();
+        running = true;
+        Thread thread = new Thread(this::runLoop, "ecg-stream-server");
+        thread.setDaemon(true);
+        serverThread = thread;
+        thread.start();
+        LOG.info("Publicando la señal en {}:{}").arg(config.bindAddress).arg(boundPort).log();
+    }
+
+    public synchronized void stop() {
+        running = false;
+        Thread thread = serverThread;
+        serverThread = null;
+        if (thread == null) {
+            return;
+        }
+        selector.wakeup();
+        try {
+            thread.join(STOP_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        LOG.info("Servidor detenido: {} tramas ({} bytes) codificadas, {} bytes enviados, {} clientes desconectados por lentos.")
+                .arg(framesEncoded).arg(bytesEncoded).arg(bytesSent).arg(clientsDropped).log();
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /** Puerto en el que escucha (útil con el puerto 0), o -1 si no arrancó. */
+    public int getPort() {
+        return boundPort;
+    }
+
+    public Config getConfig() {
+        return config;
+    }
+
+    // --- Productores ---
+
+    @Override
+    public void onDataReceived(int value) {
+        singleSample[0] = value;
+        sampleQueue.offer(singleSample, 0, 1, singleSampleSequence++, 1);
+    }
+
+    /**
+     * Lote de muestras de la fuente (hilo de la fuente). Nunca bloquea.
+     */
+    @Override
+    public void onSamples(int[] buf, int offset, int length, long firstSequence, long firstTimestampNanos) {
+        sampleQueue.offer(buf, offset, length, firstSequence, 1);
+    }
+
+    @Override
+    public void onErrorOccurred(String message) {
+        statusQueue.offer(message);
+    }
+
+    /**
+     * Latido detectado (hilo de análisis). Nunca bloquea.
+     */
+    @Override
+    public void onPeakDetected(int peakValue, long time) {
+        beatQueue.offer(peakValue, time);
+    }
+
+    // --- Métricas ---
+
+    public int getClientCount() {
+        return clientCount;
+    }
+
+    public long getFramesEncoded() {
+        return framesEncoded;
+    }
+
+    public long getBytesEncoded() {
+        return bytesEncoded;
+    }
+
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    public long getClientsDropped() {
+        return clientsDropped;
+    }
+
+    /** Tramas no enviadas a algún cliente con {@link SlowClientPolicy#DROP_FRAMES}. */
+    public long getFramesSkipped() {
+        return framesSkipped;
+    }
+
+    /** Tiempo medio de codificación por trama (independiente del número de clientes). */
+    public double getNanosPerFrame() {
+        long frames = framesEncoded;
+        return frames == 0 ? 0 : (double) encodeNanos / frames;
+    }
+
+    /** Muestras descartadas porque el servidor iba atrasado (buffer de entrada lleno). */
+    public long getDroppedSamples() {
+        return sampleQueue.getOverflowCount();
+    }
+
+    // --- Hilo del servidor ---
+
+    private void runLoop() {
+        try {
+            while (running) {
+                selector.select(POLL_MILLIS);
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    handle(key);
+                }
+                publishPending();
+            }
+        } catch (IOException | RuntimeException e) {
+            LOG.error("Error en el servidor de streaming, se detiene").cause(e).log();
+            running = false;
+        } finally {
+            for (Client client : clients) {
+                closeQuietly(client.channel);
+            }
+            clients.clear();
+            clientCount = 0;
+            closeQuietly(serverChannel);
+            closeQuietly(selector);
+        }
+    }
+
+    private void handle(SelectionKey key) throws IOException {
+        if (!key.isValid()) {
+            return;
+        }
+        if (key.isAcceptable()) {
+            accept();
+            return;
+        }
+        Client client = (Client) key.attachment();
+        try {
+            if (key.isReadable()) {
+                discard.clear();
+                if (client.channel.read(discard) < 0) {
+                    disconnect(client, "cerró la conexión");
+                    return;
+                }
+            }
+            if (key.isValid() && key.isWritable()) {
+                flush(client);
+            }
+        } catch (IOException e) {
+            disconnect(client, e.getMessage());
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        String address = String.valueOf(channel.getRemoteAddress());
+        if (clients.size() >= config.maxClients) {
+            LOG.warn("Conexión de {} rechazada: ya hay {} clientes.").arg(address).arg(clients.size()).log();
+            closeQuietly(channel);
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        Client client = new Client(channel, address);
+        client.key = channel.register(selector, SelectionKey.OP_READ, client);
+        clients.add(client);
+        clientCount = clients.size();
+        LOG.info("Cliente conectado: {} ({} en total).").arg(address).arg(clients.size()).log();
+
+        // El saludo es propio de cada cliente (lleva la hora de conexión)
+        scratchBuffer.putInt(0, StreamFormat.frameHeader(StreamFormat.HELLO, StreamFormat.HELLO_BYTES));
+        System.arraycopy(StreamFormat.MAGIC, 0, scratch, 4, StreamFormat.MAGIC.length);
+        scratchBuffer.putInt(8, StreamFormat.VERSION);
+        scratchBuffer.putInt(12, config.sampleRateHz);
+        scratchBuffer.putLong(16, System.currentTimeMillis());
+        int length = StreamFormat.FRAME_HEADER_BYTES + StreamFormat.HELLO_BYTES;
+        enqueue(client, new Frame(Arrays.copyOf(scratch, length), length));
+        // La frecuencia actual se repite enseguida para el cliente nuevo
+        lastHeartRate = -1;
+    }
+
+    /**
+     * Codifica lo que dejaron las fuentes y el análisis, y lo envía a todos los clientes.
+     */
+    private void publishPending() {
+        int count;
+        while ((count = sampleQueue.drain(drainedValues, drainedSequences, 0, MAX_SAMPLES_PER_FRAME)) > 0) {
+            // Una trama por tramo de secuencias consecutivas
+            int start = 0;
+            for (int i = 1; i <= count; i++) {
+                if (i == count || drainedSequences[i] != drainedSequences[i - 1] + 1) {
+                    if (!clients.isEmpty()) {
+                        broadcast(encodeSamples(start, i - start));
+                    }
+                    start = i;
+                }
+            }
+        }
+        while ((count = beatQueue.drain(drainedValues, drainedSequences, 0, MAX_SAMPLES_PER_FRAME)) > 0) {
+            for (int i = 0; i < count && !clients.isEmpty(); i++) {
+                long begin = System.nanoTime();
+                scratchBuffer.putInt(0, StreamFormat.frameHeader(StreamFormat.BEAT, StreamFormat.BEAT_BYTES));
+                scratchBuffer.putLong(4, drainedSequences[i]);
+                scratchBuffer.putInt(12, drainedValues[i]);
+                broadcast(finishFrame(StreamFormat.FRAME_HEADER_BYTES + StreamFormat.BEAT_BYTES, begin));
+            }
+        }
+        String status;
+        while ((status = statusQueue.poll()) != null) {
+            if (!clients.isEmpty()) {
+                broadcast(encodeStatus(status));
+            }
+        }
+        IntSupplier source = heartRateSource;
+        if (source != null && !clients.isEmpty()) {
+            int bpm = source.getAsInt();
+            long now = System.nanoTime();
+            if (bpm != lastHeartRate || now - lastHeartRateNanos >= HEART_RATE_REFRESH_NANOS) {
+                scratchBuffer.putInt(0, StreamFormat.frameHeader(StreamFormat.HEART_RATE, StreamFormat.HEART_RATE_BYTES));
+                scratchBuffer.putInt(4, bpm);
+                broadcast(finishFrame(StreamFormat.FRAME_HEADER_BYTES + StreamFormat.HEART_RATE_BYTES, now));
+                lastHeartRate = bpm;
+                lastHeartRateNanos = now;
+            }
+        }
+    }
+
+    private Frame encodeSamples(int offset, int count) {
+        long begin = System.nanoTime();
+        scratchBuffer.putLong(4, drainedSequences[offset]);
+        scratchBuffer.putInt(12, count);
+        int position = StreamFormat.FRAME_HEADER_BYTES + StreamFormat.SAMPLES_FIXED_BYTES;
+        int previous = 0;
+        for (int i = offset, end = offset + count; i < end; i++) {
+            int value = drainedValues[i];
+            position = StreamFormat.putVarint(scratch, position, i == offset ? value : value - previous);
+            previous = value;
+        }
+        scratchBuffer.putInt(0, StreamFormat.frameHeader(StreamFormat.SAMPLES,
+                position - StreamFormat.FRAME_HEADER_BYTES));
+        return finishFrame(position, begin);
+    }
+
+    private Frame encodeStatus(String message) {
+        long begin = System.nanoTime();
+        byte[] text = message.getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(text.length, MAX_STATUS_BYTES);
+        scratchBuffer.putInt(0, StreamFormat.frameHeader(StreamFormat.STATUS, length));
+        System.arraycopy(text, 0, scratch, StreamFormat.FRAME_HEADER_BYTES, length);
+        return finishFrame(StreamFormat.FRAME_HEADER_BYTES + length, begin);
+    }
+
+    /**
+     * Copia la trama del buffer de trabajo a una propia, que se comparte entre los clientes.
+     */
+    private Frame finishFrame(int length, long beginNanos) {
+        Frame frame = new Frame(Arrays.copyOf(scratch, length), length);
+        framesEncoded++;
+        bytesEncoded += length;
+        encodeNanos += System.nanoTime() - beginNanos;
+        return frame;
+    }
+
+    private void broadcast(Frame frame) {
+        for (int i = clients.size() - 1; i >= 0; i--) {
+            Client client = clients.get(i);
+            if (enqueue(client, frame)) {
+                try {
+                    flush(client);
+                } catch (IOException e) {
+                    disconnect(client, e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * @return false si el cliente se desconectó o la trama se saltó (cola llena).
+     */
+    private boolean enqueue(Client client, Frame frame) {
+        if (client.queuedBytes + frame.length > config.maxQueuedBytes) {
+            if (config.slowClientPolicy == SlowClientPolicy.DISCONNECT) {
+                clientsDropped++;
+                disconnect(client, "no lee al ritmo de la señal (" + client.queuedBytes + " bytes pendientes)");
+            } else {
+                client.skippedFrames++;
+                framesSkipped++;
+            }
+            return false;
+        }
+        client.queue.addLast(frame);
+        client.queuedBytes += frame.length;
+        return true;
+    }
+
+    /**
+     * Escribe lo que admita el socket sin bloquear; si queda algo, se espera a OP_WRITE.
+     */
+    private void flush(Client client) throws IOException {
+        Frame head;
+        while ((head = client.queue.peekFirst()) != null) {
+            ByteBuffer buffer = head.buffer;
+            buffer.limit(head.length).position(client.headOffset);
+            int written = client.channel.write(buffer);
+            bytesSent += written;
+            client.headOffset += written;
+            client.queuedBytes -= written;
+            if (client.headOffset < head.length) {
+                client.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                return;
+            }
+            client.queue.pollFirst();
+            client.headOffset = 0;
+        }
+        client.key.interestOps(SelectionKey.OP_READ);
+    }
+
+    private void disconnect(Client client, String reason) {
+        if (!clients.remove(client)) {
+            return;
+        }
+        clientCount = clients.size();
+        client.key.cancel();
+        closeQuietly(client.channel);
+        LOG.info("Cliente {} desconectado: {} ({} en total).").arg(client.address).arg(reason).arg(clients.size()).log();
+    }
+
+    private static void closeQuietly(java.io.Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+            // Ya se está cerrando
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.streelet.ecg_java_app.net;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Formato binario del flujo en vivo que publica {@link EcgStreamServer} por TCP.
+ *
+ * El flujo es una sucesión de tramas en little-endian: una cabecera {@code int} con el tipo en
+ * el byte alto y la longitud del cuerpo en los 24 bits bajos (como los registros de las
+ * sesiones grabadas), y el cuerpo. Lo primero que recibe cada cliente es {@link #HELLO}.
+ *
+ * Cuerpos:
+ * <ul>
+ *   <li>{@link #HELLO}: magic "ECGS", int versión, int frecuencia de muestreo, long hora del
+ *       servidor (epoch ms) al conectar.</li>
+ *   <li>{@link #SAMPLES}: long secuencia de la primera muestra, int n, y las n muestras como
+ *       varints zigzag: la primera absoluta y el resto como diferencia con la anterior (unos
+ *       1-2 bytes por muestra en un ECG). Las secuencias de tramas seguidas son consecutivas;
+ *       un salto indica muestras perdidas en la fuente o descartadas para este cliente.</li>
+ *   <li>{@link #BEAT}: long índice de muestra del análisis, int valor del pico.</li>
+ *   <li>{@link #HEART_RATE}: int lpm (0 sin frecuencia válida).</li>
+ *   <li>{@link #STATUS}: texto UTF-8 (avisos de la fuente, p. ej. electrodos desconectados).</li>
+ * </ul>
+ */
+public final class StreamFormat {
+
+    public static final byte[] MAGIC = "ECGS".getBytes(StandardCharsets.US_ASCII);
+    public static final int VERSION = 1;
+    public static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    public static final int HELLO = 1;
+    public static final int SAMPLES = 2;
+    public static final int BEAT = 3;
+    public static final int HEART_RATE = 4;
+    public static final int STATUS = 5;
+
+    public static final int FRAME_HEADER_BYTES = 4;
+    public static final int MAX_BODY_BYTES = (1 << 24) - 1;
+    static final int HELLO_BYTES = 4 + 4 + 4 + 8;
+    static final int SAMPLES_FIXED_BYTES = 8 + 4;
+    static final int BEAT_BYTES = 8 + 4;
+    static final int HEART_RATE_BYTES = 4;
+    // Un int en varint zigzag ocupa como mucho 5 bytes
+    static final int MAX_VARINT_BYTES = 5;
+
+    private StreamFormat() {
+    }
+
+    public static int frameHeader(int type, int bodyLength) {
+        return (type << 24) | bodyLength;
+    }
+
+    public static int frameType(int header) {
+        return header >>> 24;
+    }
+
+    public static int bodyLength(int header) {
+        return header & MAX_BODY_BYTES;
+    }
+
+    /**
+     * Escribe {@code value} como varint zigzag.
+     *
+     * @return Posición siguiente.
+     */
+    static int putVarint(byte[] dst, int position, int value) {
+        int zigzag = (value << 1) ^ (value >> 31);
+        while ((zigzag & ~0x7F) != 0) {
+            dst[position++] = (byte) ((zigzag & 0x7F) | 0x80);
+            zigzag >>>= 7;
+        }
+        dst[position++] = (byte) zigzag;
+        return position;
+    }
+
+    /**
+     * Decodifica las muestras del cuerpo de una trama {@link #SAMPLES}. El buffer debe estar en
+     * {@link #BYTE_ORDER} y posicionado al inicio del cuerpo; queda al final.
+     *
+     * @param dst Destino; debe tener sitio para n muestras.
+     * @return Número de muestras (n).
+     */
+    public static int decodeSamples(ByteBuffer body, int[] dst) {
+        body.getLong(); // secuencia de la primera muestra
+        int count = body.getInt();
+        int previous = 0;
+        for (int i = 0; i < count; i++) {
+            int zigzag = 0;
+            int shift = 0;
+            int b;
+            do {
+                b = body.get();
+                zigzag |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            int value = (zigzag >>> 1) ^ -(zigzag & 1);
+            previous = i == 0 ? value : previous + value;
+            dst[i] = previous;
+        }
+        return count;
+    }
+}
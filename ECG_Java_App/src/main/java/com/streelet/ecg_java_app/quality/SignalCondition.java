@@ -0,0 +1,34 @@
+package com.streelet.ecg_java_app.quality;
+
+/**
+ * Clasificación de la calidad de la señal que hace {@link SignalQualityMonitor}.
+ * Con varios problemas a la vez se informa el de peor puntuación.
+ */
+public enum SignalCondition {
+
+    GOOD("SEÑAL CORRECTA", false),
+    FLATLINE("SEÑAL PLANA", true),
+    SATURATION("SEÑAL SATURADA", true),
+    CLIPPING("SEÑAL RECORTADA", false),
+    NOISE("SEÑAL CON RUIDO", false),
+    IMPLAUSIBLE_QRS("QRS NO PLAUSIBLE", false),
+    NO_QRS("SIN QRS", false);
+
+    private final String description;
+    private final boolean leadOff;
+
+    SignalCondition(String description, boolean leadOff) {
+        this.description = description;
+        this.leadOff = leadOff;
+    }
+
+    /** Texto corto para mostrar en pantalla. */
+    public String getDescription() {
+        return description;
+    }
+
+    /** Indica si la condición suele deberse a electrodos desconectados. */
+    public boolean isLeadOff() {
+        return leadOff;
+    }
+}
@@ -0,0 +1,15 @@
+package com.streelet.ecg_java_app.quality;
+
+/**
+ * Oyente de cambios de calidad de señal. Se llama desde el hilo que procesa las muestras,
+ * solo cuando cambia la condición o la aceptabilidad de la señal.
+ */
+public interface SignalQualityListener {
+
+    /**
+     * @param condition Condición dominante.
+     * @param score Puntuación de calidad (0 = inservible, 1 = limpia).
+     * @param acceptable Si la señal sirve para detectar latidos y evaluar alarmas.
+     */
+    void onSignalQualityChanged(SignalCondition condition, double score, boolean acceptable);
+}
@@ -0,0 +1,341 @@
+package com.streelet.ecg_java_app.quality;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Índice de calidad de señal calculado a partir de las propias muestras (sin depender de los
+ * avisos del firmware). Sobre una ventana deslizante de {@link #WINDOW_SECONDS} s se mantienen
+ * estadísticas corridas, de modo que cada muestra cuesta O(1):
+ * <ul>
+ *   <li>suma y suma de cuadrados (desviación típica: señal plana),</li>
+ *   <li>muestras en los topes del conversor (saturación),</li>
+ *   <li>mesetas lejos de la media (recorte),</li>
+ *   <li>energía de la segunda diferencia frente a la desviación típica (ruido de alta frecuencia),</li>
+ * </ul>
+ * y, con los latidos que informa el detector, si la frecuencia de QRS es plausible.
+ *
+ * Cada componente da una puntuación 0..1 y la puntuación total es la mínima. La señal deja de
+ * ser aceptable por debajo de {@link #POOR_SCORE} y vuelve a serlo por encima de
+ * {@link #ACCEPTABLE_SCORE}. La condición informada también tiene histéresis: pasa a GOOD desde
+ * {@link #GOOD_ENTER_SCORE} y deja de serlo por debajo de {@link #GOOD_LEAVE_SCORE}; además, un
+ * cambio de condición que no cambia la aceptabilidad solo se informa si se mantiene durante
+ * varias evaluaciones seguidas. No se informa nada hasta llenar la primera ventana.
+ * Trabaja en cuentas del conversor, antes de los filtros.
+ *
+ * No es seguro para hilos: {@link #process} y {@link #onBeat} se llaman desde el hilo de
+ * análisis; los getters se pueden leer desde cualquiera.
+ */
+public class SignalQualityMonitor {
+
+    public static final double WINDOW_SECONDS = 2;
+    public static final double POOR_SCORE = 0.4;
+    public static final double ACCEPTABLE_SCORE = 0.6;
+    public static final double GOOD_ENTER_SCORE = 0.9;
+    public static final double GOOD_LEAVE_SCORE = 0.8;
+
+    // Un cambio de condición sin cambio de aceptabilidad debe durar esto para informarse (0,5 s)
+    private static final int CONDITION_HOLD_EVALUATIONS = 10;
+
+    // Evaluación de la ventana cada 50 ms
+    private static final int EVALUATIONS_PER_SECOND = 20;
+
+    // Señal plana: desviación típica en cuentas (por debajo de FLAT es plana; por encima de FLAT_OK no)
+    private static final double FLAT_STD = 2;
+    private static final double FLAT_OK_STD = 8;
+    // Cuentas desde cada tope del conversor que se consideran saturadas
+    private static final int RAIL_MARGIN = 2;
+    private static final double SATURATION_OK_FRACTION = 0.05;
+    private static final double SATURATION_BAD_FRACTION = 0.3;
+    // Recorte: tres muestras iguales a más de CLIP_SIGMA desviaciones de la media
+    private static final double CLIP_SIGMA = 2;
+    private static final double CLIPPING_OK_FRACTION = 0.005;
+    private static final double CLIPPING_BAD_FRACTION = 0.05;
+    // Ruido: RMS de la segunda diferencia dividido por la desviación típica
+    private static final double NOISE_OK_RATIO = 1.0;
+    private static final double NOISE_BAD_RATIO = 2.5;
+    // QRS: latidos en los últimos QRS_WINDOW_SECONDS
+    private static final double QRS_WINDOW_SECONDS = 5;
+    private static final double MAX_PLAUSIBLE_BPM = 250;
+    private static final double IMPLAUSIBLE_QRS_SCORE = 0.2;
+    private static final double NO_QRS_SCORE = 0.7;
+    private static final int BEAT_HISTORY = 32;
+
+    private static final byte RAIL_FLAG = 1;
+    private static final byte CLIP_FLAG = 2;
+
+    private final int sampleRateHz;
+    private final int railLow;
+    private final int railHigh;
+    private final int window;
+    private final int evaluationStride;
+    private final long qrsWindowSamples;
+    private final int maxPlausibleBeats;
+    private final List<SignalQualityListener> listeners = new CopyOnWriteArrayList<>();
+
+    // Anillos de la ventana
+    private final int[] values;
+    private final int[] secondDiffs;
+    private final byte[] flags;
+    private int head = 0;
+    private int filled = 0;
+
+    // Estadísticas corridas de la ventana (exactas: enteros)
+    private long sum = 0;
+    private long sumSquares = 0;
+    private long secondDiffSquares = 0;
+    private int railCount = 0;
+    private int clipCount = 0;
+
+    private int previous1, previous2;
+    private long sampleCount = 0;
+    private int untilEvaluation;
+
+    // Índices de muestra de los últimos latidos
+    private final long[] beatSamples = new long[BEAT_HISTORY];
+    private int beatIndex = 0;
+    private int beatCount = 0;
+
+    private volatile double score = 1;
+    private volatile SignalCondition condition = SignalCondition.GOOD;
+    private volatile boolean acceptable = true;
+    private SignalCondition pendingCondition;
+    private int pendingEvaluations = 0;
+
+    /**
+     * @param sampleRateHz Frecuencia de muestreo.
+     * @param adcMin Valor mínimo que entrega el conversor.
+     * @param adcMax Valor máximo que entrega el conversor.
+     */
+    public SignalQualityMonitor(int sampleRateHz, int adcMin, int adcMax) {
+        if (sampleRateHz <= 0) {
+            throw new IllegalArgumentException("Frecuencia de muestreo inválida: " + sampleRateHz);
+        }
+        if (adcMax - adcMin <= 4 * RAIL_MARGIN) {
+            throw new IllegalArgumentException("Rango del conversor inválido: " + adcMin + ".." + adcMax);
+        }
+        this.sampleRateHz = sampleRateHz;
+        this.railLow = adcMin + RAIL_MARGIN;
+        this.railHigh = adcMax - RAIL_MARGIN;
+        this.window = (int) Math.max(8, Math.round(WINDOW_SECONDS * sampleRateHz));
+        this.evaluationStride = Math.max(1, sampleRateHz / EVALUATIONS_PER_SECOND);
+        this.qrsWindowSamples = Math.round(QRS_WINDOW_SECONDS * sampleRateHz);
+        this.maxPlausibleBeats = (int) Math.ceil(QRS_WINDOW_SECONDS * MAX_PLAUSIBLE_BPM / 60);
+        this.values = new int[window];
+        this.secondDiffs = new int[window];
+        this.flags = new byte[window];
+        this.untilEvaluation = evaluationStride;
+    }
+
+    public void addListener(SignalQualityListener listener) {
+        if (listener != null) {
+            listeners.add(listener);
+        }
+    }
+
+    public void removeListener(SignalQualityListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Procesa un lote de muestras crudas del conversor.
+     */
+    public void process(int[] samples, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            final int x = samples[i];
+
+            // Sale de la ventana la muestra más antigua
+            if (filled == window) {
+                int old = values[head];
+                int oldDiff = secondDiffs[head];
+                sum -= old;
+                sumSquares -= (long) old * old;
+                secondDiffSquares -= (long) oldDiff * oldDiff;
+                byte oldFlags = flags[head];
+                railCount -= oldFlags & RAIL_FLAG;
+                clipCount -= (oldFlags & CLIP_FLAG) >> 1;
+            } else {
+                filled++;
+            }
+
+            int secondDiff = sampleCount >= 2 ? x - 2 * previous1 + previous2 : 0;
+            byte sampleFlags = 0;
+            if (x <= railLow || x >= railHigh) {
+                sampleFlags |= RAIL_FLAG;
+            }
+            if (sampleCount >= 2 && x == previous1 && x == previous2 && filled > 1) {
+                // Meseta: cuenta como recorte solo si está lejos de la media actual
+                double mean = (double) sum / (filled - 1);
+                double variance = (double) sumSquares / (filled - 1) - mean * mean;
+                double deviation = x - mean;
+                if (deviation * deviation > CLIP_SIGMA * CLIP_SIGMA * variance) {
+                    sampleFlags |= CLIP_FLAG;
+                }
+            }
+
+            values[head] = x;
+            secondDiffs[head] = secondDiff;
+            flags[head] = sampleFlags;
+            sum += x;
+            sumSquares += (long) x * x;
+            secondDiffSquares += (long) secondDiff * secondDiff;
+            railCount += sampleFlags & RAIL_FLAG;
+            clipCount += (sampleFlags & CLIP_FLAG) >> 1;
+            if (++head == window) {
+                head = 0;
+            }
+
+            previous2 = previous1;
+            previous1 = x;
+            sampleCount++;
+
+            if (--untilEvaluation == 0) {
+                untilEvaluation = evaluationStride;
+                evaluate();
+            }
+        }
+    }
+
+    /**
+     * Informa un latido detectado en la muestra procesada más reciente (mismo hilo que process).
+     */
+    public void onBeat() {
+        beatSamples[beatIndex] = sampleCount;
+        beatIndex = (beatIndex + 1) % BEAT_HISTORY;
+        beatCount = Math.min(beatCount + 1, BEAT_HISTORY);
+    }
+
+    /**
+     * Olvida la ventana y los latidos (por ejemplo, al cambiar de fuente).
+     */
+    public void reset() {
+        head = 0;
+        filled = 0;
+        sum = 0;
+        sumSquares = 0;
+        secondDiffSquares = 0;
+        railCount = 0;
+        clipCount = 0;
+        sampleCount = 0;
+        beatCount = 0;
+        untilEvaluation = evaluationStride;
+        score = 1;
+        condition = SignalCondition.GOOD;
+        acceptable = true;
+        pendingCondition = null;
+        pendingEvaluations = 0;
+    }
+
+    public double getScore() {
+        return score;
+    }
+
+    public SignalCondition getCondition() {
+        return condition;
+    }
+
+    public boolean isAcceptable() {
+        return acceptable;
+    }
+
+    public int getSampleRateHz() {
+        return sampleRateHz;
+    }
+
+    private void evaluate() {
+        // Hasta llenar la ventana no hay estadística fiable (p. ej. antes del primer latido la
+        // desviación típica es mínima y cualquier meseta de la línea base parece un recorte)
+        if (filled < window) {
+            return;
+        }
+        double n = filled;
+        double mean = sum / n;
+        double std = Math.sqrt(Math.max(0, sumSquares / n - mean * mean));
+
+        SignalCondition worst = SignalCondition.GOOD;
+        double worstScore = 1;
+
+        // Saturación antes que señal plana: pegada al tope es ambas, y la causa es la saturación
+        double saturationScore = 1 - ramp(railCount / n, SATURATION_OK_FRACTION, SATURATION_BAD_FRACTION);
+        if (saturationScore < worstScore) {
+            worst = SignalCondition.SATURATION;
+            worstScore = saturationScore;
+        }
+        double flatScore = ramp(std, FLAT_STD, FLAT_OK_STD);
+        if (flatScore < worstScore) {
+            worst = SignalCondition.FLATLINE;
+            worstScore = flatScore;
+        }
+        double clippingScore = 1 - ramp(clipCount / n, CLIPPING_OK_FRACTION, CLIPPING_BAD_FRACTION);
+        if (clippingScore < worstScore) {
+            worst = SignalCondition.CLIPPING;
+            worstScore = clippingScore;
+        }
+        // En una señal plana la relación de ruido no tiene sentido (solo hay cuantización)
+        if (std >= FLAT_STD) {
+            double noiseRatio = Math.sqrt(secondDiffSquares / n) / std;
+            double noiseScore = 1 - ramp(noiseRatio, NOISE_OK_RATIO, NOISE_BAD_RATIO);
+            if (noiseScore < worstScore) {
+                worst = SignalCondition.NOISE;
+                worstScore = noiseScore;
+            }
+        }
+        // QRS: demasiados latidos indica ruido detectado como latido; ninguno se informa pero
+        // no invalida la señal (puede ser una asistolia real)
+        if (sampleCount >= qrsWindowSamples) {
+            int recentBeats = 0;
+            for (int k = 0; k < beatCount; k++) {
+                if (sampleCount - beatSamples[k] <= qrsWindowSamples) {
+                    recentBeats++;
+                }
+            }
+            if (recentBeats > maxPlausibleBeats && IMPLAUSIBLE_QRS_SCORE < worstScore) {
+                worst = SignalCondition.IMPLAUSIBLE_QRS;
+                worstScore = IMPLAUSIBLE_QRS_SCORE;
+            } else if (recentBeats == 0 && NO_QRS_SCORE < worstScore) {
+                worst = SignalCondition.NO_QRS;
+                worstScore = NO_QRS_SCORE;
+            }
+        }
+
+        // Defectos menores no cambian la condición informada (con histéresis alrededor de GOOD)
+        if (worstScore >= (condition == SignalCondition.GOOD ? GOOD_LEAVE_SCORE : GOOD_ENTER_SCORE)) {
+            worst = SignalCondition.GOOD;
+        }
+        boolean nowAcceptable = acceptable ? worstScore >= POOR_SCORE : worstScore > ACCEPTABLE_SCORE;
+        score = worstScore;
+        if (nowAcceptable != acceptable) {
+            // La aceptabilidad ya tiene su histéresis y la detección depende de ella: sin esperar
+            notifyChange(worst, worstScore, nowAcceptable);
+        } else if (worst == condition) {
+            pendingCondition = null;
+        } else if (worst != pendingCondition) {
+            pendingCondition = worst;
+            pendingEvaluations = 1;
+        } else if (++pendingEvaluations >= CONDITION_HOLD_EVALUATIONS) {
+            notifyChange(worst, worstScore, nowAcceptable);
+        }
+    }
+
+    private void notifyChange(SignalCondition newCondition, double newScore, boolean nowAcceptable) {
+        condition = newCondition;
+        acceptable = nowAcceptable;
+        pendingCondition = null;
+        for (SignalQualityListener listener : listeners) {
+            listener.onSignalQualityChanged(newCondition, newScore, nowAcceptable);
+        }
+    }
+
+    /**
+     * 0 por debajo de {@code low}, 1 por encima de {@code high}, lineal en medio.
+     */
+    private static double ramp(double value, double low, double high) {
+        if (value <= low) {
+            return 0;
+        }
+        if (value >= high) {
+            return 1;
+        }
+        return (value - low) / (high - low);
+    }
+}
@@ -0,0 +1,66 @@
+package com.streelet.ecg_java_app.recording;
+
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Formato del archivo comprimido de muestras ({@code <sesión>.ecgz}) que escribe
+ * {@link SampleArchiveWriter} para el almacenamiento a largo plazo. Little-endian.
+ *
+ * Cabecera de {@link #HEADER_BYTES} bytes:
+ * <pre>
+ *   0  magic "ECGARC01"          8 bytes
+ *   8  versión                   int
+ *  12  tamaño de la cabecera     int
+ *  16  frecuencia de muestreo    int
+ *  20  muestras por bloque       int
+ *  24  inicio (epoch ms)         long
+ * </pre>
+ * Después, bloques independientes, cada uno con su pequeña cabecera de
+ * {@link #BLOCK_HEADER_BYTES} bytes y los datos de {@link SampleBlockCodec}:
+ * <pre>
+ *   0  sincronía {@link #BLOCK_SYNC}  int
+ *   4  índice del bloque             int
+ *   8  primera muestra               long
+ *  16  muestras                      int
+ *  20  bytes de datos                int
+ * </pre>
+ * Todos los bloques tienen las mismas muestras salvo el último, así que el bloque de cualquier
+ * muestra se calcula directamente. Al cerrar se añade el índice (un long con la posición de
+ * cada bloque) y un trailer de {@link #TRAILER_BYTES} bytes:
+ * <pre>
+ *   0  posición del índice       long
+ *   8  muestras totales          long
+ *  16  bloques                   int
+ *  20  (reservado)               int
+ *  24  magic "ECGARCIX"          8 bytes
+ * </pre>
+ * Si el archivo no se cerró (caída), el lector rehace el índice saltando de cabecera en cabecera.
+ */
+public final class ArchiveFormat {
+
+    public static final byte[] MAGIC = "ECGARC01".getBytes(StandardCharsets.US_ASCII);
+    public static final int VERSION = 1;
+    public static final int HEADER_BYTES = 64;
+    public static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+    public static final String EXTENSION = ".ecgz";
+
+    static final int BLOCK_SYNC = 0x4B4C4245;
+    static final int BLOCK_HEADER_BYTES = 24;
+    static final int TRAILER_BYTES = 32;
+    static final byte[] TRAILER_MAGIC = "ECGARCIX".getBytes(StandardCharsets.US_ASCII);
+
+    // Posiciones en la cabecera del archivo
+    static final int OFFSET_VERSION = 8;
+    static final int OFFSET_HEADER_BYTES = 12;
+    static final int OFFSET_SAMPLE_RATE = 16;
+    static final int OFFSET_BLOCK_SAMPLES = 20;
+    static final int OFFSET_EPOCH_MILLIS = 24;
+
+    private ArchiveFormat() {
+    }
+
+    static String archiveFileName(String sessionName) {
+        return sessionName + EXTENSION;
+    }
+}
@@ -0,0 +1,174 @@
+package com.streelet.ecg_java_app.recording;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Lee el índice de resumen de {@link PyramidFormat} mapeado en memoria y resume cualquier
+ * tramo en un número dado de columnas (una por píxel) leyendo del orden de una o dos entradas
+ * por columna, sea cual sea la longitud del tramo.
+ */
+public class MinMaxPyramid {
+
+    private final Path file;
+    private final MappedByteBuffer data;
+    private final int sampleRateHz;
+    private final int baseShift;
+    private final int chunkShift;
+    private final int levels;
+    private final int[] levelOffsets;
+    private final int chunkBytes;
+    private final long sampleCount;
+    private final long epochMillis;
+    // Trozo final guardado compacto y la posición de sus niveles, o -1 si no lo hay
+    private final long tailChunk;
+    private final int[] tailLevelOffsets;
+
+    /**
+     * @throws IOException Si no se puede leer o no es un índice de resumen.
+     */
+    public MinMaxPyramid(Path file) throws IOException {
+        this.file = file;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Índice demasiado grande para mapearlo entero: " + file);
+            }
+            if (channel.size() < PyramidFormat.HEADER_BYTES) {
+                throw new IOException("Índice demasiado corto: " + file);
+            }
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            data.order(PyramidFormat.BYTE_ORDER);
+        }
+        for (int i = 0; i < PyramidFormat.MAGIC.length; i++) {
+            if (data.get(i) != PyramidFormat.MAGIC[i]) {
+                throw new IOException("No es un índice de resumen: " + file);
+            }
+        }
+        int version = data.getInt(PyramidFormat.OFFSET_VERSION);
+        if (version < PyramidFormat.MIN_VERSION || version > PyramidFormat.VERSION) {
+            throw new IOException("Versión de formato no soportada (" + version + "): " + file);
+        }
+        sampleRateHz = data.getInt(PyramidFormat.OFFSET_SAMPLE_RATE);
+        baseShift = data.getInt(PyramidFormat.OFFSET_BASE_SHIFT);
+        chunkShift = data.getInt(PyramidFormat.OFFSET_CHUNK_SHIFT);
+        levels = data.getInt(PyramidFormat.OFFSET_LEVELS);
+        epochMillis = data.getLong(PyramidFormat.OFFSET_EPOCH_MILLIS);
+        if (baseShift < 1 || chunkShift < baseShift || chunkShift > 24 || levels != chunkShift - baseShift + 1) {
+            throw new IOException("Cabecera de índice inconsistente: " + file);
+        }
+        levelOffsets = PyramidFormat.levelOffsets(baseShift, chunkShift);
+        chunkBytes = levelOffsets[levels] * PyramidFormat.ENTRY_BYTES;
+        long declared = data.getLong(PyramidFormat.OFFSET_SAMPLE_COUNT);
+        // Sin total (grabación interrumpida antes del primer volcado) solo valen los trozos completos
+        long completeChunks = (data.capacity() - PyramidFormat.HEADER_BYTES) / chunkBytes;
+        sampleCount = declared >= 0 ? declared : completeChunks << chunkShift;
+        boolean compactTail = version >= 2
+                && (data.getInt(PyramidFormat.OFFSET_FLAGS) & PyramidFormat.FLAG_COMPACT_TAIL) != 0;
+        long tailSamples = sampleCount & ((1L << chunkShift) - 1);
+        if (compactTail && tailSamples > 0) {
+            tailChunk = sampleCount >> chunkShift;
+            tailLevelOffsets = PyramidFormat.compactLevelOffsets(levels, (int) ((tailSamples + (1L << baseShift) - 1) >> baseShift));
+        } else {
+            tailChunk = -1;
+            tailLevelOffsets = null;
+        }
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public int getSampleRateHz() {
+        return sampleRateHz;
+    }
+
+    public long getEpochMillis() {
+        return epochMillis;
+    }
+
+    public long getSampleCount() {
+        return sampleCount;
+    }
+
+    public int getLevelCount() {
+        return levels;
+    }
+
+    /** Muestras que resume cada entrada de un nivel. */
+    public int getBucketSamples(int level) {
+        return 1 << (baseShift + level);
+    }
+
+    /**
+     * Nivel más detallado cuyas cubetas no superan {@code samplesPerColumn}, o -1 si las columnas
+     * son más finas que el nivel 0 (entonces conviene dibujar con las muestras).
+     */
+    public int levelFor(double samplesPerColumn) {
+        if (samplesPerColumn < getBucketSamples(0)) {
+            return -1;
+        }
+        int level = 0;
+        while (level + 1 < levels && getBucketSamples(level + 1) <= samplesPerColumn) {
+            level++;
+        }
+        return level;
+    }
+
+    /**
+     * Resume las muestras {@code [fromSample, toSample)} en {@code columns} columnas.
+     * Los arrays de salida pueden ser null si no interesan; {@code mean} es aproximada.
+     *
+     * @return Columnas con datos (las siguientes, pasado el final de la grabación, quedan sin tocar).
+     * @throws IllegalArgumentException Si el tramo es tan corto que no llega a una cubeta por columna.
+     */
+    public int summarize(long fromSample, long toSample, int columns, int[] min, int[] max, int[] mean) {
+        double samplesPerColumn = (double) (toSample - fromSample) / columns;
+        int level = levelFor(samplesPerColumn);
+        if (level < 0) {
+            throw new IllegalArgumentException("Tramo demasiado corto para el índice: "
+                    + samplesPerColumn + " muestras por columna");
+        }
+        final int shift = baseShift + level;
+        final long lastBucket = (Math.min(toSample, sampleCount) - 1) >> shift;
+        for (int column = 0; column < columns; column++) {
+            long start = fromSample + (long) (column * samplesPerColumn);
+            long end = fromSample + (long) ((column + 1) * samplesPerColumn);
+            long first = Math.max(0, start) >> shift;
+            long last = Math.min(lastBucket, Math.max(start, end - 1) >> shift);
+            if (start >= sampleCount || first > last) {
+                return column;
+            }
+            int columnMin = Integer.MAX_VALUE;
+            int columnMax = Integer.MIN_VALUE;
+            long meanSum = 0;
+            for (long bucket = first; bucket <= last; bucket++) {
+                int at = entryPosition(level, bucket);
+                columnMin = Math.min(columnMin, data.getShort(at));
+                columnMax = Math.max(columnMax, data.getShort(at + 2));
+                meanSum += data.getShort(at + 4);
+            }
+            if (min != null) {
+                min[column] = columnMin;
+            }
+            if (max != null) {
+                max[column] = columnMax;
+            }
+            if (mean != null) {
+                mean[column] = (int) (meanSum / (last - first + 1));
+            }
+        }
+        return columns;
+    }
+
+    private int entryPosition(int level, long bucket) {
+        int perChunkShift = chunkShift - baseShift - level;
+        long chunk = bucket >> perChunkShift;
+        int inChunk = (int) (bucket & ((1 << perChunkShift) - 1));
+        int[] offsets = chunk == tailChunk ? tailLevelOffsets : levelOffsets;
+        return (int) (PyramidFormat.HEADER_BYTES + chunk * chunkBytes)
+                + (offsets[level] + inChunk) * PyramidFormat.ENTRY_BYTES;
+    }
+}
@@ -0,0 +1,278 @@
+package com.streelet.ecg_java_app.recording;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Construye, a medida que llegan las muestras, el índice de resumen de {@link PyramidFormat}:
+ * cada cubeta del nivel 0 resume {@code 2^baseShift} muestras y cada nivel siguiente combina
+ * dos cubetas del anterior. Permite dibujar cualquier tramo de una grabación larga leyendo del
+ * orden de una entrada por píxel ({@link MinMaxPyramid}).
+ *
+ * Coste por muestra: un mínimo, un máximo y una suma; la cascada hacia los niveles superiores
+ * se hace una vez por cubeta. Solo el trozo en curso está en memoria; {@link #flush()} escribe
+ * lo nuevo de ese trozo para que una caída no lo pierda. No es seguro entre hilos: se usa desde
+ * el hilo de escritura de {@link SessionRecorder}.
+ */
+public class MinMaxPyramidWriter implements Closeable {
+
+    /** Cubetas del nivel 0 de 16 muestras: por debajo, se dibuja con las muestras. */
+    public static final int DEFAULT_BASE_SHIFT = 4;
+    /** Trozos de 2^20 muestras (unos 35 min a 500 Hz, ~770 KB). */
+    public static final int DEFAULT_CHUNK_SHIFT = 20;
+
+    private final FileChannel channel;
+    private final int baseShift;
+    private final int chunkShift;
+    private final int levels;
+    private final int[] levelOffsets;
+    private final int[] levelFill;
+    // Entradas de cada nivel del trozo en curso ya volcadas al archivo
+    private final int[] flushedFill;
+    private final int chunkSize;
+    private final short[] entries;
+    private final ByteBuffer chunkBytes;
+
+    // Cubeta del nivel 0 en curso
+    private int bucketMin;
+    private int bucketMax;
+    private long bucketSum;
+    private int bucketFill = 0;
+
+    private long samples = 0;
+    private long chunksWritten = 0;
+    private long flushedSamples = -1;
+    private boolean closed = false;
+
+    /**
+     * Crea el archivo (no debe existir) y escribe la cabecera.
+     */
+    public MinMaxPyramidWriter(Path file, int sampleRateHz, long epochMillis, int baseShift, int chunkShift)
+            throws IOException {
+        if (baseShift < 1 || chunkShift < baseShift || chunkShift > 24) {
+            throw new IllegalArgumentException("Niveles fuera de rango: cubeta 2^" + baseShift + ", trozo 2^" + chunkShift);
+        }
+        this.baseShift = baseShift;
+        this.chunkShift = chunkShift;
+        this.levels = chunkShift - baseShift + 1;
+        this.levelOffsets = PyramidFormat.levelOffsets(baseShift, chunkShift);
+        this.levelFill = new int[levels];
+        this.flushedFill = new int[levels];
+        this.entries = new short[levelOffsets[levels] * 3];
+        this.chunkSize = levelOffsets[levels] * PyramidFormat.ENTRY_BYTES;
+        this.chunkBytes = ByteBuffer.allocate(chunkSize).order(PyramidFormat.BYTE_ORDER);
+
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(PyramidFormat.HEADER_BYTES).order(PyramidFormat.BYTE_ORDER);
+        header.put(PyramidFormat.MAGIC);
+        header.putInt(PyramidFormat.OFFSET_VERSION, PyramidFormat.VERSION);
+        header.putInt(PyramidFormat.OFFSET_HEADER_BYTES, PyramidFormat.HEADER_BYTES);
+        header.putInt(PyramidFormat.OFFSET_SAMPLE_RATE, sampleRateHz);
+        header.putInt(PyramidFormat.OFFSET_BASE_SHIFT, baseShift);
+        header.putInt(PyramidFormat.OFFSET_CHUNK_SHIFT, chunkShift);
+        header.putInt(PyramidFormat.OFFSET_LEVELS, levels);
+        header.putLong(PyramidFormat.OFFSET_SAMPLE_COUNT, -1);
+        header.putLong(PyramidFormat.OFFSET_EPOCH_MILLIS, epochMillis);
+        header.clear();
+        try {
+            writeFully(header, 0);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public void append(int[] values, int offset, int length) throws IOException {
+        final int bucketSamples = 1 << baseShift;
+        final int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            int value = values[i];
+            if (bucketFill == 0) {
+                bucketMin = value;
+                bucketMax = value;
+                bucketSum = value;
+            } else {
+                if (value < bucketMin) {
+                    bucketMin = value;
+                }
+                if (value > bucketMax) {
+                    bucketMax = value;
+                }
+                bucketSum += value;
+            }
+            if (++bucketFill == bucketSamples) {
+                closeBucket();
+            }
+        }
+        samples += length;
+    }
+
+    public long getSamplesWritten() {
+        return samples;
+    }
+
+    /**
+     * Escribe las entradas del trozo en curso que aún no están en el archivo y, para las cubetas
+     * altas incompletas, una entrada provisional con lo que llevan (la reemplaza la definitiva).
+     * Después actualiza en la cabecera las muestras resumidas, sin la cubeta del nivel 0 en curso.
+     */
+    public void flush() throws IOException {
+        long summarized = (chunksWritten << chunkShift) + ((long) levelFill[0] << baseShift);
+        if (closed || summarized == flushedSamples) {
+            return;
+        }
+        long chunkPosition = PyramidFormat.HEADER_BYTES + chunksWritten * chunkSize;
+        // Entrada provisional del nivel en curso (resumen de las cubetas sin pareja de abajo)
+        boolean carry = false;
+        short carryMin = 0;
+        short carryMax = 0;
+        short carryMean = 0;
+        for (int level = 0; level < levels; level++) {
+            int fill = levelFill[level];
+            if (fill > flushedFill[level]) {
+                writeEntries(level, flushedFill[level], fill, chunkPosition + (long) levelOffsets[level] * PyramidFormat.ENTRY_BYTES);
+                flushedFill[level] = fill;
+            }
+            if (carry) {
+                chunkBytes.clear();
+                chunkBytes.putShort(carryMin).putShort(carryMax).putShort(carryMean).flip();
+                writeFully(chunkBytes, chunkPosition + (long) (levelOffsets[level] + fill) * PyramidFormat.ENTRY_BYTES);
+            }
+            if ((fill & 1) == 1) {
+                int at = (levelOffsets[level] + fill - 1) * 3;
+                if (carry) {
+                    carryMin = (short) Math.min(entries[at], carryMin);
+                    carryMax = (short) Math.max(entries[at + 1], carryMax);
+                    carryMean = (short) ((entries[at + 2] + carryMean) >> 1);
+                } else {
+                    carryMin = entries[at];
+                    carryMax = entries[at + 1];
+                    carryMean = entries[at + 2];
+                    carry = true;
+                }
+            }
+        }
+        writeSampleCount(summarized);
+        flushedSamples = summarized;
+    }
+
+    /**
+     * Cierra la cubeta y el trozo incompletos (resumen de lo que haya), escribe el total y cierra.
+     * El trozo incompleto se guarda compacto y el archivo se recorta tras él.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (bucketFill > 0) {
+                closeBucket();
+            }
+            long end = PyramidFormat.HEADER_BYTES + chunksWritten * chunkSize;
+            if (levelFill[0] > 0) {
+                // Las cubetas sin pareja suben solas para que los niveles altos cubran el final
+                for (int level = 0; level + 1 < levels; level++) {
+                    if ((levelFill[level] & 1) == 1) {
+                        int at = (levelOffsets[level] + levelFill[level] - 1) * 3;
+                        put(level + 1, entries[at], entries[at + 1], entries[at + 2]);
+                    }
+                }
+                end = writeCompactTail();
+            }
+            channel.truncate(end);
+            ByteBuffer flags = ByteBuffer.allocate(4).order(PyramidFormat.BYTE_ORDER);
+            flags.putInt(0, PyramidFormat.FLAG_COMPACT_TAIL);
+            writeFully(flags, PyramidFormat.OFFSET_FLAGS);
+            writeSampleCount(samples);
+            channel.force(false);
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void closeBucket() throws IOException {
+        int mean = (int) Math.round((double) bucketSum / bucketFill);
+        bucketFill = 0;
+        put(0, clamp(bucketMin), clamp(bucketMax), clamp(mean));
+        if (levelFill[0] == 1 << (chunkShift - baseShift)) {
+            writeChunk();
+        }
+    }
+
+    /**
+     * Añade una entrada a un nivel y, si completa una pareja, sube su combinación.
+     */
+    private void put(int level, short min, short max, short mean) {
+        int index = levelFill[level]++;
+        int at = (levelOffsets[level] + index) * 3;
+        entries[at] = min;
+        entries[at + 1] = max;
+        entries[at + 2] = mean;
+        if ((index & 1) == 1 && level + 1 < levels) {
+            int left = at - 3;
+            put(level + 1,
+                    (short) Math.min(entries[left], min),
+                    (short) Math.max(entries[left + 1], max),
+                    (short) ((entries[left + 2] + mean) >> 1));
+        }
+    }
+
+    private void writeChunk() throws IOException {
+        chunkBytes.clear();
+        chunkBytes.asShortBuffer().put(entries);
+        long position = PyramidFormat.HEADER_BYTES + chunksWritten * chunkBytes.capacity();
+        writeFully(chunkBytes, position);
+        chunksWritten++;
+        Arrays.fill(levelFill, 0);
+        Arrays.fill(flushedFill, 0);
+        Arrays.fill(entries, (short) 0);
+    }
+
+    /**
+     * Escribe el trozo incompleto con cada nivel solo con sus entradas.
+     *
+     * @return Posición del final del archivo.
+     */
+    private long writeCompactTail() throws IOException {
+        long position = PyramidFormat.HEADER_BYTES + chunksWritten * chunkSize;
+        for (int level = 0; level < levels; level++) {
+            writeEntries(level, 0, levelFill[level], position);
+            position += (long) levelFill[level] * PyramidFormat.ENTRY_BYTES;
+        }
+        return position;
+    }
+
+    /**
+     * Escribe las entradas {@code [from, to)} de un nivel del trozo en curso; {@code levelPosition}
+     * es la posición en el archivo de la entrada 0 del nivel.
+     */
+    private void writeEntries(int level, int from, int to, long levelPosition) throws IOException {
+        chunkBytes.clear();
+        chunkBytes.asShortBuffer().put(entries, (levelOffsets[level] + from) * 3, (to - from) * 3);
+        chunkBytes.limit((to - from) * PyramidFormat.ENTRY_BYTES);
+        writeFully(chunkBytes, levelPosition + (long) from * PyramidFormat.ENTRY_BYTES);
+    }
+
+    private void writeSampleCount(long count) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8).order(PyramidFormat.BYTE_ORDER);
+        buffer.putLong(0, count);
+        writeFully(buffer, PyramidFormat.OFFSET_SAMPLE_COUNT);
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static short clamp(int value) {
+        return (short) (value < Short.MIN_VALUE ? Short.MIN_VALUE : value > Short.MAX_VALUE ? Short.MAX_VALUE : value);
+    }
+}
@@ -0,0 +1,91 @@
+package com.streelet.ecg_java_app.recording;
+
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Formato del índice de resumen ({@code <sesión>.ecgpyr}) que escribe
+ * {@link MinMaxPyramidWriter}: mínimo, máximo y media por cubeta, en niveles que van
+ * duplicando el tamaño de la cubeta. Little-endian.
+ *
+ * Cabecera de {@link #HEADER_BYTES} bytes:
+ * <pre>
+ *   0  magic "ECGPYR01"              8 bytes
+ *   8  versión                       int
+ *  12  tamaño de la cabecera         int
+ *  16  frecuencia de muestreo        int
+ *  20  log2 de la cubeta del nivel 0 int
+ *  24  log2 de las muestras por trozo int
+ *  28  niveles                       int
+ *  32  muestras resumidas            long (-1 hasta el primer volcado)
+ *  40  inicio (epoch ms)             long
+ *  48  flags                         int ({@link #FLAG_COMPACT_TAIL})
+ * </pre>
+ * Después, trozos de tamaño fijo que cubren {@code 2^trozo} muestras cada uno. Dentro de un
+ * trozo van los niveles seguidos (del 0 al último, cuya cubeta es el trozo entero) y cada
+ * entrada son tres {@code short}: mínimo, máximo y media. Así el trozo en curso se construye
+ * en memoria y se escribe entero al completarse, y cualquier entrada de cualquier nivel está
+ * en una posición calculable.
+ *
+ * El trozo en curso se vuelca periódicamente en su sitio (con entradas provisionales para las
+ * cubetas altas aún incompletas) junto con las muestras que ya resume, así que tras una caída
+ * el índice cubre hasta el último volcado. Al cerrar, el último trozo incompleto se guarda
+ * compacto: cada nivel solo con sus {@code ceil(cubetas del nivel 0 / 2^nivel)} entradas, y el
+ * archivo termina ahí ({@link #FLAG_COMPACT_TAIL}). La versión 1 no tenía flags.
+ */
+public final class PyramidFormat {
+
+    public static final byte[] MAGIC = "ECGPYR01".getBytes(StandardCharsets.US_ASCII);
+    public static final int VERSION = 2;
+    /** Última versión cuyo formato se sigue leyendo. */
+    static final int MIN_VERSION = 1;
+    public static final int HEADER_BYTES = 64;
+    public static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+    public static final String EXTENSION = ".ecgpyr";
+
+    static final int ENTRY_BYTES = 6;
+
+    // Posiciones en la cabecera
+    static final int OFFSET_VERSION = 8;
+    static final int OFFSET_HEADER_BYTES = 12;
+    static final int OFFSET_SAMPLE_RATE = 16;
+    static final int OFFSET_BASE_SHIFT = 20;
+    static final int OFFSET_CHUNK_SHIFT = 24;
+    static final int OFFSET_LEVELS = 28;
+    static final int OFFSET_SAMPLE_COUNT = 32;
+    static final int OFFSET_EPOCH_MILLIS = 40;
+    static final int OFFSET_FLAGS = 48;
+
+    /** El último trozo, incompleto, está compacto (solo las entradas que cubren muestras). */
+    static final int FLAG_COMPACT_TAIL = 1;
+
+    private PyramidFormat() {
+    }
+
+    static String pyramidFileName(String sessionName) {
+        return sessionName + EXTENSION;
+    }
+
+    /** Posición (en entradas) de cada nivel dentro de un trozo. */
+    static int[] levelOffsets(int baseShift, int chunkShift) {
+        int levels = chunkShift - baseShift + 1;
+        int[] offsets = new int[levels + 1];
+        for (int level = 0; level < levels; level++) {
+            offsets[level + 1] = offsets[level] + (1 << (chunkShift - baseShift - level));
+        }
+        return offsets;
+    }
+
+    /**
+     * Posición (en entradas) de cada nivel dentro de un trozo compacto con {@code baseBuckets}
+     * cubetas del nivel 0.
+     */
+    static int[] compactLevelOffsets(int levels, int baseBuckets) {
+        int[] offsets = new int[levels + 1];
+        for (int level = 0; level < levels; level++) {
+            int count = (int) ((baseBuckets + (1L << level) - 1) >> level);
+            offsets[level + 1] = offsets[level] + count;
+        }
+        return offsets;
+    }
+}
@@ -0,0 +1,144 @@
+package com.streelet.ecg_java_app.recording;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Anillo de bytes sin bloqueos (un productor, un consumidor) que guarda registros ya en el
+ * formato de {@link SessionFormat}. Un registro nunca cruza el final del anillo: si no cabe,
+ * el productor escribe un registro de relleno hasta el final y empieza en 0.
+ *
+ * El productor nunca espera: si no hay sitio el registro se descarta y se cuenta.
+ */
+final class RecordRing {
+
+    private final int capacity;
+    private final int mask;
+    private final byte[] bytes;
+    private final ByteBuffer buffer;
+
+    // Siguiente byte a escribir (productor) y a leer (consumidor), en posiciones absolutas
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong head = new AtomicLong();
+    private long headCache = 0;
+    private long tailCache = 0;
+
+    // Registro reservado por el productor y aún no publicado
+    private long pendingTail;
+    private int pendingPosition;
+
+    private volatile long droppedRecords = 0;
+    private volatile int highWaterMark = 0;
+
+    RecordRing(int requestedCapacity) {
+        if (requestedCapacity < 1024 || requestedCapacity > (1 << 30)) {
+            throw new IllegalArgumentException("Capacidad fuera de rango: " + requestedCapacity);
+        }
+        this.capacity = Integer.highestOneBit(requestedCapacity - 1) << 1;
+        this.mask = capacity - 1;
+        this.bytes = new byte[capacity];
+        this.buffer = ByteBuffer.wrap(bytes).order(SessionFormat.BYTE_ORDER);
+    }
+
+    /** Buffer para escribir (productor) o leer (consumidor) con posiciones absolutas. */
+    ByteBuffer buffer() {
+        return buffer;
+    }
+
+    byte[] bytes() {
+        return bytes;
+    }
+
+    /** Cuerpo más grande que cabe en el anillo. */
+    int maxBodyBytes() {
+        return capacity / 4;
+    }
+
+    // --- Productor ---
+
+    /**
+     * Reserva un registro. Solo desde el hilo productor.
+     *
+     * @return Posición del cuerpo en {@link #buffer()}, o -1 si no hay sitio (se descarta y cuenta).
+     */
+    int claim(int type, int bodyLength) {
+        final int length = SessionFormat.alignedLength(bodyLength);
+        final long t = tail.get();
+        final int position = (int) t & mask;
+        final int padding = position + length > capacity ? capacity - position : 0;
+        final long needed = padding + length;
+        if (capacity - (t - headCache) < needed) {
+            headCache = head.get();
+            if (capacity - (t - headCache) < needed) {
+                droppedRecords = droppedRecords + 1;
+                return -1;
+            }
+        }
+        long start = t;
+        if (padding > 0) {
+            buffer.putInt(position, SessionFormat.recordHeader(SessionFormat.PADDING,
+                    padding - SessionFormat.RECORD_HEADER_BYTES));
+            start += padding;
+        }
+        pendingPosition = (int) start & mask;
+        pendingTail = start + length;
+        buffer.putInt(pendingPosition, SessionFormat.recordHeader(type, bodyLength));
+        return pendingPosition + SessionFormat.RECORD_HEADER_BYTES;
+    }
+
+    /**
+     * Publica el último registro reservado con {@link #claim}.
+     */
+    void publish() {
+        tail.lazySet(pendingTail);
+        long occupancy = pendingTail - headCache;
+        if (occupancy > highWaterMark) {
+            highWaterMark = (int) occupancy;
+        }
+    }
+
+    // --- Consumidor ---
+
+    /**
+     * @return Posición de la cabecera del siguiente registro (saltando rellenos), o -1 si no hay.
+     */
+    int peek() {
+        while (true) {
+            final long h = head.get();
+            if (h == tailCache) {
+                tailCache = tail.get();
+                if (h == tailCache) {
+                    return -1;
+                }
+            }
+            final int position = (int) h & mask;
+            final int header = buffer.getInt(position);
+            if (SessionFormat.recordType(header) != SessionFormat.PADDING) {
+                return position;
+            }
+            head.lazySet(h + SessionFormat.alignedLength(SessionFormat.bodyLength(header)));
+        }
+    }
+
+    /**
+     * Libera el registro devuelto por {@link #peek()}.
+     */
+    void release(int position) {
+        final int header = buffer.getInt(position);
+        head.lazySet(head.get() + SessionFormat.alignedLength(SessionFormat.bodyLength(header)));
+    }
+
+    // --- Consultas ---
+
+    int capacity() {
+        return capacity;
+    }
+
+    long getDroppedRecords() {
+        return droppedRecords;
+    }
+
+    int getHighWaterMark() {
+        return highWaterMark;
+    }
+}
@@ -0,0 +1,194 @@
+package com.streelet.ecg_java_app.recording;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Lee un archivo comprimido de muestras ({@link ArchiveFormat}) mapeado en memoria.
+ *
+ * Cualquier muestra está en el bloque {@code muestra / muestrasPorBloque}, y el índice da su
+ * posición: leer desde cualquier instante decodifica solo los bloques necesarios.
+ * No es seguro entre hilos (reutiliza sus buffers de decodificación).
+ */
+public class SampleArchiveReader {
+
+    private final Path file;
+    private final MappedByteBuffer data;
+    private final int sampleRateHz;
+    private final int blockSamples;
+    private final long epochMillis;
+    private final long[] blockOffsets;
+    private final long sampleCount;
+    private final boolean indexed;
+
+    private final SampleBlockCodec codec;
+    private byte[] payload = new byte[4096];
+    private final int[] blockValues;
+
+    /**
+     * @throws IOException Si no se puede leer o no es un archivo comprimido de muestras.
+     */
+    public SampleArchiveReader(Path file) throws IOException {
+        this.file = file;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Archivo demasiado grande para mapearlo entero: " + file);
+            }
+            if (channel.size() < ArchiveFormat.HEADER_BYTES) {
+                throw new IOException("Archivo demasiado corto: " + file);
+            }
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            data.order(ArchiveFormat.BYTE_ORDER);
+        }
+        if (!matches(0, ArchiveFormat.MAGIC)) {
+            throw new IOException("No es un archivo comprimido de muestras: " + file);
+        }
+        int version = data.getInt(ArchiveFormat.OFFSET_VERSION);
+        if (version != ArchiveFormat.VERSION) {
+            throw new IOException("Versión de formato no soportada (" + version + "): " + file);
+        }
+        sampleRateHz = data.getInt(ArchiveFormat.OFFSET_SAMPLE_RATE);
+        blockSamples = data.getInt(ArchiveFormat.OFFSET_BLOCK_SAMPLES);
+        epochMillis = data.getLong(ArchiveFormat.OFFSET_EPOCH_MILLIS);
+        if (blockSamples < 1 || blockSamples > SampleBlockCodec.MAX_BLOCK_SAMPLES) {
+            throw new IOException("Muestras por bloque inválidas (" + blockSamples + "): " + file);
+        }
+        codec = new SampleBlockCodec(blockSamples);
+        blockValues = new int[blockSamples];
+
+        int trailer = data.capacity() - ArchiveFormat.TRAILER_BYTES;
+        if (trailer >= ArchiveFormat.HEADER_BYTES && matches(trailer + 24, ArchiveFormat.TRAILER_MAGIC)) {
+            long indexPosition = data.getLong(trailer);
+            int blocks = data.getInt(trailer + 16);
+            blockOffsets = new long[blocks];
+            for (int i = 0; i < blocks; i++) {
+                blockOffsets[i] = data.getLong((int) indexPosition + 8 * i);
+            }
+            sampleCount = data.getLong(trailer + 8);
+            indexed = true;
+        } else {
+            // Sin trailer (grabación interrumpida): se recorren las cabeceras de los bloques
+            long[] offsets = new long[256];
+            int blocks = 0;
+            long samples = 0;
+            int at = data.getInt(ArchiveFormat.OFFSET_HEADER_BYTES);
+            while (at + ArchiveFormat.BLOCK_HEADER_BYTES <= data.capacity()
+                    && data.getInt(at) == ArchiveFormat.BLOCK_SYNC
+                    && data.getInt(at + 4) == blocks) {
+                int length = data.getInt(at + 20);
+                if (length < 0 || at + ArchiveFormat.BLOCK_HEADER_BYTES + (long) length > data.capacity()) {
+                    break;
+                }
+                if (blocks == offsets.length) {
+                    offsets = Arrays.copyOf(offsets, blocks * 2);
+                }
+                offsets[blocks++] = at;
+                samples += data.getInt(at + 16);
+                at += ArchiveFormat.BLOCK_HEADER_BYTES + length;
+            }
+            blockOffsets = Arrays.copyOf(offsets, blocks);
+            sampleCount = samples;
+            indexed = false;
+        }
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public int getSampleRateHz() {
+        return sampleRateHz;
+    }
+
+    public long getEpochMillis() {
+        return epochMillis;
+    }
+
+    public int getBlockSamples() {
+        return blockSamples;
+    }
+
+    public int getBlockCount() {
+        return blockOffsets.length;
+    }
+
+    public long getSampleCount() {
+        return sampleCount;
+    }
+
+    /** false si el archivo no se cerró bien y el índice se rehízo al abrir. */
+    public boolean isIndexed() {
+        return indexed;
+    }
+
+    /**
+     * Decodifica un bloque entero en {@code dst}.
+     *
+     * @return Muestras del bloque.
+     */
+    public int readBlock(int blockIndex, int[] dst, int offset) {
+        int at = (int) blockOffsets[blockIndex];
+        int count = data.getInt(at + 16);
+        int length = data.getInt(at + 20);
+        if (payload.length < length) {
+            payload = new byte[Math.max(length, payload.length * 2)];
+        }
+        ByteBuffer source = data.duplicate();
+        source.position(at + ArchiveFormat.BLOCK_HEADER_BYTES);
+        source.get(payload, 0, length);
+        codec.decode(payload, 0, length, dst, offset, count);
+        return count;
+    }
+
+    /**
+     * Copia muestras desde cualquier posición, decodificando solo los bloques que abarcan.
+     *
+     * @return Muestras copiadas (menos que {@code length} al llegar al final).
+     */
+    public int read(long fromSample, int[] dst, int offset, int length) {
+        int count = (int) Math.max(0, Math.min(length, sampleCount - fromSample));
+        int done = 0;
+        while (done < count) {
+            long sample = fromSample + done;
+            int blockIndex = (int) (sample / blockSamples);
+            int inBlock = (int) (sample % blockSamples);
+            int remaining = count - done;
+            if (inBlock == 0 && remaining >= blockSamples) {
+                // Bloque entero: directo al destino
+                done += readBlock(blockIndex, dst, offset + done);
+            } else {
+                int decoded = readBlock(blockIndex, blockValues, 0);
+                int take = Math.min(remaining, decoded - inBlock);
+                System.arraycopy(blockValues, inBlock, dst, offset + done, take);
+                done += take;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Decodifica todo el archivo en un array.
+     */
+    public int[] readAll() {
+        if (sampleCount > Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException("Demasiadas muestras para un solo array: " + sampleCount);
+        }
+        int[] values = new int[(int) sampleCount];
+        read(0, values, 0, values.length);
+        return values;
+    }
+
+    private boolean matches(int at, byte[] expected) {
+        for (int i = 0; i < expected.length; i++) {
+            if (data.get(at + i) != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
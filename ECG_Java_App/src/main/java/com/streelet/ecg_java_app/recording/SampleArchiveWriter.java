@@ -0,0 +1,174 @@
+package com.streelet.ecg_java_app.recording;
+
+import com.streelet.ecg_java_app.buffer.SampleRingBuffer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Escribe muestras comprimidas sin pérdidas ({@link SampleBlockCodec}) en un archivo
+ * {@link ArchiveFormat}, a medida que llegan: se acumulan en un bloque y al llenarse se
+ * codifica y se escribe.
+ *
+ * Las muestras se guardan en orden de llegada, sin rellenar huecos de secuencia. No es seguro
+ * entre hilos: se usa desde un solo hilo (el de escritura de {@link SessionRecorder}).
+ */
+public class SampleArchiveWriter implements Closeable {
+
+    /** Unos 8 s a 500 Hz: bloques de ~1-2 KB, acceso aleatorio barato. */
+    public static final int DEFAULT_BLOCK_SAMPLES = 4096;
+
+    private final FileChannel channel;
+    private final int blockSamples;
+    private final SampleBlockCodec codec;
+    private final int[] block;
+    private final byte[] encoded;
+    private final ByteBuffer encodedBuffer;
+    private final int[] drainValues;
+
+    private int blockFill = 0;
+    private long position;
+    private long samplesWritten = 0;
+    private long[] blockOffsets = new long[1024];
+    private int blockCount = 0;
+    private boolean closed = false;
+
+    /**
+     * Crea el archivo (no debe existir) y escribe la cabecera.
+     */
+    public SampleArchiveWriter(Path file, int sampleRateHz, long epochMillis, int blockSamples) throws IOException {
+        if (blockSamples < SampleBlockCodec.PARTITION_SAMPLES || blockSamples > SampleBlockCodec.MAX_BLOCK_SAMPLES) {
+            throw new IllegalArgumentException("Muestras por bloque fuera de rango: " + blockSamples);
+        }
+        this.blockSamples = blockSamples;
+        this.codec = new SampleBlockCodec(blockSamples);
+        this.block = new int[blockSamples];
+        this.encoded = new byte[ArchiveFormat.BLOCK_HEADER_BYTES + SampleBlockCodec.maxEncodedBytes(blockSamples)];
+        this.encodedBuffer = ByteBuffer.wrap(encoded).order(ArchiveFormat.BYTE_ORDER);
+        this.drainValues = new int[blockSamples];
+
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(ArchiveFormat.HEADER_BYTES).order(ArchiveFormat.BYTE_ORDER);
+        header.put(ArchiveFormat.MAGIC);
+        header.putInt(ArchiveFormat.OFFSET_VERSION, ArchiveFormat.VERSION);
+        header.putInt(ArchiveFormat.OFFSET_HEADER_BYTES, ArchiveFormat.HEADER_BYTES);
+        header.putInt(ArchiveFormat.OFFSET_SAMPLE_RATE, sampleRateHz);
+        header.putInt(ArchiveFormat.OFFSET_BLOCK_SAMPLES, blockSamples);
+        header.putLong(ArchiveFormat.OFFSET_EPOCH_MILLIS, epochMillis);
+        header.clear();
+        try {
+            writeFully(header);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        position = ArchiveFormat.HEADER_BYTES;
+    }
+
+    public void append(int[] values, int offset, int length) throws IOException {
+        while (length > 0) {
+            int count = Math.min(length, blockSamples - blockFill);
+            System.arraycopy(values, offset, block, blockFill, count);
+            blockFill += count;
+            offset += count;
+            length -= count;
+            if (blockFill == blockSamples) {
+                writeBlock();
+            }
+        }
+    }
+
+    /**
+     * Vacía el buffer (como su consumidor) y comprime lo que haya.
+     *
+     * @return Muestras añadidas.
+     */
+    public long drainFrom(SampleRingBuffer buffer) throws IOException {
+        long total = 0;
+        int count;
+        while ((count = buffer.drain(drainValues, null, 0, drainValues.length)) > 0) {
+            append(drainValues, 0, count);
+            total += count;
+        }
+        return total;
+    }
+
+    public long getSamplesWritten() {
+        return samplesWritten + blockFill;
+    }
+
+    /** Bytes del archivo hasta ahora (sin el bloque en curso). */
+    public long getBytesWritten() {
+        return position;
+    }
+
+    /**
+     * Relación entre las muestras como int (4 bytes) y lo escrito.
+     */
+    public double getCompressionRatio() {
+        long payload = position - ArchiveFormat.HEADER_BYTES;
+        return payload <= 0 ? 0 : samplesWritten * 4.0 / payload;
+    }
+
+    /**
+     * Escribe el bloque incompleto, el índice y el trailer, y cierra.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (blockFill > 0) {
+                writeBlock();
+            }
+            ByteBuffer index = ByteBuffer.allocate(blockCount * 8 + ArchiveFormat.TRAILER_BYTES)
+                    .order(ArchiveFormat.BYTE_ORDER);
+            for (int i = 0; i < blockCount; i++) {
+                index.putLong(blockOffsets[i]);
+            }
+            index.putLong(position);
+            index.putLong(samplesWritten);
+            index.putInt(blockCount);
+            index.putInt(0);
+            index.put(ArchiveFormat.TRAILER_MAGIC);
+            index.flip();
+            writeFully(index);
+            channel.force(false);
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void writeBlock() throws IOException {
+        int payload = codec.encode(block, 0, blockFill, encoded, ArchiveFormat.BLOCK_HEADER_BYTES);
+        encodedBuffer.putInt(0, ArchiveFormat.BLOCK_SYNC);
+        encodedBuffer.putInt(4, blockCount);
+        encodedBuffer.putLong(8, samplesWritten);
+        encodedBuffer.putInt(16, blockFill);
+        encodedBuffer.putInt(20, payload);
+        encodedBuffer.clear().limit(ArchiveFormat.BLOCK_HEADER_BYTES + payload);
+        writeFully(encodedBuffer);
+        encodedBuffer.clear();
+
+        if (blockCount == blockOffsets.length) {
+            blockOffsets = Arrays.copyOf(blockOffsets, blockCount * 2);
+        }
+        blockOffsets[blockCount++] = position;
+        position += ArchiveFormat.BLOCK_HEADER_BYTES + payload;
+        samplesWritten += blockFill;
+        blockFill = 0;
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package com.streelet.ecg_java_app.recording;
+
+/**
+ * Codificador sin pérdidas de bloques de muestras: predicción lineal fija y residuos con
+ * código de Rice (como los predictores fijos de FLAC).
+ *
+ * Por bloque se elige el predictor (orden 0, 1 o 2) con menor suma de residuos absolutos.
+ * Los residuos se pasan a enteros sin signo (zigzag) y se codifican en particiones de
+ * {@link #PARTITION_SAMPLES} con su propio parámetro k: cociente en unario y k bits de resto.
+ * Un residuo cuyo cociente llegaría a {@link #ESCAPE} se escribe tal cual en 32 bits, así que
+ * cualquier entrada (incluidos saltos bruscos o valores arbitrarios) se reconstruye exacta.
+ *
+ * Flujo de bits, del bit más significativo al menos:
+ * <pre>
+ *   orden                2 bits
+ *   primeras "orden"     32 bits cada una
+ *   por partición:       k (5 bits) y los residuos
+ * </pre>
+ *
+ * Cada bloque se decodifica por sí solo. Las instancias reutilizan sus buffers y no son
+ * seguras entre hilos.
+ */
+public final class SampleBlockCodec {
+
+    public static final int MAX_BLOCK_SAMPLES = 65535;
+    static final int PARTITION_SAMPLES = 64;
+    static final int ESCAPE = 24;
+    private static final int MAX_RICE_PARAMETER = 30;
+
+    private final int[] residuals;
+
+    // Estado de escritura
+    private byte[] out;
+    private int outPosition;
+    private long bitBuffer;
+    private int bitCount;
+
+    // Estado de lectura
+    private byte[] in;
+    private int inPosition;
+    private int inLimit;
+
+    /**
+     * @param maxBlockSamples Muestras máximas por bloque.
+     */
+    public SampleBlockCodec(int maxBlockSamples) {
+        if (maxBlockSamples < 1 || maxBlockSamples > MAX_BLOCK_SAMPLES) {
+            throw new IllegalArgumentException("Tamaño de bloque fuera de rango: " + maxBlockSamples);
+        }
+        this.residuals = new int[maxBlockSamples];
+    }
+
+    /**
+     * Cota del tamaño codificado de un bloque (todo escapado), para dimensionar el destino.
+     */
+    public static int maxEncodedBytes(int samples) {
+        long bits = 2 + 2 * 32 + (long) ((samples + PARTITION_SAMPLES - 1) / PARTITION_SAMPLES) * 5
+                + (long) samples * (ESCAPE + 32);
+        return (int) ((bits + 7) / 8);
+    }
+
+    // --- Codificación ---
+
+    /**
+     * Codifica {@code count} muestras.
+     *
+     * @return Bytes escritos en {@code dst} a partir de {@code dstOffset}.
+     */
+    public int encode(int[] samples, int offset, int count, byte[] dst, int dstOffset) {
+        if (count < 1 || count > residuals.length) {
+            throw new IllegalArgumentException("Número de muestras fuera de rango: " + count);
+        }
+        int order = chooseOrder(samples, offset, count);
+        computeResiduals(samples, offset, count, order);
+
+        out = dst;
+        outPosition = dstOffset;
+        bitBuffer = 0;
+        bitCount = 0;
+        writeBits(order, 2);
+        for (int i = 0; i < Math.min(order, count); i++) {
+            writeBits(samples[offset + i], 32);
+        }
+        for (int start = order; start < count; start += PARTITION_SAMPLES) {
+            int end = Math.min(count, start + PARTITION_SAMPLES);
+            int k = riceParameter(start, end);
+            writeBits(k, 5);
+            for (int i = start; i < end; i++) {
+                writeRice(residuals[i], k);
+            }
+        }
+        if (bitCount > 0) {
+            out[outPosition++] = (byte) (bitBuffer << (8 - bitCount));
+            bitCount = 0;
+        }
+        out = null;
+        return outPosition - dstOffset;
+    }
+
+    /**
+     * Orden con menor suma de residuos absolutos (en una sola pasada).
+     */
+    private static int chooseOrder(int[] samples, int offset, int count) {
+        if (count < 3) {
+            return 0;
+        }
+        long sum0 = 0;
+        long sum1 = 0;
+        long sum2 = 0;
+        int previous2 = samples[offset];
+        int previous = samples[offset + 1];
+        for (int i = offset + 2; i < offset + count; i++) {
+            int value = samples[i];
+            int delta = value - previous;
+            sum0 += Math.abs((long) value);
+            sum1 += Math.abs((long) delta);
+            sum2 += Math.abs((long) delta - ((long) previous - previous2));
+            previous2 = previous;
+            previous = value;
+        }
+        if (sum2 < sum1 && sum2 < sum0) {
+            return 2;
+        }
+        return sum1 < sum0 ? 1 : 0;
+    }
+
+    /**
+     * Residuos en zigzag; la aritmética int desborda igual al codificar y al decodificar.
+     */
+    private void computeResiduals(int[] samples, int offset, int count, int order) {
+        for (int i = order; i < count; i++) {
+            int value = samples[offset + i];
+            int prediction;
+            if (order == 0) {
+                prediction = 0;
+            } else if (order == 1) {
+                prediction = samples[offset + i - 1];
+            } else {
+                prediction = 2 * samples[offset + i - 1] - samples[offset + i - 2];
+            }
+            int residual = value - prediction;
+            residuals[i] = (residual << 1) ^ (residual >> 31);
+        }
+    }
+
+    /**
+     * k que minimiza los bits de la partición, buscando alrededor de log2(media).
+     */
+    private int riceParameter(int start, int end) {
+        long sum = 0;
+        for (int i = start; i < end; i++) {
+            sum += residuals[i] & 0xFFFFFFFFL;
+        }
+        long mean = sum / (end - start);
+        int estimate = mean == 0 ? 0 : 63 - Long.numberOfLeadingZeros(mean);
+        int best = 0;
+        long bestBits = Long.MAX_VALUE;
+        for (int k = Math.max(0, estimate - 1); k <= Math.min(MAX_RICE_PARAMETER, estimate + 1); k++) {
+            long bits = 0;
+            for (int i = start; i < end; i++) {
+                long quotient = (residuals[i] & 0xFFFFFFFFL) >>> k;
+                bits += quotient < ESCAPE ? quotient + 1 + k : ESCAPE + 32;
+            }
+            if (bits < bestBits) {
+                bestBits = bits;
+                best = k;
+            }
+        }
+        return best;
+    }
+
+    private void writeRice(int zigzag, int k) {
+        long quotient = (zigzag & 0xFFFFFFFFL) >>> k;
+        if (quotient < ESCAPE) {
+            // q unos y un cero
+            writeBits((1 << (quotient + 1)) - 2, (int) quotient + 1);
+            if (k > 0) {
+                writeBits(zigzag, k);
+            }
+        } else {
+            writeBits((1 << ESCAPE) - 1, ESCAPE);
+            writeBits(zigzag, 32);
+        }
+    }
+
+    private void writeBits(int value, int bits) {
+        bitBuffer = (bitBuffer << bits) | (value & (0xFFFFFFFFL >>> (32 - bits)));
+        bitCount += bits;
+        while (bitCount >= 8) {
+            bitCount -= 8;
+            out[outPosition++] = (byte) (bitBuffer >>> bitCount);
+        }
+    }
+
+    // --- Decodificación ---
+
+    /**
+     * Decodifica un bloque de {@code count} muestras.
+     *
+     * @param length Bytes del bloque codificado (los bits de relleno del final se ignoran).
+     * @throws IllegalArgumentException Si los datos no alcanzan para {@code count} muestras.
+     */
+    public void decode(byte[] src, int srcOffset, int length, int[] dst, int dstOffset, int count) {
+        in = src;
+        inPosition = srcOffset;
+        inLimit = srcOffset + length;
+        bitBuffer = 0;
+        bitCount = 0;
+        try {
+            int order = readBits(2);
+            if (order > 2) {
+                throw new IllegalArgumentException("Bloque corrupto: orden " + order);
+            }
+            for (int i = 0; i < Math.min(order, count); i++) {
+                dst[dstOffset + i] = readBits(32);
+            }
+            for (int start = order; start < count; start += PARTITION_SAMPLES) {
+                int end = Math.min(count, start + PARTITION_SAMPLES);
+                int k = readBits(5);
+                for (int i = start; i < end; i++) {
+                    int zigzag = readRice(k);
+                    int residual = (zigzag >>> 1) ^ -(zigzag & 1);
+                    int at = dstOffset + i;
+                    if (order == 0) {
+                        dst[at] = residual;
+                    } else if (order == 1) {
+                        dst[at] = dst[at - 1] + residual;
+                    } else {
+                        dst[at] = 2 * dst[at - 1] - dst[at - 2] + residual;
+                    }
+                }
+            }
+            // El acumulador lee por adelantado: lo consumido es lo leído menos lo que queda en él
+            long consumedBits = (long) (inPosition - srcOffset) * 8 - bitCount;
+            if (consumedBits > (long) length * 8) {
+                throw new IllegalArgumentException("Bloque truncado");
+            }
+        } finally {
+            in = null;
+        }
+    }
+
+    private int readRice(int k) {
+        refill();
+        // Cuenta de unos iniciales mirando los bits disponibles de una vez
+        long window = ~(bitBuffer << (64 - bitCount));
+        int ones = Long.numberOfLeadingZeros(window);
+        if (ones < ESCAPE) {
+            bitCount -= ones + 1;
+            return k == 0 ? ones : (ones << k) | readBits(k);
+        }
+        bitCount -= ESCAPE;
+        return readBits(32);
+    }
+
+    private int readBits(int bits) {
+        if (bitCount < bits) {
+            refill();
+        }
+        bitCount -= bits;
+        return (int) ((bitBuffer >>> bitCount) & (0xFFFFFFFFL >>> (32 - bits)));
+    }
+
+    /**
+     * Llena el acumulador hasta al menos 56 bits; pasado el final se leen ceros (y se detecta
+     * al terminar el bloque).
+     */
+    private void refill() {
+        while (bitCount <= 56) {
+            int next = inPosition < inLimit ? in[inPosition] & 0xFF : 0;
+            inPosition++;
+            bitBuffer = (bitBuffer << 8) | next;
+            bitCount += 8;
+        }
+    }
+}
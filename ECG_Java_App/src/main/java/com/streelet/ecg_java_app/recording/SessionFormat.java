@@ -0,0 +1,86 @@
+package com.streelet.ecg_java_app.recording;
+
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Formato binario de las sesiones grabadas por {@link SessionRecorder}.
+ *
+ * Una sesión son varios segmentos {@code <nombre>-<NNNNN>.ecgrec} en little-endian. Se crean
+ * con un tamaño fijo y, al cerrarse, se recortan al final de los datos; un segmento que no se
+ * cerró bien (caída del proceso) conserva el tamaño completo. Cada segmento empieza con una cabecera de {@link #HEADER_BYTES} bytes:
+ * <pre>
+ *   0  magic "ECGREC01"        8 bytes
+ *   8  versión                 int
+ *  12  tamaño de la cabecera   int
+ *  16  índice del segmento     int
+ *  20  frecuencia de muestreo  int
+ *  24  inicio de la sesión     long (epoch ms)
+ *  32  inicio de la sesión     long (System.nanoTime)
+ *  40  inicio del segmento     long (System.nanoTime)
+ * </pre>
+ * y sigue con registros alineados a 4 bytes: una cabecera {@code int} con el tipo en el byte
+ * alto y la longitud del cuerpo en los 24 bits bajos, y el cuerpo. La cabecera del registro se
+ * escribe después del cuerpo, así que una cabecera 0 o el final del archivo marcan el final
+ * de los datos válidos (el resto del segmento está a cero).
+ *
+ * Cuerpos (las marcas de tiempo son System.nanoTime; se pasan a hora real con la cabecera):
+ * <ul>
+ *   <li>{@link #SAMPLES}: long secuencia de la primera muestra, long instante, int n, n × int.</li>
+ *   <li>{@link #PEAK}: long índice de muestra, long instante, int valor.</li>
+ *   <li>{@link #STATUS}: long instante, texto UTF-8 (el resto del cuerpo).</li>
+ * </ul>
+ */
+public final class SessionFormat {
+
+    public static final byte[] MAGIC = "ECGREC01".getBytes(StandardCharsets.US_ASCII);
+    public static final int VERSION = 1;
+    public static final int HEADER_BYTES = 64;
+    public static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+    public static final String EXTENSION = ".ecgrec";
+
+    public static final int SAMPLES = 1;
+    public static final int PEAK = 2;
+    public static final int STATUS = 3;
+    // Solo dentro del buffer en memoria: relleno hasta el final del anillo
+    static final int PADDING = 0x7F;
+
+    static final int RECORD_HEADER_BYTES = 4;
+    static final int MAX_BODY_BYTES = (1 << 24) - 1;
+    static final int SAMPLES_FIXED_BYTES = 8 + 8 + 4;
+    static final int PEAK_BYTES = 8 + 8 + 4;
+    static final int STATUS_FIXED_BYTES = 8;
+
+    // Posiciones en la cabecera del segmento
+    static final int OFFSET_VERSION = 8;
+    static final int OFFSET_HEADER_BYTES = 12;
+    static final int OFFSET_SEGMENT_INDEX = 16;
+    static final int OFFSET_SAMPLE_RATE = 20;
+    static final int OFFSET_SESSION_EPOCH_MILLIS = 24;
+    static final int OFFSET_SESSION_NANOS = 32;
+    static final int OFFSET_SEGMENT_NANOS = 40;
+
+    private SessionFormat() {
+    }
+
+    static int recordHeader(int type, int bodyLength) {
+        return (type << 24) | bodyLength;
+    }
+
+    static int recordType(int header) {
+        return header >>> 24;
+    }
+
+    static int bodyLength(int header) {
+        return header & MAX_BODY_BYTES;
+    }
+
+    /** Tamaño del registro completo, alineado a 4 bytes. */
+    static int alignedLength(int bodyLength) {
+        return (RECORD_HEADER_BYTES + bodyLength + 3) & ~3;
+    }
+
+    static String segmentFileName(String sessionName, int segmentIndex) {
+        return String.format("%s-%05d%s", sessionName, segmentIndex, EXTENSION);
+    }
+}
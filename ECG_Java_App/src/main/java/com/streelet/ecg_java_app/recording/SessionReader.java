@@ -0,0 +1,175 @@
+package com.streelet.ecg_java_app.recording;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Lee una sesión grabada por {@link SessionRecorder}, segmento a segmento y mapeando cada
+ * archivo en memoria (sin copiarlo entero al heap). Los registros se entregan en orden de
+ * escritura a un {@link RecordVisitor}; la lectura se detiene en la primera cabecera 0 de cada
+ * segmento, así que una sesión cortada por un fallo se lee hasta el último registro completo.
+ */
+public class SessionReader {
+
+    /**
+     * Recibe los registros de la sesión. Los arrays pertenecen al lector y se reutilizan.
+     */
+    public interface RecordVisitor {
+
+        void onSamples(long firstSequence, long firstTimestampNanos, int[] values, int count);
+
+        void onPeak(long sampleIndex, long timestampNanos, int value);
+
+        void onStatus(long timestampNanos, String message);
+    }
+
+    private final List<Path> segments;
+    private int sampleRateHz;
+    private long sessionEpochMillis;
+    private long sessionNanos;
+    private int[] values = new int[4096];
+
+    /**
+     * @param directory Directorio de la sesión.
+     * @param sessionName Nombre de la sesión (prefijo de los segmentos).
+     * @throws IOException Si no hay segmentos o no se pueden listar.
+     */
+    public SessionReader(Path directory, String sessionName) throws IOException {
+        this.segments = findSegments(directory, sessionName);
+        if (segments.isEmpty()) {
+            throw new IOException("No hay segmentos de la sesión " + sessionName + " en " + directory);
+        }
+        // La cabecera del primer segmento ya da la frecuencia y el inicio, antes de recorrer la sesión
+        try (FileChannel channel = FileChannel.open(segments.get(0), StandardOpenOption.READ)) {
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    Math.min(channel.size(), SessionFormat.HEADER_BYTES));
+            header.order(SessionFormat.BYTE_ORDER);
+            readHeader(segments.get(0), header);
+        }
+    }
+
+    /**
+     * Segmentos de una sesión, ordenados por índice.
+     */
+    public static List<Path> findSegments(Path directory, String sessionName) throws IOException {
+        List<Path> found = new ArrayList<>();
+        for (int index = 0; ; index++) {
+            Path file = directory.resolve(SessionFormat.segmentFileName(sessionName, index));
+            if (!Files.isRegularFile(file)) {
+                break;
+            }
+            found.add(file);
+        }
+        return found;
+    }
+
+    /**
+     * Recorre toda la sesión.
+     *
+     * @throws IOException Si un segmento no se puede leer o no tiene el formato esperado.
+     */
+    public void read(RecordVisitor visitor) throws IOException {
+        for (Path file : segments) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                segment.order(SessionFormat.BYTE_ORDER);
+                readHeader(file, segment);
+                readRecords(segment, visitor);
+            }
+        }
+    }
+
+    public List<Path> getSegments() {
+        return segments;
+    }
+
+    /** Frecuencia de muestreo de la sesión. */
+    public int getSampleRateHz() {
+        return sampleRateHz;
+    }
+
+    /** Inicio de la sesión (epoch ms, reloj del equipo que grabó). */
+    public long getSessionEpochMillis() {
+        return sessionEpochMillis;
+    }
+
+    /**
+     * Convierte un instante de la grabación (System.nanoTime del equipo que grabó) a epoch ms.
+     */
+    public long toEpochMillis(long timestampNanos) {
+        return sessionEpochMillis + (timestampNanos - sessionNanos) / 1_000_000L;
+    }
+
+    private void readHeader(Path file, MappedByteBuffer segment) throws IOException {
+        if (segment.capacity() < SessionFormat.HEADER_BYTES) {
+            throw new IOException("Segmento demasiado corto: " + file);
+        }
+        byte[] magic = new byte[SessionFormat.MAGIC.length];
+        for (int i = 0; i < magic.length; i++) {
+            magic[i] = segment.get(i);
+        }
+        if (!Arrays.equals(magic, SessionFormat.MAGIC)) {
+            throw new IOException("No es un segmento de sesión ECG: " + file);
+        }
+        int version = segment.getInt(SessionFormat.OFFSET_VERSION);
+        if (version != SessionFormat.VERSION) {
+            throw new IOException("Versión de formato no soportada (" + version + "): " + file);
+        }
+        sampleRateHz = segment.getInt(SessionFormat.OFFSET_SAMPLE_RATE);
+        sessionEpochMillis = segment.getLong(SessionFormat.OFFSET_SESSION_EPOCH_MILLIS);
+        sessionNanos = segment.getLong(SessionFormat.OFFSET_SESSION_NANOS);
+    }
+
+    private void readRecords(MappedByteBuffer segment, RecordVisitor visitor) {
+        int position = segment.getInt(SessionFormat.OFFSET_HEADER_BYTES);
+        final int limit = segment.capacity();
+        while (position + SessionFormat.RECORD_HEADER_BYTES <= limit) {
+            int header = segment.getInt(position);
+            if (header == 0) {
+                break;
+            }
+            int bodyLength = SessionFormat.bodyLength(header);
+            int body = position + SessionFormat.RECORD_HEADER_BYTES;
+            if (body + bodyLength > limit) {
+                break;
+            }
+            switch (SessionFormat.recordType(header)) {
+                case SessionFormat.SAMPLES: {
+                    int count = segment.getInt(body + 16);
+                    if (values.length < count) {
+                        values = new int[Math.max(count, values.length * 2)];
+                    }
+                    int at = body + SessionFormat.SAMPLES_FIXED_BYTES;
+                    for (int i = 0; i < count; i++, at += 4) {
+                        values[i] = segment.getInt(at);
+                    }
+                    visitor.onSamples(segment.getLong(body), segment.getLong(body + 8), values, count);
+                    break;
+                }
+                case SessionFormat.PEAK:
+                    visitor.onPeak(segment.getLong(body), segment.getLong(body + 8), segment.getInt(body + 16));
+                    break;
+                case SessionFormat.STATUS: {
+                    byte[] text = new byte[bodyLength - SessionFormat.STATUS_FIXED_BYTES];
+                    for (int i = 0; i < text.length; i++) {
+                        text[i] = segment.get(body + SessionFormat.STATUS_FIXED_BYTES + i);
+                    }
+                    visitor.onStatus(segment.getLong(body), new String(text, StandardCharsets.UTF_8));
+                    break;
+                }
+                default:
+                    // Tipo desconocido (versión futura): se salta
+                    break;
+            }
+            position += SessionFormat.alignedLength(bodyLength);
+        }
+    }
+}
@@ -0,0 +1,532 @@
+package com.streelet.ecg_java_app.recording;
+
+import com.streelet.ecg_java_app.log.Log;
+import com.streelet.ecg_java_app.log.Logger;
+import com.streelet.ecg_java_app.model.EcgPeakListener;
+import com.streelet.ecg_java_app.serial.SerialDataListener;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Graba la sesión (muestras con secuencia e instante, latidos y mensajes de estado) en
+ * segmentos binarios de solo añadido, mapeados en memoria (formato en {@link SessionFormat}).
+ *
+ * Los hilos en vivo nunca esperan al disco: cada uno copia sus registros a su propio anillo
+ * en memoria ({@link RecordRing}) y un hilo de escritura ("ecg-recorder") los pasa al
+ * {@link MappedByteBuffer} del segmento actual. Cada {@link Config#flushIntervalMillis} ms
+ * se hace {@code force()}: ante un corte de luz se pierde como mucho ese intervalo; si solo
+ * cae el proceso, lo ya copiado al mapeo lo conserva el sistema operativo.
+ *
+ * Hilos:
+ * <ul>
+ *   <li>{@link SerialDataListener}: desde el hilo de la fuente (muestras y estado).</li>
+ *   <li>{@link #onPeakDetected}: desde el hilo de análisis.</li>
+ * </ul>
+ */
+public class SessionRecorder implements SerialDataListener, EcgPeakListener {
+
+    private static final Logger LOG = Log.get(SessionRecorder.class);
+
+    /**
+     * Configuración de la grabación.
+     */
+    public static class Config {
+        private Path directory;
+        private String sessionName;
+        private int sampleRateHz;
+        private long segmentBytes = 64L << 20;
+        private long flushIntervalMillis = 1000;
+        private int ringBytes = 4 << 20;
+        private boolean archive = true;
+        private int archiveBlockSamples = SampleArchiveWriter.DEFAULT_BLOCK_SAMPLES;
+        private boolean pyramid = true;
+
+        public Config(Path directory, String sessionName, int sampleRateHz) {
+            this.directory = directory;
+            this.sessionName = sessionName;
+            this.sampleRateHz = sampleRateHz;
+        }
+
+        /** Tamaño de cada segmento (por defecto 64 MiB). */
+        public Config segmentBytes(long value) {
+            segmentBytes = value;
+            return this;
+        }
+
+        /** Cada cuánto se fuerza el volcado a disco (por defecto 1 s). */
+        public Config flushIntervalMillis(long value) {
+            flushIntervalMillis = value;
+            return this;
+        }
+
+        /** Tamaño de cada anillo en memoria entre los hilos en vivo y el de escritura (por defecto 4 MiB). */
+        public Config ringBytes(int value) {
+            ringBytes = value;
+            return this;
+        }
+
+        /**
+         * Si además se guarda {@code <sesión>.ecgz} con las muestras comprimidas sin pérdidas
+         * (por defecto sí). Se comprime en el hilo de escritura, no en los hilos en vivo.
+         */
+        public Config archive(boolean value) {
+            archive = value;
+            return this;
+        }
+
+        /** Muestras por bloque del archivo comprimido (por defecto 4096). */
+        public Config archiveBlockSamples(int value) {
+            archiveBlockSamples = value;
+            return this;
+        }
+
+        /**
+         * Si además se construye {@code <sesión>.ecgpyr}, el índice de mínimos y máximos para
+         * dibujar grabaciones largas (por defecto sí).
+         */
+        public Config pyramid(boolean value) {
+            pyramid = value;
+            return this;
+        }
+
+        public Path getDirectory() {
+            return directory;
+        }
+
+        public String getSessionName() {
+            return sessionName;
+        }
+
+        public int getSampleRateHz() {
+            return sampleRateHz;
+        }
+    }
+
+    private static final long IDLE_PARK_NANOS = 5_000_000L;
+    private static final long STOP_TIMEOUT_MS = 2000;
+
+    private final Config config;
+    private final RecordRing sourceRing;
+    private final RecordRing analysisRing;
+    private final long sessionEpochMillis = System.currentTimeMillis();
+    private final long sessionNanos = System.nanoTime();
+
+    private volatile boolean running = false;
+    private Thread writerThread;
+    private volatile IOException failure;
+
+    // Secuencia propia para las fuentes que entregan muestra a muestra
+    private long singleSampleSequence = 0;
+    private final int[] singleSample = new int[1];
+
+    // --- Estado del hilo de escritura ---
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+    private int segmentIndex = -1;
+    private int writePosition;
+    private long lastForceNanos;
+    private SampleArchiveWriter archive;
+    private MinMaxPyramidWriter pyramid;
+    private final int[] derivedValues = new int[1024];
+
+    // Métricas
+    private volatile long recordsWritten = 0;
+    private volatile long bytesWritten = 0;
+    private volatile long samplesWritten = 0;
+    private volatile long maxForceNanos = 0;
+    private volatile double archiveRatio = 0;
+
+    public SessionRecorder(Config config) {
+        if (config.directory == null || config.sessionName == null || config.sessionName.isEmpty()) {
+            throw new IllegalArgumentException("Directorio y nombre de sesión son obligatorios");
+        }
+        if (config.segmentBytes < SessionFormat.HEADER_BYTES + 4096 || config.segmentBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Tamaño de segmento fuera de rango: " + config.segmentBytes);
+        }
+        if (config.flushIntervalMillis <= 0) {
+            throw new IllegalArgumentException("Intervalo de volcado inválido: " + config.flushIntervalMillis);
+        }
+        this.config = config;
+        this.sourceRing = new RecordRing(config.ringBytes);
+        this.analysisRing = new RecordRing(Math.max(1024, config.ringBytes / 16));
+    }
+
+    /**
+     * Crea el primer segmento y arranca el hilo de escritura.
+     *
+     * @throws IOException Si no se puede crear el directorio o el primer segmento.
+     */
+    public synchronized void start() throws IOException {
+        if (running) {
+            return;
+        }
+        Files.createDirectories(config.directory);
+        openNextSegment();
+        if (config.archive) {
+            Path archiveFile = config.directory.resolve(ArchiveFormat.archiveFileName(config.sessionName));
+            try {
+                archive = new SampleArchiveWriter(archiveFile, config.sampleRateHz, sessionEpochMillis,
+                        config.archiveBlockSamples);
+            } catch (IOException e) {
+                LOG.warn("No se pudo crear {}, se graba sin comprimir: {}").arg(archiveFile).arg(e.getMessage()).log();
+            }
+        }
+        if (config.pyramid) {
+            Path pyramidFile = config.directory.resolve(PyramidFormat.pyramidFileName(config.sessionName));
+            try {
+                pyramid = new MinMaxPyramidWriter(pyramidFile, config.sampleRateHz, sessionEpochMillis,
+                        MinMaxPyramidWriter.DEFAULT_BASE_SHIFT, MinMaxPyramidWriter.DEFAULT_CHUNK_SHIFT);
+            } catch (IOException e) {
+                LOG.warn("No se pudo crear {}, se graba sin índice de resumen: {}").arg(pyramidFile).arg(e.getMessage()).log();
+            }
+        }
+        lastForceNanos = System.nanoTime();
+        running = true;
+        writerThread = new Thread(this::runLoop, "ecg-recorder");
+        writerThread.setDaemon(true);
+        writerThread.start();
+        LOG.info("Grabando en {}").arg(config.directory.resolve(
+                SessionFormat.segmentFileName(config.sessionName, 0))).log();
+    }
+
+    /**
+     * Detiene la escritura: vuelca lo pendiente de los anillos, fuerza y cierra el segmento.
+     */
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        Thread thread = writerThread;
+        writerThread = null;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(STOP_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        LOG.info("Sesión cerrada: {} registros, {} muestras, {} segmento(s); descartados {}; comprimido {}x.")
+                .arg(recordsWritten).arg(samplesWritten).arg(segmentIndex + 1).arg(getDroppedRecords())
+                .arg(archiveRatio).log();
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    // --- Productores ---
+
+    @Override
+    public void onDataReceived(int value) {
+        singleSample[0] = value;
+        writeSamples(singleSample, 0, 1, singleSampleSequence++, System.nanoTime());
+    }
+
+    @Override
+    public void onSamples(int[] buf, int offset, int length, long firstSequence, long firstTimestampNanos) {
+        writeSamples(buf, offset, length, firstSequence, firstTimestampNanos);
+    }
+
+    @Override
+    public void onErrorOccurred(String message) {
+        byte[] text = message.getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(text.length, sourceRing.maxBodyBytes() - SessionFormat.STATUS_FIXED_BYTES);
+        int body = sourceRing.claim(SessionFormat.STATUS, SessionFormat.STATUS_FIXED_BYTES + length);
+        if (body < 0) {
+            return;
+        }
+        sourceRing.buffer().putLong(body, System.nanoTime());
+        System.arraycopy(text, 0, sourceRing.bytes(), body + SessionFormat.STATUS_FIXED_BYTES, length);
+        sourceRing.publish();
+    }
+
+    /**
+     * Latido detectado (hilo de análisis).
+     */
+    @Override
+    public void onPeakDetected(int peakValue, long time) {
+        int body = analysisRing.claim(SessionFormat.PEAK, SessionFormat.PEAK_BYTES);
+        if (body < 0) {
+            return;
+        }
+        ByteBuffer buffer = analysisRing.buffer();
+        buffer.putLong(body, time);
+        buffer.putLong(body + 8, System.nanoTime());
+        buffer.putInt(body + 16, peakValue);
+        analysisRing.publish();
+    }
+
+    private void writeSamples(int[] buf, int offset, int length, long firstSequence, long firstTimestampNanos) {
+        final int maxPerRecord = (sourceRing.maxBodyBytes() - SessionFormat.SAMPLES_FIXED_BYTES) / 4;
+        while (length > 0) {
+            int count = Math.min(length, maxPerRecord);
+            int body = sourceRing.claim(SessionFormat.SAMPLES, SessionFormat.SAMPLES_FIXED_BYTES + 4 * count);
+            if (body < 0) {
+                return;
+            }
+            ByteBuffer buffer = sourceRing.buffer();
+            buffer.putLong(body, firstSequence);
+            buffer.putLong(body + 8, firstTimestampNanos);
+            buffer.putInt(body + 16, count);
+            int position = body + SessionFormat.SAMPLES_FIXED_BYTES;
+            for (int i = 0; i < count; i++, position += 4) {
+                buffer.putInt(position, buf[offset + i]);
+            }
+            sourceRing.publish();
+            offset += count;
+            length -= count;
+            firstSequence += count;
+        }
+    }
+
+    // --- Hilo de escritura ---
+
+    private void runLoop() {
+        try {
+            while (running) {
+                boolean wrote = drain(sourceRing) | drain(analysisRing);
+                long now = System.nanoTime();
+                if (now - lastForceNanos >= config.flushIntervalMillis * 1_000_000L) {
+                    force(now);
+                }
+                if (!wrote) {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+            }
+            // Lo que quedó en los anillos al parar
+            drain(sourceRing);
+            drain(analysisRing);
+            force(System.nanoTime());
+        } catch (IOException e) {
+            failure = e;
+            running = false;
+            LOG.warn("Error de escritura, grabación detenida: {}").arg(e.getMessage()).log();
+        } finally {
+            closeSegment();
+            closeArchive();
+            closePyramid();
+        }
+    }
+
+    private boolean drain(RecordRing ring) throws IOException {
+        boolean any = false;
+        int position;
+        while ((position = ring.peek()) >= 0) {
+            ByteBuffer source = ring.buffer();
+            int header = source.getInt(position);
+            int bodyLength = SessionFormat.bodyLength(header);
+            int length = SessionFormat.alignedLength(bodyLength);
+            // Se deja siempre sitio para una cabecera 0 al final
+            if (writePosition + length + SessionFormat.RECORD_HEADER_BYTES > segment.capacity()) {
+                force(System.nanoTime());
+                openNextSegment();
+            }
+            // Primero el cuerpo, después la cabecera: un registro a medias nunca parece válido
+            segment.position(writePosition + SessionFormat.RECORD_HEADER_BYTES);
+            segment.put(ring.bytes(), position + SessionFormat.RECORD_HEADER_BYTES, bodyLength);
+            segment.putInt(writePosition, header);
+            if (SessionFormat.recordType(header) == SessionFormat.SAMPLES) {
+                int count = source.getInt(position + SessionFormat.RECORD_HEADER_BYTES + 16);
+                samplesWritten += count;
+                feedDerivedFiles(source, position + SessionFormat.RECORD_HEADER_BYTES + SessionFormat.SAMPLES_FIXED_BYTES, count);
+            }
+            writePosition += length;
+            ring.release(position);
+            recordsWritten++;
+            bytesWritten += length;
+            any = true;
+        }
+        return any;
+    }
+
+    /**
+     * Pasa las muestras de un registro al archivo comprimido y al índice de resumen. Si alguno
+     * falla se deja de escribir ese, pero los segmentos se siguen grabando.
+     */
+    private void feedDerivedFiles(ByteBuffer source, int position, int count) {
+        if (archive == null && pyramid == null) {
+            return;
+        }
+        while (count > 0) {
+            int n = Math.min(count, derivedValues.length);
+            for (int i = 0; i < n; i++, position += 4) {
+                derivedValues[i] = source.getInt(position);
+            }
+            if (archive != null) {
+                try {
+                    archive.append(derivedValues, 0, n);
+                } catch (IOException e) {
+                    LOG.warn("Error en el archivo comprimido, se deja de comprimir: {}").arg(e.getMessage()).log();
+                    closeArchive();
+                }
+            }
+            if (pyramid != null) {
+                try {
+                    pyramid.append(derivedValues, 0, n);
+                } catch (IOException e) {
+                    LOG.warn("Error en el índice de resumen, se deja de escribir: {}").arg(e.getMessage()).log();
+                    closePyramid();
+                }
+            }
+            count -= n;
+        }
+    }
+
+    private void closeArchive() {
+        SampleArchiveWriter writer = archive;
+        archive = null;
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.close();
+            archiveRatio = writer.getCompressionRatio();
+        } catch (IOException e) {
+            LOG.warn("No se pudo cerrar el archivo comprimido: {}").arg(e.getMessage()).log();
+        }
+    }
+
+    private void closePyramid() {
+        MinMaxPyramidWriter writer = pyramid;
+        pyramid = null;
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.close();
+        } catch (IOException e) {
+            LOG.warn("No se pudo cerrar el índice de resumen: {}").arg(e.getMessage()).log();
+        }
+    }
+
+    private void force(long now) {
+        segment.force();
+        long elapsed = System.nanoTime() - now;
+        if (elapsed > maxForceNanos) {
+            maxForceNanos = elapsed;
+        }
+        lastForceNanos = now;
+        // El trozo en curso del índice de resumen se vuelca al mismo ritmo, para que sobreviva a una caída
+        if (pyramid != null) {
+            try {
+                pyramid.flush();
+            } catch (IOException e) {
+                LOG.warn("Error en el índice de resumen, se deja de escribir: {}").arg(e.getMessage()).log();
+                closePyramid();
+            }
+        }
+    }
+
+    /**
+     * Cierra el segmento actual recortándolo a los datos escritos, para que una sesión corta no
+     * ocupe el segmento entero en disco (en NTFS el archivo no es disperso). Windows no deja
+     * recortar un archivo con un mapeo abierto, así que antes se libera el mapeo.
+     */
+    private void closeSegment() {
+        FileChannel current = channel;
+        MappedByteBuffer mapped = segment;
+        channel = null;
+        segment = null;
+        if (current == null) {
+            return;
+        }
+        try {
+            if (mapped != null) {
+                mapped.force();
+                unmap(mapped);
+            }
+            current.truncate(writePosition);
+        } catch (IOException | UncheckedIOException e) {
+            LOG.warn("No se pudo recortar el segmento {}: {}").arg(segmentIndex).arg(e.getMessage()).log();
+        } finally {
+            try {
+                current.close();
+            } catch (IOException e) {
+                LOG.warn("No se pudo cerrar el segmento {}: {}").arg(segmentIndex).arg(e.getMessage()).log();
+            }
+        }
+    }
+
+    /**
+     * Libera el mapeo sin esperar al recolector (Unsafe.invokeCleaner, Java 9+). Si no está
+     * disponible, el mapeo sigue vivo y en Windows el recorte fallará con un aviso.
+     * Después de llamarlo no se puede volver a tocar {@code buffer}.
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            unsafeClass.getMethod("invokeCleaner", ByteBuffer.class).invoke(theUnsafe.get(null), buffer);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOG.debug("No se pudo liberar el mapeo del segmento: {}").arg(e.toString()).log();
+        }
+    }
+
+    private void openNextSegment() throws IOException {
+        closeSegment();
+        segmentIndex++;
+        Path file = config.directory.resolve(SessionFormat.segmentFileName(config.sessionName, segmentIndex));
+        channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, config.segmentBytes);
+        segment.order(SessionFormat.BYTE_ORDER);
+        for (int i = 0; i < SessionFormat.MAGIC.length; i++) {
+            segment.put(i, SessionFormat.MAGIC[i]);
+        }
+        segment.putInt(SessionFormat.OFFSET_VERSION, SessionFormat.VERSION);
+        segment.putInt(SessionFormat.OFFSET_HEADER_BYTES, SessionFormat.HEADER_BYTES);
+        segment.putInt(SessionFormat.OFFSET_SEGMENT_INDEX, segmentIndex);
+        segment.putInt(SessionFormat.OFFSET_SAMPLE_RATE, config.sampleRateHz);
+        segment.putLong(SessionFormat.OFFSET_SESSION_EPOCH_MILLIS, sessionEpochMillis);
+        segment.putLong(SessionFormat.OFFSET_SESSION_NANOS, sessionNanos);
+        segment.putLong(SessionFormat.OFFSET_SEGMENT_NANOS, System.nanoTime());
+        writePosition = SessionFormat.HEADER_BYTES;
+    }
+
+    // --- Consultas ---
+
+    public Config getConfig() {
+        return config;
+    }
+
+    public long getRecordsWritten() {
+        return recordsWritten;
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    public long getSamplesWritten() {
+        return samplesWritten;
+    }
+
+    /** Registros descartados porque algún anillo estaba lleno (el disco no daba abasto). */
+    public long getDroppedRecords() {
+        return sourceRing.getDroppedRecords() + analysisRing.getDroppedRecords();
+    }
+
+    public long getMaxForceNanos() {
+        return maxForceNanos;
+    }
+
+    /** Compresión del archivo {@code .ecgz} (muestras como int / bytes), disponible al parar. */
+    public double getArchiveCompressionRatio() {
+        return archiveRatio;
+    }
+
+    /** Error de escritura que detuvo la grabación, o null. */
+    public IOException getFailure() {
+        return failure;
+    }
+}
@@ -0,0 +1,88 @@
+package com.streelet.ecg_java_app.recording;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Vista de una sesión grabada a resolución de pantalla: resume cualquier tramo en columnas
+ * de mínimo y máximo. Con tramos largos usa el índice de resumen ({@link MinMaxPyramid}); al
+ * acercarse por debajo de una cubeta por columna, lee las muestras del archivo comprimido
+ * ({@link SampleArchiveReader}). En ambos casos el coste es del orden del número de columnas
+ * (sin índice, un tramo largo obliga a leer todas sus muestras).
+ *
+ * No es seguro entre hilos.
+ */
+public class SignalOverview {
+
+    private final MinMaxPyramid pyramid;
+    private final SampleArchiveReader archive;
+    private int[] samples = new int[0];
+
+    public SignalOverview(MinMaxPyramid pyramid, SampleArchiveReader archive) {
+        if (pyramid == null && archive == null) {
+            throw new IllegalArgumentException("Hace falta el índice de resumen o el archivo comprimido");
+        }
+        this.pyramid = pyramid;
+        this.archive = archive;
+    }
+
+    /**
+     * Abre el índice y el archivo comprimido que {@link SessionRecorder} deja junto a la sesión
+     * (cualquiera de los dos puede faltar, no ambos).
+     */
+    public static SignalOverview open(Path directory, String sessionName) throws IOException {
+        Path pyramidFile = directory.resolve(PyramidFormat.pyramidFileName(sessionName));
+        Path archiveFile = directory.resolve(ArchiveFormat.archiveFileName(sessionName));
+        MinMaxPyramid pyramid = Files.isRegularFile(pyramidFile) ? new MinMaxPyramid(pyramidFile) : null;
+        SampleArchiveReader archive = Files.isRegularFile(archiveFile) ? new SampleArchiveReader(archiveFile) : null;
+        if (pyramid == null && archive == null) {
+            throw new IOException("La sesión " + sessionName + " no tiene índice de resumen ni archivo comprimido en " + directory);
+        }
+        return new SignalOverview(pyramid, archive);
+    }
+
+    public long getSampleCount() {
+        return archive != null ? archive.getSampleCount() : pyramid.getSampleCount();
+    }
+
+    public int getSampleRateHz() {
+        return archive != null ? archive.getSampleRateHz() : pyramid.getSampleRateHz();
+    }
+
+    /**
+     * Mínimo y máximo de {@code [fromSample, toSample)} en {@code columns} columnas.
+     *
+     * @return Columnas con datos.
+     */
+    public int summarize(long fromSample, long toSample, int columns, int[] min, int[] max) {
+        double samplesPerColumn = (double) (toSample - fromSample) / columns;
+        if (pyramid != null && (archive == null || pyramid.levelFor(samplesPerColumn) >= 0)) {
+            return pyramid.summarize(fromSample, toSample, columns, min, max, null);
+        }
+        long from = Math.max(0, fromSample);
+        int length = (int) Math.max(0, Math.min(toSample, archive.getSampleCount()) - from);
+        if (samples.length < length) {
+            samples = new int[length];
+        }
+        int read = archive.read(from, samples, 0, length);
+        for (int column = 0; column < columns; column++) {
+            int start = (int) (fromSample + (long) (column * samplesPerColumn) - from);
+            int end = (int) (fromSample + (long) ((column + 1) * samplesPerColumn) - from);
+            start = Math.max(0, start);
+            end = Math.max(start + 1, end);
+            if (start >= read) {
+                return column;
+            }
+            int columnMin = Integer.MAX_VALUE;
+            int columnMax = Integer.MIN_VALUE;
+            for (int i = start; i < Math.min(end, read); i++) {
+                columnMin = Math.min(columnMin, samples[i]);
+                columnMax = Math.max(columnMax, samples[i]);
+            }
+            min[column] = columnMin;
+            max[column] = columnMax;
+        }
+        return columns;
+    }
+}
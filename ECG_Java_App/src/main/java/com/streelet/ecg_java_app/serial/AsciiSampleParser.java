@@ -0,0 +1,267 @@
+package com.streelet.ecg_java_app.serial;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Decodificador del protocolo de texto del dispositivo: un número decimal por línea
+ * y mensajes de estado del tipo {@code STATUS:ELECTRODES_DISCONNECTED}.
+ *
+ * Trabaja directamente sobre los bytes leídos del puerto en una sola pasada, sin
+ * Scanner, sin crear Strings por muestra y sin expresiones regulares. El estado de la
+ * línea en curso se conserva entre llamadas, por lo que una línea puede llegar partida
+ * en varias lecturas del puerto.
+ *
+ * Solo se reservan objetos en caminos poco frecuentes: mensajes de estado desconocidos
+ * y líneas mal formadas (para poder informarlas con su texto original).
+ *
+ * Esta clase NO es thread-safe; debe usarse desde un único hilo (el de lectura serial).
+ */
+public class AsciiSampleParser {
+
+    /**
+     * Receptor de los elementos decodificados por el parser.
+     */
+    public interface Sink {
+
+        /**
+         * Se ha decodificado una muestra numérica válida.
+         * @param value El valor de la muestra.
+         */
+        void onSample(int value);
+
+        /**
+         * Se ha recibido una línea de estado (ej. "STATUS:ELECTRODES_DISCONNECTED").
+         * Para los estados conocidos se entrega siempre la misma constante String.
+         * @param status El texto del estado, comenzando por "STATUS:".
+         */
+        void onStatus(String status);
+
+        /**
+         * Se ha recibido una línea que no es ni número ni estado.
+         * @param line El texto de la línea, sin espacios al inicio ni al final.
+         */
+        void onMalformedLine(String line);
+    }
+
+    public static final String STATUS_PREFIX = "STATUS:";
+    public static final String STATUS_ELECTRODES_DISCONNECTED = "STATUS:ELECTRODES_DISCONNECTED";
+    public static final String STATUS_ELECTRODES_CONNECTED = "STATUS:ELECTRODES_CONNECTED";
+
+    // Estados conocidos, comparados byte a byte para no crear Strings
+    private static final String[] KNOWN_STATUS = {
+        STATUS_ELECTRODES_DISCONNECTED,
+        STATUS_ELECTRODES_CONNECTED
+    };
+    private static final byte[][] KNOWN_STATUS_BYTES = new byte[KNOWN_STATUS.length][];
+    private static final byte[] STATUS_PREFIX_BYTES = STATUS_PREFIX.getBytes(StandardCharsets.US_ASCII);
+
+    static {
+        for (int i = 0; i < KNOWN_STATUS.length; i++) {
+            KNOWN_STATUS_BYTES[i] = KNOWN_STATUS[i].getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    // Longitud máxima de línea que se conserva para mensajes de estado/error.
+    // Las líneas más largas se siguen consumiendo pero se truncan.
+    private static final int MAX_LINE_LENGTH = 128;
+
+    // Tamaño por defecto del buffer de lectura reutilizable
+    public static final int DEFAULT_READ_BUFFER_SIZE = 4096;
+
+    private final Sink sink;
+
+    // Bytes de la línea actual (sin espacios iniciales), solo para estados/errores
+    private final byte[] lineBytes = new byte[MAX_LINE_LENGTH];
+    private int lineLength = 0;
+    private int trimmedLength = 0; // Longitud sin espacios finales
+
+    // Estado del número en curso
+    private long value = 0;
+    private boolean negative = false;
+    private int digits = 0;
+    private boolean numeric = true; // La línea sigue pareciendo un número válido
+    private boolean trailingSpace = false; // Hubo espacios después de los dígitos
+
+    // Contadores (solo se escriben desde el hilo de lectura)
+    private long samplesParsed = 0;
+    private long statusLines = 0;
+    private long malformedLines = 0;
+
+    /**
+     * @param sink El receptor de muestras, estados y errores. No puede ser null.
+     */
+    public AsciiSampleParser(Sink sink) {
+        if (sink == null) {
+            throw new IllegalArgumentException("El sink no puede ser null");
+        }
+        this.sink = sink;
+    }
+
+    /**
+     * Decodifica un bloque de bytes recibido del puerto.
+     * Cada línea completa se entrega al sink en cuanto se encuentra su '\n'.
+     *
+     * @param buffer El buffer con los bytes leídos.
+     * @param offset Posición del primer byte válido.
+     * @param length Cantidad de bytes válidos.
+     */
+    public void parse(byte[] buffer, int offset, int length) {
+        final int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            final byte b = buffer[i];
+
+            if (b == '\n') {
+                endOfLine();
+                continue;
+            }
+
+            if (b == '\r' || b == ' ' || b == '\t') {
+                // Espacios: se ignoran al inicio; después del contenido pueden ser finales
+                if (lineLength > 0) {
+                    trailingSpace = true;
+                    appendLineByte(b);
+                }
+                continue;
+            }
+
+            // Un carácter visible después de un espacio interno invalida el número
+            if (trailingSpace) {
+                numeric = false;
+                trailingSpace = false;
+            }
+            appendLineByte(b);
+            trimmedLength = lineLength;
+
+            if (!numeric) {
+                continue;
+            }
+
+            if (b >= '0' && b <= '9') {
+                value = value * 10 + (b - '0');
+                digits++;
+                // Fuera de rango de int (o demasiados dígitos): no es un número válido
+                if (digits > 10 || value > (negative ? -(long) Integer.MIN_VALUE : Integer.MAX_VALUE)) {
+                    numeric = false;
+                }
+            } else if ((b == '-' || b == '+') && lineLength == 1) {
+                negative = (b == '-');
+            } else {
+                numeric = false;
+            }
+        }
+    }
+
+    /**
+     * Descarta cualquier línea parcial pendiente (por ejemplo, al reconectar el puerto).
+     */
+    public void reset() {
+        resetLine();
+    }
+
+    private void appendLineByte(byte b) {
+        if (lineLength < MAX_LINE_LENGTH) {
+            lineBytes[lineLength] = b;
+        }
+        lineLength++;
+    }
+
+    private void resetLine() {
+        lineLength = 0;
+        trimmedLength = 0;
+        value = 0;
+        negative = false;
+        digits = 0;
+        numeric = true;
+        trailingSpace = false;
+    }
+
+    /**
+     * Procesa la línea acumulada al encontrar el fin de línea.
+     */
+    private void endOfLine() {
+        if (trimmedLength == 0) {
+            // Línea vacía (ej. "\r\n" suelto): se ignora
+            resetLine();
+            return;
+        }
+
+        if (numeric && digits > 0) {
+            int sample = (int) (negative ? -value : value);
+            resetLine();
+            samplesParsed++;
+            sink.onSample(sample);
+            return;
+        }
+
+        int storedLength = Math.min(trimmedLength, MAX_LINE_LENGTH);
+        int statusStart = indexOf(lineBytes, storedLength, STATUS_PREFIX_BYTES);
+        if (statusStart >= 0) {
+            String status = knownStatus(statusStart, storedLength);
+            if (status == null) {
+                status = new String(lineBytes, statusStart, storedLength - statusStart, StandardCharsets.US_ASCII);
+            }
+            resetLine();
+            statusLines++;
+            sink.onStatus(status);
+            return;
+        }
+
+        String line = new String(lineBytes, 0, storedLength, StandardCharsets.US_ASCII);
+        resetLine();
+        malformedLines++;
+        sink.onMalformedLine(line);
+    }
+
+    /**
+     * Devuelve la constante del estado conocido que aparece en la línea, o null.
+     * Igual que el protocolo original, basta con que la línea contenga el estado.
+     */
+    private String knownStatus(int statusStart, int storedLength) {
+        for (int k = 0; k < KNOWN_STATUS_BYTES.length; k++) {
+            byte[] candidate = KNOWN_STATUS_BYTES[k];
+            if (storedLength - statusStart >= candidate.length
+                    && regionMatches(lineBytes, statusStart, candidate)) {
+                // Evitar que "ELECTRODES_CONNECTED" coincida como prefijo de otro estado más largo
+                int after = statusStart + candidate.length;
+                if (after == storedLength || lineBytes[after] == ' ' || lineBytes[after] == '\t' || lineBytes[after] == '\r') {
+                    return KNOWN_STATUS[k];
+                }
+            }
+        }
+        return null;
+    }
+
+    private static int indexOf(byte[] data, int length, byte[] pattern) {
+        outer:
+        for (int i = 0; i <= length - pattern.length; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (data[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private static boolean regionMatches(byte[] data, int start, byte[] pattern) {
+        for (int j = 0; j < pattern.length; j++) {
+            if (data[start + j] != pattern[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long getSamplesParsed() {
+        return samplesParsed;
+    }
+
+    public long getStatusLines() {
+        return statusLines;
+    }
+
+    public long getMalformedLines() {
+        return malformedLines;
+    }
+}
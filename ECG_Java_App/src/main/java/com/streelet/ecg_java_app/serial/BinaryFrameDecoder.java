@@ -0,0 +1,281 @@
+package com.streelet.ecg_java_app.serial;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Decodificador del protocolo binario por tramas ({@link SerialProtocol#BINARY_FRAMES}).
+ *
+ * Formato de cada trama (enteros multibyte en little-endian):
+ * <pre>
+ *  offset  tamaño  campo
+ *  0       2       sincronismo 0xA5 0x5A
+ *  2       2       número de secuencia (uint16, da la vuelta)
+ *  4       1       número de canales (1..8)
+ *  5       1       muestras por canal en la trama (1..255)
+ *  6       1       formato de muestra: 12 (empaquetado, sin signo) o 16 (int16 con signo)
+ *  7       1       flags: bit 0 = electrodos desconectados
+ *  8       n       muestras intercaladas por canal (c0 c1 ... c0 c1 ...)
+ *  8+n     2       CRC-16/CCITT-FALSE de los bytes 2 .. 8+n-1
+ * </pre>
+ * En formato 12 bits, cada par de muestras ocupa 3 bytes: {@code b0 = a[7:0]},
+ * {@code b1 = a[11:8] | b[3:0] << 4}, {@code b2 = b[11:4]}. Si el total es impar,
+ * la última muestra ocupa 2 bytes.
+ *
+ * Un número de secuencia que retrocede, o que vuelve a 0 sin venir de 0xFFFF, se toma como un
+ * reinicio del dispositivo y no como tramas perdidas: la secuencia extendida sigue como si fuera
+ * la trama siguiente y el reinicio se cuenta aparte ({@link #getSequenceRestarts()}).
+ *
+ * Las tramas se decodifican en bloque desde un {@link ByteBuffer}; los bytes de una
+ * trama incompleta se dejan en el buffer para la siguiente llamada. Ante un sincronismo
+ * perdido o un CRC inválido se avanza byte a byte hasta encontrar la siguiente trama.
+ *
+ * Esta clase NO es thread-safe; debe usarse desde un único hilo (el de lectura serial).
+ */
+public class BinaryFrameDecoder {
+
+    /**
+     * Receptor de las tramas decodificadas.
+     */
+    public interface Sink {
+
+        /**
+         * Se ha decodificado una trama válida.
+         * El array es reutilizado por el decodificador: solo es válido durante la llamada.
+         *
+         * @param samples Muestras intercaladas por canal, desde la posición 0.
+         * @param channelCount Número de canales de la trama.
+         * @param samplesPerChannel Muestras de cada canal en la trama.
+         * @param sequence Número de secuencia extendido (no da la vuelta a 65535).
+         * @param flags Byte de flags de la trama.
+         */
+        void onFrame(int[] samples, int channelCount, int samplesPerChannel, long sequence, int flags);
+    }
+
+    public static final int SYNC_0 = 0xA5;
+    public static final int SYNC_1 = 0x5A;
+    public static final int HEADER_LENGTH = 8;
+    public static final int CRC_LENGTH = 2;
+    public static final int MAX_CHANNELS = 8;
+    public static final int MAX_SAMPLES_PER_CHANNEL = 255;
+    public static final int FORMAT_12_BIT = 12;
+    public static final int FORMAT_16_BIT = 16;
+    public static final int FLAG_ELECTRODES_DISCONNECTED = 0x01;
+
+    /** Longitud máxima posible de una trama (16 bits, todos los canales y muestras). */
+    public static final int MAX_FRAME_LENGTH =
+            HEADER_LENGTH + MAX_CHANNELS * MAX_SAMPLES_PER_CHANNEL * 2 + CRC_LENGTH;
+
+    private static final int[] CRC_TABLE = new int[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int crc = i << 8;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = ((crc & 0x8000) != 0) ? (crc << 1) ^ 0x1021 : crc << 1;
+            }
+            CRC_TABLE[i] = crc & 0xFFFF;
+        }
+    }
+
+    private final Sink sink;
+
+    // Muestras de la trama actual, reutilizadas entre tramas
+    private final int[] samples = new int[MAX_CHANNELS * MAX_SAMPLES_PER_CHANNEL];
+
+    // Secuencia extendida y último número de secuencia recibido (16 bits)
+    private long lastSequence = -1;
+    private int lastRawSequence;
+
+    // true mientras se descartan bytes buscando sincronismo (cuenta una resincronización por episodio)
+    private boolean searchingSync = false;
+
+    // Contadores (solo se escriben desde el hilo de lectura)
+    private long framesDecoded = 0;
+    private long crcFailures = 0;
+    private long resyncs = 0;
+    private long bytesDiscarded = 0;
+    private long lostFrames = 0;
+    private long sequenceRestarts = 0;
+
+    /**
+     * @param sink El receptor de las tramas decodificadas. No puede ser null.
+     */
+    public BinaryFrameDecoder(Sink sink) {
+        if (sink == null) {
+            throw new IllegalArgumentException("El sink no puede ser null");
+        }
+        this.sink = sink;
+    }
+
+    /**
+     * Decodifica todas las tramas completas disponibles en el buffer.
+     * El buffer debe estar en modo lectura (después de flip()). Al volver, su posición
+     * apunta al primer byte no consumido; el llamador normalmente hace compact().
+     *
+     * @param in Buffer con los bytes recibidos.
+     * @return El número de tramas válidas decodificadas en esta llamada.
+     */
+    public int decode(ByteBuffer in) {
+        in.order(ByteOrder.LITTLE_ENDIAN);
+        int decoded = 0;
+        int pos = in.position();
+        final int limit = in.limit();
+
+        while (limit - pos >= HEADER_LENGTH) {
+            if ((in.get(pos) & 0xFF) != SYNC_0 || (in.get(pos + 1) & 0xFF) != SYNC_1) {
+                skipByte();
+                pos++;
+                continue;
+            }
+
+            final int channels = in.get(pos + 4) & 0xFF;
+            final int perChannel = in.get(pos + 5) & 0xFF;
+            final int format = in.get(pos + 6) & 0xFF;
+            if (channels < 1 || channels > MAX_CHANNELS || perChannel < 1
+                    || (format != FORMAT_12_BIT && format != FORMAT_16_BIT)) {
+                // Cabecera imposible: el sincronismo era un falso positivo dentro de los datos
+                skipByte();
+                pos++;
+                continue;
+            }
+
+            final int count = channels * perChannel;
+            final int payloadLength = payloadLength(format, count);
+            final int frameLength = HEADER_LENGTH + payloadLength + CRC_LENGTH;
+            if (limit - pos < frameLength) {
+                break; // Trama incompleta: esperar más bytes
+            }
+
+            final int crcOffset = pos + HEADER_LENGTH + payloadLength;
+            final int expectedCrc = (in.get(crcOffset) & 0xFF) | ((in.get(crcOffset + 1) & 0xFF) << 8);
+            if (crc16(in, pos + 2, crcOffset) != expectedCrc) {
+                crcFailures++;
+                skipByte();
+                pos++;
+                continue;
+            }
+
+            searchingSync = false;
+
+            if (format == FORMAT_16_BIT) {
+                unpack16(in, pos + HEADER_LENGTH, count);
+            } else {
+                unpack12(in, pos + HEADER_LENGTH, count);
+            }
+
+            final long sequence = extendSequence(in.getShort(pos + 2) & 0xFFFF);
+            final int flags = in.get(pos + 7) & 0xFF;
+            pos += frameLength;
+            in.position(pos);
+
+            framesDecoded++;
+            decoded++;
+            sink.onFrame(samples, channels, perChannel, sequence, flags);
+        }
+
+        in.position(pos);
+        return decoded;
+    }
+
+    /**
+     * Olvida la secuencia anterior y el estado de sincronismo (por ejemplo, al reconectar).
+     */
+    public void reset() {
+        lastSequence = -1;
+        searchingSync = false;
+    }
+
+    /**
+     * Número de bytes de datos para una trama con {@code count} muestras en el formato dado.
+     */
+    public static int payloadLength(int format, int count) {
+        return format == FORMAT_16_BIT ? count * 2 : (count / 2) * 3 + (count % 2) * 2;
+    }
+
+    /**
+     * CRC-16/CCITT-FALSE (polinomio 0x1021, valor inicial 0xFFFF) de los bytes [from, to).
+     */
+    public static int crc16(ByteBuffer buffer, int from, int to) {
+        int crc = 0xFFFF;
+        for (int i = from; i < to; i++) {
+            crc = ((crc << 8) ^ CRC_TABLE[((crc >>> 8) ^ buffer.get(i)) & 0xFF]) & 0xFFFF;
+        }
+        return crc;
+    }
+
+    private void unpack16(ByteBuffer in, int offset, int count) {
+        for (int i = 0; i < count; i++) {
+            samples[i] = in.getShort(offset + 2 * i);
+        }
+    }
+
+    private void unpack12(ByteBuffer in, int offset, int count) {
+        int i = 0;
+        int p = offset;
+        for (; i + 1 < count; i += 2, p += 3) {
+            final int b0 = in.get(p) & 0xFF;
+            final int b1 = in.get(p + 1) & 0xFF;
+            final int b2 = in.get(p + 2) & 0xFF;
+            samples[i] = b0 | ((b1 & 0x0F) << 8);
+            samples[i + 1] = (b1 >>> 4) | (b2 << 4);
+        }
+        if (i < count) {
+            samples[i] = (in.get(p) & 0xFF) | ((in.get(p + 1) & 0x0F) << 8);
+        }
+    }
+
+    private long extendSequence(int sequence16) {
+        if (lastSequence < 0) {
+            lastSequence = sequence16;
+            lastRawSequence = sequence16;
+            return lastSequence;
+        }
+        int delta = (sequence16 - lastRawSequence) & 0xFFFF;
+        lastRawSequence = sequence16;
+        if (delta >= 0x8000 || (sequence16 == 0 && delta != 1)) {
+            // Reinicio del dispositivo: no se sabe cuánto se perdió, se sigue sin hueco
+            sequenceRestarts++;
+            lastSequence++;
+            return lastSequence;
+        }
+        if (delta > 1) {
+            lostFrames += delta - 1;
+        }
+        lastSequence += delta;
+        return lastSequence;
+    }
+
+    private void skipByte() {
+        if (!searchingSync) {
+            searchingSync = true;
+            resyncs++;
+        }
+        bytesDiscarded++;
+    }
+
+    public long getFramesDecoded() {
+        return framesDecoded;
+    }
+
+    public long getCrcFailures() {
+        return crcFailures;
+    }
+
+    public long getResyncs() {
+        return resyncs;
+    }
+
+    public long getBytesDiscarded() {
+        return bytesDiscarded;
+    }
+
+    public long getLostFrames() {
+        return lostFrames;
+    }
+
+    /** Veces que la secuencia retrocedió o volvió a 0 (reinicios del dispositivo). */
+    public long getSequenceRestarts() {
+        return sequenceRestarts;
+    }
+}
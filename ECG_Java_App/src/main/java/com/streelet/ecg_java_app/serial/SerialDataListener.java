@@ -13,5 +13,24 @@ package com.streelet.ecg_java_app.serial;
 public interface SerialDataListener {
     void onDataReceived(int value); // Método que se llama cuando llega un nuevo dato
     void onErrorOccurred(String message); // Método para notificar errores
-    // Espacio para agregar más métodos más adelante
-}
\ No newline at end of file
+
+    /**
+     * Entrega en un solo llamado todas las muestras decodificadas de una lectura del puerto.
+     * La implementación por defecto llama a {@link #onDataReceived(int)} por cada muestra,
+     * así que los oyentes existentes siguen funcionando sin cambios; los oyentes que
+     * procesan lotes deben sobrescribir este método.
+     *
+     * El array pertenece al emisor y se reutiliza: solo es válido durante la llamada.
+     *
+     * @param buf Array con las muestras.
+     * @param offset Posición de la primera muestra del lote.
+     * @param length Número de muestras del lote.
+     * @param firstSequence Número de secuencia de la primera muestra (las siguientes son consecutivas).
+     * @param firstTimestampNanos Instante (System.nanoTime) en que se recibió la primera muestra.
+     */
+    default void onSamples(int[] buf, int offset, int length, long firstSequence, long firstTimestampNanos) {
+        for (int i = offset, end = offset + length; i < end; i++) {
+            onDataReceived(buf[i]);
+        }
+    }
+}
@@ -3,13 +3,27 @@ package com.streelet.ecg_java_app.serial;
 
 import com.fazecast.jSerialComm.SerialPort;
 
+import com.fazecast.jSerialComm.SerialPortDataListener;
+
+import com.fazecast.jSerialComm.SerialPortEvent;
+
+import com.streelet.ecg_java_app.log.Log;
+
+import com.streelet.ecg_java_app.log.Logger;
+
+import com.streelet.ecg_java_app.source.SignalSource;
+
+import java.io.IOException;
+
 import java.io.InputStream;
 
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
 
 import java.util.List;
 
-import java.util.Scanner;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import java.util.concurrent.CountDownLatch;
 
 import java.util.concurrent.ExecutorService;
 
@@ -18,17 +32,117 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 
-public class SerialDataManager {
+public class SerialDataManager implements SignalSource {
 
+    private static final Logger LOG = Log.get(SerialDataManager.class);
 
     private SerialPort currentPort = null;
 
     private ExecutorService serialReaderService; // Método que permite realizar la lectura en un hilo
 
-    private List<SerialDataListener> listeners = new ArrayList<>(); // Lista de oyentes que deben ser notificados
+    // Lista de oyentes que deben ser notificados (se recorre en el hilo de lectura y se modifica desde otros)
+    private final List<SerialDataListener> listeners = new CopyOnWriteArrayList<>();
 
     private volatile boolean reading = false;
 
+    // Tiempo máximo que un read() semi-bloqueante espera datos antes de revisar 'reading'
+    private static final int READ_TIMEOUT_MS = 50;
+
+    // Espera máxima en stopReading()/disconnect() para que termine la lectura
+    private static final long STOP_TIMEOUT_MS = 4L * READ_TIMEOUT_MS;
+
+    // Modo de lectura del puerto; se elige antes de startReading()
+    private volatile SerialReadMode readMode = SerialReadMode.SEMI_BLOCKING;
+
+    // Protocolo y modo de la lectura en curso (fijados en startReading())
+    private SerialProtocol activeProtocol = SerialProtocol.ASCII_LINES;
+    private SerialReadMode activeReadMode = SerialReadMode.SEMI_BLOCKING;
+
+    // Señal de fin del hilo de lectura (modos STREAM y SEMI_BLOCKING)
+    private volatile CountDownLatch readerFinished;
+
+    // true mientras hay un oyente de eventos registrado en el puerto (modo EVENT_DRIVEN)
+    private volatile boolean eventListenerRegistered = false;
+
+    // Buffer de lectura reutilizable: el puerto se lee en bloques, no línea a línea
+    private final byte[] readBuffer = new byte[AsciiSampleParser.DEFAULT_READ_BUFFER_SIZE];
+
+    // Decodificador del protocolo de texto (un número por línea y mensajes STATUS:)
+    private final AsciiSampleParser asciiParser = new AsciiSampleParser(new AsciiSampleParser.Sink() {
+        @Override
+        public void onSample(int value) {
+            appendSample(value);
+        }
+
+        @Override
+        public void onStatus(String status) {
+            flushSamples(); // Las muestras anteriores al estado se entregan primero
+            notifyErrorOccurred(status);
+        }
+
+        @Override
+        public void onMalformedLine(String line) {
+            flushSamples();
+            LOG.warn("Error al parsear dato: '{}'").arg(line).log();
+            notifyErrorOccurred("Error al parsear dato: '" + line + "'");
+        }
+    });
+
+    // Protocolo que envía el firmware; se elige antes de startReading()
+    private volatile SerialProtocol protocol = SerialProtocol.ASCII_LINES;
+
+    // Bytes pendientes del protocolo binario (una trama puede llegar en varias lecturas)
+    private final ByteBuffer frameBuffer = ByteBuffer.allocate(2 * BinaryFrameDecoder.MAX_FRAME_LENGTH);
+
+    // Último estado de electrodos informado por las tramas binarias
+    private boolean binaryElectrodesDisconnected = false;
+
+    // Última secuencia de trama binaria procesada, para detectar huecos
+    private long lastFrameSequence = -1;
+
+    // Lote de muestras decodificadas en la lectura actual; se entrega con onSamples()
+    private static final int MAX_BATCH_SIZE = 4096;
+    private final int[] batchValues = new int[MAX_BATCH_SIZE];
+    private int batchLength = 0;
+    private long batchFirstSequence = 0;
+    private long batchTimestampNanos = 0;
+
+    // Número de secuencia de la próxima muestra entregada
+    private long nextSampleSequence = 0;
+
+    // Decodificador del protocolo binario. Se entrega el primer canal a los oyentes.
+    private final BinaryFrameDecoder frameDecoder = new BinaryFrameDecoder(
+            (samples, channelCount, samplesPerChannel, sequence, flags) -> {
+
+        // Tramas perdidas: las muestras que faltan consumen números de secuencia
+        if (lastFrameSequence >= 0 && sequence - lastFrameSequence > 1) {
+            flushSamples();
+            nextSampleSequence += (sequence - lastFrameSequence - 1) * samplesPerChannel;
+        }
+        lastFrameSequence = sequence;
+
+        boolean disconnected = (flags & BinaryFrameDecoder.FLAG_ELECTRODES_DISCONNECTED) != 0;
+        if (disconnected != binaryElectrodesDisconnected) {
+            flushSamples();
+            binaryElectrodesDisconnected = disconnected;
+            notifyErrorOccurred(disconnected
+                    ? AsciiSampleParser.STATUS_ELECTRODES_DISCONNECTED
+                    : AsciiSampleParser.STATUS_ELECTRODES_CONNECTED);
+        }
+        if (disconnected) {
+            return; // Igual que en modo texto: sin electrodos no se entregan muestras
+        }
+
+        for (int i = 0; i < samplesPerChannel; i++) {
+            appendSample(samples[i * channelCount]);
+        }
+    });
+
+
+    // Puerto y velocidad usados por start() (interfaz SignalSource)
+    private String configuredPortName;
+    private int configuredBaudRate;
+
 
     public SerialDataManager() {
 
@@ -36,381 +150,602 @@ public class SerialDataManager {
 
 
     /**
+     * Crea un gestor ya configurado para un puerto, de modo que pueda usarse como {@link SignalSource}.
+     * @param portName El nombre del puerto serial en el sistema (ej. "COM3", "/dev/ttyACM0").
+     * @param baudRate La velocidad (baudios) para la comunicación.
+     */
+    public SerialDataManager(String portName, int baudRate) {
 
-     * Agrega un oyente para ser notificado cuando lleguen datos o ocurran errores.
+        this.configuredPortName = portName;
 
-     * Los oyentes son notificados en el hilo de lectura serial, por lo que deben usar Platform.runLater para actualizaciones de UI.
+        this.configuredBaudRate = baudRate;
 
-     * @param listener El oyente a agregar.
+    }
 
+
+    /**
+     * Inicia la lectura en el puerto configurado en el constructor (interfaz SignalSource).
      */
+    @Override
+    public boolean start() {
 
-    public void addListener(SerialDataListener listener) {
+        if (configuredPortName == null || configuredPortName.isEmpty()) {
 
-        if (listener != null) {
+            LOG.error("No hay puerto configurado para start().").log();
 
-            listeners.add(listener);
+            return false;
 
         }
 
+        return startReading(configuredPortName, configuredBaudRate);
+
     }
 
 
     /**
+     * Detiene la lectura y cierra el puerto (interfaz SignalSource). Equivale a disconnect().
+     */
+    @Override
+    public void stop() {
 
-     * Remueve un oyente de la lista de notificación.
+        disconnect();
 
-     * @param listener El oyente a remover.
+    }
 
-     */
 
-    public void removeListener(SerialDataListener listener) {
+    @Override
+    public boolean isRunning() {
 
-        listeners.remove(listener);
+        return reading;
 
     }
 
 
-/**
+    /**
+     * La frecuencia de muestreo la fija el firmware y no viaja en el protocolo.
+     */
+    @Override
+    public int getSampleRateHz() {
 
- * Notifica a los oyentes que se ha recibido un dato numérico válido.
+        return 0;
 
- * @param value contiene el valor numérico recibido.
+    }
 
- */
 
-    private void notifyDataReceived(int value) {
+    @Override
+    public String getDescription() {
 
-        for (SerialDataListener listener : listeners) {
+        return "Puerto " + configuredPortName + " @ " + configuredBaudRate + " baudios";
+
+    }
+
+
+    /**
+     * Selecciona el protocolo de transmisión del dispositivo.
+     * Debe llamarse antes de startReading(); el cambio no afecta a una lectura en curso.
+     * @param protocol El protocolo a usar. Por defecto {@link SerialProtocol#ASCII_LINES}.
+     */
+    public void setProtocol(SerialProtocol protocol) {
+
+        if (protocol != null) {
 
-            listener.onDataReceived(value);
+            this.protocol = protocol;
 
         }
 
     }
 
 
-/**
+    public SerialProtocol getProtocol() {
 
- * Notifica los oyentes si se ha producido un error de lectura.
+        return protocol;
 
- * @param message contiene el error de lectura devuelto
+    }
 
- */
 
-     private void notifyErrorOccurred(String message) {
+    /**
+     * Selecciona cómo se leen los bytes del puerto.
+     * Debe llamarse antes de startReading(); el cambio no afecta a una lectura en curso.
+     * @param readMode El modo a usar. Por defecto {@link SerialReadMode#SEMI_BLOCKING}.
+     */
+    public void setReadMode(SerialReadMode readMode) {
 
-        for (SerialDataListener listener : listeners) {
+        if (readMode != null) {
 
-             listener.onErrorOccurred(message);
+            this.readMode = readMode;
 
         }
 
     }
 
 
+    public SerialReadMode getReadMode() {
+
+        return readMode;
+
+    }
+
+
     /**
+     * Devuelve el decodificador binario para consultar sus contadores
+     * (tramas decodificadas, fallos de CRC, resincronizaciones, tramas perdidas).
+     */
+    public BinaryFrameDecoder getFrameDecoder() {
 
-     * Inicia la lectura de datos desde el puerto serial especificado en un hilo separado.
+        return frameDecoder;
 
-     * Configura el puerto, lo abre, configura el timeout para Scanner y comienza el bucle de lectura.
+    }
 
-     * Si ya está leyendo, no hace nada.
 
-     * @param portName El nombre del puerto serial en el sistema (ej. "COM3", "/dev/ttyACM0").
+    /**
 
-     * @param baudRate La velocidad (baudios) para la comunicación (el ECG trabaja a 9600 en este caso).
+     * Agrega un oyente para ser notificado cuando lleguen datos o ocurran errores.
+
+     * Los oyentes son notificados en el hilo de lectura serial, por lo que deben usar Platform.runLater para actualizaciones de UI.
+
+     * @param listener El oyente a agregar.
 
      */
 
-    public boolean startReading(String portName, int baudRate) {
+    @Override
+    public void addListener(SerialDataListener listener) {
 
-        if (reading) {
+        if (listener != null) {
 
-            System.out.println("SerialDataManager: Ya leyendo de un puerto serial.");
+            listeners.add(listener);
 
-            return true ;
-            
-            
         }
 
+    }
 
-        System.out.println("SerialDataManager: Intentando abrir puerto " + portName + " a una velocidad de  " + baudRate + " Baudios");
 
-        // Obtener el puerto por su nombre del sistema y asignar velocidad en Baudios
+    /**
 
-        currentPort = SerialPort.getCommPort(portName);
+     * Remueve un oyente de la lista de notificación.
 
-        currentPort.setBaudRate(baudRate);
+     * @param listener El oyente a remover.
 
-        // Los parámetros por defecto (8 data bits, 1 stop bit, sin paridad) están definidos por defecto
+     */
 
+    @Override
+    public void removeListener(SerialDataListener listener) {
 
-        // Abrir el puerto serial
+        listeners.remove(listener);
 
-        boolean portOpened = currentPort.openPort();
+    }
 
 
-        if (!portOpened) {
+/**
 
-            // Si falla la apertura se llama al método que informa los errores
+ * Añade una muestra decodificada al lote de la lectura actual.
 
-            System.err.println("SerialDataManager: Error al abrir el puerto " + portName);
+ * @param value contiene el valor numérico recibido.
 
-            notifyErrorOccurred("No se pudo abrir el puerto: " + portName + ". Asegurese de que no esté en uso.");
+ */
 
-            currentPort = null; // Aseguramos que no quede guardado el nombre del puerto
+    private void appendSample(int value) {
 
-            return false;
+        if (batchLength == MAX_BATCH_SIZE) {
+
+            flushSamples();
 
         }
 
+        if (batchLength == 0) {
 
-        System.out.println("SerialDataManager: Puerto " + portName + " abierto exitosamente.");
+            batchFirstSequence = nextSampleSequence;
 
-        reading = true; // Para indentificar que ya se está leyendo
+        }
 
+        batchValues[batchLength++] = value;
 
-        /**
+        nextSampleSequence++;
 
-         * Se configura el timeout de los puertos seriales para hacerlos compatibles al máximo
+    }
 
-         * con la libreria Scanner de Java, asegurando así que no se produzcan bloqueos.
 
-         */
+/**
 
-        currentPort.setComPortTimeouts(SerialPort.TIMEOUT_SCANNER, 0, 0);
+ * Notifica a los oyentes, en un solo llamado por oyente, las muestras acumuladas en el lote.
 
+ */
 
+    private void flushSamples() {
 
-        // Solo crear uno si no existe o si el que existe está apagado.
+        if (batchLength == 0) {
 
-        
+            return;
 
-        if (serialReaderService == null || serialReaderService.isShutdown()) {
+        }
 
-             serialReaderService = Executors.newSingleThreadExecutor();
+        int length = batchLength;
+
+        batchLength = 0;
+
+        for (SerialDataListener listener : listeners) {
+
+            listener.onSamples(batchValues, 0, length, batchFirstSequence, batchTimestampNanos);
 
         }
 
+    }
 
-        /** Enviar la tarea de lectura al ExecutorService, se usa lambda para evitar hacer uso de la clase interna
 
-             con Runnable **/
+/**
 
-        
+ * Notifica los oyentes si se ha producido un error de lectura.
 
-        serialReaderService.submit(() -> {
+ * @param message contiene el error de lectura devuelto
 
-            System.out.println("SerialDataManager: Hilo de lectura serial iniciado.");
+ */
 
-            Scanner portScanner = null;
+     private void notifyErrorOccurred(String message) {
 
+        for (SerialDataListener listener : listeners) {
 
-            try {
+             listener.onErrorOccurred(message);
 
-                // Obtener el stream de entrada del puerto
+        }
 
-                InputStream inputStream = currentPort.getInputStream();
+    }
 
-                // Configurar el Scanner para leer del InputStream del puerto
 
-                portScanner = new Scanner(inputStream);
+    /**
 
+     * Inicia la lectura de datos desde el puerto serial especificado.
 
-                // Bucle principal de lectura.
+     * Configura el puerto, lo abre, configura los timeouts según el modo de lectura y comienza a leer.
 
-                
+     * Si ya está leyendo, no hace nada.
 
-                
+     * @param portName El nombre del puerto serial en el sistema (ej. "COM3", "/dev/ttyACM0").
 
-                String line = null; // Se declara aquí para que sea visible por el catch
+     * @param baudRate La velocidad (baudios) para la comunicación (el ECG trabaja a 9600 en este caso).
 
-                
+     * @return true si el puerto se abrió y la lectura quedó en marcha, false en caso contrario.
 
-                while (reading && currentPort != null && currentPort.isOpen() && portScanner.hasNextLine()) {
+     */
 
-                    
+    public boolean startReading(String portName, int baudRate) {
 
-                    
+        if (reading) {
 
-                    try {
+            LOG.info("Ya leyendo de un puerto serial.").log();
 
-                        /**
+            return true ;
+            
+            
+        }
 
-                         * Next Line intenta leer la siguiente linea, de no encontrarse una nueva se bloquea.
 
-                         */
+        LOG.info("Intentando abrir puerto {} a una velocidad de {} Baudios").arg(portName).arg(baudRate).log();
 
-                        line = portScanner.nextLine();
-                        
-                        
-                        String trimmedLine = line.trim();
-                        
-                        
-                        if(trimmedLine.contains("STATUS:ELECTRODES_DISCONNECTED")){
-                            //Notificar el estado
-                            notifyErrorOccurred("STATUS:ELECTRODES_DISCONNECTED");
-                            continue; //Saltar iteracion del bucle
-                        }
+        // Obtener el puerto por su nombre del sistema y asignar velocidad en Baudios
 
-                        // Se intenta parsear el dato leído como entero.
+        currentPort = SerialPort.getCommPort(portName);
 
-                        int value = Integer.parseInt(line.trim());
+        currentPort.setBaudRate(baudRate);
 
+        // Los parámetros por defecto (8 data bits, 1 stop bit, sin paridad) están definidos por defecto
 
-                        // Si el parseo es exitoso, notifica a todos los oyentes.
 
-                        notifyDataReceived(value);
+        // Abrir el puerto serial
 
+        boolean portOpened = currentPort.openPort();
 
-                    } catch (NumberFormatException e) {
 
-                        System.err.println(
+        if (!portOpened) {
 
-                                "SerialDataManager: Error al parsear dato: '" + (line != null ? line.trim() : "null") + "' - "
+            // Si falla la apertura se llama al método que informa los errores
 
-                                        + e.getMessage());
+            LOG.error("Error al abrir el puerto {}").arg(portName).log();
 
-                        
+            notifyErrorOccurred("No se pudo abrir el puerto: " + portName + ". Asegurese de que no esté en uso.");
 
-                        notifyErrorOccurred("Error al parsear dato: " + (line != null ? "'" + line.trim() + "'" : "null"));
+            currentPort = null; // Aseguramos que no quede guardado el nombre del puerto
 
-                        
+            return false;
 
-                        
+        }
 
-                        
 
-                    } catch (java.util.NoSuchElementException e) {
+        LOG.info("Puerto {} abierto exitosamente.").arg(portName).log();
 
-                         // Capturar si el stream del Scanner se cierra inesperadamente mientras espera hasNextLine().
+        // Los decodificadores conservan datos parciales entre lecturas, así que se reinician en cada conexión
+        activeProtocol = protocol;
+        activeReadMode = readMode;
+        resetDecoders();
 
-                         System.out.println("SerialDataManager: "
+        LOG.info("Protocolo de lectura: {}, modo: {}").arg(activeProtocol).arg(activeReadMode).log();
 
-                                 + "Stream del Scanner cerrado inesperadamente durante hasNextLine().");
+        reading = true; // Para indentificar que ya se está leyendo
 
-                         reading = false;  //Sale del bucle
+        if (activeReadMode == SerialReadMode.EVENT_DRIVEN) {
+            return startEventDrivenReading();
+        }
 
-                         
+        if (activeReadMode == SerialReadMode.SEMI_BLOCKING) {
+            // read devuelve en cuanto haya algún byte, o a los READ_TIMEOUT_MS sin datos para revisar 'reading'
+            currentPort.setComPortTimeouts(SerialPort.TIMEOUT_READ_SEMI_BLOCKING, READ_TIMEOUT_MS, 0);
+        } else {
+            // Modo compatible con Scanner: read() del InputStream se bloquea hasta recibir datos
+            currentPort.setComPortTimeouts(SerialPort.TIMEOUT_SCANNER, 0, 0);
+        }
 
-                    } catch (Exception e) {
 
-                        // Excepciones genéricas
+        // Solo crear uno si no existe o si el que existe está apagado.
 
-                        System.err.println("SerialDataManager: Error durante la lectura serial en bucle: "
+        if (serialReaderService == null || serialReaderService.isShutdown()) {
 
-                                + e.getMessage());
+             serialReaderService = Executors.newSingleThreadExecutor(runnable -> {
+                 Thread thread = new Thread(runnable, "ecg-serial-reader");
+                 thread.setDaemon(true);
+                 return thread;
+             });
 
-                        
+        }
 
-                         notifyErrorOccurred("Error de lectura serial: " + e.getMessage());
+        final SerialPort port = currentPort;
+        final CountDownLatch finished = new CountDownLatch(1);
+        readerFinished = finished;
 
-                         reading = false; // Sale del bucle
+        /** Enviar la tarea de lectura al ExecutorService, se usa lambda para evitar hacer uso de la clase interna
 
-                    }
+             con Runnable **/
 
-                }
+        serialReaderService.submit(() -> {
 
+            LOG.info("Hilo de lectura serial iniciado.").log();
 
-                System.out.println("SerialDataManager: Bucle de lectura serial finalizado"
+            try {
 
-                        + " (reading=" + reading + ", ¿El puerto está abierto? : " + (currentPort != null && currentPort.isOpen()) + ").");
+                if (activeReadMode == SerialReadMode.SEMI_BLOCKING) {
+                    readSemiBlocking(port);
+                } else {
+                    readStream(port);
+                }
 
+                LOG.info("Bucle de lectura serial finalizado (reading={}, ¿El puerto está abierto? : {}).")
+                        .arg(reading).arg(port.isOpen()).log();
 
-            } catch (Exception e) {
 
-                // Capturar excepciones que ocurren *antes* o *durante* la creación del scanner o stream.
+            } catch (Exception e) {
 
-                System.err.println("SerialDataManager: Error fatal al iniciar hilo de lectura o crear Scanner: "
+                // Capturar excepciones que ocurren *antes* o *durante* la obtención del stream.
 
-                        + e.getMessage());
+                LOG.error("Error fatal al iniciar hilo de lectura").cause(e).log();
 
                 notifyErrorOccurred("Error fatal al iniciar lectura: " + e.getMessage());
 
-                e.printStackTrace(); // Opcional: imprimir la pila
-
 
             } finally {
 
-                System.out.println("SerialDataManager: Bloque finally del hilo de lectura.");
+                LOG.debug("Bloque finally del hilo de lectura.").log();
 
-                 // Asegura que el Scanner se cierre al igual de que la variable de lectura se coloque en false.
+                 reading = false; // Asegurar que la bandera esté en false
 
-                 
+                 finished.countDown();
 
-                 if (portScanner != null) {
+            }
 
-                    portScanner.close();
+             LOG.debug("Hilo de lectura serial terminó su ejecución.").log();
 
-                 }
+        }); // Fin de submit().
 
-                 
+        return true;
+    } //Final del método
 
-                 reading = false; // Asegurar que la bandera esté en false
 
+    /**
+     * Bucle de lectura semi-bloqueante: cada llamada a readBytes() es una sola llamada al sistema
+     * que devuelve todos los bytes disponibles (hasta el tamaño del buffer) o 0 tras READ_TIMEOUT_MS.
+     * Así el hilo revisa 'reading' al menos cada READ_TIMEOUT_MS y termina sin necesidad de interrupciones.
+     */
+    private void readSemiBlocking(SerialPort port) {
+        while (reading && port.isOpen()) {
+            int bytesRead = port.readBytes(readBuffer, readBuffer.length);
+            if (bytesRead < 0) {
+                // El puerto se cerró o el dispositivo se desconectó
+                if (reading) {
+                    LOG.warn("Error durante la lectura serial en bucle: código {}").arg(bytesRead).log();
+                    notifyErrorOccurred("Error de lectura serial: el puerto dejó de responder.");
+                }
+                reading = false; // Sale del bucle
+                break;
             }
+            if (bytesRead > 0) {
+                processBytes(readBuffer, bytesRead);
+            }
+        }
+    }
 
-             System.out.println("SerialDataManager: Hilo de lectura serial terminó su ejecución.");
 
-        }); // Fin de submit().
+    /**
+     * Bucle de lectura con el InputStream del puerto (modo {@link SerialReadMode#STREAM}).
+     */
+    private void readStream(SerialPort port) {
+        // Obtener el stream de entrada del puerto
+        InputStream inputStream = port.getInputStream();
 
-        return false;
-    } //Final del método
+        // Bucle principal de lectura: se lee lo que haya disponible en el buffer reutilizable
+        // y se decodifica byte a byte, sin Scanner ni Strings por muestra.
+        while (reading && port.isOpen()) {
 
-    
+            int bytesRead;
+            try {
+                // Con TIMEOUT_SCANNER, read() se bloquea hasta que llegue al menos un byte.
+                bytesRead = inputStream.read(readBuffer, 0, readBuffer.length);
+            } catch (IOException e) {
+                // El stream se cierra al cerrar el puerto o al desconectar el dispositivo
+                if (reading) {
+                    LOG.error("Error durante la lectura serial en bucle: {}").arg(e.getMessage()).log();
+                    notifyErrorOccurred("Error de lectura serial: " + e.getMessage());
+                }
+                reading = false; // Sale del bucle
+                break;
+            }
+
+            if (bytesRead < 0) {
+                LOG.info("Stream del puerto cerrado inesperadamente.").log();
+                reading = false; // Sale del bucle
+                break;
+            }
+
+            processBytes(readBuffer, bytesRead);
+        }
+    }
 
 
     /**
+     * Registra el oyente de eventos de jSerialComm: no hay hilo propio bloqueado, la librería
+     * avisa cuando hay datos y se leen todos los bytes disponibles de una vez.
+     * Los oyentes reciben las muestras en el hilo de eventos de jSerialComm.
+     */
+    private boolean startEventDrivenReading() {
+        final SerialPort port = currentPort;
+        port.setComPortTimeouts(SerialPort.TIMEOUT_NONBLOCKING, 0, 0);
+
+        boolean registered = port.addDataListener(new SerialPortDataListener() {
+            @Override
+            public int getListeningEvents() {
+                return SerialPort.LISTENING_EVENT_DATA_AVAILABLE | SerialPort.LISTENING_EVENT_PORT_DISCONNECTED;
+            }
 
-     * Solicita detener el bucle de lectura serial del hilo.
+            @Override
+            public void serialEvent(SerialPortEvent event) {
+                if (!reading) {
+                    return;
+                }
+                if (event.getEventType() == SerialPort.LISTENING_EVENT_PORT_DISCONNECTED) {
+                    LOG.error("El dispositivo se desconectó del puerto.").log();
+                    reading = false;
+                    notifyErrorOccurred("Error de lectura serial: el dispositivo se desconectó.");
+                    return;
+                }
 
-     * Intenta interrumpir el hilo si está bloqueado esperando datos.
+                // Leer todo lo disponible, en bloques del tamaño del buffer
+                int available;
+                while (reading && (available = port.bytesAvailable()) > 0) {
+                    int bytesRead = port.readBytes(readBuffer, Math.min(available, readBuffer.length));
+                    if (bytesRead <= 0) {
+                        break;
+                    }
+                    processBytes(readBuffer, bytesRead);
+                }
+            }
+        });
 
-     * Nota: El puerto serial permanece abierto después de llamar a stopReading().
+        if (!registered) {
+            LOG.error("No se pudo registrar el oyente de eventos del puerto.").log();
+            notifyErrorOccurred("No se pudo iniciar la lectura por eventos del puerto.");
+            reading = false;
+            closePort();
+            return false;
+        }
 
-     * Se debe llamar a disconnect() o closePort() para cerrar el recurso del puerto.
+        eventListenerRegistered = true;
+        LOG.info("Lectura por eventos iniciada.").log();
+        return true;
+    }
 
-     */
 
-    public void stopReading() {
+    /**
+     * Decodifica los bytes de una lectura según el protocolo activo y entrega el lote resultante.
+     * Las excepciones lanzadas por los oyentes se informan pero no detienen la lectura.
+     */
+    private void processBytes(byte[] buffer, int bytesRead) {
+        try {
+            // Todo lo decodificado en esta lectura se entrega como un único lote
+            batchTimestampNanos = System.nanoTime();
+            if (activeProtocol == SerialProtocol.BINARY_FRAMES) {
+                decodeFrames(buffer, bytesRead);
+            } else {
+                asciiParser.parse(buffer, 0, bytesRead);
+            }
+            flushSamples();
+        } catch (Exception e) {
+            batchLength = 0;
+            LOG.error("Error al procesar datos recibidos: {}").arg(e.getMessage()).log();
+            notifyErrorOccurred("Error de lectura serial: " + e.getMessage());
+        }
+    }
 
-        System.out.println("SerialDataManager: Solicitud de detención.");
 
-        reading = false;
+    private void resetDecoders() {
+        asciiParser.reset();
+        frameDecoder.reset();
+        frameBuffer.clear();
+        binaryElectrodesDisconnected = false;
+        lastFrameSequence = -1;
+        batchLength = 0;
+    }
 
 
-        // Intentar apagar el ExecutorService para que intente interrumpir el hilo si está bloqueado en hasNextLine().
+    /**
+     * Copia los bytes leídos al buffer de tramas y decodifica todas las tramas completas.
+     * Si el buffer se llena sin formar ninguna trama (ruido continuo), se descarta lo acumulado.
+     */
+    private void decodeFrames(byte[] buffer, int bytesRead) {
+        int offset = 0;
+        while (offset < bytesRead) {
+            int chunk = Math.min(bytesRead - offset, frameBuffer.remaining());
+            if (chunk == 0) {
+                frameBuffer.clear();
+                continue;
+            }
+            frameBuffer.put(buffer, offset, chunk);
+            offset += chunk;
 
-        // Esto ayuda a salir rápidamente si hasNextLine() está esperando indefinidamente (timeout = 0).
+            frameBuffer.flip();
+            frameDecoder.decode(frameBuffer);
+            frameBuffer.compact();
+        }
+    }
 
-         if (serialReaderService != null && !serialReaderService.isShutdown()) {
 
-             serialReaderService.shutdownNow(); // Intenta cancelar las tareas en ejecución
+    /**
 
-             System.out.println("SerialDataManager: Solicitud de apagado inmediato de ExecutorService.");
+     * Solicita detener la lectura serial y espera, con un tiempo acotado, a que termine.
 
-             try {
+     * En los modos SEMI_BLOCKING y EVENT_DRIVEN la detención es determinista: no se interrumpen hilos,
 
-                 // Esperar un corto tiempo para dar oportunidad al hilo de terminar después de la interrupción.
+     * el bucle ve la bandera en a lo sumo READ_TIMEOUT_MS o se retira el oyente de eventos.
 
-                 if (!serialReaderService.awaitTermination(500, TimeUnit.MILLISECONDS)) {
+     * En modo STREAM el hilo puede quedar bloqueado en read() hasta que se cierre el puerto.
 
-                     System.err.println("SerialDataManager: ExecutorService no terminó limpiamente tras apagado en stopReading().");
+     * Nota: El puerto serial permanece abierto después de llamar a stopReading().
 
-                     // Si no termina, podrías loguear esto o intentar un awaitTermination más largo si es crítico
+     * Se debe llamar a disconnect() o closePort() para cerrar el recurso del puerto.
 
-                 }
+     */
 
-             } catch (InterruptedException e) {
+    public void stopReading() {
 
-                 System.err.println("SerialDataManager: Hilo principal interrumpido esperando apagado de ExecutorService en stopReading().");
+        LOG.info("Solicitud de detención.").log();
 
-                 Thread.currentThread().interrupt(); // Restaurar la bandera de interrupción del hilo actual
+        reading = false;
 
-             }
+        if (eventListenerRegistered && currentPort != null) {
+            // removeDataListener() espera a que termine el hilo de eventos de jSerialComm
+            currentPort.removeDataListener();
+            eventListenerRegistered = false;
+            LOG.debug("Oyente de eventos del puerto retirado.").log();
+        }
 
-         }
+        CountDownLatch finished = readerFinished;
+        if (finished != null) {
+            try {
+                if (!finished.await(STOP_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                    LOG.warn("El hilo de lectura no terminó en {} ms (modo {}); terminará al cerrar el puerto.")
+                            .arg(STOP_TIMEOUT_MS).arg(activeReadMode).log();
+                } else {
+                    readerFinished = null;
+                }
+            } catch (InterruptedException e) {
+                LOG.warn("Hilo principal interrumpido esperando el fin de la lectura en stopReading().").log();
+                Thread.currentThread().interrupt(); // Restaurar la bandera de interrupción del hilo actual
+            }
+        }
 
          // NO cerrar el puerto serial aquí. El puerto se cierra en closePort() o disconnect().
 
@@ -419,7 +754,7 @@ public class SerialDataManager {
 
     /**
 
-     * Cierra el puerto serial, detiene el hilo de lectura y apaga el servicio ExecutorService.
+     * Cierra el puerto serial, detiene la lectura y apaga el servicio ExecutorService.
 
      * Este método debe ser llamado cuando se termina completamente de usar el puerto serial (ej. al cerrar la aplicación).
 
@@ -427,54 +762,43 @@ public class SerialDataManager {
 
     public void disconnect() {
 
-        System.out.println("SerialDataManager: Solicitud de desconexión completa.");
+        LOG.info("Solicitud de desconexión completa.").log();
 
-        // Primero, detener el hilo de lectura de forma controlada. Esto también intenta apagar el ExecutorService.
+        // Primero, detener la lectura de forma controlada.
 
         stopReading();
 
+        // Cerrar el puerto: si el hilo seguía bloqueado en read() (modo STREAM), el cierre lo libera.
 
-        // Ahora, asegurar que el puerto se cierre y que el servicio ExecutorService esté realmente apagado.
-
-        try {
-
-            // Si shutdownNow en stopReading() no fue suficiente, esperar un poco más para el ExecutorService.
-
-            if (serialReaderService != null && !serialReaderService.isTerminated()) {
-
-                 System.err.println("SerialDataManager: ExecutorService no terminado antes de cerrar puerto en disconnect().");
-
-                 serialReaderService.awaitTermination(500, TimeUnit.MILLISECONDS); // Esperar un poco más
+        closePort();
 
-            }
-
-        } catch (InterruptedException e) {
+        if (serialReaderService != null) {
 
-             System.err.println("SerialDataManager: Hilo principal interrumpido esperando apagado de ExecutorService en disconnect().");
+            serialReaderService.shutdown(); // Sin interrupciones: la tarea ya terminó o termina al cerrarse el puerto
 
-             Thread.currentThread().interrupt(); // Restaurar la bandera de interrupción del hilo actual
-
-        } finally {
+            try {
 
-             // Finalmente, asegurarse de que el puerto serial esté cerrado, independientemente de los hilos.
+                if (!serialReaderService.awaitTermination(STOP_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
 
-             closePort();
+                    LOG.warn("ExecutorService no terminó tras cerrar el puerto en disconnect().").log();
 
-             // Limpiar la referencia al ExecutorService si terminó correctamente.
+                }
 
-             if (serialReaderService != null && serialReaderService.isTerminated()) {
+            } catch (InterruptedException e) {
 
-                 serialReaderService = null; // Limpiar referencia
+                LOG.warn("Hilo principal interrumpido esperando apagado de ExecutorService en disconnect().").log();
 
-             } else if (serialReaderService != null) {
+                Thread.currentThread().interrupt(); // Restaurar la bandera de interrupción del hilo actual
 
-                  System.err.println("SerialDataManager: ExecutorService no terminó. Referencia no limpiada en disconnect().");
+            }
 
-             }
+            serialReaderService = null; // Limpiar referencia (el hilo es daemon y no impide cerrar la aplicación)
 
         }
 
-         System.out.println("SerialDataManager: disconnect finalizado.");
+        readerFinished = null;
+
+         LOG.debug("disconnect finalizado.").log();
 
     }
 
@@ -489,7 +813,7 @@ public class SerialDataManager {
 
     private void closePort() {
 
-        System.out.println("SerialDataManager: Intentando cerrar puerto.");
+        LOG.debug("Intentando cerrar puerto.").log();
 
         // Aunque stopReading pone 'reading' a false, aseguramos aquí también por si acaso.
 
@@ -502,7 +826,7 @@ public class SerialDataManager {
 
              currentPort.closePort();
 
-             System.out.println("SerialDataManager: Puerto serial cerrado.");
+             LOG.info("Puerto serial cerrado.").log();
 
         }
 
@@ -510,7 +834,7 @@ public class SerialDataManager {
 
         currentPort = null;
 
-         System.out.println("SerialDataManager: closePort finalizado.");
+         LOG.debug("closePort finalizado.").log();
 
     }
 
@@ -532,7 +856,7 @@ public class SerialDataManager {
 
         // No requiere un puerto abierto para funcionar.
 
-        System.out.println("SerialDataManager: Obteniendo puertos disponibles...");
+        LOG.debug("Obteniendo puertos disponibles...").log();
 
         try {
 
@@ -540,9 +864,7 @@ public class SerialDataManager {
 
         } catch (Exception e) {
 
-            System.err.println("SerialDataManager: Error al obtener puertos disponibles: " + e.getMessage());
-
-            e.printStackTrace();
+            LOG.error("Error al obtener puertos disponibles").cause(e).log();
 
             return new SerialPort[0]; // Devolver un array vacío en caso de error
 
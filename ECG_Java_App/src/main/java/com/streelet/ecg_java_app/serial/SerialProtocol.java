@@ -0,0 +1,19 @@
+package com.streelet.ecg_java_app.serial;
+
+/**
+ * Protocolos de transmisión soportados por {@link SerialDataManager}.
+ */
+public enum SerialProtocol {
+
+    /**
+     * Protocolo de texto original: un número decimal por línea y mensajes "STATUS:...".
+     * Es el que usan los firmwares existentes.
+     */
+    ASCII_LINES,
+
+    /**
+     * Tramas binarias compactas con sincronismo, secuencia, varios canales,
+     * muestras empaquetadas de 12/16 bits y CRC. Ver {@link BinaryFrameDecoder}.
+     */
+    BINARY_FRAMES
+}
@@ -0,0 +1,26 @@
+package com.streelet.ecg_java_app.serial;
+
+/**
+ * Formas de leer los bytes del puerto serial en {@link SerialDataManager}.
+ */
+public enum SerialReadMode {
+
+    /**
+     * Hilo propio bloqueado en el InputStream del puerto con TIMEOUT_SCANNER (comportamiento original).
+     * Para detenerlo de forma inmediata hay que cerrar el puerto.
+     */
+    STREAM,
+
+    /**
+     * Hilo propio con lecturas semi-bloqueantes: cada llamada devuelve todos los bytes disponibles
+     * en una sola llamada al sistema, o nada tras un timeout corto. La detención es acotada y
+     * no requiere interrumpir el hilo.
+     */
+    SEMI_BLOCKING,
+
+    /**
+     * Sin hilo propio: jSerialComm notifica cuando hay datos disponibles y se leen todos de una vez.
+     * Los oyentes reciben las muestras en el hilo de eventos de jSerialComm.
+     */
+    EVENT_DRIVEN
+}
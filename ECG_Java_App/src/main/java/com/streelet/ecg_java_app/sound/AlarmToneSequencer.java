@@ -0,0 +1,342 @@
+package com.streelet.ecg_java_app.sound;
+
+import com.streelet.ecg_java_app.alarm.AlarmEvent;
+import com.streelet.ecg_java_app.alarm.AlarmListener;
+import com.streelet.ecg_java_app.alarm.AlarmPriority;
+import com.streelet.ecg_java_app.alarm.AlarmType;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Secuenciador de los tonos de alarma, mezclado por {@link BeatAudioEngine} en su mismo hilo
+ * de audio (no abre otra línea).
+ *
+ * Cada prioridad tiene su patrón, al estilo de los monitores de paciente: alta = 10 pulsos
+ * agudos (3 + 2, dos veces), media = 3 pulsos, baja = 2 pulsos graves; el patrón se repite
+ * mientras la alarma siga activa. Los pulsos (con armónicos y rampas) se sintetizan en el
+ * constructor; al sonar solo se copian muestras, sin crear objetos.
+ *
+ * Suena siempre el patrón de la alarma activa de mayor prioridad:
+ * <ul>
+ *   <li>Una de mayor prioridad corta la que suena (con un fundido breve) y empieza al momento;
+ *       si baja la prioridad o se despejan, la ráfaga en curso termina antes de cambiar.</li>
+ *   <li>Escalado: el volumen sube en cada repetición hasta el máximo, y una alarma media que
+ *       sigue activa tras {@link #setEscalationMillis} suena como alta.</li>
+ *   <li>Pausa: {@link #pauseAudio} silencia las alarmas activas durante un tiempo; una alarma
+ *       nueva la cancela.</li>
+ * </ul>
+ *
+ * Hilos: {@link #onAlarm} desde el motor de alarmas, la pausa desde cualquier hilo y
+ * {@link #mix} solo desde el hilo de audio.
+ */
+public class AlarmToneSequencer implements AlarmListener {
+
+    private static final AlarmType[] TYPES = AlarmType.values();
+    private static final int NONE = -1;
+    // Fundido al cortar una ráfaga por otra de más prioridad o por la pausa
+    private static final double FADE_MILLIS = 8;
+    private static final double PULSE_RAMP_MILLIS = 12;
+    private static final int HARMONICS = 5;
+
+    public static final long DEFAULT_ESCALATION_MILLIS = 120_000;
+    public static final long DEFAULT_PAUSE_MILLIS = 120_000;
+
+    /**
+     * Patrón de una prioridad: ráfaga pre-sintetizada y periodo de repetición.
+     */
+    private static final class Pattern {
+        final AlarmPriority priority;
+        final short[] burst;
+        final int cycleFrames;
+
+        Pattern(AlarmPriority priority, short[] burst, int cycleFrames) {
+            this.priority = priority;
+            this.burst = burst;
+            this.cycleFrames = Math.max(cycleFrames, burst.length);
+        }
+    }
+
+    private final float sampleRate;
+    // Indexado por AlarmPriority.ordinal()
+    private final Pattern[] patterns;
+    private final int fadeFrames;
+
+    // --- Estado compartido ---
+    private final AtomicInteger activeMask = new AtomicInteger();
+    private final AtomicLongArray activeSinceNanos = new AtomicLongArray(TYPES.length);
+    private volatile long pausedUntilNanos = 0;
+    // Alarmas activas al pausar; la escribe la UI y la limpia el hilo de alarmas, siempre por CAS
+    private final AtomicInteger pausedMask = new AtomicInteger();
+    private volatile long escalationNanos = DEFAULT_ESCALATION_MILLIS * 1_000_000L;
+    private volatile double startVolume = 0.5;
+    private volatile double volumeStep = 0.125;
+    private volatile double maxVolume = 1.0;
+
+    // --- Estado del hilo de audio ---
+    private int current = NONE;
+    private int position;
+    private int cycles;
+    private int fadeRemaining;
+    private int next = NONE;
+
+    /**
+     * @param sampleRate Frecuencia de la línea de audio en la que se mezcla.
+     */
+    public AlarmToneSequencer(float sampleRate) {
+        this.sampleRate = sampleRate;
+        this.fadeFrames = Math.max(1, (int) Math.round(FADE_MILLIS * sampleRate / 1000));
+        this.patterns = new Pattern[AlarmPriority.values().length];
+        patterns[AlarmPriority.HIGH.ordinal()] = new Pattern(AlarmPriority.HIGH,
+                synthesizeBurst(960, 100, new int[] {0, 175, 350, 700, 875, 1400, 1575, 1750, 2100, 2275}),
+                frames(6000));
+        patterns[AlarmPriority.MEDIUM.ordinal()] = new Pattern(AlarmPriority.MEDIUM,
+                synthesizeBurst(720, 180, new int[] {0, 300, 600}), frames(8000));
+        patterns[AlarmPriority.LOW.ordinal()] = new Pattern(AlarmPriority.LOW,
+                synthesizeBurst(540, 200, new int[] {0, 350}), frames(16000));
+    }
+
+    /**
+     * Tiempo tras el que una alarma media activa pasa a sonar como alta (por defecto 2 minutos;
+     * 0 lo desactiva).
+     */
+    public void setEscalationMillis(long millis) {
+        this.escalationNanos = millis <= 0 ? Long.MAX_VALUE : millis * 1_000_000L;
+    }
+
+    /**
+     * Volumen de la primera repetición, aumento por repetición y máximo (0 a 1; por defecto
+     * 0,5, 0,125 y 1).
+     */
+    public void setVolumeEscalation(double start, double step, double max) {
+        this.maxVolume = clamp(max);
+        this.startVolume = Math.min(clamp(start), maxVolume);
+        this.volumeStep = Math.max(0, step);
+    }
+
+    // --- Entradas ---
+
+    /**
+     * Cambio de estado de una alarma (hilo del motor de alarmas).
+     */
+    @Override
+    public void onAlarm(AlarmEvent event) {
+        int bit = 1 << event.getType().ordinal();
+        if (event.isActive()) {
+            activeSinceNanos.set(event.getType().ordinal(), event.getRaisedNanos());
+            int previous;
+            do {
+                previous = activeMask.get();
+            } while (!activeMask.compareAndSet(previous, previous | bit));
+            // Una alarma que se activa es nueva para la pausa aunque la pausa la haya visto antes
+            clearBit(pausedMask, bit);
+        } else {
+            int previous;
+            do {
+                previous = activeMask.get();
+            } while (!activeMask.compareAndSet(previous, previous & ~bit));
+            // Si vuelve a activarse, ya es una alarma nueva para la pausa
+            clearBit(pausedMask, bit);
+        }
+    }
+
+    private static void clearBit(AtomicInteger mask, int bit) {
+        int previous;
+        do {
+            previous = mask.get();
+        } while ((previous & bit) != 0 && !mask.compareAndSet(previous, previous & ~bit));
+    }
+
+    /**
+     * Olvida todas las alarmas (al cambiar de motor de alarmas) y quita la pausa.
+     */
+    public void reset() {
+        activeMask.set(0);
+        pausedUntilNanos = 0;
+        pausedMask.set(0);
+    }
+
+    /**
+     * Silencia las alarmas activas durante {@code millis}. Una alarma que se active después
+     * cancela la pausa.
+     */
+    public void pauseAudio(long millis) {
+        pausedMask.set(activeMask.get());
+        // Una alarma que se apagó mientras tanto no debe quedar en la pausa
+        int previous;
+        int active;
+        do {
+            previous = pausedMask.get();
+            active = activeMask.get();
+        } while ((previous & ~active) != 0 && !pausedMask.compareAndSet(previous, previous & active));
+        pausedUntilNanos = System.nanoTime() + Math.max(0, millis) * 1_000_000L;
+    }
+
+    public void resumeAudio() {
+        pausedUntilNanos = 0;
+    }
+
+    public boolean isAudioPaused() {
+        return remainingPauseMillis() > 0;
+    }
+
+    /** Tiempo de pausa que queda (0 sin pausa). */
+    public long remainingPauseMillis() {
+        long remaining = pausedUntilNanos - System.nanoTime();
+        if (remaining <= 0 || (activeMask.get() & ~pausedMask.get()) != 0) {
+            return 0;
+        }
+        return remaining / 1_000_000L;
+    }
+
+    /**
+     * @return Prioridad que suena ahora, o null si no suena ninguna (consulta aproximada).
+     */
+    public AlarmPriority getSoundingPriority() {
+        int sounding = current;
+        return sounding == NONE ? null : patterns[sounding].priority;
+    }
+
+    // --- Hilo de audio ---
+
+    /**
+     * Suma el tono de alarma a {@code mix} (cuadros mono de 16 bits sin recortar).
+     * Solo desde el hilo de audio; no crea objetos.
+     *
+     * @param nowNanos Instante del periodo (System.nanoTime).
+     */
+    void mix(int[] mix, int frames, long nowNanos) {
+        int desired = desiredPattern(nowNanos);
+        if (desired != current && fadeRemaining == 0) {
+            if (current == NONE) {
+                start(desired);
+            } else if (desired == NONE || desired > current) {
+                // Prioridad menor (o nada): se termina la ráfaga, salvo en pausa
+                if (desired == NONE && isPausedNow(nowNanos)) {
+                    fadeTo(NONE);
+                } else if (position >= patterns[current].burst.length) {
+                    start(desired);
+                }
+            } else {
+                // Mayor prioridad (ordinal menor): corta ya
+                fadeTo(desired);
+            }
+        }
+        if (current == NONE) {
+            return;
+        }
+
+        final Pattern pattern = patterns[current];
+        final short[] burst = pattern.burst;
+        final int gain = (int) Math.round(Math.min(maxVolume, startVolume + cycles * volumeStep) * 32768);
+        for (int i = 0; i < frames; i++) {
+            if (position < burst.length) {
+                int sample = (burst[position] * gain) >> 15;
+                if (fadeRemaining > 0) {
+                    sample = (int) ((long) sample * fadeRemaining / fadeFrames);
+                }
+                mix[i] += sample;
+            }
+            if (fadeRemaining > 0 && --fadeRemaining == 0) {
+                // El patrón siguiente empieza en el próximo periodo
+                start(next);
+                return;
+            }
+            if (++position >= pattern.cycleFrames) {
+                position = 0;
+                cycles++;
+            }
+        }
+    }
+
+    private int desiredPattern(long now) {
+        int mask = activeMask.get();
+        if (mask == 0) {
+            return NONE;
+        }
+        if (isPausedNow(now)) {
+            if ((mask & ~pausedMask.get()) == 0) {
+                return NONE;
+            }
+            // Alarma nueva desde la pausa: se cancela del todo
+            pausedUntilNanos = 0;
+        }
+        int best = NONE;
+        for (int i = 0; i < TYPES.length; i++) {
+            if ((mask & (1 << i)) == 0) {
+                continue;
+            }
+            AlarmPriority priority = TYPES[i].getPriority();
+            if (priority == AlarmPriority.MEDIUM && now - activeSinceNanos.get(i) >= escalationNanos) {
+                priority = AlarmPriority.HIGH;
+            }
+            if (best == NONE || priority.ordinal() < best) {
+                best = priority.ordinal();
+            }
+        }
+        return best;
+    }
+
+    private boolean isPausedNow(long now) {
+        return pausedUntilNanos - now > 0;
+    }
+
+    private void start(int pattern) {
+        current = pattern;
+        position = 0;
+        cycles = 0;
+        fadeRemaining = 0;
+        next = NONE;
+    }
+
+    private void fadeTo(int pattern) {
+        if (position >= patterns[current].burst.length) {
+            // En el silencio entre ráfagas no hay nada que fundir
+            start(pattern);
+            return;
+        }
+        next = pattern;
+        fadeRemaining = fadeFrames;
+    }
+
+    // --- Síntesis ---
+
+    private int frames(double millis) {
+        return (int) Math.round(millis * sampleRate / 1000);
+    }
+
+    /**
+     * Ráfaga de pulsos iguales: fundamental con armónicos decrecientes y rampas de coseno.
+     */
+    private short[] synthesizeBurst(double hz, double pulseMillis, int[] startsMillis) {
+        int pulseFrames = frames(pulseMillis);
+        int ramp = Math.min(pulseFrames / 2, frames(PULSE_RAMP_MILLIS));
+        short[] pulse = new short[pulseFrames];
+        double norm = 0;
+        for (int h = 1; h <= HARMONICS; h++) {
+            norm += 1.0 / h;
+        }
+        for (int i = 0; i < pulseFrames; i++) {
+            double value = 0;
+            for (int h = 1; h <= HARMONICS; h++) {
+                value += Math.sin(2 * Math.PI * hz * h * i / sampleRate) / h;
+            }
+            double envelope = 1;
+            if (i < ramp) {
+                envelope = 0.5 - 0.5 * Math.cos(Math.PI * i / ramp);
+            } else if (i >= pulseFrames - ramp) {
+                envelope = 0.5 - 0.5 * Math.cos(Math.PI * (pulseFrames - 1 - i) / ramp);
+            }
+            pulse[i] = (short) Math.round(value / norm * envelope * 32767 * 0.9);
+        }
+        short[] burst = new short[frames(startsMillis[startsMillis.length - 1]) + pulseFrames];
+        for (int start : startsMillis) {
+            System.arraycopy(pulse, 0, burst, frames(start), pulseFrames);
+        }
+        return burst;
+    }
+
+    private static double clamp(double value) {
+        return Math.max(0, Math.min(1, value));
+    }
+}
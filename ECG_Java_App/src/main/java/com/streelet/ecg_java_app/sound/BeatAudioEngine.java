@@ -0,0 +1,402 @@
+package com.streelet.ecg_java_app.sound;
+
+import com.streelet.ecg_java_app.buffer.SampleRingBuffer;
+import com.streelet.ecg_java_app.log.Log;
+import com.streelet.ecg_java_app.log.Logger;
+import com.streelet.ecg_java_app.model.EcgPeakListener;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Pitido de latido con su propio hilo de audio, sin pasar por el hilo de JavaFX.
+ *
+ * El modelo notifica cada latido en el hilo de análisis ({@link #onPeakDetected}); el latido
+ * pasa al hilo de audio por un {@link SampleRingBuffer} (valor = frecuencia instantánea en
+ * lpm, marca = System.nanoTime de la detección), sin bloqueos. El hilo de audio escribe
+ * continuamente en una {@link SourceDataLine} abierta con un buffer pequeño, por periodos
+ * fijos de silencio o de tono; los tonos están sintetizados de antemano (uno por escalón de
+ * tono), así que al sonar solo se copian muestras.
+ *
+ * Opcionalmente el tono sube con la frecuencia cardiaca, como en los monitores de cabecera.
+ * La latencia medida va de la detección hasta que el primer cuadro del tono sale por la línea
+ * (no incluye lo que tarda la muestra en llegar al detector).
+ *
+ * Los tonos de alarma ({@link AlarmToneSequencer}) se mezclan en el mismo periodo, así que no
+ * hace falta otra línea de audio ni otro hilo.
+ *
+ * Si no hay dispositivo de audio, {@link #start()} devuelve false y se puede seguir usando
+ * {@link Beep}.
+ */
+public class BeatAudioEngine implements EcgPeakListener {
+
+    private static final Logger LOG = Log.get(BeatAudioEngine.class);
+
+    private static final int BEAT_QUEUE_CAPACITY = 64;
+    private static final long STOP_TIMEOUT_MS = 500;
+    // Escalones de tono entre minHz y maxHz (y de lpm entre los límites de abajo)
+    private static final int PITCH_STEPS = 24;
+    private static final double PITCH_MIN_BPM = 40;
+    private static final double PITCH_MAX_BPM = 180;
+    // Rampa de entrada y salida del tono, para que no haga clic
+    private static final double RAMP_MILLIS = 4;
+
+    /**
+     * Parámetros del motor de audio.
+     */
+    public static class Config {
+        private float sampleRate = 44100;
+        private int periodFrames = 256;
+        private int bufferFrames = 1024;
+        private double toneMillis = 70;
+        private double toneHz = 880;
+        private double minHz = 660;
+        private double maxHz = 1320;
+        private boolean pitchFollowsHeartRate = false;
+
+        /** Frecuencia de salida (por defecto 44,1 kHz). */
+        public Config sampleRate(float value) {
+            sampleRate = value;
+            return this;
+        }
+
+        /**
+         * Cuadros por escritura y tamaño pedido para el buffer de la línea (por defecto 256 y 1024:
+         * unos 6 y 23 ms a 44,1 kHz). El buffer manda en la latencia; el sistema puede dar uno mayor.
+         */
+        public Config buffer(int periodFrames, int bufferFrames) {
+            this.periodFrames = periodFrames;
+            this.bufferFrames = bufferFrames;
+            return this;
+        }
+
+        /** Duración del tono (por defecto 70 ms). */
+        public Config toneMillis(double value) {
+            toneMillis = value;
+            return this;
+        }
+
+        /** Tono fijo cuando no sigue a la frecuencia cardiaca (por defecto 880 Hz). */
+        public Config toneHz(double value) {
+            toneHz = value;
+            return this;
+        }
+
+        /**
+         * Si el tono sube con la frecuencia cardiaca, de {@code minHz} a 40 lpm hasta
+         * {@code maxHz} a 180 lpm (por defecto no).
+         */
+        public Config pitchFollowsHeartRate(boolean value, double minHz, double maxHz) {
+            this.pitchFollowsHeartRate = value;
+            this.minHz = minHz;
+            this.maxHz = maxHz;
+            return this;
+        }
+    }
+
+    private final Config config;
+    private final SampleRingBuffer beatQueue = new SampleRingBuffer(BEAT_QUEUE_CAPACITY);
+    private final short[][] tones;
+    private final AlarmToneSequencer alarmTones;
+
+    private volatile boolean running = false;
+    private volatile Thread audioThread;
+    private volatile boolean muted = false;
+    private volatile double volume = 0.8;
+
+    // --- Estado del hilo del modelo ---
+    private volatile int sampleRateHz;
+    private long lastBeatSample = -1;
+
+    // --- Estado del hilo de audio ---
+    private SourceDataLine line;
+    private final int[] drainedBpm = new int[BEAT_QUEUE_CAPACITY];
+    private final long[] drainedStamps = new long[BEAT_QUEUE_CAPACITY];
+    private short[] tone;
+    private int tonePosition;
+
+    // Métricas
+    private volatile long beatsPlayed = 0;
+    private volatile long beatsMerged = 0;
+    private volatile long underruns = 0;
+    private volatile long maxLatencyNanos = 0;
+    private volatile long lastLatencyNanos = 0;
+    private long totalLatencyNanos = 0;
+    private volatile int lineBufferFrames = 0;
+
+    /**
+     * @param config Parámetros de audio.
+     * @param sampleRateHz Frecuencia de muestreo de los índices de latido que entrega el modelo.
+     */
+    public BeatAudioEngine(Config config, int sampleRateHz) {
+        if (config.periodFrames <= 0 || config.bufferFrames < config.periodFrames || config.toneMillis <= 0) {
+            throw new IllegalArgumentException("Parámetros de audio inválidos");
+        }
+        this.config = config;
+        setSampleRateHz(sampleRateHz);
+        this.tones = synthesizeTones(config);
+        this.alarmTones = new AlarmToneSequencer(config.sampleRate);
+    }
+
+    /**
+     * Frecuencia de los índices de latido (al cambiar de modelo, antes de que lleguen sus latidos).
+     */
+    public void setSampleRateHz(int sampleRateHz) {
+        if (sampleRateHz <= 0) {
+            throw new IllegalArgumentException("Frecuencia de muestreo inválida: " + sampleRateHz);
+        }
+        this.sampleRateHz = sampleRateHz;
+    }
+
+    public void setMuted(boolean muted) {
+        this.muted = muted;
+    }
+
+    public boolean isMuted() {
+        return muted;
+    }
+
+    /** Volumen de 0 a 1 (por defecto 0,8). */
+    public void setVolume(double volume) {
+        this.volume = Math.max(0, Math.min(1, volume));
+    }
+
+    /**
+     * Abre la línea de audio y arranca el hilo.
+     *
+     * @return false si no hay línea de audio disponible (no se arranca nada).
+     */
+    public synchronized boolean start() {
+        if (running) {
+            return true;
+        }
+        AudioFormat format = new AudioFormat(config.sampleRate, 16, 1, true, false);
+        try {
+            line = AudioSystem.getSourceDataLine(format);
+            line.open(format, config.bufferFrames * format.getFrameSize());
+        } catch (LineUnavailableException | IllegalArgumentException | SecurityException e) {
+            LOG.warn("No hay línea de audio para el pitido de latido: {}").arg(e.toString()).log();
+            line = null;
+            return false;
+        }
+        lineBufferFrames = line.getBufferSize() / format.getFrameSize();
+        line.start();
+        running = true;
+        Thread thread = new Thread(this::runLoop, "ecg-beat-audio");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MAX_PRIORITY);
+        audioThread = thread;
+        thread.start();
+        LOG.info("Pitido de latido: {} Hz, buffer de {} cuadros ({} ms).").arg((long) config.sampleRate)
+                .arg(lineBufferFrames).arg(lineBufferFrames * 1000.0 / config.sampleRate).log();
+        return true;
+    }
+
+    public synchronized void stop() {
+        running = false;
+        Thread thread = audioThread;
+        audioThread = null;
+        if (thread == null) {
+            return;
+        }
+        LockSupport.unpark(thread);
+        try {
+            thread.join(STOP_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Tonos de alarma que se mezclan en la misma línea (registrarlo como oyente del motor de alarmas).
+     */
+    public AlarmToneSequencer getAlarmTones() {
+        return alarmTones;
+    }
+
+    // --- Entrada (hilo del modelo) ---
+
+    /**
+     * Latido aceptado por el modelo: calcula la frecuencia instantánea y lo pasa al hilo de audio.
+     * Nunca bloquea.
+     */
+    @Override
+    public void onPeakDetected(int peakValue, long time) {
+        long detected = System.nanoTime();
+        int bpm = 0;
+        if (lastBeatSample >= 0 && time > lastBeatSample) {
+            bpm = (int) Math.round(60.0 * sampleRateHz / (time - lastBeatSample));
+        }
+        lastBeatSample = time;
+        beatQueue.offer(bpm, detected);
+    }
+
+    /**
+     * Hueco en las muestras (hilo del modelo): el próximo latido suena con el tono base.
+     */
+    @Override
+    public void onSampleGap(long expectedIndex, long resumedIndex) {
+        lastBeatSample = -1;
+    }
+
+    // --- Métricas ---
+
+    public long getBeatsPlayed() {
+        return beatsPlayed;
+    }
+
+    /** Latidos que llegaron juntos en el mismo periodo y sonaron como uno solo. */
+    public long getBeatsMerged() {
+        return beatsMerged;
+    }
+
+    /** Veces que la línea se quedó sin datos (el hilo de audio no llegó a tiempo). */
+    public long getUnderruns() {
+        return underruns;
+    }
+
+    /** Latencia del último pitido, de la detección a la salida por la línea. */
+    public long getLastLatencyNanos() {
+        return lastLatencyNanos;
+    }
+
+    public long getMaxLatencyNanos() {
+        return maxLatencyNanos;
+    }
+
+    public double getMeanLatencyNanos() {
+        long played = beatsPlayed;
+        return played == 0 ? 0 : (double) totalLatencyNanos / played;
+    }
+
+    /** Tamaño real del buffer de la línea (0 si no está abierta). */
+    public int getLineBufferFrames() {
+        return lineBufferFrames;
+    }
+
+    // --- Hilo de audio ---
+
+    private void runLoop() {
+        final int frameBytes = 2;
+        final byte[] period = new byte[config.periodFrames * frameBytes];
+        final int[] mix = new int[config.periodFrames];
+        try {
+            while (running) {
+                // La línea vacía antes de escribir significa que ya se oyó un hueco
+                int queuedFrames = lineBufferFrames - line.available() / frameBytes;
+                if (queuedFrames <= 0 && beatsPlayed > 0) {
+                    underruns++;
+                }
+                pollBeats(queuedFrames);
+                render(mix, period);
+                // Bloquea hasta que haya sitio: esto marca el ritmo del hilo
+                line.write(period, 0, period.length);
+            }
+        } catch (RuntimeException e) {
+            LOG.error("Error en el hilo de audio, el pitido de latido se detiene").cause(e).log();
+            running = false;
+        } finally {
+            line.stop();
+            line.close();
+            lineBufferFrames = 0;
+        }
+    }
+
+    /**
+     * Recoge los latidos pendientes; si hay varios, suena solo el último.
+     */
+    private void pollBeats(int queuedFrames) {
+        int count = beatQueue.drain(drainedBpm, drainedStamps, 0, drainedBpm.length);
+        if (count == 0) {
+            return;
+        }
+        beatsMerged += count - 1;
+        if (muted) {
+            return;
+        }
+        int bpm = drainedBpm[count - 1];
+        tone = tones[config.pitchFollowsHeartRate ? pitchStep(bpm) : 0];
+        tonePosition = 0;
+
+        // El primer cuadro del tono sale detrás de lo que ya está en la línea
+        long now = System.nanoTime();
+        long latency = now - drainedStamps[count - 1]
+                + (long) (Math.max(0, queuedFrames) * 1e9 / config.sampleRate);
+        lastLatencyNanos = latency;
+        totalLatencyNanos += latency;
+        if (latency > maxLatencyNanos) {
+            maxLatencyNanos = latency;
+        }
+        beatsPlayed++;
+    }
+
+    /**
+     * Mezcla el pitido y las alarmas de un periodo y lo pasa a bytes (16 bits, little-endian).
+     */
+    private void render(int[] mix, byte[] period) {
+        final int frames = mix.length;
+        Arrays.fill(mix, 0);
+        if (tone != null) {
+            final int gain = (int) Math.round(volume * 32768);
+            final int n = Math.min(frames, tone.length - tonePosition);
+            for (int i = 0; i < n; i++) {
+                mix[i] = (tone[tonePosition + i] * gain) >> 15;
+            }
+            tonePosition += n;
+            if (tonePosition >= tone.length) {
+                tone = null;
+            }
+        }
+        alarmTones.mix(mix, frames, System.nanoTime());
+        for (int i = 0; i < frames; i++) {
+            int sample = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, mix[i]));
+            period[2 * i] = (byte) sample;
+            period[2 * i + 1] = (byte) (sample >> 8);
+        }
+    }
+
+    private static int pitchStep(int bpm) {
+        if (bpm <= 0) {
+            return 0;
+        }
+        double position = (bpm - PITCH_MIN_BPM) / (PITCH_MAX_BPM - PITCH_MIN_BPM);
+        return (int) Math.round(Math.max(0, Math.min(1, position)) * (PITCH_STEPS - 1));
+    }
+
+    /**
+     * Tonos listos para copiar: un seno con un poco de segundo armónico y rampas de coseno.
+     * Con el tono fijo solo hace falta el primero.
+     */
+    private static short[][] synthesizeTones(Config config) {
+        int steps = config.pitchFollowsHeartRate ? PITCH_STEPS : 1;
+        int length = (int) Math.round(config.toneMillis * config.sampleRate / 1000);
+        int ramp = Math.max(1, Math.min(length / 2, (int) Math.round(RAMP_MILLIS * config.sampleRate / 1000)));
+        short[][] result = new short[steps][];
+        for (int step = 0; step < steps; step++) {
+            double hz = steps == 1 ? config.toneHz
+                    : config.minHz * Math.pow(config.maxHz / config.minHz, step / (double) (steps - 1));
+            short[] samples = new short[length];
+            for (int i = 0; i < length; i++) {
+                double phase = 2 * Math.PI * hz * i / config.sampleRate;
+                double envelope = 1;
+                if (i < ramp) {
+                    envelope = 0.5 - 0.5 * Math.cos(Math.PI * i / ramp);
+                } else if (i >= length - ramp) {
+                    envelope = 0.5 - 0.5 * Math.cos(Math.PI * (length - 1 - i) / ramp);
+                }
+                double value = (0.85 * Math.sin(phase) + 0.15 * Math.sin(2 * phase)) * envelope;
+                samples[i] = (short) Math.round(value * 32767 * 0.9);
+            }
+            result[step] = samples;
+        }
+        return result;
+    }
+}
@@ -2,6 +2,8 @@
 package com.streelet.ecg_java_app.sound;
 
 import com.adonax.audiocue.AudioCue;
+import com.streelet.ecg_java_app.log.Log;
+import com.streelet.ecg_java_app.log.Logger;
 import javax.sound.sampled.*;
 import java.io.IOException;
 import java.net.URL;
@@ -14,6 +16,8 @@ import java.net.URL;
  */
 public class Beep {
 
+    private static final Logger LOG = Log.get(Beep.class);
+
     private static final String BEEP_RESOURCE_PATH = "/com/streelet/ecg_java_app/sounds/beep.wav";
     // Número de instancias concurrentes (voces) para el pitido.
     private static final int BEEP_POOL_SIZE = 8;
@@ -41,11 +45,11 @@ public class Beep {
      */
     public static synchronized void init() throws IOException, UnsupportedAudioFileException, LineUnavailableException, Exception {
         if (isInitialized) {
-            System.out.println("DEBUG Beep: AudioCue ya inicializado.");
+            LOG.debug("AudioCue ya inicializado.").log();
             return;
         }
 
-        System.out.println("DEBUG Beep: Inicializando AudioCue y cargando pitido...");
+        LOG.debug("Inicializando AudioCue y cargando pitido...").log();
 
         URL audioResourceUrl = Beep.class.getResource(BEEP_RESOURCE_PATH);
 
@@ -62,7 +66,7 @@ public class Beep {
             beepCue.open(); // <--- ¡Añadimos esta llamada!
 
             isInitialized = true;
-            System.out.println("DEBUG Beep: AudioCue y pitido precargado y abierto con " + BEEP_POOL_SIZE + " voces.");
+            LOG.info("AudioCue y pitido precargado y abierto con {} voces.").arg(BEEP_POOL_SIZE).log();
 
         
     }
@@ -77,16 +81,19 @@ public class Beep {
      */
     public static int play() {
         if (!isInitialized || beepCue == null) {
-            System.err.println("ERROR Beep: Beep.init() no ha sido llamado o falló. No se puede reproducir el pitido.");
+            LOG.error("Beep.init() no ha sido llamado o falló. No se puede reproducir el pitido.").log();
             return -1;
         }
 
         int instanceId = beepCue.play();
 
         if (instanceId >= 0) {
-             System.out.println("DEBUG Beep: Pitido disparado (AudioCue instanceID: " + instanceId + ").");
+            if (Log.DEBUG_ENABLED) {
+                LOG.debug("Pitido disparado (AudioCue instanceID: {}).").arg(instanceId).log();
+            }
         } else {
-             System.out.println("WARNING Beep: No se pudo disparar pitido (AudioCue play() retornó " + instanceId + "). Posiblemente pool lleno o error interno.");
+            LOG.warn("No se pudo disparar pitido (AudioCue play() retornó {}). Posiblemente pool lleno o error interno.")
+                    .arg(instanceId).log();
         }
 
         return instanceId;
@@ -98,21 +105,20 @@ public class Beep {
      */
     public static synchronized void shutdown() {
         if (!isInitialized || beepCue == null) {
-            System.out.println("DEBUG Beep: AudioCue no está inicializado o ya apagado.");
+            LOG.debug("AudioCue no está inicializado o ya apagado.").log();
             return;
         }
 
-        System.out.println("DEBUG Beep: Apagando AudioCue...");
+        LOG.debug("Apagando AudioCue...").log();
         try {
             beepCue.close(); // Cierra el AudioCue, liberando los Clips del pool.
-             System.out.println("DEBUG Beep: AudioCue cerrado exitosamente.");
+             LOG.debug("AudioCue cerrado exitosamente.").log();
         } catch (Exception e) {
-             System.err.println("ERROR Beep: Excepción al cerrar AudioCue: " + e.getMessage());
-             e.printStackTrace();
+             LOG.error("Excepción al cerrar AudioCue").cause(e).log();
         } finally {
              beepCue = null;
              isInitialized = false;
-             System.out.println("DEBUG Beep: AudioCue apagado (estado interno actualizado).");
+             LOG.debug("AudioCue apagado (estado interno actualizado).").log();
         }
     }
     
@@ -0,0 +1,213 @@
+package com.streelet.ecg_java_app.source;
+
+import com.streelet.ecg_java_app.log.Log;
+import com.streelet.ecg_java_app.log.Logger;
+import com.streelet.ecg_java_app.serial.AsciiSampleParser;
+import com.streelet.ecg_java_app.serial.SerialDataListener;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Fuente que reproduce una captura del puerto serial guardada en un archivo de texto
+ * (el mismo protocolo del dispositivo: un número por línea y líneas "STATUS:...").
+ *
+ * Puede reproducir en tiempo real, a N veces la velocidad real, o lo más rápido posible
+ * (ver {@link PlaybackPacer}). Permite probar y medir todo el procesamiento sin hardware.
+ */
+public class FileReplaySource implements SignalSource {
+
+    private static final Logger LOG = Log.get(FileReplaySource.class);
+
+    // Tamaño de lote en modo sin pausas; en modo con ritmo se usan lotes de ~10 ms de señal
+    private static final int UNPACED_BATCH_SIZE = 1024;
+    private static final long STOP_TIMEOUT_MS = 500;
+
+    private final Path file;
+    private final int sampleRateHz;
+    private final double speed;
+    private final boolean loop;
+
+    private final List<SerialDataListener> listeners = new CopyOnWriteArrayList<>();
+
+    private volatile boolean running = false;
+    private Thread replayThread;
+
+    // Estado del hilo de reproducción
+    private final byte[] readBuffer = new byte[AsciiSampleParser.DEFAULT_READ_BUFFER_SIZE];
+    private final int[] batchValues;
+    private int batchLength = 0;
+    private long batchFirstSequence = 0;
+    private long nextSequence = 0;
+    private final PlaybackPacer pacer;
+
+    private final AsciiSampleParser parser = new AsciiSampleParser(new AsciiSampleParser.Sink() {
+        @Override
+        public void onSample(int value) {
+            if (batchLength == 0) {
+                batchFirstSequence = nextSequence;
+            }
+            batchValues[batchLength++] = value;
+            nextSequence++;
+            if (batchLength == batchValues.length) {
+                flushBatch();
+            }
+        }
+
+        @Override
+        public void onStatus(String status) {
+            flushBatch();
+            notifyErrorOccurred(status);
+        }
+
+        @Override
+        public void onMalformedLine(String line) {
+            flushBatch();
+            notifyErrorOccurred("Error al parsear dato: '" + line + "'");
+        }
+    });
+
+    /**
+     * @param file Archivo con la captura en texto.
+     * @param sampleRateHz Frecuencia de muestreo con la que se grabó la captura.
+     * @param speed Multiplicador de velocidad (1 = tiempo real); {@link PlaybackPacer#AS_FAST_AS_POSSIBLE} sin pausas.
+     * @param loop true para volver a empezar al llegar al final del archivo.
+     */
+    public FileReplaySource(Path file, int sampleRateHz, double speed, boolean loop) {
+        if (file == null) {
+            throw new IllegalArgumentException("El archivo no puede ser null");
+        }
+        this.file = file;
+        this.sampleRateHz = sampleRateHz;
+        this.speed = speed;
+        this.loop = loop;
+        this.pacer = new PlaybackPacer(sampleRateHz, speed);
+        this.batchValues = new int[pacer.isUnpaced() ? UNPACED_BATCH_SIZE : Math.max(1, sampleRateHz / 100)];
+    }
+
+    @Override
+    public void addListener(SerialDataListener listener) {
+        if (listener != null) {
+            listeners.add(listener);
+        }
+    }
+
+    @Override
+    public void removeListener(SerialDataListener listener) {
+        listeners.remove(listener);
+    }
+
+    @Override
+    public synchronized boolean start() {
+        if (running) {
+            return true;
+        }
+        if (!Files.isReadable(file)) {
+            LOG.warn("No se puede leer el archivo {}").arg(file).log();
+            notifyErrorOccurred("No se pudo abrir el archivo de reproducción: " + file);
+            return false;
+        }
+
+        running = true;
+        replayThread = new Thread(this::replayLoop, "ecg-file-replay");
+        replayThread.setDaemon(true);
+        replayThread.start();
+        LOG.info("Reproducción iniciada: {}").arg(getDescription()).log();
+        return true;
+    }
+
+    @Override
+    public synchronized void stop() {
+        running = false;
+        Thread thread = replayThread;
+        replayThread = null;
+        if (thread == null) {
+            return;
+        }
+        // El hilo revisa la bandera en cada lote; la interrupción solo acorta una pausa del pacer
+        thread.interrupt();
+        try {
+            thread.join(STOP_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        LOG.info("Reproducción detenida.").log();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getSampleRateHz() {
+        return sampleRateHz;
+    }
+
+    @Override
+    public String getDescription() {
+        String rate = pacer.isUnpaced() ? "máx. velocidad" : speed + "x";
+        return "Archivo " + file.getFileName() + " @ " + sampleRateHz + " Hz (" + rate + ")";
+    }
+
+    /**
+     * @return Total de muestras entregadas desde el inicio.
+     */
+    public long getSamplesDelivered() {
+        return nextSequence;
+    }
+
+    private void replayLoop() {
+        pacer.reset();
+        try {
+            do {
+                parser.reset();
+                try (InputStream in = Files.newInputStream(file)) {
+                    int bytesRead;
+                    while (running && (bytesRead = in.read(readBuffer)) > 0) {
+                        parser.parse(readBuffer, 0, bytesRead);
+                    }
+                }
+                // Una última línea sin '\n' al final del archivo también cuenta
+                if (running) {
+                    readBuffer[0] = '\n';
+                    parser.parse(readBuffer, 0, 1);
+                    flushBatch();
+                }
+            } while (running && loop);
+            LOG.info("Fin de la reproducción ({} muestras).").arg(nextSequence).log();
+        } catch (IOException e) {
+            LOG.warn("Error leyendo {}: {}").arg(file).arg(e.getMessage()).log();
+            notifyErrorOccurred("Error de lectura del archivo: " + e.getMessage());
+        } finally {
+            running = false;
+        }
+    }
+
+    private void flushBatch() {
+        if (batchLength == 0) {
+            return;
+        }
+        int length = batchLength;
+        batchLength = 0;
+        // El lote se entrega cuando, a la velocidad elegida, ya "llegó" su última muestra
+        if (!pacer.pace(nextSequence)) {
+            running = false;
+            return;
+        }
+        long now = System.nanoTime();
+        for (SerialDataListener listener : listeners) {
+            listener.onSamples(batchValues, 0, length, batchFirstSequence, now);
+        }
+    }
+
+    private void notifyErrorOccurred(String message) {
+        for (SerialDataListener listener : listeners) {
+            listener.onErrorOccurred(message);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.streelet.ecg_java_app.source;
+
+/**
+ * Oyente para fuentes con varios canales (derivaciones).
+ *
+ * Los oyentes {@link com.streelet.ecg_java_app.serial.SerialDataListener} reciben solo el
+ * primer canal; este oyente recibe todos los canales intercalados por instante de muestreo:
+ * {@code c0 c1 ... cN-1 c0 c1 ...}.
+ */
+public interface MultiChannelListener {
+
+    /**
+     * Entrega un lote de instantes de muestreo ("frames") con todos los canales.
+     * El array pertenece a la fuente y se reutiliza: solo es válido durante la llamada.
+     *
+     * @param interleaved Muestras intercaladas por canal.
+     * @param offset Posición de la primera muestra del primer frame.
+     * @param frameCount Número de frames del lote.
+     * @param channelCount Número de canales de cada frame.
+     * @param firstSequence Número de secuencia del primer frame.
+     * @param firstTimestampNanos Instante (System.nanoTime) en que se entregó el lote.
+     */
+    void onFrames(int[] interleaved, int offset, int frameCount, int channelCount,
+                  long firstSequence, long firstTimestampNanos);
+}
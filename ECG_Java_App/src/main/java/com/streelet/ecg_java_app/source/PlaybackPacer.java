@@ -0,0 +1,74 @@
+package com.streelet.ecg_java_app.source;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Regula el ritmo al que una fuente no física (archivo, generador) entrega muestras.
+ *
+ * El ritmo se calcula sobre el total de muestras entregadas desde el inicio, no sobre
+ * cada pausa, así que los retrasos del planificador no se acumulan como deriva.
+ */
+public class PlaybackPacer {
+
+    /** Velocidad de tiempo real. */
+    public static final double REAL_TIME = 1.0;
+
+    /** Valor de velocidad que indica "lo más rápido posible", sin pausas. */
+    public static final double AS_FAST_AS_POSSIBLE = 0.0;
+
+    private final double nanosPerSample;
+    private long startNanos = -1;
+
+    /**
+     * @param sampleRateHz Frecuencia de muestreo de la señal.
+     * @param speed Multiplicador de velocidad (1 = tiempo real, 10 = diez veces más rápido).
+     *              Un valor menor o igual a 0, o infinito, desactiva las pausas.
+     */
+    public PlaybackPacer(int sampleRateHz, double speed) {
+        if (sampleRateHz <= 0) {
+            throw new IllegalArgumentException("Frecuencia de muestreo inválida: " + sampleRateHz);
+        }
+        boolean unpaced = speed <= 0 || Double.isInfinite(speed) || Double.isNaN(speed);
+        this.nanosPerSample = unpaced ? 0 : 1_000_000_000.0 / (sampleRateHz * speed);
+    }
+
+    /**
+     * Reinicia la referencia de tiempo (la siguiente llamada a pace() fija el nuevo inicio).
+     */
+    public void reset() {
+        startNanos = -1;
+    }
+
+    /**
+     * Espera hasta el instante en que deben haberse entregado {@code samplesDelivered} muestras.
+     * Devuelve inmediatamente si la fuente va atrasada o no tiene ritmo.
+     *
+     * @param samplesDelivered Muestras entregadas desde el inicio (o desde el último reset()).
+     * @return false si el hilo fue interrumpido durante la espera.
+     */
+    public boolean pace(long samplesDelivered) {
+        if (nanosPerSample == 0) {
+            return !Thread.currentThread().isInterrupted();
+        }
+        long now = System.nanoTime();
+        if (startNanos < 0) {
+            startNanos = now;
+        }
+        long due = startNanos + (long) (samplesDelivered * nanosPerSample);
+        while (now < due) {
+            LockSupport.parkNanos(due - now);
+            if (Thread.currentThread().isInterrupted()) {
+                return false;
+            }
+            now = System.nanoTime();
+        }
+        return true;
+    }
+
+    /**
+     * @return true si el pacer no introduce pausas (modo "lo más rápido posible").
+     */
+    public boolean isUnpaced() {
+        return nanosPerSample == 0;
+    }
+}
@@ -0,0 +1,53 @@
+package com.streelet.ecg_java_app.source;
+
+import com.streelet.ecg_java_app.serial.SerialDataListener;
+
+/**
+ * Fuente de señal ECG: cualquier origen que entregue muestras y mensajes de estado
+ * a oyentes {@link SerialDataListener}, ya sea un puerto serial real, una grabación
+ * reproducida desde archivo o un generador sintético.
+ *
+ * Los oyentes se notifican en el hilo propio de la fuente, por lo que deben usar
+ * Platform.runLater (o un buffer) para actualizar la UI.
+ */
+public interface SignalSource {
+
+    /**
+     * Agrega un oyente de muestras y errores/estados.
+     * @param listener El oyente a agregar.
+     */
+    void addListener(SerialDataListener listener);
+
+    /**
+     * Remueve un oyente de la lista de notificación.
+     * @param listener El oyente a remover.
+     */
+    void removeListener(SerialDataListener listener);
+
+    /**
+     * Comienza a entregar muestras. Si ya estaba en marcha, no hace nada.
+     * @return true si la fuente quedó en marcha, false si no pudo iniciarse.
+     */
+    boolean start();
+
+    /**
+     * Detiene la entrega de muestras y libera los recursos de la fuente.
+     * Debe terminar en un tiempo acotado.
+     */
+    void stop();
+
+    /**
+     * @return true mientras la fuente está entregando muestras.
+     */
+    boolean isRunning();
+
+    /**
+     * @return Frecuencia de muestreo nominal en Hz, o 0 si la fuente no la conoce.
+     */
+    int getSampleRateHz();
+
+    /**
+     * @return Descripción legible de la fuente (puerto, archivo, etc.) para mensajes y títulos.
+     */
+    String getDescription();
+}
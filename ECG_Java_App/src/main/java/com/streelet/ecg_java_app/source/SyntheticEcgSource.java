@@ -0,0 +1,411 @@
+package com.streelet.ecg_java_app.source;
+
+import com.streelet.ecg_java_app.log.Log;
+import com.streelet.ecg_java_app.log.Logger;
+import com.streelet.ecg_java_app.serial.AsciiSampleParser;
+import com.streelet.ecg_java_app.serial.SerialDataListener;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Generador determinista de ECG sintético, para pruebas de carga y mediciones sin hardware.
+ *
+ * Cada latido es una suma de gaussianas (ondas P, Q, R, S y T) centradas en el instante
+ * del pico R; la onda T y la P se desplazan con la raíz del intervalo RR (como el QT real).
+ * Los intervalos RR combinan la frecuencia media, una oscilación lenta (~0.1 Hz, banda LF),
+ * la arritmia sinusal respiratoria (~0.25 Hz, banda HF) y variación aleatoria. Sobre la
+ * señal se suman ruido blanco, deriva de línea base e interferencia de red opcional.
+ *
+ * La salida imita a un conversor A/D: valores enteros alrededor de {@link Config#adcBaseline}.
+ * Durante los episodios de electrodos desconectados no se entregan muestras y se emite
+ * "STATUS:ELECTRODES_DISCONNECTED" igual que el firmware.
+ *
+ * Con la misma configuración (incluida la semilla) la secuencia de muestras es idéntica.
+ */
+public class SyntheticEcgSource implements SignalSource {
+
+    private static final Logger LOG = Log.get(SyntheticEcgSource.class);
+
+    /**
+     * Parámetros del generador. Los setters devuelven la propia instancia para encadenarlos.
+     */
+    public static class Config {
+        private int sampleRateHz = 200;
+        private int channelCount = 1;
+        private double heartRateBpm = 72;
+        private double lfAmplitudeSeconds = 0.02;   // Oscilación RR lenta (0.1 Hz)
+        private double hfAmplitudeSeconds = 0.025;  // Arritmia sinusal respiratoria (0.25 Hz)
+        private double rrJitterSeconds = 0.01;      // Variación aleatoria latido a latido
+        private double noiseMillivolts = 0.02;
+        private double baselineWanderMillivolts = 0.1;
+        private double mainsMillivolts = 0.0;
+        private double mainsHz = 60;
+        private double leadOffEverySeconds = 0;     // 0 = sin episodios de desconexión
+        private double leadOffDurationSeconds = 3;
+        private int adcBaseline = 600;
+        private double adcCountsPerMillivolt = 300;
+        private int adcMax = 4095;
+        private double speed = PlaybackPacer.REAL_TIME;
+        private double durationSeconds = 0;         // 0 = sin fin
+        private long seed = 1L;
+
+        public Config sampleRateHz(int value) {
+            if (value < 50 || value > 20_000) {
+                throw new IllegalArgumentException("Frecuencia de muestreo fuera de rango: " + value);
+            }
+            sampleRateHz = value;
+            return this;
+        }
+
+        public Config channelCount(int value) {
+            if (value < 1 || value > LEAD_GAINS.length) {
+                throw new IllegalArgumentException("Número de canales fuera de rango: " + value);
+            }
+            channelCount = value;
+            return this;
+        }
+
+        public Config heartRateBpm(double value) {
+            if (value < 20 || value > 300) {
+                throw new IllegalArgumentException("Frecuencia cardíaca fuera de rango: " + value);
+            }
+            heartRateBpm = value;
+            return this;
+        }
+
+        /**
+         * Variabilidad del RR: amplitudes (en segundos) de las componentes LF y HF y
+         * desviación típica del componente aleatorio.
+         */
+        public Config heartRateVariability(double lfSeconds, double hfSeconds, double jitterSeconds) {
+            lfAmplitudeSeconds = lfSeconds;
+            hfAmplitudeSeconds = hfSeconds;
+            rrJitterSeconds = jitterSeconds;
+            return this;
+        }
+
+        public Config noiseMillivolts(double value) {
+            noiseMillivolts = value;
+            return this;
+        }
+
+        public Config baselineWanderMillivolts(double value) {
+            baselineWanderMillivolts = value;
+            return this;
+        }
+
+        public Config mains(double millivolts, double hz) {
+            mainsMillivolts = millivolts;
+            mainsHz = hz;
+            return this;
+        }
+
+        /**
+         * Episodios periódicos de electrodos desconectados.
+         * @param everySeconds Periodo entre inicios de episodio (0 desactiva).
+         * @param durationSeconds Duración de cada episodio.
+         */
+        public Config leadOff(double everySeconds, double durationSeconds) {
+            leadOffEverySeconds = everySeconds;
+            leadOffDurationSeconds = durationSeconds;
+            return this;
+        }
+
+        public Config adc(int baseline, double countsPerMillivolt, int max) {
+            adcBaseline = baseline;
+            adcCountsPerMillivolt = countsPerMillivolt;
+            adcMax = max;
+            return this;
+        }
+
+        /**
+         * @param value Multiplicador de velocidad (1 = tiempo real); {@link PlaybackPacer#AS_FAST_AS_POSSIBLE} sin pausas.
+         */
+        public Config speed(double value) {
+            speed = value;
+            return this;
+        }
+
+        /**
+         * @param value Duración de señal a generar en segundos (0 = indefinida).
+         */
+        public Config durationSeconds(double value) {
+            durationSeconds = value;
+            return this;
+        }
+
+        public Config seed(long value) {
+            seed = value;
+            return this;
+        }
+    }
+
+    // Ganancia relativa de cada canal (derivaciones simuladas; aVR invertida)
+    private static final double[] LEAD_GAINS = {1.0, 0.6, 0.45, -0.8, 0.75, 0.3, 0.9, 1.1};
+
+    // Ondas del latido: centro y ancho (s) respecto del pico R, y amplitud (mV).
+    // Las ondas con escala QT se desplazan/ensanchan con sqrt(RR).
+    private static final double[] WAVE_CENTER = {-0.16, -0.025, 0.0, 0.025, 0.28};
+    private static final double[] WAVE_WIDTH = {0.025, 0.010, 0.010, 0.010, 0.05};
+    private static final double[] WAVE_AMPLITUDE = {0.15, -0.12, 1.5, -0.3, 0.35};
+    private static final boolean[] WAVE_QT_SCALED = {true, false, false, false, true};
+
+    private static final int UNPACED_BATCH_FRAMES = 4096;
+    private static final long STOP_TIMEOUT_MS = 500;
+    private static final double STATUS_REPEAT_SECONDS = 0.5;
+
+    private final Config config;
+    private final List<SerialDataListener> listeners = new CopyOnWriteArrayList<>();
+    private final List<MultiChannelListener> multiChannelListeners = new CopyOnWriteArrayList<>();
+
+    private volatile boolean running = false;
+    private Thread generatorThread;
+
+    // Estado del hilo generador
+    private final PlaybackPacer pacer;
+    private final int batchFrames;
+    private final int[] frames;
+    private final int[] primary;
+    private Random random;
+    private double previousR;
+    private double currentR;
+    private double nextR;
+    private long sequence;
+    private long beatsGenerated;
+
+    public SyntheticEcgSource(Config config) {
+        this.config = config != null ? config : new Config();
+        this.pacer = new PlaybackPacer(this.config.sampleRateHz, this.config.speed);
+        this.batchFrames = pacer.isUnpaced()
+                ? UNPACED_BATCH_FRAMES
+                : Math.max(1, this.config.sampleRateHz / 100); // ~10 ms por lote
+        this.frames = new int[batchFrames * this.config.channelCount];
+        this.primary = new int[batchFrames];
+    }
+
+    public void addMultiChannelListener(MultiChannelListener listener) {
+        if (listener != null) {
+            multiChannelListeners.add(listener);
+        }
+    }
+
+    public void removeMultiChannelListener(MultiChannelListener listener) {
+        multiChannelListeners.remove(listener);
+    }
+
+    @Override
+    public void addListener(SerialDataListener listener) {
+        if (listener != null) {
+            listeners.add(listener);
+        }
+    }
+
+    @Override
+    public void removeListener(SerialDataListener listener) {
+        listeners.remove(listener);
+    }
+
+    @Override
+    public synchronized boolean start() {
+        if (running) {
+            return true;
+        }
+        running = true;
+        generatorThread = new Thread(this::generateLoop, "ecg-synthetic-source");
+        generatorThread.setDaemon(true);
+        generatorThread.start();
+        LOG.info("Generación iniciada: {}").arg(getDescription()).log();
+        return true;
+    }
+
+    @Override
+    public synchronized void stop() {
+        running = false;
+        Thread thread = generatorThread;
+        generatorThread = null;
+        if (thread == null) {
+            return;
+        }
+        thread.interrupt(); // Solo acorta una pausa del pacer; el bucle revisa la bandera en cada lote
+        try {
+            thread.join(STOP_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        LOG.info("Generación detenida ({} muestras, {} latidos).").arg(sequence).arg(beatsGenerated).log();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getSampleRateHz() {
+        return config.sampleRateHz;
+    }
+
+    public int getChannelCount() {
+        return config.channelCount;
+    }
+
+    @Override
+    public String getDescription() {
+        String rate = pacer.isUnpaced() ? "máx. velocidad" : config.speed + "x";
+        return "ECG sintético " + config.heartRateBpm + " lpm, " + config.channelCount + " canal(es) @ "
+                + config.sampleRateHz + " Hz (" + rate + ")";
+    }
+
+    /**
+     * @return Número de latidos generados (pico R) desde el inicio; útil para validar detectores.
+     */
+    public long getBeatsGenerated() {
+        return beatsGenerated;
+    }
+
+    private void generateLoop() {
+        resetState();
+        final int channels = config.channelCount;
+        final long totalFrames = config.durationSeconds > 0
+                ? (long) (config.durationSeconds * config.sampleRateHz)
+                : Long.MAX_VALUE;
+        try {
+            long lastStatusSequence = -1;
+            while (running && sequence < totalFrames) {
+                final int maxCount = (int) Math.min(batchFrames, totalFrames - sequence);
+                final long firstSequence = sequence;
+                final boolean leadOff = isLeadOff(firstSequence);
+
+                // Un lote nunca mezcla señal y desconexión
+                int count = 0;
+                while (count < maxCount && isLeadOff(sequence) == leadOff) {
+                    generateFrame(sequence++, frames, count * channels);
+                    count++;
+                }
+
+                // El lote se entrega cuando, a la velocidad elegida, ya "llegó" su última muestra
+                if (!pacer.pace(sequence)) {
+                    break;
+                }
+
+                if (leadOff) {
+                    // Igual que el firmware: sin electrodos se envía el estado en lugar de muestras.
+                    // Se repite como máximo cada STATUS_REPEAT_SECONDS de señal para no saturar a los oyentes.
+                    if (lastStatusSequence < 0
+                            || firstSequence - lastStatusSequence >= STATUS_REPEAT_SECONDS * config.sampleRateHz) {
+                        lastStatusSequence = firstSequence;
+                        notifyErrorOccurred(AsciiSampleParser.STATUS_ELECTRODES_DISCONNECTED);
+                    }
+                    continue;
+                }
+                lastStatusSequence = -1;
+                deliver(count, firstSequence);
+            }
+        } finally {
+            running = false;
+        }
+    }
+
+    private void deliver(int count, long firstSequence) {
+        final long now = System.nanoTime();
+        final int channels = config.channelCount;
+        for (MultiChannelListener listener : multiChannelListeners) {
+            listener.onFrames(frames, 0, count, channels, firstSequence, now);
+        }
+        if (listeners.isEmpty()) {
+            return;
+        }
+        for (int f = 0; f < count; f++) {
+            primary[f] = frames[f * channels];
+        }
+        for (SerialDataListener listener : listeners) {
+            listener.onSamples(primary, 0, count, firstSequence, now);
+        }
+    }
+
+    private void resetState() {
+        random = new Random(config.seed);
+        pacer.reset();
+        sequence = 0;
+        beatsGenerated = 0;
+        // Primer latido un poco después del inicio, para que la primera P sea visible
+        currentR = 0.3;
+        previousR = currentR - nextRrInterval(0);
+        nextR = currentR + nextRrInterval(currentR);
+    }
+
+    /**
+     * Genera un instante de muestreo para todos los canales.
+     */
+    private void generateFrame(long index, int[] dst, int offset) {
+        final double t = (double) index / config.sampleRateHz;
+
+        // Avanzar de latido a mitad de camino entre dos picos R
+        if (t > (currentR + nextR) * 0.5) {
+            previousR = currentR;
+            currentR = nextR;
+            nextR = currentR + nextRrInterval(currentR);
+            beatsGenerated++;
+        }
+
+        final double beat = beatMillivolts(t - previousR, currentR - previousR)
+                + beatMillivolts(t - currentR, nextR - currentR)
+                + beatMillivolts(t - nextR, nextR - currentR);
+
+        final double wander = config.baselineWanderMillivolts
+                * (Math.sin(2 * Math.PI * 0.15 * t) + 0.5 * Math.sin(2 * Math.PI * 0.04 * t + 1.0));
+        final double mains = config.mainsMillivolts == 0 ? 0
+                : config.mainsMillivolts * Math.sin(2 * Math.PI * config.mainsHz * t);
+
+        for (int c = 0; c < config.channelCount; c++) {
+            double millivolts = beat * LEAD_GAINS[c] + wander + mains
+                    + config.noiseMillivolts * random.nextGaussian();
+            int value = (int) Math.round(config.adcBaseline + millivolts * config.adcCountsPerMillivolt);
+            dst[offset + c] = Math.max(0, Math.min(config.adcMax, value));
+        }
+    }
+
+    /**
+     * Amplitud (mV) del latido cuyo pico R está a {@code dt} segundos del instante actual.
+     */
+    private static double beatMillivolts(double dt, double rrSeconds) {
+        final double qtScale = Math.sqrt(Math.max(0.2, rrSeconds));
+        double sum = 0;
+        for (int w = 0; w < WAVE_CENTER.length; w++) {
+            final double scale = WAVE_QT_SCALED[w] ? qtScale : 1.0;
+            final double width = WAVE_WIDTH[w] * scale;
+            final double d = dt - WAVE_CENTER[w] * scale;
+            if (d > 5 * width || d < -5 * width) {
+                continue; // Contribución despreciable: evita el exp()
+            }
+            sum += WAVE_AMPLITUDE[w] * Math.exp(-(d * d) / (2 * width * width));
+        }
+        return sum;
+    }
+
+    private double nextRrInterval(double atSeconds) {
+        double rr = 60.0 / config.heartRateBpm
+                + config.lfAmplitudeSeconds * Math.sin(2 * Math.PI * 0.1 * atSeconds)
+                + config.hfAmplitudeSeconds * Math.sin(2 * Math.PI * 0.25 * atSeconds)
+                + config.rrJitterSeconds * random.nextGaussian();
+        return Math.max(0.2, rr);
+    }
+
+    private boolean isLeadOff(long frameIndex) {
+        if (config.leadOffEverySeconds <= 0) {
+            return false;
+        }
+        double t = (double) frameIndex / config.sampleRateHz;
+        double phase = t % config.leadOffEverySeconds;
+        // El primer periodo siempre comienza con señal
+        return t >= config.leadOffEverySeconds && phase < config.leadOffDurationSeconds;
+    }
+
+    private void notifyErrorOccurred(String message) {
+        for (SerialDataListener listener : listeners) {
+            listener.onErrorOccurred(message);
+        }
+    }
+}
@@ -0,0 +1,288 @@
+package com.streelet.ecg_java_app.view;
+
+import javafx.geometry.Insets;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.layout.Region;
+import javafx.scene.paint.Color;
+
+/**
+ * Vista de la onda ECG dibujada sobre un {@link Canvas}, en modo "barrido" como un monitor
+ * de cabecera: el trazo avanza de izquierda a derecha sobre una ventana fija de muestras y,
+ * al llegar al borde, vuelve a empezar borrando por delante del cursor.
+ *
+ * Las muestras visibles se guardan en un buffer circular de enteros (sin nodos ni objetos
+ * por muestra). {@link #append(int)} solo guarda el valor; {@link #flush()} dibuja únicamente
+ * el tramo nuevo desde el último dibujo, así que el coste por pulso es proporcional a las
+ * muestras recibidas y no al tamaño de la ventana.
+ *
+ * Debe usarse desde el hilo de JavaFX.
+ */
+public class EcgWaveformView extends Region {
+
+    // Colores equivalentes a los de monitor.css (.chart-plot-background, grid y .chart-series-line)
+    private static final Color BACKGROUND_COLOR = Color.web("#1a1a1a");
+    private static final Color GRID_COLOR = Color.web("#444444");
+    private static final Color TRACE_COLOR = Color.web("#D8CBFA");
+    private static final double TRACE_WIDTH = 2.0;
+    private static final double GRID_WIDTH = 0.5;
+
+    // Ancho mínimo (px) del hueco que se borra delante del cursor de barrido
+    private static final double SWEEP_GAP_PX = 12.0;
+
+    private final Canvas canvas = new Canvas();
+
+    private int windowSize;
+    private int[] window;
+
+    // Total de muestras recibidas y total ya dibujado (índices absolutos)
+    private long totalSamples = 0;
+    private long drawnSamples = 0;
+
+    private double valueLower = 300;
+    private double valueUpper = 1200;
+    private int verticalGridSamples = 100;
+    private double horizontalGridUnits = 100;
+
+    public EcgWaveformView() {
+        this(900);
+    }
+
+    /**
+     * @param windowSize Número de muestras visibles en el ancho de la vista.
+     */
+    public EcgWaveformView(int windowSize) {
+        getStyleClass().add("ecg-waveform");
+        getChildren().add(canvas);
+        setWindowSize(windowSize);
+    }
+
+    /**
+     * Cambia el número de muestras visibles. Descarta lo dibujado hasta ahora.
+     */
+    public final void setWindowSize(int windowSize) {
+        if (windowSize < 2) {
+            throw new IllegalArgumentException("La ventana debe tener al menos 2 muestras: " + windowSize);
+        }
+        this.windowSize = windowSize;
+        this.window = new int[windowSize];
+        clear();
+    }
+
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    /**
+     * Fija el rango vertical (valores del ADC) que ocupa la altura de la vista.
+     */
+    public void setValueRange(double lower, double upper) {
+        if (upper <= lower) {
+            throw new IllegalArgumentException("Rango vertical inválido: " + lower + " .. " + upper);
+        }
+        this.valueLower = lower;
+        this.valueUpper = upper;
+        redrawAll();
+    }
+
+    /**
+     * Separación de la cuadrícula: cada cuántas muestras una línea vertical y cada cuántas
+     * unidades del ADC una línea horizontal.
+     */
+    public void setGridSpacing(int samples, double units) {
+        this.verticalGridSamples = Math.max(1, samples);
+        this.horizontalGridUnits = Math.max(1, units);
+        redrawAll();
+    }
+
+    /**
+     * Borra la onda y reinicia el barrido.
+     */
+    public void clear() {
+        totalSamples = 0;
+        drawnSamples = 0;
+        redrawAll();
+    }
+
+    /**
+     * Guarda una muestra nueva. No dibuja: llamar a {@link #flush()} una vez por pulso.
+     */
+    public void append(int value) {
+        window[(int) (totalSamples % windowSize)] = value;
+        totalSamples++;
+    }
+
+    /**
+     * Guarda un bloque de muestras nuevas. No dibuja: llamar a {@link #flush()} una vez por pulso.
+     */
+    public void append(int[] values, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            window[(int) (totalSamples % windowSize)] = values[offset + i];
+            totalSamples++;
+        }
+    }
+
+    /**
+     * Dibuja las muestras recibidas desde el último flush().
+     */
+    public void flush() {
+        long pending = totalSamples - drawnSamples;
+        if (pending <= 0) {
+            return;
+        }
+        if (pending >= windowSize || canvas.getWidth() <= 0 || canvas.getHeight() <= 0) {
+            // Demasiado atrasado (o sin tamaño aún): se redibuja la ventana completa
+            redrawAll();
+            return;
+        }
+
+        GraphicsContext gc = canvas.getGraphicsContext2D();
+        long start = drawnSamples;
+        while (start < totalSamples) {
+            int fromSlot = (int) (start % windowSize);
+            int count = (int) Math.min(totalSamples - start, windowSize - fromSlot); // Sin pasar del borde derecho
+            drawSegment(gc, fromSlot, count, start > 0);
+            start += count;
+        }
+        eraseAhead(gc, (int) ((totalSamples - 1) % windowSize));
+        drawnSamples = totalSamples;
+    }
+
+    @Override
+    protected void layoutChildren() {
+        Insets insets = getInsets();
+        double width = snapSizeX(Math.max(0, getWidth() - insets.getLeft() - insets.getRight()));
+        double height = snapSizeY(Math.max(0, getHeight() - insets.getTop() - insets.getBottom()));
+        canvas.relocate(snappedLeftInset(), snappedTopInset());
+        if (canvas.getWidth() != width || canvas.getHeight() != height) {
+            canvas.setWidth(width);
+            canvas.setHeight(height);
+            redrawAll();
+        }
+    }
+
+    @Override
+    protected double computePrefWidth(double height) {
+        return 600;
+    }
+
+    @Override
+    protected double computePrefHeight(double width) {
+        return 300;
+    }
+
+    /**
+     * Redibuja el fondo, la cuadrícula y todas las muestras visibles.
+     */
+    private void redrawAll() {
+        double width = canvas.getWidth();
+        double height = canvas.getHeight();
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+        GraphicsContext gc = canvas.getGraphicsContext2D();
+        paintBackground(gc, 0, width);
+
+        long firstVisible = Math.max(0, totalSamples - windowSize);
+        long start = firstVisible;
+        while (start < totalSamples) {
+            int fromSlot = (int) (start % windowSize);
+            int count = (int) Math.min(totalSamples - start, windowSize - fromSlot);
+            // El primer tramo no se une con la muestra anterior: esa es la más nueva de la pasada
+            drawSegment(gc, fromSlot, count, start > firstVisible);
+            start += count;
+        }
+        if (totalSamples > 0) {
+            eraseAhead(gc, (int) ((totalSamples - 1) % windowSize));
+        }
+        drawnSamples = totalSamples;
+    }
+
+    /**
+     * Dibuja {@code count} muestras consecutivas que ocupan las posiciones fromSlot.. de la ventana.
+     * Con joinPrevious el trazo se une con la muestra de la posición anterior (si no es el borde izquierdo).
+     */
+    private void drawSegment(GraphicsContext gc, int fromSlot, int count, boolean joinPrevious) {
+        double left = slotX(fromSlot);
+        double right = slotX(fromSlot + count - 1);
+        paintBackground(gc, left, right + TRACE_WIDTH);
+
+        gc.setStroke(TRACE_COLOR);
+        gc.setLineWidth(TRACE_WIDTH);
+        gc.beginPath();
+        if (joinPrevious && fromSlot > 0) {
+            gc.moveTo(slotX(fromSlot - 1), valueY(window[fromSlot - 1]));
+            gc.lineTo(left, valueY(window[fromSlot]));
+        } else {
+            gc.moveTo(left, valueY(window[fromSlot]));
+        }
+        for (int i = 1; i < count; i++) {
+            int slot = fromSlot + i;
+            gc.lineTo(slotX(slot), valueY(window[slot]));
+        }
+        gc.stroke();
+    }
+
+    /**
+     * Borra el hueco por delante del cursor (lo que queda de la pasada anterior).
+     */
+    private void eraseAhead(GraphicsContext gc, int cursorSlot) {
+        double width = canvas.getWidth();
+        double from = slotX(cursorSlot) + TRACE_WIDTH;
+        double to = from + Math.max(SWEEP_GAP_PX, width / windowSize);
+        paintBackground(gc, from, Math.min(to, width));
+        if (to > width) {
+            paintBackground(gc, 0, to - width);
+        }
+    }
+
+    /**
+     * Pinta fondo y cuadrícula en la franja vertical [fromX, toX).
+     */
+    private void paintBackground(GraphicsContext gc, double fromX, double toX) {
+        double width = canvas.getWidth();
+        double height = canvas.getHeight();
+        fromX = Math.max(0, fromX);
+        toX = Math.min(width, toX);
+        if (toX <= fromX) {
+            return;
+        }
+
+        gc.setFill(BACKGROUND_COLOR);
+        gc.fillRect(fromX, 0, toX - fromX, height);
+
+        gc.setStroke(GRID_COLOR);
+        gc.setLineWidth(GRID_WIDTH);
+
+        // Líneas verticales cada verticalGridSamples muestras
+        int firstLine = (int) Math.ceil(xToSlot(fromX) / verticalGridSamples);
+        for (int line = firstLine; ; line++) {
+            double x = slotX(line * verticalGridSamples);
+            if (x >= toX) {
+                break;
+            }
+            gc.strokeLine(x, 0, x, height);
+        }
+
+        // Líneas horizontales cada horizontalGridUnits unidades
+        double firstValue = Math.ceil(valueLower / horizontalGridUnits) * horizontalGridUnits;
+        for (double value = firstValue; value <= valueUpper; value += horizontalGridUnits) {
+            double y = valueY(value);
+            gc.strokeLine(fromX, y, toX, y);
+        }
+    }
+
+    private double slotX(int slot) {
+        return slot * canvas.getWidth() / (windowSize - 1);
+    }
+
+    private double xToSlot(double x) {
+        return x * (windowSize - 1) / canvas.getWidth();
+    }
+
+    private double valueY(double value) {
+        double height = canvas.getHeight();
+        double y = height - (value - valueLower) / (valueUpper - valueLower) * height;
+        return Math.max(0, Math.min(height, y));
+    }
+}